@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub;
+
+import java.io.IOException;
+
+import venice.hub.utils.BinaryLog;
+import venice.hub.utils.BinaryLogWriter;
+import venice.lib.parser.SlotEvent;
+
+/**
+ * Writes data to disk in the binary log format.
+ * <p>
+ * Works like {@link DiskWriter} (file naming, compression), but the events
+ * are written as binary records instead of XIO lines. Floats are stored as
+ * raw values, so they don't have to be formatted as decimal strings.
+ * With <code>--deltaEncoding</code> the events are written as delta encoded
+ * blocks (see {@link venice.hub.utils.DeltaBlockCodec}).
+ * 
+ * @see BinaryLog
+ * @see DiskWriter
+ */
+public class BinaryDiskWriter extends DiskWriter{
+	
+	private BinaryLogWriter binaryWriter;
+	
+	/**
+	 * Creates a writer for the log file of the configuration.
+	 */
+	public BinaryDiskWriter(){
+		super();
+	}
+	
+	/**
+	 * Creates a writer for the given log file instead of the one of the
+	 * configuration.
+	 * 
+	 * @param logPath name of the log file
+	 */
+	public BinaryDiskWriter(String logPath){
+		super(logPath);
+	}
+	
+	@Override
+	protected void writeHeader() throws IOException{
+		binaryWriter = new BinaryLogWriter(stream, config.isDeltaEncoding(), config.getKeyframeInterval());
+		binaryWriter.writeHeader();
+	}
+	
+	@Override
+	protected void writeEvent(SlotEvent se) throws IOException{
+		binaryWriter.writeEvent(se);
+	}
+	
+	@Override
+	protected void flushEvents() throws IOException{
+		// a pending block is written early
+		binaryWriter.finish();
+	}
+	
+	@Override
+	protected void writeFooter() throws IOException{
+		// the binary format has no footer, only the last block has to be written
+		binaryWriter.finish();
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub;
+
+import org.apache.log4j.Logger;
+
+import venice.hub.utils.BinaryLog;
+import venice.hub.utils.TimeShiftBuffer;
+import venice.lib.parser.SlotEvent;
+
+/**
+ * Keeps the live input in memory, and writes it to disk only around a
+ * trigger (capture mode, <code>--preTrigger</code>).
+ * <p>
+ * The events of the last <code>--preTrigger</code> ms are kept in a
+ * {@link TimeShiftBuffer}. A trigger starts a dump into a new log file,
+ * named like the log file of the configuration (see {@link DiskWriter}):
+ * the events before the trigger, and then the events of the next
+ * <code>--postTrigger</code> ms, as they come in. The dump runs in a thread
+ * of its own, so the input is not held up by writing to disk. A trigger
+ * during a dump extends the dump; once the dump has passed its end, a
+ * trigger starts a new dump.
+ */
+public class CaptureWriter extends VeniceWriter {
+	
+	static {
+		// setup logger
+		venice.lib.Configuration.setupLogger();
+		logger = Logger.getLogger(CaptureWriter.class);
+	}
+	
+	private final static long MAX_WAIT = 100L; // ms, to check for the end of a dump
+	
+	// no initializers, set by initialize while the super constructor is running
+	private TimeShiftBuffer ring;
+	private Dump dump; // the running or last dump, null if there was none
+	
+	@Override
+	protected void initialize(){
+		ring = new TimeShiftBuffer(config.getCaptureMemory(), config.getPreTrigger());
+		VeniceHub.message("Capturing the last "+config.getPreTrigger()+" ms, waiting for a trigger");
+	}
+	
+	@Override
+	protected long write(SlotEvent se){
+		if(se == null) return NO_TIMESTAMP;
+		ring.add(se);
+		lastTimestamp = se.getTime();
+		VeniceHub.setLastPushedTimestamp(lastTimestamp);
+		return System.currentTimeMillis();
+	}
+	
+	/**
+	 * Writes the events of the pre-trigger time and of the post-trigger
+	 * time to a new log file. Extends the dump, if one is running.
+	 */
+	public synchronized void trigger(){
+		long now = System.currentTimeMillis();
+		if(dump != null && dump.extend(now + config.getPostTrigger())){
+			VeniceHub.message("Trigger: dump extended");
+			return;
+		}
+		dump = new Dump(now - config.getPreTrigger(), now + config.getPostTrigger());
+		Thread thread = new Thread(dump, "VH_TriggerDump");
+		thread.start();
+	}
+	
+	/**
+	 * Returns the buffer of the events before a trigger.
+	 * 
+	 * @return the buffer
+	 */
+	public TimeShiftBuffer getBuffer(){
+		return ring;
+	}
+	
+	/**
+	 * Returns <code>true</code> while a dump is written.
+	 * 
+	 * @return <code>true</code> if a dump is running
+	 */
+	public synchronized boolean isDumping(){
+		return dump != null && !dump.finished;
+	}
+	
+	/**
+	 * Returns <code>true</code> while a dump has passed its end, but its
+	 * file is not closed yet. A trigger starts a new dump then.
+	 */
+	synchronized boolean isClosing(){
+		return dump != null && dump.isClosing() && !dump.finished;
+	}
+	
+	/**
+	 * Ends a running dump at once and waits until its file is closed.
+	 */
+	@Override
+	protected void cleanUp(){
+		Dump d;
+		synchronized(this){
+			d = dump;
+		}
+		if(d == null) return;
+		d.end();
+		synchronized(d){
+			while(!d.finished){
+				try {
+					d.wait(MAX_WAIT);
+				} catch (InterruptedException e) {}
+			}
+		}
+	}
+	
+	/**
+	 * Writes the events of a time range from the ring to a new log file.
+	 */
+	private class Dump implements Runnable {
+		private final long from;
+		private long to;
+		private boolean closing; // has passed its end, can not be extended any more
+		private volatile boolean finished;
+		
+		Dump(long from, long to){
+			this.from = from;
+			this.to = to;
+		}
+		
+		/**
+		 * Moves the end of the dump.
+		 * 
+		 * @return <code>false</code> if the dump has already passed its end
+		 */
+		synchronized boolean extend(long to){
+			if(closing) return false;
+			this.to = Math.max(this.to, to);
+			return true;
+		}
+		
+		/**
+		 * Ends the dump with the events up to now.
+		 */
+		synchronized void end(){
+			to = Math.min(to, System.currentTimeMillis());
+		}
+		
+		/**
+		 * Decides whether the dump stops at the given time. Once it does,
+		 * it can not be extended any more, so no trigger is lost.
+		 * 
+		 * @return <code>true</code> if the time is after the end
+		 */
+		private synchronized boolean stop(long time){
+			if(time > to) closing = true;
+			return closing;
+		}
+		
+		synchronized boolean isClosing(){
+			return closing;
+		}
+		
+		@Override
+		public void run(){
+			DiskWriter file = BinaryLog.isBinaryLogFile(config.getLogFilePath()) ? new BinaryDiskWriter() : new DiskWriter();
+			long seq = ring.search(from);
+			long events = 0, lost = 0;
+			while(true){
+				SlotEvent se = ring.get(seq);
+				if(se == null){
+					if(seq < ring.getStart()){
+						// the dump fell behind the ring
+						lost += ring.getStart() - seq;
+						seq = ring.getStart();
+						continue;
+					}
+					if(stop(System.currentTimeMillis())) break;
+					try {
+						ring.await(seq, MAX_WAIT);
+					} catch (InterruptedException e) {}
+					continue;
+				}
+				if(stop(se.getTime())) break;
+				file.write(se);
+				events++;
+				seq++;
+			}
+			file.cleanUp();
+			VeniceHub.message("Trigger: dumped "+events+" events to "+file.getLogPath());
+			if(lost > 0) logger.warn(lost+" events were dropped from memory before they were dumped");
+			synchronized(this){
+				finished = true;
+				notifyAll();
+			}
+		}
+	}
+}
@@ -135,6 +135,10 @@ public class ConsoleControl extends VeniceControl{
 			System.out.println("  h : show help");
 			System.out.println("  q : quit the programm");
 			System.out.println(" msg: turn on/off messages");
+			System.out.println(" Commands for logging to Disk:");
+			System.out.println("  writer              : show queue depth and latency of asynchronous writing, or the partitions");
+			System.out.println("  timeshift [<ms>]    : show the time-shifted replay [or move it to ms behind live]");
+			System.out.println("  trigger             : write the events around now to a new log file (capture mode)");
 			System.out.println(" Commands for replaying from Disk:");
 			System.out.println("  p                   : (un)pause");
 			System.out.println("  seek <timestamp>    : jump to timestamp");
@@ -142,6 +146,9 @@ public class ConsoleControl extends VeniceControl{
 			System.out.println("  time                : shows time of actual timestamp in h, m, s");
 			System.out.println("  reset               : restart the replay");
 			System.out.println("  offset [<ms>]       : show [or set] offset value for replay");
+			System.out.println("  sync                : show drift statistics of the synchronization with a media player");
+			System.out.println("  speed [<factor>]    : show [or set] the speed of the replay (0.25 to 16)");
+			System.out.println("  step [<ms>]         : stop the replay clock and step it by ms, or to the next event");
 		}
 		
 		if(input.equals("config")){
@@ -152,6 +159,29 @@ public class ConsoleControl extends VeniceControl{
 			TTEQueue.getInstance().showContent();
 		}
 		
+		if(input.equals("writer")){
+			VeniceHub.showWriterStats();
+		}
+		
+		if(input.equals("trigger")){
+			VeniceHub.trigger();
+		}
+		
+		if(input.startsWith("timeshift")){
+			if(input.equals("timeshift")) VeniceHub.showTimeShift();
+			else{
+				try{
+					VeniceHub.setTimeShift(Long.parseLong(input.split(" ")[1]));
+				}catch(NumberFormatException e){
+					VeniceHub.message("Wrong number format for timeshift command.");
+				}
+			}
+		}
+		
+		if(input.equals("sync")){
+			VeniceHub.showSyncStats();
+		}
+		
 		if(input.equals("p")){
 			// pause (only for replaying from disk)
 			if(Configuration.getInstance().getSource() == Connection.DISK ){
@@ -224,6 +254,31 @@ public class ConsoleControl extends VeniceControl{
     			}
     			else VeniceHub.message("A milliseconds value is needed for the skip command.\n Usage: skip <milliseconds> (<unit>)");
     		}
+    		if(input.startsWith("speed")){
+    			if(input.split(" ").length == 1){
+    				VeniceHub.showReplaySpeed();
+    			}
+    			else{
+    				try{
+    					VeniceHub.setReplaySpeed(Double.parseDouble(input.split(" ")[1]));
+    				}
+    				catch(NumberFormatException e){
+    					VeniceHub.message("Wrong number format for speed command.");
+    				}
+    				catch(IllegalArgumentException e){
+    					VeniceHub.message(e.getMessage());
+    				}
+    			}
+    		}
+    		if(input.startsWith("step")){
+    			try{
+    				long stepTime = input.split(" ").length > 1 ? Long.parseLong(input.split(" ")[1]) : 0;
+    				VeniceHub.step(stepTime);
+    			}
+    			catch(NumberFormatException e){
+    				VeniceHub.message("Wrong number format for step command.");
+    			}
+    		}
     		if(input.equals("time")){
     			long value = VeniceHub.getLastPushedTimestamp();
     			if(value != VeniceHub.INVALID_TIMESTAMP){
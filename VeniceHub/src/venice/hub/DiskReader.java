@@ -23,23 +23,66 @@
  */
 package venice.hub;
 
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 
+import venice.hub.utils.BinaryLog;
+import venice.hub.utils.BinaryTTEBufferedReader;
 import venice.hub.utils.Configuration;
+import venice.hub.utils.EventStore;
+import venice.hub.utils.LogManifest;
+import venice.hub.utils.LogScanner;
+import venice.hub.utils.PartitionManifest;
+import venice.hub.utils.ScopeFilter;
+import venice.hub.utils.SnapshotIndex;
 import venice.hub.utils.TTEBufferedReader;
 import venice.hub.utils.TTEQueue;
 import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOParser;
+
+import static venice.lib.parser.XIOParser.INVALID_TIMESTAMP;
 
 /**
  * Reads data from disk.
  * <p>
- * Reads XIO lines of log file, convert them into {@link SlotEvent} objects and
- * puts them into the {@link TTEQueue}.
+ * Reads XIO lines (or records of a binary log file) of log file, convert them
+ * into {@link SlotEvent} objects and puts them into the {@link TTEQueue}.
+ * The segments of a rotated log are replayed as one log file, if the
+ * {@link LogManifest} is given as file name.
  * The actual reading from file and the parsing will be done by the
  * {@link TTEBufferedReader}.
+ * <p>
+ * Further log files given with <code>--merge</code> are replayed together
+ * with the log file. Every file gets its own {@link TTEBufferedReader}, the
+ * events are merged by timestamp with a heap, which holds the next event of
+ * every file. A time offset (<code>--fileOffset</code>) is added to the
+ * timestamps of a file, so that recordings with different clocks can be
+ * aligned. Seeking is done by all readers at the same time.
+ * <p>
+ * A {@link PartitionManifest} is replayed like the files it lists, given
+ * with <code>--merge</code>.
+ * <p>
+ * With <code>--inMemory</code> the files are loaded completely into an
+ * {@link EventStore} instead, and no TTEBufferedReader is used. Seeking is
+ * then a binary search. If the files exceed <code>--memoryLimit</code>,
+ * they are replayed from disk.
+ * <p>
+ * With <code>--snapshotInterval</code> a {@link SnapshotIndex} is built (in
+ * the background while replaying from disk), and after a seek the state of
+ * all slots at the seeked time is sent first, so that slots which change
+ * rarely are not missing. For that, the reading starts at the keyframe
+ * before the seeked time, and the events up to the seeked time are only
+ * collected into the state.
  *
  * @see TTEBufferedReader
  * @see TTEQueue
@@ -56,26 +99,251 @@ public class DiskReader extends VeniceReader {
 		logger = Logger.getLogger(DiskReader.class);
 	}
 
-    private String filePath;
-    private TTEBufferedReader tbfr;
-	private SynchronousQueue<SlotEvent> syncQ;
+	/**
+	 * A replayed file with its reader.
+	 */
+	private static class Source {
+		TTEBufferedReader reader;
+		SynchronousQueue<SlotEvent> syncQ;
+		long offset; // added to the timestamps of the file
+		boolean hasHead; // the next event of this file is in the heap
+		boolean ended; // all events of the file are read
+		boolean seeking; // events are dropped until the reader has done the seek
+		int seekNumber; // number of the last seek request of the reader
+	}
+	
+	/**
+	 * The next event of a file, ordered by timestamp and, for equal
+	 * timestamps, by the order of the files.
+	 */
+	private static class Head implements Comparable<Head> {
+		final SlotEvent event;
+		final Source source;
+		final int index;
+		
+		Head(SlotEvent event, Source source, int index){
+			this.event = event;
+			this.source = source;
+			this.index = index;
+		}
+		
+		@Override
+		public int compareTo(Head o) {
+			if(event.getTime() != o.event.getTime())
+				return event.getTime() < o.event.getTime() ? -1 : 1;
+			return Integer.compare(index, o.index);
+		}
+	}
+	
+    private List<Source> sources;
+    private List<Long> fileOffsets; // time offsets of the replayed files, by index
+	private PriorityQueue<Head> heap;
+	private long lastTimestamp; // timestamp of the last event returned by read
+	private EventStore store; // null, if not replaying from memory
+	private int position; // index of the next event in the store
+	private int fileCount;
+	private SnapshotIndex snapshots; // null without snapshots, or while the index is built
+	private long snapshotTarget; // seeked timestamp, while the state is collected after a seek
+	private HashMap<Integer, SlotEvent> snapshotState; // last events by scope id, while collecting
+	private ArrayDeque<SlotEvent> pending; // events to be read before any other
+	private boolean atEnd; // all events are read
+	private boolean flushed; // nothing was put into the TTEQueue since the last seek
+	
+	private final static long WAIT_FOR_FILE = 10; // ms, short because seeking waits for the lock
+	private final static int MAX_FRAME_SIZE = 1000; // events of the same timestamp put into the queue at once
+	private final static long PRE_ROLL_TIMEOUT = 5000; // ms, the replay starts anyway after this time
+	private final static int WARM_UP_PARSES = 2000; // round trips through the XIO parser during the pre-roll
+	private long startDelay; // replay delay set by initialize, INVALID_TIMESTAMP if it was given
 
 	/**
-	 * Gets the file name and starts the TTEBufferedReader.
+	 * Gets the file names and starts a TTEBufferedReader for each file
+	 * (or loads the files into memory).
 	 */
     protected void initialize() {
-    	filePath = Configuration.getInstance().getLogFilePath();
-    	prepareTTEBufferedReader();
+    	Configuration conf = Configuration.getInstance();
+    	List<String> configured = new ArrayList<String>();
+    	configured.add(conf.getLogFilePath());
+    	configured.addAll(conf.getMergeFiles());
+    	// the partitions of a partitioned log are merged like several files
+    	List<String> filePaths = new ArrayList<String>();
+    	fileOffsets = new ArrayList<Long>();
+    	for(int i=0; i<configured.size(); i++){
+    		List<String> paths = Collections.singletonList(configured.get(i));
+    		if(PartitionManifest.isPartitionFile(configured.get(i))){
+    			try {
+    				paths = PartitionManifest.read(configured.get(i));
+    			} catch (IOException e) {
+    				VeniceHub.message("Can not read the partition manifest "+configured.get(i));
+    				paths = Collections.emptyList();
+    			}
+    		}
+    		for(String path : paths){
+    			filePaths.add(path);
+    			fileOffsets.add(conf.getFileOffset(i));
+    		}
+    	}
+    	
+    	boolean firstLineKnown = VeniceHub.getTimestampOf1stLine() != INVALID_TIMESTAMP;
+    	boolean delayKnown = VeniceHub.getReplayDelay() != 0;
+    	startDelay = INVALID_TIMESTAMP;
+    	sources = new ArrayList<Source>();
+    	heap = new PriorityQueue<Head>();
+    	lastTimestamp = INVALID_TIMESTAMP;
+    	fileCount = filePaths.size();
+    	position = 0;
+    	snapshots = null;
+    	snapshotTarget = INVALID_TIMESTAMP;
+    	pending = new ArrayDeque<SlotEvent>();
+    	flushed = false;
+    	store = conf.isInMemory() ? loadStore(filePaths) : null;
+    	long first = INVALID_TIMESTAMP;
+    	if(store != null){
+    		if(store.size() > 0) first = store.getTime(0);
+    	}
+    	else{
+    		for(int i=0; i<filePaths.size(); i++){
+    			Source source = prepareTTEBufferedReader(filePaths.get(i), fileOffsets.get(i), i);
+    			sources.add(source);
+    			long ts = source.reader.getFirstTimestampOfFile();
+    			if(ts != INVALID_TIMESTAMP && (first == INVALID_TIMESTAMP || ts + source.offset < first))
+    				first = ts + source.offset;
+    		}
+    	}
+    	// the readers know only their own files
+    	if(!firstLineKnown && first != INVALID_TIMESTAMP){
+    		VeniceHub.setTimestampOf1stLine(first);
+    		if(!delayKnown){
+    			startDelay = VeniceHub.getReplayClock().now() - first;
+    			VeniceHub.setReplayDelay(startDelay);
+    		}
+    	}
+    	if(conf.getSnapshotInterval() > 0){
+    		if(store != null) snapshots = indexStore(conf.getSnapshotInterval());
+    		else startIndexing(filePaths, conf.getSnapshotInterval());
+    	}
+    }
+    
+    /**
+     * Builds the {@link SnapshotIndex} from the events in memory.
+     * 
+     * @param interval time between the keyframes
+     * @return the index
+     */
+    private SnapshotIndex indexStore(long interval){
+    	long startTime = System.currentTimeMillis();
+    	SnapshotIndex index = new SnapshotIndex(interval);
+    	for(int i=0; i<store.size(); i++) index.add(store.get(i), 0);
+    	index.finish();
+    	VeniceHub.message(String.format("Indexed %d snapshots of %d slots in %d ms.",
+    			index.size(), index.getScopeCount(), System.currentTimeMillis() - startTime));
+    	return index;
+    }
+    
+    /**
+     * Builds the {@link SnapshotIndex} in a thread, by reading the files
+     * once. Until it is finished, seeking works without snapshots.
+     * 
+     * @param filePaths names of the files
+     * @param interval time between the keyframes
+     */
+    private void startIndexing(final List<String> filePaths, final long interval){
+    	final Configuration conf = Configuration.getInstance();
+    	Thread thread = new Thread(new Runnable(){
+			@Override
+			public void run() {
+				long startTime = System.currentTimeMillis();
+				final SnapshotIndex index = new SnapshotIndex(interval);
+				ScopeFilter filter = ScopeFilter.fromConfiguration();
+				try {
+					for(int i=0; i<filePaths.size(); i++){
+						final long offset = fileOffsets.get(i);
+						boolean complete = LogScanner.scan(filePaths.get(i), filter, new LogScanner.Handler(){
+							@Override
+							public boolean event(SlotEvent se) {
+								index.add(se, offset);
+								return active;
+							}
+						});
+						if(!complete) return; // stopped
+					}
+				} catch (IOException e) {
+					VeniceHub.message("Could not index snapshots ("+e.getMessage()+"), seeking without snapshots.");
+					return;
+				}
+				index.finish();
+				synchronized(DiskReader.this){
+					snapshots = index;
+				}
+				VeniceHub.message(String.format("Indexed %d snapshots of %d slots in %d ms.",
+						index.size(), index.getScopeCount(), System.currentTimeMillis() - startTime));
+			}
+    	}, "VH_Snapshots");
+    	thread.setDaemon(true);
+    	thread.start();
+    }
+    
+    /**
+     * Returns <code>true</code> if the state of all slots is sent after
+     * a seek, i.e. the {@link SnapshotIndex} is ready.
+     * @return <code>true</code> if snapshots are used
+     */
+    public synchronized boolean hasSnapshots(){
+    	return snapshots != null;
     }
     
     /**
-     * Starts the TTEBufferedReader and connects to the SynchronousQueue, which will transmit the data.
+     * Loads the files into an {@link EventStore}.
+     * 
+     * @param filePaths names of the files
+     * @return the store, or <code>null</code> if the files can not be loaded
+     * (or exceed the memory limit)
+     */
+    private EventStore loadStore(List<String> filePaths){
+    	Configuration conf = Configuration.getInstance();
+    	long limit = conf.getMemoryLimit();
+    	EventStore store = new EventStore(limit);
+    	ScopeFilter filter = ScopeFilter.fromConfiguration();
+    	long startTime = System.currentTimeMillis();
+    	try {
+    		for(int i=0; i<filePaths.size(); i++){
+    			if(!store.load(filePaths.get(i), fileOffsets.get(i), filter)){
+    				VeniceHub.message("Log files exceed the memory limit of "+limit+" bytes, replaying from disk.");
+    				return null;
+    			}
+    		}
+		} catch (IOException e) {
+			VeniceHub.message("Could not load log files into memory ("+e.getMessage()+"), replaying from disk.");
+			return null;
+		}
+    	store.finish();
+    	VeniceHub.message(String.format("Loaded %d events of %d slots into memory in %d ms, using about %.1f MB.",
+    			store.size(), store.getScopeCount(), System.currentTimeMillis() - startTime,
+    			store.getMemoryUsage() / (1024.0 * 1024.0)));
+    	return store;
+    }
+    
+    /**
+     * Starts a TTEBufferedReader and connects to the SynchronousQueue, which will transmit the data.
+     * 
+     * @param filePath name of the log file
+     * @param offset time offset of the file
+     * @param index index of the file, used to name the thread
+     * @return the source for the file
      */
-    private void prepareTTEBufferedReader(){
-    	tbfr = new TTEBufferedReader(filePath);
-    	Thread tbfrThread = new Thread(tbfr, "VH_TBR");
+    private Source prepareTTEBufferedReader(String filePath, long offset, int index){
+    	Source source = new Source();
+    	// for a manifest the format is given by the name of the rotated log
+    	if(BinaryLog.isBinaryLogFile(LogManifest.getLogPath(filePath)))
+    		source.reader = new BinaryTTEBufferedReader(filePath);
+    	else
+    		source.reader = new TTEBufferedReader(filePath);
+    	source.reader.setTimeOffset(offset);
+    	source.reader.setEndSignal(true);
+    	source.offset = offset;
+    	Thread tbfrThread = new Thread(source.reader, index == 0 ? "VH_TBR" : "VH_TBR_"+index);
     	tbfrThread.start();
-    	syncQ = tbfr.getSyncQ();
+    	source.syncQ = source.reader.getSyncQ();
+    	return source;
     }
     
 	@Override
@@ -83,13 +351,18 @@ public class DiskReader extends VeniceReader {
 	 * The main loop. Reads data until deactivated.
 	 */
 	public void run() {
-		SlotEvent slotEvent;
+		List<SlotEvent> frame;
+		preRoll();
     	while(active){
-    		if(TTEQueue.getInstance().size() < QUEUE_CAPACITY){
+    		if(!TTEQueue.getInstance().isFull()){
     			try {
-    				slotEvent = read(); // get new data (or wait until there is something)
-    				//logger.debug("read "+slotEvent);
-					if(slotEvent != null) TTEQueue.getInstance().put(slotEvent); // put new data into queue
+    				synchronized(this){ // so that a seek can not come in between
+    					frame = readFrame(); // get new data (or wait until there is something)
+    					if(!frame.isEmpty()){
+    						TTEQueue.getInstance().putFrame(frame); // put new data into queue
+    						flushed = false;
+    					}
+    				}
 				} catch (InterruptedException e) {
 					e.printStackTrace();
 				}
@@ -115,12 +388,65 @@ public class DiskReader extends VeniceReader {
 	}
     
     /**
-     * Stops the TTEBufferedReader (and waits until it is finished).
+     * Reads the events of the first <code>--preRoll</code> ms of the replay
+     * into the pending events, runs warm-up parses, and then anchors the
+     * replay clock again to the first line. So the replay starts with the
+     * events ready and the parser compiled, instead of being late for its
+     * first second.
+     * <p>
+     * Nothing is done, if the replay delay was not set by this reader, or
+     * was changed meanwhile (e.g. by a seek).
+     */
+    private synchronized void preRoll(){
+    	long preRoll = config.getPreRoll();
+    	long first = VeniceHub.getTimestampOf1stLine();
+    	if(preRoll <= 0 || startDelay == INVALID_TIMESTAMP || first == INVALID_TIMESTAMP) return;
+    	long start = System.currentTimeMillis();
+    	List<SlotEvent> events = new ArrayList<SlotEvent>();
+    	while(active && events.size() < config.getQueueCapacity() &&
+    			System.currentTimeMillis() - start < PRE_ROLL_TIMEOUT){
+    		SlotEvent slotEvent = read();
+    		if(slotEvent == null){
+    			if(atEnd) break;
+    			continue;
+    		}
+    		events.add(slotEvent);
+    		if(slotEvent.getTime() - first >= preRoll) break;
+    	}
+    	for(int i=events.size()-1; i>=0; i--) pending.addFirst(events.get(i));
+    	warmUp(events);
+    	if(paused || VeniceHub.getReplayDelay() != startDelay) return; // the replay was moved meanwhile
+    	startDelay = VeniceHub.getReplayClock().now() - first;
+    	VeniceHub.setReplayDelay(startDelay);
+    	logger.info("pre-rolled "+events.size()+" events in "+(System.currentTimeMillis() - start)+" ms");
+    }
+    
+    /**
+     * Converts the events to XIO and parses them again, so that the parsing
+     * is compiled before the replay starts.
+     * 
+     * @param events the events to parse
+     */
+    private void warmUp(List<SlotEvent> events){
+    	if(events.isEmpty()) return;
+    	XIOParser parser = VeniceHub.createXIOParser();
+    	try{
+    		for(int i=0; i<WARM_UP_PARSES; i++)
+    			parser.stringToEvent(parser.eventToString(events.get(i % events.size())));
+    	}catch(RuntimeException e){
+    		logger.debug("warm-up parses stopped: "+e);
+    	}
+    }
+    
+    /**
+     * Stops the TTEBufferedReaders (and waits until they are finished).
      */
     protected void cleanUp(){
-    	tbfr.stopThread();
-    	// wait until TTEBufferedReader finishes
-    	while(!tbfr.isFinished()) try { Thread.sleep(100); } catch (InterruptedException e) {}
+    	for(Source source : sources) source.reader.stopThread();
+    	// wait until the TTEBufferedReaders finish
+    	for(Source source : sources){
+    		while(!source.reader.isFinished()) try { Thread.sleep(100); } catch (InterruptedException e) {}
+    	}
     }
     
     /**
@@ -128,41 +454,197 @@ public class DiskReader extends VeniceReader {
      */
     public void reset(){
     	long ts1 = VeniceHub.getTimestampOf1stLine();
-    	if(ts1 != venice.lib.parser.XIOParser.INVALID_TIMESTAMP){
-    		VeniceHub.setReplayDelay(System.currentTimeMillis() - ts1);
-    		tbfr.seek(ts1); // set TTEBufferedReader to the first line
+    	if(ts1 != INVALID_TIMESTAMP){
+    		VeniceHub.setReplayDelay(VeniceHub.getReplayClock().now() - ts1);
+    		seek(ts1); // set the TTEBufferedReaders to the first line
     	}
-		else tbfr.seek(0);
+		else seek(0);
     }
         
     /**
-     * Reads a SlotEvent from TTEBufferedReader over SynchronousQueue.
+     * Reads the next SlotEvent (by timestamp) from the TTEBufferedReaders
+     * over their SynchronousQueues.
      * <p>
-     * Will wait, if SynchronousQueue is empty, but not forever, so that events
-     * like pausing, seeking or reseting will not be missed.
+     * An event can only be returned, if the next event of every file is
+     * known, or the file has ended. Will wait for a file, but not forever,
+     * so that events like pausing, seeking or reseting will not be missed.
+     * 
+     * @return the next event, or <code>null</code> if there is none yet
      */
-    protected SlotEvent read(){
+    protected synchronized SlotEvent read(){
+    	if(!pending.isEmpty()) return pending.poll();
+    	SlotEvent slotEvent = readNext();
+    	while(snapshotTarget != INVALID_TIMESTAMP){
+    		// collecting the state after a seek
+    		if(slotEvent == null){
+    			if(!atEnd) return null; // try again later
+    		}
+    		else if(slotEvent.getTime() < snapshotTarget){
+    			snapshotState.put(slotEvent.getScopeId(), slotEvent);
+    			slotEvent = readNext();
+    			continue;
+    		}
+    		sendSnapshot(slotEvent);
+    		return pending.poll();
+    	}
+    	return slotEvent;
+    }
+    
+    /**
+     * Reads the next events with the same timestamp, as a frame for the
+     * {@link TTEQueue}. The first event with another timestamp is kept
+     * for the next frame. A frame has at most <code>MAX_FRAME_SIZE</code>
+     * events, the rest follows in the next one.
+     * 
+     * @return the events, empty if there is none yet
+     */
+    protected synchronized List<SlotEvent> readFrame(){
+    	List<SlotEvent> frame = new ArrayList<SlotEvent>();
+    	SlotEvent first = read();
+    	if(first == null) return frame;
+    	frame.add(first);
+    	while(frame.size() < MAX_FRAME_SIZE){
+    		SlotEvent next = read();
+    		if(next == null) break;
+    		if(next.getTime() != first.getTime()){
+    			pending.addFirst(next); // read it again, unless there is a seek
+    			break;
+    		}
+    		frame.add(next);
+    	}
+    	return frame;
+    }
+    
+    /**
+     * Puts the collected state into the pending events, with the seeked
+     * timestamp, in the order of their original timestamps.
+     * 
+     * @param next the first event at or after the seeked time, or <code>null</code>
+     */
+    private void sendSnapshot(SlotEvent next){
+    	List<SlotEvent> state = new ArrayList<SlotEvent>(snapshotState.values());
+    	Collections.sort(state, new Comparator<SlotEvent>(){
+			@Override
+			public int compare(SlotEvent a, SlotEvent b) {
+				return Long.compare(a.getTime(), b.getTime());
+			}
+    	});
+    	for(SlotEvent se : state)
+    		pending.add(new SlotEvent(se.getValue(), se.getNamespace(), se.getLabel(), se.getType(), snapshotTarget));
+    	if(next != null) pending.add(next);
+    	logger.debug("sending the state of "+state.size()+" slots at "+snapshotTarget);
+    	snapshotTarget = INVALID_TIMESTAMP;
+    	snapshotState = null;
+    }
+    
+    /**
+     * Reads the next event from the files or from memory.
+     * 
+     * @return the next event, or <code>null</code> if there is none yet
+     * (or all events are read, then <code>atEnd</code> is set)
+     */
+    private SlotEvent readNext(){
+    	atEnd = false;
+    	if(store != null) return readFromStore();
+    	// take what is available without waiting
+    	for(int i=0; i<sources.size(); i++){
+    		if(!sources.get(i).hasHead) take(i, 0L);
+    	}
+    	for(int i=0; i<sources.size(); i++){
+    		Source source = sources.get(i);
+    		if(!source.hasHead && !source.ended){
+    			take(i, WAIT_FOR_FILE);
+    			if(!source.hasHead && !source.ended) return null; // try again later
+    		}
+    	}
+    	Head head = heap.poll();
+    	if(head == null){
+    		// all files have ended
+    		atEnd = true;
+    		if(lastTimestamp != INVALID_TIMESTAMP && lastTimestamp != VeniceHub.getTimestampOfLastLine())
+    			VeniceHub.setTimestampOfLastLine(lastTimestamp);
+    		return null;
+    	}
+    	head.source.hasHead = false;
+    	lastTimestamp = head.event.getTime();
+    	logger.debug("read from disk: "+head.event);
+    	return head.event;
+    }
+    
+    /**
+     * Reads the next event from the {@link EventStore}.
+     * 
+     * @return the next event, or <code>null</code> if all events are read
+     */
+    private SlotEvent readFromStore(){
+    	if(position < store.size()){
+    		lastTimestamp = store.getTime(position);
+    		return store.get(position++);
+    	}
+    	atEnd = true;
+    	if(lastTimestamp != INVALID_TIMESTAMP && lastTimestamp != VeniceHub.getTimestampOfLastLine())
+    		VeniceHub.setTimestampOfLastLine(lastTimestamp);
+    	if(snapshotTarget != INVALID_TIMESTAMP) return null; // the state is sent without waiting
+    	try { wait(10); } catch (InterruptedException e) {} // nothing to do until a seek
+    	return null;
+    }
+    
+    /**
+     * Takes the next event of a file from its SynchronousQueue into the heap.
+     * 
+     * @param index index of the file
+     * @param timeout time to wait for the event in ms
+     */
+    private void take(int index, long timeout){
+    	Source source = sources.get(index);
     	SlotEvent slotEvent = null;
     	try {
-    		slotEvent = syncQ.poll(500L, TimeUnit.MILLISECONDS);
+    		slotEvent = source.syncQ.poll(timeout, TimeUnit.MILLISECONDS);
 		} catch (InterruptedException e) {}
-    	logger.debug("read from disk: "+slotEvent);
-    	return slotEvent;
+    	if(slotEvent == null) return;
+    	if(slotEvent instanceof TTEBufferedReader.SeekSignal){
+    		// earlier seeks may be coalesced into the last one
+    		if(((TTEBufferedReader.SeekSignal) slotEvent).getNumber() == source.seekNumber) source.seeking = false;
+    		return;
+    	}
+    	if(source.seeking) return; // handed over before the seek
+    	if(slotEvent == TTEBufferedReader.END_OF_FILE){
+    		source.ended = true;
+    		return;
+    	}
+    	source.ended = false; // there can be events after the end, if a seek was done meanwhile
+    	if(source.offset != 0){
+    		// the event is still in the buffer of the reader, so it must not be changed
+    		slotEvent = new SlotEvent(slotEvent.getValue(), slotEvent.getNamespace(), slotEvent.getLabel(),
+    				slotEvent.getType(), slotEvent.getTime() + source.offset);
+    	}
+    	heap.add(new Head(slotEvent, source, index));
+    	source.hasHead = true;
     }
     
     /**
-     * Gets the timestamp of the first event in the buffer of the disk reader.
-     * If the buffer is empty, 0 is returned.
-     * @return timestamp of first event in buffer, or 0 if the buffer is empty
+     * Gets the timestamp of the first event in the buffers of the disk reader.
+     * If the buffers are empty, 0 is returned.
+     * @return timestamp of first event in buffers, or 0 if the buffers are empty
      */
     public long getFirstTimestamp(){
-    	return tbfr.getTTEBuffer().getFirstTimestamp();
+    	if(store != null) return store.size() > 0 ? store.getTime(0) : 0;
+    	long result = 0;
+    	boolean found = false;
+    	for(Source source : sources){
+    		if(source.reader.getTTEBuffer().size() == 0) continue;
+    		long ts = source.reader.getTTEBuffer().getFirstTimestamp() + source.offset;
+    		if(!found || ts < result) result = ts;
+    		found = true;
+    	}
+    	return result;
     }
     
     /**
      * Gets the timestamp of the item on the threshold in the buffer of the
      * disk reader. If the buffer has less items then the threshold, the
      * timestamp of the last event is returned instead.
+     * If several files are replayed, the smallest of these timestamps is returned.
      * <p>
      * Example:<br>
      * If the capacity of the buffer is 1000 and the threshold
@@ -173,48 +655,133 @@ public class DiskReader extends VeniceReader {
      * is smaller than the threshold, the timestamp of the last event
      */
     public long getThresholdTimestamp(){
-    	return tbfr.getThresholdTimestamp();
+    	if(store != null) return getLastTimestamp();
+    	long result = sources.get(0).reader.getThresholdTimestamp() + sources.get(0).offset;
+    	for(Source source : sources){
+    		result = Math.min(result, source.reader.getThresholdTimestamp() + source.offset);
+    	}
+    	return result;
     }
     
     /**
-     * Gets the timestamp of the last event in the buffer of the disk reader.
-     * If the buffer is empty, 0 is returned.
-     * @return timestamp of last event in buffer, or 0 if the buffer is empty
+     * Gets the timestamp of the last event in the buffers of the disk reader.
+     * If the buffers are empty, 0 is returned.
+     * @return timestamp of last event in buffers, or 0 if the buffers are empty
      */
     public long getLastTimestamp(){
-    	return tbfr.getTTEBuffer().getLastTimestamp();
+    	if(store != null) return store.size() > 0 ? store.getTime(store.size()-1) : 0;
+    	long result = 0;
+    	boolean found = false;
+    	for(Source source : sources){
+    		if(source.reader.getTTEBuffer().size() == 0) continue;
+    		long ts = source.reader.getTTEBuffer().getLastTimestamp() + source.offset;
+    		if(!found || ts > result) result = ts;
+    		found = true;
+    	}
+    	return result;
     }
     
     /**
-     * Gets the size of the buffer used by the disk reader.
-     * @return size of buffer
+     * Gets the size of the buffers used by the disk reader.
+     * @return size of buffers
      */
     public int getBufferSize(){
-    	return tbfr.getTTEBuffer().size();
+    	if(store != null) return store.size();
+    	int size = 0;
+    	for(Source source : sources) size += source.reader.getTTEBuffer().size();
+    	return size;
+    }
+    
+    /**
+     * Gets the memory used by the events in the buffers, or by the
+     * events in memory with <code>--inMemory</code>.
+     * @return size in bytes
+     */
+    public long getBufferMemory(){
+    	if(store != null) return store.getMemoryUsage();
+    	long memory = 0;
+    	for(Source source : sources) memory += source.reader.getBufferMemory();
+    	return memory;
     }
     
     /**
-     * Gets the maximum capacity of the buffer.
-     * @return capacity of the buffer
+     * Gets the maximum capacity of the buffers.
+     * @return capacity of the buffers
      */
     public int getCAPACITY(){
-    	return tbfr.getCAPACITY();
+    	if(store != null) return store.size();
+    	int capacity = 0;
+    	for(Source source : sources) capacity += source.reader.getCAPACITY();
+    	return capacity;
     }
     
     /**
-     * Gets the threshold of the buffer.
+     * Gets the threshold of the buffer (of one file).
      * @return threshold of the buffer
      */
     public int getTHRESHOLD(){
-    	return tbfr.getTHRESHOLD();
+    	if(store != null) return 0;
+    	return sources.get(0).reader.getTHRESHOLD();
     }
     
     /**
-     * Seeks to a specific timestamp in the file.
+     * Seeks to a specific timestamp in the files.
+     * Every TTEBufferedReader seeks in its own thread, in memory a binary
+     * search is used. With snapshots, the reading starts at the keyframe
+     * before the timestamp, and the state of all slots is read first.
+     * <p>
+     * The {@link TTEQueue} is flushed, but only once for several seeks in a
+     * row, as long as nothing was read in between. Events handed over by the
+     * readers before they have done the seek are dropped.
      * 
      * @param timestamp timestamp to be seeked
      */
-    public void seek(long timestamp){
-    	tbfr.seek(timestamp);
+    public synchronized void seek(long timestamp){
+    	lastTimestamp = INVALID_TIMESTAMP;
+    	if(!flushed){
+    		// only once for many seeks in a row, e.g. while dragging a slider
+    		TTEQueue.getInstance().reset();
+    		flushed = true;
+    	}
+    	pending.clear();
+    	snapshotTarget = INVALID_TIMESTAMP;
+    	snapshotState = null;
+    	long start = timestamp;
+    	if(snapshots != null){
+    		// start at the keyframe before and collect the state until the timestamp
+    		int k = snapshots.floor(timestamp);
+    		snapshotState = k >= 0 ? snapshots.getState(k) : new HashMap<Integer, SlotEvent>();
+    		snapshotTarget = timestamp;
+    		if(k >= 0) start = snapshots.getTime(k);
+    		else if(VeniceHub.getTimestampOf1stLine() != INVALID_TIMESTAMP)
+    			start = Math.min(timestamp, VeniceHub.getTimestampOf1stLine());
+    	}
+    	if(store != null){
+    		position = store.search(start);
+    		return;
+    	}
+    	heap.clear();
+    	for(Source source : sources){
+    		source.seekNumber = source.reader.seek(start - source.offset);
+    		source.hasHead = false;
+    		source.ended = false;
+    		source.seeking = true;
+    	}
+    }
+    
+    /**
+     * Returns the number of replayed files.
+     * @return number of files
+     */
+    public int getFileCount(){
+    	return fileCount;
+    }
+    
+    /**
+     * Returns <code>true</code> if the files are replayed from memory.
+     * @return <code>true</code> for in-memory replay
+     */
+    public boolean isInMemory(){
+    	return store != null;
     }
 }
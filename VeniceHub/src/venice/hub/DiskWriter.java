@@ -27,9 +27,23 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPOutputStream;
 
 import venice.hub.VeniceWriter;
+import venice.hub.utils.AsyncLogOutputStream;
+import venice.hub.utils.CountingOutputStream;
+import venice.hub.utils.LogManifest;
+import venice.hub.utils.ParallelGZIPOutputStream;
+import venice.hub.utils.PartitionManifest;
+import venice.hub.utils.TimeShiftBuffer;
+import venice.lib.ScopeDictionary;
 import venice.lib.parser.SlotEvent;
 
 /**
@@ -44,85 +58,384 @@ import venice.lib.parser.SlotEvent;
  * The data will be converted to XIO lines.<br>
  * A header will be written in the beginning.<br>
  * The data will be compressed with GZIP, if configured so in Configuration.
+ * With <code>--gzipThreads</code> the compression is done in parallel
+ * (see {@link ParallelGZIPOutputStream}).
+ * <p>
+ * With <code>--asyncWrite</code> compression and disk access are done by a
+ * separate I/O thread (see {@link AsyncLogOutputStream}).
+ * <p>
+ * With <code>--rotateSize</code> or <code>--rotateInterval</code> the log is
+ * written in segments. For example, logging to <code>log.xio.gz</code> writes
+ * <code>log_seg0001.xio.gz</code>, <code>log_seg0002.xio.gz</code>, ... and
+ * the {@link LogManifest} <code>log.xio.gz.manifest</code>. Every segment is a
+ * complete log file. A finished segment is closed in the background and then
+ * added to the manifest, together with the scopes of its events.
  * 
  * @see VeniceWriter
  */
 public class DiskWriter extends VeniceWriter{
 
-	private OutputStream stream;
-	private String logPath;
+	protected OutputStream stream;
+	protected String logPath;
 	private final String DEFAULT_HEADER = "Header";
 	private static String roottag = "venice";
 	
+	// for log rotation, no initializers here, because these fields
+	// are already set by initialize while the super constructor is running
+	private LogManifest manifest; // null, if the log is not rotated
+	private ExecutorService segmentCloser;
+	private CountingOutputStream segmentCounter;
+	private String segmentPath;
+	private int segmentNumber;
+	
+	private long segmentEvents;
+	private long segmentFirstTimestamp;
+	private BitSet segmentScopes; // by id in the ScopeDictionary
+	
+	// for sync points
+	private FileOutputStream fileStream; // null, if written asynchronously
+	private long lastSyncTime;
+	
+	private volatile TimeShiftBuffer timeShiftBuffer; // null, if there is no time-shifted replay
+	
+	/**
+	 * Creates a writer for the log file of the configuration.
+	 */
+	public DiskWriter(){
+		super();
+	}
+	
+	/**
+	 * Creates a writer for the given log file instead of the one of the
+	 * configuration, e.g. for a partition of a partitioned recording.
+	 * 
+	 * @param logPath name of the log file
+	 */
+	public DiskWriter(String logPath){
+		super(false);
+		this.logPath = logPath;
+		initialize();
+		initialized = true;
+	}
+	
 	protected void initialize(){
-    	// get name+path for log file from configuration properties
-        logPath = config.getLogFilePath();
+    	// get name+path for log file from configuration properties,
+		// unless it is given to the constructor
+        if(logPath == null) logPath = config.getLogFilePath();
         
         // check if this file already exists:
-        if(new File(logPath).isFile()){
-        	int p0 = logPath.indexOf(".");
-        	String prefix, suffix, newLogPath;
-        	if(p0 > -1){
-        		prefix = logPath.substring(0, p0);
-        		suffix = logPath.substring(p0);
+        logPath = findFreePath(logPath);
+        
+        lastSyncTime = System.currentTimeMillis();
+        try {
+        	if(config.isRotating()){
+        		manifest = new LogManifest(logPath + LogManifest.FILE_EXTENSION);
+        		manifest.write();
+        		VeniceHub.message("Logging to segments of: " + manifest);
+        		segmentCloser = Executors.newSingleThreadExecutor(new ThreadFactory(){
+        			@Override
+        			public Thread newThread(Runnable r){
+        				return new Thread(r, "VH_SegmentCloser");
+        			}
+        		});
+        		openSegment();
         	}
         	else{
-        		prefix = logPath;
-        		suffix = "";
+        		VeniceHub.message("Logging to: " + logPath);
+        		stream = openStream(logPath);
+        		writeHeader();
         	}
-        	
-        	int counter=1;
-        	do{
-        		newLogPath = prefix + String.format("_%03d", counter++) + suffix;
-        	}while(new File(newLogPath).isFile()); // repeat, if new name already exists
-
-        	VeniceHub.message(logPath+" already exists.\nChanging log file name to "+newLogPath);
-        	logPath = newLogPath;
-        }
-        
-        try {
-        	VeniceHub.message("Logging to: " + logPath);
-        	
-        	// create a FileOutputStream and if gzip is used,
-        	// put a GZIPOutputStream before
-            stream = ! config.writeRaw() ?
-            		new GZIPOutputStream(new FileOutputStream(logPath)) :
-            		new FileOutputStream(logPath);
-            
-            // writing default header lines (TODO: needs to be replaced by a real header!)
-            for(int n=0;n<config.getHeaderLines();n++){
-            	stream.write(DEFAULT_HEADER.getBytes());
-            	stream.write("\n".getBytes());
-            }
-            stream.write(("<"+roottag+">\n").getBytes());
         } catch (IOException ex) {
         	ex.printStackTrace();
         }
 	}
 	
+	/**
+	 * Returns the name for a new log file: the given name, or if that is
+	 * already taken, the name with a counter.<br>
+	 * For example: If <code>log.xio.gz</code> already exists, it will be changed to
+	 * <code>log_001.xio.gz</code>. If that exists too, it will be changed to
+	 * <code>log_002.xio.gz</code>, and so on.
+	 * 
+	 * @param logPath name of the log file
+	 * @return a name, that is not taken
+	 */
+	static String findFreePath(String logPath){
+		if(!isTaken(logPath)) return logPath;
+		int p0 = logPath.indexOf(".");
+		String prefix, suffix, newLogPath;
+		if(p0 > -1){
+			prefix = logPath.substring(0, p0);
+			suffix = logPath.substring(p0);
+		}
+		else{
+			prefix = logPath;
+			suffix = "";
+		}
+		
+		int counter=1;
+		do{
+			newLogPath = prefix + String.format("_%03d", counter++) + suffix;
+		}while(isTaken(newLogPath)); // repeat, if new name already exists
+		
+		VeniceHub.message(logPath+" already exists.\nChanging log file name to "+newLogPath);
+		return newLogPath;
+	}
+	
+	/**
+	 * Checks if a log file (or the manifest of a rotated or partitioned log) with this name exists.
+	 */
+	private static boolean isTaken(String path){
+		return new File(path).isFile() ||
+			   new File(path + LogManifest.FILE_EXTENSION).isFile() ||
+			   new File(path + PartitionManifest.FILE_EXTENSION).isFile();
+	}
+	
+	/**
+	 * Returns the name of a segment of the rotated log.
+	 * 
+	 * @param number the number of the segment, starting with 1
+	 * @return <code>log_seg0001.xio.gz</code> for segment 1 of <code>log.xio.gz</code>
+	 */
+	protected String getSegmentPath(int number){
+		return LogManifest.getSegmentPath(logPath, number);
+	}
+	
+	/**
+	 * Opens the next segment of the rotated log and writes its header.
+	 */
+	private void openSegment() throws IOException{
+		segmentPath = getSegmentPath(++segmentNumber);
+		VeniceHub.message("Logging to segment: " + segmentPath);
+		segmentCounter = new CountingOutputStream(openStream(segmentPath));
+		stream = segmentCounter;
+		segmentEvents = 0;
+		segmentFirstTimestamp = NO_TIMESTAMP;
+		segmentScopes = new BitSet();
+		writeHeader();
+	}
+	
+	/**
+	 * Hands the current segment to the background thread, which closes it
+	 * and adds it to the manifest. The footer must already be written.
+	 */
+	private void finishSegment(){
+		final OutputStream segmentStream = stream;
+		List<String> scopes = new ArrayList<String>();
+		for(int id = segmentScopes.nextSetBit(0); id >= 0; id = segmentScopes.nextSetBit(id + 1))
+			scopes.add(ScopeDictionary.get(id).getScope());
+		final LogManifest.Segment segment = new LogManifest.Segment(
+				new File(segmentPath).getName(), segmentFirstTimestamp, lastTimestamp,
+				segmentEvents, segmentCounter.getCount(), scopes);
+		segmentCloser.submit(new Runnable(){
+			@Override
+			public void run(){
+				try {
+					closeStream(segmentStream);
+					manifest.add(segment);
+					manifest.write();
+				} catch (IOException e) {
+					VeniceHub.message("Failed to finish log segment " + segment.getName());
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Checks, if the event has to be written to a new segment.
+	 */
+	private boolean isRotationDue(SlotEvent se){
+		if(segmentEvents == 0) return false;
+		if(config.getRotateSize() > 0 && segmentCounter.getCount() >= config.getRotateSize()) return true;
+		return config.getRotateInterval() > 0 &&
+			   se.getTime() - segmentFirstTimestamp >= config.getRotateInterval();
+	}
+	
+	/**
+	 * Opens the log file. The stream will be compressed with GZIP, if
+	 * configured so in Configuration.
+	 * 
+	 * @param path name of the log file
+	 * @return the stream for writing to the log file
+	 * @throws IOException if the file can not be opened
+	 */
+	protected OutputStream openStream(String path) throws IOException{
+		if(config.isAsyncWrite()){
+			fileStream = null;
+			AsyncLogOutputStream async = new AsyncLogOutputStream(path, ! config.writeRaw(),
+					config.getWriteBufferSize(), config.getWriteBuffers(),
+					config.getFlushBytes(), config.getFlushInterval(),
+					config.getGzipLevel(), config.getGzipThreads());
+			async.setFsync(config.isFsync());
+			return async;
+		}
+		// create a FileOutputStream and if gzip is used,
+		// put a GZIPOutputStream before
+		fileStream = new FileOutputStream(path);
+		return ! config.writeRaw() ?
+				ParallelGZIPOutputStream.open(fileStream, config.getGzipLevel(),
+						config.getGzipThreads(), config.getSyncInterval() > 0) :
+				fileStream;
+	}
+	
+	/**
+	 * Writes the beginning of the log file.
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	protected void writeHeader() throws IOException{
+		// writing default header lines (TODO: needs to be replaced by a real header!)
+		for(int n=0;n<config.getHeaderLines();n++){
+			stream.write(DEFAULT_HEADER.getBytes());
+			stream.write("\n".getBytes());
+		}
+		stream.write(("<"+roottag+">\n").getBytes());
+	}
+	
+	/**
+	 * Writes a single event to the log file.
+	 * 
+	 * @param se the event to be written
+	 * @throws IOException if writing fails
+	 */
+	protected void writeEvent(SlotEvent se) throws IOException{
+		String in = parser.eventToString(se);
+		stream.write((in+"\n").getBytes());
+	}
+	
+	/**
+	 * Writes events, that are held back by the format (e.g. a pending
+	 * block), to the stream. Called before a sync point.
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	protected void flushEvents() throws IOException{
+		// XIO lines are written immediately
+	}
+	
+	/**
+	 * Writes the end of the log file.
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	protected void writeFooter() throws IOException{
+		stream.write(("</"+roottag+">\n").getBytes());
+	}
+	
 	protected long write(SlotEvent se){
 		if(se==null) return NO_TIMESTAMP;
 		long writingTime = NO_TIMESTAMP;
-		String in = parser.eventToString(se);
 		try {
-			stream.write((in+"\n").getBytes());
+			if(manifest != null && isRotationDue(se)){
+				writeFooter();
+				finishSegment();
+				openSegment();
+			}
+			writeEvent(se);
+			if(timeShiftBuffer != null) timeShiftBuffer.add(se);
+			if(manifest != null){
+				if(segmentEvents == 0) segmentFirstTimestamp = se.getTime();
+				segmentEvents++;
+				int scopeId = se.getScopeId();
+				if(scopeId >= 0) segmentScopes.set(scopeId);
+			}
 			writingTime = System.currentTimeMillis();
 			lastTimestamp = se.getTime();
 			VeniceHub.setLastPushedTimestamp(lastTimestamp);
+			syncIfDue(writingTime);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return writingTime;
 	}
 	
+	@Override
+	protected void idle(){
+		try {
+			syncIfDue(System.currentTimeMillis());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Makes a sync point, if the sync interval has passed: all data is
+	 * written to the log file as complete gzip members (and synchronized
+	 * with the storage device, if <code>--fsync</code> is set). If the
+	 * process dies, the log file can be repaired up to the last sync point
+	 * by {@link venice.hub.utils.LogRecovery}.
+	 * 
+	 * @param now the current time in ms
+	 * @throws IOException if writing fails
+	 */
+	protected void syncIfDue(long now) throws IOException{
+		if(stream == null || config.getSyncInterval() <= 0 ||
+		   now - lastSyncTime < config.getSyncInterval())
+			return;
+		lastSyncTime = now;
+		flushEvents();
+		stream.flush(); // for asynchronous writing fsync is done by the I/O thread
+		if(config.isFsync() && fileStream != null)
+			fileStream.getFD().sync();
+	}
+	
+	/**
+	 * Sets the buffer that gets every written event, for a time-shifted
+	 * replay of the recording.
+	 * 
+	 * @param buffer the buffer, or <code>null</code> for none
+	 */
+	public void setTimeShiftBuffer(TimeShiftBuffer buffer){
+		timeShiftBuffer = buffer;
+	}
+	
+	/**
+	 * Returns the name of the log file, which may differ from the one in
+	 * the configuration, if that was taken. For a rotated log, it is the
+	 * name of the manifest, which lists the finished segments.
+	 * 
+	 * @return name of the log file
+	 */
+	public String getLogPath(){
+		return manifest != null ? logPath + LogManifest.FILE_EXTENSION : logPath;
+	}
+	
+	/**
+	 * Returns the stream used for asynchronous writing.
+	 * 
+	 * @return the asynchronous stream, or <code>null</code> if the log file
+	 * is written synchronously
+	 */
+	public AsyncLogOutputStream getAsyncStream(){
+		OutputStream s = stream instanceof CountingOutputStream ?
+				((CountingOutputStream) stream).getTarget() : stream;
+		return s instanceof AsyncLogOutputStream ? (AsyncLogOutputStream) s : null;
+	}
+	
+	/**
+	 * Flushes and closes a log file stream.
+	 */
+	private static void closeStream(OutputStream s) throws IOException{
+		s.flush();
+		if(s instanceof GZIPOutputStream) ((GZIPOutputStream) s).finish();
+		s.close();
+	}
+	
     protected void cleanUp(){
 		try {
-			stream.write(("</"+roottag+">\n").getBytes());
-			stream.flush();
-			if(! config.writeRaw()) ((GZIPOutputStream) stream).finish();
-			stream.close();
+			writeFooter();
+			if(manifest != null){
+				finishSegment();
+				// wait until all segments are closed and listed
+				segmentCloser.shutdown();
+				segmentCloser.awaitTermination(1, TimeUnit.MINUTES);
+			}
+			else closeStream(stream);
 		} catch (IOException e) {
 			e.printStackTrace();
+		} catch (InterruptedException e) {
+			VeniceHub.message("Interrupted while closing log segments");
 		}
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub;
+
+import java.io.File;
+import java.util.Random;
+
+import venice.hub.utils.Configuration;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOParser;
+
+/**
+ * Measures the throughput of the {@link DiskWriter} for different durability
+ * levels (sync points, fsync and asynchronous writing).
+ * <p>
+ * The same synthetic events (floats of 20 slots) are written with every
+ * level, as fast as possible. The loss window is the maximum time of data,
+ * that can be lost, if the process dies.
+ * <p>
+ * Every level uses the same compressor: <code>--gzipThreads</code> is at
+ * least 2, so the member based {@link venice.hub.utils.ParallelGZIPOutputStream}
+ * is used with and without sync points. Only writing is timed, the events
+ * are created before.
+ * <p>
+ * Usage:<br>
+ * <code>java venice.hub.DurabilityBenchmark [events] [directory] [gzipThreads]</code>
+ */
+public class DurabilityBenchmark {
+	
+	private final static String[][] LEVELS = {
+		// name, arguments
+		{"no sync points", ""},
+		{"sync points every 1000 ms", "--syncInterval 1000"},
+		{"sync points every 100 ms", "--syncInterval 100"},
+		{"sync points every 1000 ms, fsync", "--syncInterval 1000 --fsync"},
+		{"sync points every 100 ms, fsync", "--syncInterval 100 --fsync"},
+		{"sync points every 10 ms, fsync", "--syncInterval 10 --fsync"},
+		{"async, flush every 100 ms, fsync", "--asyncWrite --flushInterval 100 --syncInterval 100 --fsync"},
+	};
+	
+	public static void main(String[] args){
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		File dir = new File(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+		File file = new File(dir, "durability_benchmark.xio.gz");
+		int threads = Math.max(2, args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors());
+		
+		// the same events for every level, and their size, not timed
+		SlotEvent[] data = new SlotEvent[events];
+		XIOParser parser = VeniceHub.createXIOParser();
+		Random random = new Random(1);
+		long bytes = 0;
+		for(int i=0; i<events; i++){
+			data[i] = new SlotEvent(random.nextFloat(), "Benchmark", "slot"+(i%20), Float.class, 1400000000000L + i);
+			bytes += parser.eventToString(data[i]).length() + 1;
+		}
+		
+		run(file, LEVELS[0][1], threads, data); // warm-up
+		System.out.println(events+" events, "+threads+" gzip threads");
+		System.out.println(String.format("%-36s %10s %10s %12s", "level", "events/s", "MB/s", "file bytes"));
+		for(String[] level : LEVELS){
+			double seconds = run(file, level[1], threads, data) / 1e9;
+			System.out.println(String.format("%-36s %10.0f %10.1f %12d",
+					level[0], events / seconds, bytes / seconds / 1e6, file.length()));
+		}
+		file.delete();
+		System.exit(0);
+	}
+	
+	/**
+	 * Writes the events with a DiskWriter configured by the arguments.
+	 * 
+	 * @return the time of writing, in ns
+	 */
+	private static long run(File file, String args, int threads, SlotEvent[] events){
+		file.delete();
+		String[] levelArgs = args.isEmpty() ? new String[0] : args.split(" ");
+		String[] configArgs = new String[levelArgs.length + 5];
+		configArgs[0] = "-f";
+		configArgs[1] = file.getPath();
+		configArgs[2] = "--silent";
+		configArgs[3] = "--gzipThreads";
+		configArgs[4] = String.valueOf(threads);
+		System.arraycopy(levelArgs, 0, configArgs, 5, levelArgs.length);
+		Configuration.getInstance().parseArguments(configArgs);
+		
+		long start = System.nanoTime();
+		DiskWriter writer = new DiskWriter();
+		for(SlotEvent se : events)
+			writer.write(se);
+		writer.cleanUp();
+		return System.nanoTime() - start;
+	}
+}
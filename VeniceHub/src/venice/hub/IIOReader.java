@@ -40,7 +40,6 @@ import venice.lib.parser.SlotEvent;
  */
 public class IIOReader extends VeniceReader implements AbstractSlotListener{
     private TTEQueue queue = TTEQueue.getInstance();
-    private final int QUEUE_CAPACITY = Configuration.getInstance().getQueueCapacity();
 	
 	protected void initialize(){
 		IIONamespaceBuilder.setMulticastTTL(config.getMulticastTTL());
@@ -64,7 +63,7 @@ public class IIOReader extends VeniceReader implements AbstractSlotListener{
 	@Override
 	public void newData(Object data, String namespace, String label, Class<?> type) {
 
-		if(TTEQueue.getInstance().size() >= QUEUE_CAPACITY) return; // if TTEQueue is full, ignore data
+		if(TTEQueue.getInstance().isFull()) return; // if TTEQueue is full, ignore data
     	
         if(data == null){
         	// actually never happened so far, but to be sure
@@ -24,6 +24,7 @@
 package venice.hub;
 
 import venice.hub.utils.Configuration;
+import venice.hub.utils.TTEFrame;
 import venice.lib.networkIIO.IIONamespaceBuilder;
 import venice.lib.networkIIO.SlotFlags;
 import venice.lib.parser.SlotEvent;
@@ -67,13 +68,11 @@ public class IIOWriter extends VeniceWriter{
     		return NO_TIMESTAMP;
     	}
     	
-    	String slotLabel = slotEvent.getLabel();
-    	String namespaceLabel = slotEvent.getNamespace();
     	Object value = slotEvent.getValue();
     	long writingTime = System.currentTimeMillis();
     	Object data = value;
 
-    	boolean success = IIONamespaceBuilder.write(slotLabel, data, namespaceLabel);
+    	boolean success = IIONamespaceBuilder.write(slotEvent.getScopeId(), data);
     	
     	if(!success) return NO_TIMESTAMP;
     	
@@ -82,4 +81,24 @@ public class IIOWriter extends VeniceWriter{
     	
 		return writingTime;
     }
+    
+    /**
+     * Pushes all events of the frame to their outslots, then stores the
+     * timestamp of the frame once.
+     */
+    @Override
+    protected long writeFrame(TTEFrame frame){
+    	long writingTime = System.currentTimeMillis();
+    	boolean success = false;
+    	for(SlotEvent e : frame.getEvents()){
+    		if(IIONamespaceBuilder.write(e.getScopeId(), e.getValue())) success = true;
+    	}
+    	
+    	if(!success) return NO_TIMESTAMP;
+    	
+    	lastTimestamp = frame.getTime();
+    	VeniceHub.setLastPushedTimestamp(lastTimestamp);
+    	
+    	return writingTime;
+    }
 }
@@ -0,0 +1,438 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import venice.hub.utils.BinaryLog;
+import venice.hub.utils.BinaryLogReader;
+import venice.hub.utils.Configuration;
+import venice.hub.utils.CountingInputStream;
+import venice.hub.utils.LogConverter;
+import venice.hub.utils.LogManifest;
+import venice.hub.utils.ScopeFilter;
+import venice.hub.utils.SegmentedInputStream;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOMaps;
+import venice.lib.parser.XIOParser;
+
+import static venice.lib.parser.XIOParser.INVALID_TIMESTAMP;
+
+/**
+ * Transcodes a log file as fast as possible, without a replay clock.
+ * <p>
+ * A part of the log can be cut out by time (relative to the first event, like
+ * <code>--offset</code>), and slots can be selected by their scope with
+ * <code>--include</code> and <code>--exclude</code> (see {@link ScopeFilter}).
+ * Lines of other slots are not parsed, and segments of a rotated log without
+ * any selected slot are not read at all. The output is written by a {@link DiskWriter} (or a
+ * {@link BinaryDiskWriter} for binary log files), so all options of the
+ * DiskWriter can be used, e.g. <code>--gzipLevel</code>,
+ * <code>--gzipThreads</code>, <code>--writeRaw</code>,
+ * <code>--deltaEncoding</code> or <code>--rotateSize</code>. The input can
+ * be a XIO or binary log file or the manifest of a rotated log.
+ * <p>
+ * The log is read in batches by the calling thread. Parsing, filtering and
+ * (for XIO output) converting the events to XIO lines is done on a pool of
+ * worker threads, and the batches are written in the original order.
+ * <p>
+ * Usage:<br>
+ * <code>java venice.hub.LogTranscoder [--from ms] [--to ms] [--include pattern]
+ * [--exclude pattern] [--threads n] [DiskWriter options] input output</code><br>
+ * Example (minutes 10 to 20 of the car slots, as binary log file):<br>
+ * <code>java venice.hub.LogTranscoder --from 600000 --to 1200000 --include "OpenDS/Car/*" log.xio.gz cut.vbin.gz</code>
+ */
+public class LogTranscoder {
+	
+	/** number of lines (or events) handed to a worker thread at once */
+	public final static int BATCH_SIZE = 4096;
+	
+	// XIO lines are kept as bytes (see LogConverter)
+	private final static Charset XIO_CHARSET = Charset.forName("ISO-8859-1");
+	
+	private final String inPath;
+	private final int threads;
+	private final ArrayList<String> includes = new ArrayList<String>();
+	private final ArrayList<String> excludes = new ArrayList<String>();
+	private long from = 0;
+	private long to = Long.MAX_VALUE;
+	private boolean xioOut;
+	
+	// absolute time range, known after the first event was read
+	private volatile long start, end;
+	private boolean firstTimestampKnown;
+	
+	// statistics
+	private long eventsRead;
+	private long eventsWritten;
+	private long bytesRead;
+	private long duration;
+	
+	/**
+	 * A part of the log, that is processed by a worker thread.
+	 * Lines of a XIO log are replaced by the parsed events.
+	 */
+	private static class Batch{
+		String[] lines = new String[BATCH_SIZE];
+		SlotEvent[] events = new SlotEvent[BATCH_SIZE];
+		byte[][] data; // XIO lines for the output
+		int size = 0;
+		int valid = 0; // number of events before filtering
+	}
+	
+	/**
+	 * Parser and filter cache of a single worker thread.
+	 */
+	private class Stage{
+		XIOParser parser = VeniceHub.createXIOParser();
+		ScopeFilter filter = new ScopeFilter(includes, excludes);
+		
+		void process(Batch batch){
+			int n = 0;
+			if(xioOut) batch.data = new byte[batch.size][];
+			for(int i=0; i<batch.size; i++){
+				SlotEvent se = batch.events[i];
+				if(se == null){
+					String line = batch.lines[i];
+					if(line.indexOf("timestamp=") < 0) continue; // header or root tag
+					String scope = XIOParser.findSensorName(line);
+					if(scope != null && ! filter.accepts(scope)){
+						batch.valid++; // counted without parsing
+						continue;
+					}
+					se = parser.stringToEvent(line);
+					if(se == null || se.getTime() == INVALID_TIMESTAMP) continue;
+					batch.valid++;
+					if(se.getTime() < start || se.getTime() >= end) continue;
+				}
+				if(! filter.accepts(se.getScopeId())) continue;
+				batch.events[n] = se;
+				if(xioOut) batch.data[n] = (parser.eventToString(se)+"\n").getBytes(XIO_CHARSET);
+				n++;
+			}
+			batch.lines = null;
+			batch.size = n;
+		}
+	}
+	
+	private final ThreadLocal<Stage> stages = new ThreadLocal<Stage>(){
+		@Override
+		protected Stage initialValue(){
+			return new Stage();
+		}
+	};
+	
+	/**
+	 * Writes XIO lines, that were already converted by a worker thread.
+	 */
+	private static class TranscodeWriter extends DiskWriter{
+		private byte[] line;
+		
+		@Override
+		protected void writeEvent(SlotEvent se) throws IOException{
+			stream.write(line);
+		}
+	}
+	
+	/**
+	 * Creates a transcoder for a log file. The scopes given by
+	 * <code>--include</code> and <code>--exclude</code> are selected.
+	 * 
+	 * @param inPath name of the log file or manifest to be read
+	 * @param threads number of worker threads
+	 */
+	public LogTranscoder(String inPath, int threads){
+		if(threads < 1) throw new IllegalArgumentException("threads must be positive");
+		this.inPath = inPath;
+		this.threads = threads;
+		includes.addAll(Configuration.getInstance().getIncludedScopes());
+		excludes.addAll(Configuration.getInstance().getExcludedScopes());
+	}
+	
+	/**
+	 * Sets the part of the log to be written.
+	 * 
+	 * @param from start of the part in ms after the first event (inclusive)
+	 * @param to end of the part in ms after the first event (exclusive)
+	 */
+	public void setTimeRange(long from, long to){
+		this.from = from;
+		this.to = to;
+	}
+	
+	/**
+	 * Writes only slots, whose scope matches one of the included patterns.
+	 * 
+	 * @param pattern pattern for the scope, e.g. <code>OpenDS/Car/*</code> (see {@link ScopeFilter})
+	 */
+	public void include(String pattern){
+		ScopeFilter.compile(pattern); // fails early for an invalid pattern
+		includes.add(pattern);
+	}
+	
+	/**
+	 * Does not write slots, whose scope matches the pattern.
+	 * 
+	 * @param pattern pattern for the scope (see {@link ScopeFilter})
+	 */
+	public void exclude(String pattern){
+		ScopeFilter.compile(pattern);
+		excludes.add(pattern);
+	}
+	
+	/**
+	 * Transcodes the log. The output file and its format are taken from
+	 * the {@link Configuration} like for the {@link DiskWriter}.
+	 * 
+	 * @return the number of written events
+	 * @throws IOException if reading or writing fails
+	 */
+	public long run() throws IOException{
+		long startTime = System.nanoTime();
+		eventsRead = 0;
+		eventsWritten = 0;
+		start = Long.MIN_VALUE;
+		end = Long.MAX_VALUE;
+		firstTimestampKnown = false;
+		boolean binaryIn = BinaryLog.isBinaryLogFile(LogManifest.getLogPath(inPath));
+		xioOut = ! BinaryLog.isBinaryLogFile(Configuration.getInstance().getLogFilePath());
+		TranscodeWriter xioWriter = xioOut ? new TranscodeWriter() : null;
+		DiskWriter writer = xioOut ? xioWriter : new BinaryDiskWriter();
+		
+		ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory(){
+			private int counter = 0;
+			@Override
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r, "VH_Transcoder_" + (counter++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		ArrayDeque<Future<Batch>> pending = new ArrayDeque<Future<Batch>>();
+		
+		CountingInputStream in = new CountingInputStream(LogManifest.isManifestFile(inPath) ?
+				new SegmentedInputStream(LogManifest.read(inPath), new ScopeFilter(includes, excludes)) :
+				LogConverter.openInput(inPath));
+		try {
+			BinaryLogReader binaryReader = null;
+			BufferedReader lineReader = null;
+			ScopeFilter filter = new ScopeFilter(includes, excludes);
+			if(binaryIn){
+				binaryReader = new BinaryLogReader(in);
+				binaryReader.readHeader();
+			}
+			else lineReader = new BufferedReader(new InputStreamReader(in, XIO_CHARSET), 1 << 16);
+			
+			boolean more = true;
+			while(more){
+				Batch batch = new Batch();
+				more = binaryIn ? readEvents(binaryReader, filter, batch) : readLines(lineReader, batch);
+				if(batch.size > 0) pending.add(pool.submit(process(batch)));
+				while(pending.size() >= 2 * threads || (! more && ! pending.isEmpty())){
+					batch = pending.poll().get();
+					eventsRead += batch.valid;
+					for(int i=0; i<batch.size; i++){
+						if(xioOut) xioWriter.line = batch.data[i];
+						writer.write(batch.events[i]);
+					}
+					eventsWritten += batch.size;
+				}
+			}
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while transcoding");
+		} catch(ExecutionException e){
+			throw new IOException("transcoding failed", e.getCause());
+		} finally {
+			pool.shutdownNow();
+			writer.cleanUp();
+			in.close();
+			bytesRead = in.getCount();
+			duration = System.nanoTime() - startTime;
+		}
+		return eventsWritten;
+	}
+	
+	private Callable<Batch> process(final Batch batch){
+		return new Callable<Batch>(){
+			@Override
+			public Batch call(){
+				stages.get().process(batch);
+				return batch;
+			}
+		};
+	}
+	
+	/**
+	 * Sets the absolute time range by the timestamp of the first event.
+	 */
+	private void setFirstTimestamp(long ts){
+		firstTimestampKnown = true;
+		start = from > 0 ? ts + from : Long.MIN_VALUE;
+		end = to < Long.MAX_VALUE ? ts + to : Long.MAX_VALUE;
+	}
+	
+	/**
+	 * Reads the next lines of a XIO log into the batch.
+	 * 
+	 * @return <code>false</code>, if the end of the log is reached
+	 */
+	private boolean readLines(BufferedReader reader, Batch batch) throws IOException{
+		while(batch.size < BATCH_SIZE){
+			String line = reader.readLine();
+			if(line == null) return false;
+			if(! firstTimestampKnown && (from > 0 || to < Long.MAX_VALUE)){
+				// the time range is needed before the first event is parsed
+				long ts = VeniceHub.getPreferredXIOParser().preparseTS(line);
+				if(ts != INVALID_TIMESTAMP) setFirstTimestamp(ts);
+			}
+			batch.lines[batch.size++] = line;
+		}
+		return true;
+	}
+	
+	/**
+	 * Reads the next events of a binary log into the batch. Events outside
+	 * of the time range or of other slots are not decoded.
+	 * 
+	 * @return <code>false</code>, if the end of the log is reached
+	 */
+	private boolean readEvents(BinaryLogReader reader, ScopeFilter filter, Batch batch) throws IOException{
+		while(batch.size < BATCH_SIZE){
+			long ts;
+			try {
+				ts = reader.next();
+			} catch (EOFException e) {
+				return false;
+			}
+			if(! firstTimestampKnown) setFirstTimestamp(ts);
+			batch.valid++;
+			if(ts < start || ts >= end) continue;
+			if(! filter.accepts(reader.getScopeId())) continue;
+			batch.events[batch.size++] = reader.parseEvent();
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the number of events read by the last run (before filtering).
+	 * 
+	 * @return number of events
+	 */
+	public long getEventsRead(){
+		return eventsRead;
+	}
+	
+	/**
+	 * Returns the number of events written by the last run.
+	 * 
+	 * @return number of events
+	 */
+	public long getEventsWritten(){
+		return eventsWritten;
+	}
+	
+	/**
+	 * Returns the number of (uncompressed) bytes read by the last run.
+	 * 
+	 * @return number of bytes
+	 */
+	public long getBytesRead(){
+		return bytesRead;
+	}
+	
+	/**
+	 * Returns the duration of the last run.
+	 * 
+	 * @return duration in ms
+	 */
+	public long getDuration(){
+		return duration / 1000000;
+	}
+	
+	/**
+	 * Returns the throughput of the last run.
+	 * 
+	 * @return (uncompressed) input data in MB per second
+	 */
+	public double getThroughput(){
+		return duration > 0 ? bytesRead / 1e6 / (duration / 1e9) : 0;
+	}
+	
+	public static void main(String[] args){
+		if(args.length < 2){
+			System.err.println("Usage: LogTranscoder [--from ms] [--to ms] [--include pattern] [--exclude pattern] [--threads n] [DiskWriter options] input output");
+			System.exit(1);
+		}
+		String inPath = args[args.length-2];
+		String outPath = args[args.length-1];
+		long from = 0, to = Long.MAX_VALUE;
+		int threads = Runtime.getRuntime().availableProcessors();
+		ArrayList<String> configArgs = new ArrayList<String>();
+		try {
+			for(int a=0; a<args.length-2; a++){
+				boolean hasValue = a+1 < args.length-2;
+				if(args[a].equals("--from") && hasValue) from = Long.parseLong(args[++a]);
+				else if(args[a].equals("--to") && hasValue) to = Long.parseLong(args[++a]);
+				else if(args[a].equals("--threads") && hasValue) threads = Integer.parseInt(args[++a]);
+				else configArgs.add(args[a]);
+			}
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid number: "+e.getMessage());
+			System.exit(1);
+		}
+		configArgs.add("-f");
+		configArgs.add(outPath);
+		Configuration config = Configuration.getInstance();
+		if(! config.parseArguments(configArgs.toArray(new String[configArgs.size()]))) System.exit(1);
+		if(config.getXioCodesFilename() != null) XIOMaps.loadXIOCodes(config.getXioCodesFilename());
+		
+		LogTranscoder transcoder = new LogTranscoder(inPath, threads);
+		transcoder.setTimeRange(from, to);
+		try {
+			transcoder.run();
+			System.out.println(String.format("Transcoded %d of %d events, %.1f MB in %d ms (%.1f MB/s)",
+					transcoder.getEventsWritten(), transcoder.getEventsRead(),
+					transcoder.getBytesRead() / 1e6, transcoder.getDuration(), transcoder.getThroughput()));
+		} catch (IOException e) {
+			System.err.println("Transcoding failed: "+e.getMessage());
+			System.exit(1);
+		}
+		System.exit(0);
+	}
+}
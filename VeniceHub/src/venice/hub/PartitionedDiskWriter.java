@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import venice.hub.utils.BinaryLog;
+import venice.hub.utils.PartitionManifest;
+import venice.lib.parser.SlotEvent;
+
+/**
+ * Writes the events to several log files in parallel, sharded by namespace
+ * (partitioned recording, <code>--partitions</code>).
+ * <p>
+ * Every partition is written by a {@link DiskWriter} in a thread of its
+ * own, so formatting and compression run on several cores. The namespaces
+ * are given to the partitions in turn, in the order they appear, so all
+ * events of a namespace are in the same partition and in their order.
+ * <p>
+ * The partitions of <code>log.xio.gz</code> are <code>log_part01.xio.gz</code>,
+ * <code>log_part02.xio.gz</code>, ... and they are listed in the
+ * {@link PartitionManifest} <code>log.xio.gz.partitions</code>, which can be
+ * replayed by the {@link DiskReader} like a single log file.
+ */
+public class PartitionedDiskWriter extends VeniceWriter {
+	
+	static {
+		// setup logger
+		venice.lib.Configuration.setupLogger();
+		logger = Logger.getLogger(PartitionedDiskWriter.class);
+	}
+	
+	private final static int QUEUE_CAPACITY = 10000; // events waiting for a partition
+	private final static long POLL_TIMEOUT = 100L; // ms, then the partition is idle
+	
+	// no initializers, set by initialize while the super constructor is running
+	private String manifestPath;
+	private List<Partition> partitions;
+	private HashMap<String, Partition> partitionOfNamespace;
+	private int nextPartition; // for the next new namespace
+	private long startTime;
+	
+	/**
+	 * A partition, with its writer, its queue and its thread.
+	 */
+	private class Partition implements Runnable {
+		final DiskWriter writer;
+		final BlockingQueue<SlotEvent> events = new ArrayBlockingQueue<SlotEvent>(QUEUE_CAPACITY);
+		final List<String> namespaces = new ArrayList<String>();
+		volatile boolean active = true;
+		volatile boolean finished = false;
+		volatile long written;
+		volatile long busyNanos; // time spent writing
+		
+		Partition(String path){
+			writer = BinaryLog.isBinaryLogFile(path) ? new BinaryDiskWriter(path) : new DiskWriter(path);
+		}
+		
+		@Override
+		public void run(){
+			while(active || !events.isEmpty()){
+				SlotEvent se = null;
+				try {
+					se = events.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {}
+				if(se == null){
+					writer.idle();
+					continue;
+				}
+				long t0 = System.nanoTime();
+				writer.write(se);
+				busyNanos += System.nanoTime() - t0;
+				written++;
+			}
+			writer.cleanUp();
+			finished = true;
+		}
+	}
+	
+	@Override
+	protected void initialize(){
+		String logPath = DiskWriter.findFreePath(config.getLogFilePath());
+		manifestPath = logPath + PartitionManifest.FILE_EXTENSION;
+		partitions = new ArrayList<Partition>();
+		partitionOfNamespace = new HashMap<String, Partition>();
+		nextPartition = 0;
+		List<String> paths = new ArrayList<String>();
+		for(int i=1; i<=config.getPartitions(); i++){
+			Partition p = new Partition(PartitionManifest.getPartitionPath(logPath, i));
+			partitions.add(p);
+			paths.add(p.writer.getLogPath());
+		}
+		try {
+			PartitionManifest.write(manifestPath, paths, null);
+		} catch (IOException e) {
+			VeniceHub.message("Can not write the partition manifest "+manifestPath);
+			e.printStackTrace();
+		}
+		for(int i=0; i<partitions.size(); i++){
+			Thread thread = new Thread(partitions.get(i), String.format("VH_DiskWriter_%02d", i + 1));
+			thread.start();
+		}
+		startTime = System.currentTimeMillis();
+		VeniceHub.message("Logging to "+partitions.size()+" partitions: "+manifestPath);
+	}
+	
+	/**
+	 * Hands the event over to the partition of its namespace. Waits, if the
+	 * partition has too many events waiting.
+	 */
+	@Override
+	protected long write(SlotEvent se){
+		if(se == null) return NO_TIMESTAMP;
+		String namespace = se.getNamespace() != null ? se.getNamespace() : "";
+		Partition p = partitionOfNamespace.get(namespace);
+		if(p == null){
+			p = partitions.get(nextPartition);
+			nextPartition = (nextPartition + 1) % partitions.size();
+			partitionOfNamespace.put(namespace, p);
+			synchronized(p.namespaces){
+				p.namespaces.add(namespace);
+			}
+		}
+		try {
+			p.events.put(se);
+		} catch (InterruptedException e) {
+			return NO_TIMESTAMP;
+		}
+		lastTimestamp = se.getTime();
+		VeniceHub.setLastPushedTimestamp(lastTimestamp);
+		return System.currentTimeMillis();
+	}
+	
+	/**
+	 * Returns the name of the partition manifest.
+	 * 
+	 * @return name of the manifest
+	 */
+	public String getManifestPath(){
+		return manifestPath;
+	}
+	
+	/**
+	 * Returns the number of partitions.
+	 * 
+	 * @return number of partitions
+	 */
+	public int getPartitionCount(){
+		return partitions.size();
+	}
+	
+	/**
+	 * Returns the number of events written to a partition.
+	 * 
+	 * @param index index of the partition, starting with 0
+	 * @return number of events
+	 */
+	public long getWrittenEvents(int index){
+		return partitions.get(index).written;
+	}
+	
+	/**
+	 * Returns the number of events waiting for a partition.
+	 * 
+	 * @param index index of the partition, starting with 0
+	 * @return number of events
+	 */
+	public int getQueueDepth(int index){
+		return partitions.get(index).events.size();
+	}
+	
+	/**
+	 * Shows the throughput of every partition: the events per second since
+	 * the start, and per second of writing (the capacity of the partition).
+	 */
+	public void showStats(){
+		double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+		VeniceHub.message("Partitioned DiskWriter ("+manifestPath+"):");
+		for(int i=0; i<partitions.size(); i++){
+			Partition p = partitions.get(i);
+			double busy = p.busyNanos / 1e9;
+			String namespaces;
+			synchronized(p.namespaces){
+				namespaces = p.namespaces.toString();
+			}
+			VeniceHub.message(String.format("  %2d: %d events, %.0f events/s, %.0f events/s while writing, queue %d, %s",
+					i + 1, p.written, p.written / seconds, busy > 0 ? p.written / busy : 0.0, p.events.size(), namespaces));
+		}
+	}
+	
+	/**
+	 * Writes the remaining events of every partition, closes the files and
+	 * adds the namespaces to the manifest.
+	 */
+	@Override
+	protected void cleanUp(){
+		for(Partition p : partitions) p.active = false;
+		List<String> paths = new ArrayList<String>();
+		List<List<String>> namespaces = new ArrayList<List<String>>();
+		for(Partition p : partitions){
+			while(!p.finished) try { Thread.sleep(10); } catch (InterruptedException e) {}
+			paths.add(p.writer.getLogPath());
+			namespaces.add(p.namespaces);
+		}
+		try {
+			PartitionManifest.write(manifestPath, paths, namespaces);
+		} catch (IOException e) {
+			VeniceHub.message("Can not write the partition manifest "+manifestPath);
+			e.printStackTrace();
+		}
+	}
+}
@@ -23,13 +23,22 @@
  */
 package venice.hub;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.zip.Adler32;
 
 import org.apache.log4j.Logger;
@@ -38,12 +47,34 @@ import org.instantreality.InstantIO.Vec2f;
 import org.instantreality.InstantIO.Vec3f;
 
 import venice.hub.utils.TTEQueue;
+import venice.hub.utils.VPFrame;
 import venice.lib.AbstractSlot;
 import venice.lib.parser.SlotEvent;
 import venice.lib.parser.XIOMaps;
 
 /**
  * Reads data from a TCP port.
+ * <p>
+ * By default the first client is accepted, and the reader finishes when it
+ * disconnects. With <code>--vpMultiClient</code> a non-blocking server
+ * accepts any number of clients, which may connect and disconnect at any
+ * time; the events of all clients are pushed to the same queue. A client
+ * uses the sensor file given with <code>-v</code>, or binds its own with
+ * control lines before (or between) its data lines:
+ * <p>
+ * <code>
+ * #sensors face.xml<br>
+ * #namespace Left<br>
+ * </code>
+ * <p>
+ * A relative sensor file is looked up in the directory of the
+ * <code>-v</code> file. The namespace is put in front of the namespaces
+ * of the sensor file, so two clients with the same sensor file can be
+ * told apart.
+ * <p>
+ * Besides text lines, the reader accepts the binary frames of the
+ * VenicePort protocol version 2 (see {@link VPFrame}), which are
+ * recognized by their first byte.
  * 
  * @author Oliver Eickmeyer
  */
@@ -58,8 +89,20 @@ public class PortReader extends VeniceReader{
 	public final static int NO_ERROR = 0;
 	public final static int ERROR_FORMAT = 1;
 	public final static int ERROR_CHECKSUM = 2;
+	private final static int END_OF_INPUT = -1;
+	public final static String CONTROL_PREFIX = "#"; // control lines of the clients
+	private final static int INPUT_BUFFER_SIZE = 8192; // bytes, grows for long lines and frames
+	private final static int MAX_MESSAGE_LENGTH = VPFrame.MAX_SIZE; // bytes, of a line or frame
+	private final static long SELECT_TIMEOUT = 100L; // ms, then check if stopped
 	private Socket client;
+	private ServerSocketChannel server; // for many clients
+	private Selector selector;
+	private volatile int clientCount;
 	ArrayList<AbstractSlot> slotArray;
+	int[] scopeIds; // scope ids of the slots, in the same order as slotArray
+	private ArrayList<SlotEvent> frame = new ArrayList<SlotEvent>(); // events of the current line
+	private long frameTime; // common timestamp of the events of the current line
+	private long senderTime; // timestamp of the sender of the current binary frame
 	
 	protected void initialize(){
 		
@@ -72,12 +115,9 @@ public class PortReader extends VeniceReader{
 		/* read sensor file,
 		 * so that the line-parser knows how the line is build up
 		 */
-		if(config.getVPFile() == null)
-			slotArray = null;
-		else
-			slotArray = venice.lib.parser.SensorFileReader.parse(new File(config.getVPFile()));
+		slotArray = readSensorFile(config.getVPFile(), null);
 		
-		if(slotArray == null){
+		if(slotArray == null && !config.isVPMultiClient()){
 			VeniceHub.message("Error: Missing sensor file for VenicePort protocol.");
 			active = false;
 		}
@@ -87,8 +127,42 @@ public class PortReader extends VeniceReader{
 		 */
 		checkForUnsupportedTypes(slotArray);
 		
+		// look up the scopes only once, the events will carry the ids
+		scopeIds = getScopeIds(slotArray);
+		
 		// start the TCP server
-		startTCPServer(config.getVPPort());
+		if(config.isVPMultiClient()) startMultiClientServer(config.getVPPort());
+		else startTCPServer(config.getVPPort());
+	}
+	
+	/**
+	 * Reads a sensor file.
+	 * 
+	 * @param path name of the sensor file, may be <code>null</code>
+	 * @param namespace put in front of the namespaces of the slots, or <code>null</code>
+	 * @return the slots, or <code>null</code> if there is no sensor file or it can't be read
+	 */
+	private static ArrayList<AbstractSlot> readSensorFile(String path, String namespace){
+		if(path == null) return null;
+		ArrayList<AbstractSlot> slots = venice.lib.parser.SensorFileReader.parse(new File(path));
+		if(slots == null || namespace == null || namespace.isEmpty()) return slots;
+		ArrayList<AbstractSlot> bound = new ArrayList<AbstractSlot>();
+		for(AbstractSlot as : slots){
+			String ns = as.getNamespace() == null || as.getNamespace().isEmpty() ?
+					namespace : namespace + "/" + as.getNamespace();
+			bound.add(new AbstractSlot(ns, as.getLabel(), as.getType()));
+		}
+		return bound;
+	}
+	
+	/**
+	 * Returns the scope ids of the slots, in the same order.
+	 */
+	private static int[] getScopeIds(ArrayList<AbstractSlot> slots){
+		if(slots == null) return null;
+		int[] ids = new int[slots.size()];
+		for(int i=0; i<ids.length; i++) ids[i] = slots.get(i).getScopeId();
+		return ids;
 	}
 	
 	/**
@@ -139,42 +213,83 @@ public class PortReader extends VeniceReader{
 		VeniceHub.message("Connected to "+client.toString());
 	}
 	
+	/**
+	 * Starts the non-blocking server for many clients. The clients are
+	 * accepted by <code>run</code>.
+	 */
+	private void startMultiClientServer(int port){
+		try {
+			selector = Selector.open();
+			server = ServerSocketChannel.open();
+			server.bind(new InetSocketAddress(port));
+			server.configureBlocking(false);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+		} catch (IOException e) {
+			e.printStackTrace();
+			VeniceHub.message("ERROR: Can't start TCP Server.");
+			active = false;
+			return;
+		}
+		VeniceHub.message("Waiting for connections on port "+getLocalPort()+"...");
+	}
+	
+	/**
+	 * Returns the port of the server for many clients.
+	 * 
+	 * @return the port, or -1 if there is no such server
+	 */
+	int getLocalPort(){
+		return server != null ? server.socket().getLocalPort() : -1;
+	}
+	
+	/**
+	 * Returns the number of connected clients of the server for many clients.
+	 * 
+	 * @return number of clients
+	 */
+	public int getClientCount(){
+		return clientCount;
+	}
+	
 	/**
      * Keeps the thread alive, until deactivated.
      */
     @Override
     public void run(){
-    	// create buffered reader for data from client
-		BufferedReader input=null;
+    	if(server != null){
+    		serveClients();
+    		VeniceHub.message("PortReader finished");
+    		finished = true;
+    		return;
+    	}
+    	
+    	// create buffered input stream for data from client
+		DataInputStream input=null;
 		try {
-			input = new BufferedReader(new InputStreamReader(client.getInputStream()));
+			input = new DataInputStream(new BufferedInputStream(client.getInputStream()));
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		if(input==null){
-			VeniceHub.message("ERROR: Can't create buffered reader for client input.");
+			VeniceHub.message("ERROR: Can't create input stream for client input.");
 			active = false;
 		}
 		
         while(this.active){
-        	// read data from client
-    		String line=null;
+        	// read a line or frame from client, parse it and push the content to queue
+    		int result = END_OF_INPUT;
 			try {
-				line = input.readLine();
+				result = readAndPush(input);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
-			if(line != null){
-				// parse the line and push the content to queue
-				int result = parseLineAndPush(line);
-				if(result != NO_ERROR){
-					active = false;
-				}
-			}
-			else{
+			if(result == END_OF_INPUT){
 				VeniceHub.message("No more input from port. Closing connection.");
 				active = false; // no line -> end connection
 			}
+			else if(result != NO_ERROR){
+				active = false;
+			}
             /*try {
             	synchronized(this){
             		wait(100L);
@@ -195,12 +310,292 @@ public class PortReader extends VeniceReader{
         finished = true;
     }
     
+    /**
+     * Reads a text line or a binary frame of the single client, parses it
+     * and pushes the content to the queue.
+     * 
+     * @return <code>NO_ERROR</code>, an error code or <code>END_OF_INPUT</code>
+     */
+    private int readAndPush(DataInputStream input) throws IOException{
+    	input.mark(1);
+    	int first = input.read();
+    	if(first < 0) return END_OF_INPUT;
+    	if(first != VPFrame.MAGIC[0]){
+    		input.reset();
+    		String line = readLine(input);
+    		return line != null ? parseLineAndPush(line, slotArray, scopeIds) : END_OF_INPUT;
+    	}
+    	byte[] header = new byte[VPFrame.HEADER_SIZE];
+    	header[0] = (byte) first;
+    	input.readFully(header, 1, header.length - 1);
+    	int length = VPFrame.getLength(header, 0);
+    	if(length < 0){
+    		VeniceHub.message("Error: Invalid header of a binary frame.");
+    		return ERROR_FORMAT;
+    	}
+    	byte[] payload = new byte[length];
+    	input.readFully(payload);
+    	return parseFrameAndPush(payload, 0, length, VPFrame.getChecksum(header, 0), slotArray, scopeIds);
+    }
+    
+    /**
+     * Reads a line, like <code>BufferedReader.readLine</code>.
+     * 
+     * @return the line without line break, or <code>null</code> at the end of the input
+     */
+    private static String readLine(DataInputStream input) throws IOException{
+    	ByteArrayOutputStream line = new ByteArrayOutputStream();
+    	int b;
+    	while((b = input.read()) >= 0 && b != '\n') line.write(b);
+    	if(b < 0 && line.size() == 0) return null;
+    	byte[] bytes = line.toByteArray();
+    	int length = bytes.length > 0 && bytes[bytes.length-1] == '\r' ? bytes.length - 1 : bytes.length;
+    	return new String(bytes, 0, length);
+    }
+    
+    /**
+     * Accepts clients and reads their lines and frames, until deactivated. A client,
+     * that disconnects, is removed, the other clients are not affected.
+     */
+    private void serveClients(){
+    	while(active){
+    		try {
+    			selector.select(SELECT_TIMEOUT);
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    			break;
+    		}
+    		Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+    		while(it.hasNext()){
+    			SelectionKey key = it.next();
+    			it.remove();
+    			if(!key.isValid()) continue;
+    			if(key.isAcceptable()) accept();
+    			else if(key.isReadable()){
+    				Client c = (Client) key.attachment();
+    				boolean open = false;
+    				try {
+    					open = c.read();
+    				} catch (IOException e) {
+    					logger.debug("can't read from "+c+": "+e.getMessage());
+    				}
+    				if(!open) disconnect(key);
+    			}
+    		}
+    		synchronized(this){
+    			while(paused && active){
+    				try {
+    					// check eventually if this thread was commanded to stop
+    					wait(VeniceHub.CHECK_IF_STOPPED_WHILE_PAUSED_INTERVAL);
+    				} catch (InterruptedException e) {}
+    			}
+    		}
+    	}
+    	for(SelectionKey key : selector.keys()){
+    		try {
+    			key.channel().close();
+    		} catch (IOException e) {
+    			logger.error("can't close "+key.channel());
+    		}
+    	}
+    	try {
+    		selector.close();
+    	} catch (IOException e) {
+    		logger.error("can't close the selector");
+    	}
+    	clientCount = 0;
+    }
+    
+    /**
+     * Accepts a new client.
+     */
+    private void accept(){
+    	try {
+    		SocketChannel channel = server.accept();
+    		if(channel == null) return;
+    		channel.configureBlocking(false);
+    		Client c = new Client(channel);
+    		channel.register(selector, SelectionKey.OP_READ, c);
+    		clientCount++;
+    		VeniceHub.message("Connected to "+c+" ("+clientCount+" clients)");
+    	} catch (IOException e) {
+    		e.printStackTrace();
+    	}
+    }
+    
+    /**
+     * Removes a client, that has disconnected.
+     */
+    private void disconnect(SelectionKey key){
+    	Client c = (Client) key.attachment();
+    	key.cancel();
+    	try {
+    		c.channel.close();
+    	} catch (IOException e) {
+    		logger.error("can't close "+c);
+    	}
+    	clientCount--;
+    	String latency = c.frames > 0 ? ", mean latency of the frames "+(c.latency / c.frames)+" ms" : "";
+    	VeniceHub.message("Disconnected from "+c+" after "+c.messages+" lines and frames, "+c.errors+" with errors"+latency+" ("+clientCount+" clients)");
+    }
+    
+    /**
+     * A client of the server for many clients, with its sensor binding and
+     * the input, that is not a complete line yet.
+     */
+    private class Client {
+    	final SocketChannel channel;
+    	final String name;
+    	ByteBuffer input = ByteBuffer.allocate(INPUT_BUFFER_SIZE);
+    	String sensorFile = config.getVPFile();
+    	String namespace = null;
+    	ArrayList<AbstractSlot> slots = slotArray;
+    	int[] ids = scopeIds;
+    	long messages;
+    	long errors;
+    	long frames; // binary frames without errors
+    	long latency; // sum of the delays of these frames, ms
+    	
+    	Client(SocketChannel channel) throws IOException{
+    		this.channel = channel;
+    		this.name = String.valueOf(channel.getRemoteAddress());
+    	}
+    	
+    	/**
+    	 * Reads the available input and handles the complete lines and
+    	 * frames.
+    	 * 
+    	 * @return <code>false</code> if the client has disconnected
+    	 */
+    	boolean read() throws IOException{
+    		if(!input.hasRemaining()){
+    			if(input.capacity() >= MAX_MESSAGE_LENGTH){
+    				VeniceHub.message("Line or frame of "+this+" is too long.");
+    				return false;
+    			}
+    			ByteBuffer bigger = ByteBuffer.allocate(input.capacity() * 2);
+    			input.flip();
+    			bigger.put(input);
+    			input = bigger;
+    		}
+    		if(channel.read(input) < 0) return false;
+    		byte[] b = input.array();
+    		int start = 0; // of the current message
+    		int end = input.position();
+    		while(start < end){
+    			if(b[start] == VPFrame.MAGIC[0]){
+    				// a binary frame
+    				if(end - start < VPFrame.HEADER_SIZE) break;
+    				int length = VPFrame.getLength(b, start);
+    				if(length < 0){
+    					VeniceHub.message("Invalid header of a binary frame of "+this+".");
+    					return false;
+    				}
+    				if(end - start < VPFrame.HEADER_SIZE + length) break;
+    				handleFrame(b, start + VPFrame.HEADER_SIZE, length, VPFrame.getChecksum(b, start));
+    				start += VPFrame.HEADER_SIZE + length;
+    			}
+    			else{
+    				// a text line
+    				int i = start;
+    				while(i < end && b[i] != '\n') i++;
+    				if(i == end) break;
+    				int lineEnd = i;
+    				if(lineEnd > start && b[lineEnd-1] == '\r') lineEnd--;
+    				handleLine(new String(b, start, lineEnd - start));
+    				start = i + 1;
+    			}
+    		}
+    		int rest = end - start;
+    		System.arraycopy(b, start, b, 0, rest);
+    		input.position(rest);
+    		return true;
+    	}
+    	
+    	/**
+    	 * Handles a control line or parses a data line and pushes its content.
+    	 */
+    	void handleLine(String line){
+    		if(line.isEmpty()) return;
+    		if(line.startsWith(CONTROL_PREFIX)){
+    			String[] tokens = line.substring(CONTROL_PREFIX.length()).trim().split("\\s+", 2);
+    			String value = tokens.length > 1 ? tokens[1].trim() : null;
+    			if(tokens[0].equals("sensors") && value != null) bind(value, namespace);
+    			else if(tokens[0].equals("namespace")) bind(sensorFile, value);
+    			else VeniceHub.message("Unknown control line of "+this+": "+line);
+    			return;
+    		}
+    		if(isBound()) if(parseLineAndPush(line, slots, ids) != NO_ERROR) errors++;
+    	}
+    	
+    	/**
+    	 * Parses a binary frame and pushes its content.
+    	 */
+    	void handleFrame(byte[] b, int off, int length, int checksum){
+    		if(!isBound()) return;
+    		if(parseFrameAndPush(b, off, length, checksum, slots, ids) != NO_ERROR) errors++;
+    		else{
+    			frames++;
+    			latency += frameTime - senderTime;
+    		}
+    	}
+    	
+    	/**
+    	 * Counts a message and checks, if the client has a sensor file.
+    	 */
+    	boolean isBound(){
+    		messages++;
+    		if(slots == null){
+    			if(errors++ == 0) VeniceHub.message("No sensor file for "+this+", send #sensors <file> first.");
+    			return false;
+    		}
+    		return true;
+    	}
+    	
+    	/**
+    	 * Binds the client to a sensor file and namespace. The binding stays
+    	 * as it is, if the sensor file can't be read.
+    	 */
+    	void bind(String file, String ns){
+    		String path = file;
+    		if(path != null && !new File(path).isAbsolute() && config.getVPFile() != null){
+    			File dir = new File(config.getVPFile()).getAbsoluteFile().getParentFile();
+    			path = new File(dir, path).getPath();
+    		}
+    		ArrayList<AbstractSlot> bound = readSensorFile(path, ns);
+    		if(bound == null){
+    			VeniceHub.message("Can't read the sensor file "+file+" for "+this);
+    			return;
+    		}
+    		checkForUnsupportedTypes(bound);
+    		sensorFile = path;
+    		namespace = ns;
+    		slots = bound;
+    		ids = getScopeIds(bound);
+    		VeniceHub.message(this+" bound to "+file+(ns != null ? " in namespace "+ns : ""));
+    	}
+    	
+    	@Override
+    	public String toString(){
+    		return name;
+    	}
+    }
+    
 	/**
 	 * Parses the line and pushes the content to the queue.
+	 * <p>
+	 * The events of the line get the same timestamp and are pushed as one
+	 * frame, after the whole line is parsed. Nothing is pushed for a line
+	 * with an error.
 	 * 
 	 * @param line the line to be parsed
+	 * @param slotArray the slots of the line, in order
+	 * @param scopeIds the scope ids of the slots
 	 */
-	private int parseLineAndPush(String line){
+	private int parseLineAndPush(String line, ArrayList<AbstractSlot> slotArray, int[] scopeIds){
+		frame.clear();
+		frameTime = System.currentTimeMillis();
+		
 		// split the string between the parenthesis by comma
 		String[] tokens = line.split(", ");
 		
@@ -215,7 +610,12 @@ public class PortReader extends VeniceReader{
 		
 		// getting in-checksum:
 		// checksum has always to be the first last value in the line
-		ck_in = Long.parseLong(tokens[m++]);
+		try{
+			ck_in = Long.parseLong(tokens[m++]);
+		}catch(NumberFormatException e){
+			printError(e, tokens, 0, Long.class);
+			return ERROR_FORMAT;
+		}
 		
 		// Checksum
 		ckBuilder = new Adler32();
@@ -233,19 +633,19 @@ public class PortReader extends VeniceReader{
 			type = slotArray.get(n).getType();
 			try{
 				if(type==Integer.class){
-					write(n, new Integer(tokens[m++]));
+					write(scopeIds[n], new Integer(tokens[m++]));
 				}
 				else if(type==Long.class){
-					write(n, new Long(tokens[m++]));
+					write(scopeIds[n], new Long(tokens[m++]));
 				}
 				else if(type==Float.class){
-					write(n, new Float(tokens[m++]));
+					write(scopeIds[n], new Float(tokens[m++]));
 				}
 				else if(type==String.class){
-					write(n, tokens[m++]);
+					write(scopeIds[n], tokens[m++]);
 				}
 				else if(type==Boolean.class){
-					write(n, new Boolean(tokens[m++]));
+					write(scopeIds[n], new Boolean(tokens[m++]));
 				}
 				else if(type==String[].class){
 					numOfFields = Integer.parseInt(tokens[m++]); // first value has to indicate the number of fields
@@ -253,19 +653,19 @@ public class PortReader extends VeniceReader{
 					for(int f=0; f<numOfFields; f++){
 						str[f] = tokens[m++];
 					}
-					write(n, str);
+					write(scopeIds[n], str);
 				}
 				else if(type==Vec2f.class){
-					write(n, new Vec2f( Float.parseFloat(tokens[m++]),
+					write(scopeIds[n], new Vec2f( Float.parseFloat(tokens[m++]),
 							            Float.parseFloat(tokens[m++])));
 				}
 				else if(type==Vec3f.class){
-					write(n, new Vec3f( Float.parseFloat(tokens[m++]),
+					write(scopeIds[n], new Vec3f( Float.parseFloat(tokens[m++]),
 							            Float.parseFloat(tokens[m++]),
 							            Float.parseFloat(tokens[m++])));
 				}
 				else if(type==Rotation.class){
-					write(n, new Rotation( Float.parseFloat(tokens[m++]),
+					write(scopeIds[n], new Rotation( Float.parseFloat(tokens[m++]),
 							               Float.parseFloat(tokens[m++]),
 							               Float.parseFloat(tokens[m++]),
 							               Float.parseFloat(tokens[m++])));
@@ -277,7 +677,7 @@ public class PortReader extends VeniceReader{
 						mfvec2f[f] = new Vec2f( Float.parseFloat(tokens[m++]),
 								                Float.parseFloat(tokens[m++]));
 					}
-					write(n, mfvec2f);
+					write(scopeIds[n], mfvec2f);
 				}
 				else if(type==Vec3f[].class){
 					numOfFields = Integer.parseInt(tokens[m++]); // first value has to indicate the number of fields
@@ -287,7 +687,7 @@ public class PortReader extends VeniceReader{
 								                Float.parseFloat(tokens[m++]),
 								                Float.parseFloat(tokens[m++]));
 					}
-					write(n, mfvec3f);
+					write(scopeIds[n], mfvec3f);
 				}
 				else if(type==Rotation[].class){
 					numOfFields = Integer.parseInt(tokens[m++]); // first value has to indicate the number of fields
@@ -298,29 +698,136 @@ public class PortReader extends VeniceReader{
 								                 Float.parseFloat(tokens[m++]),
 								                 Float.parseFloat(tokens[m++]));
 					}
-					write(n, mfrot);
+					write(scopeIds[n], mfrot);
 				}
 			}catch(NumberFormatException | ArrayIndexOutOfBoundsException e){
 				printError(e, tokens, m-1, type);
 				return ERROR_FORMAT;
 			}
 		}
+		try {
+			TTEQueue.getInstance().putFrame(frame);
+		} catch (InterruptedException e) {
+			logger.error("Can't push the frame of "+frame.size()+" events at "+frameTime);
+		}
 		return NO_ERROR;	
 	}
 	
 	/**
-	 * Writes object to the slot of the given index.
-	 * @param i index of the slot
-	 * @param value the value to be send
+	 * Parses a binary frame and pushes the content to the queue, like
+	 * <code>parseLineAndPush</code>.
+	 * 
+	 * @param b the bytes of the frame
+	 * @param off index of the payload
+	 * @param length length of the payload
+	 * @param checksum the CRC32C of the payload, from the header
+	 * @param slotArray the slots of the frame, in order
+	 * @param scopeIds the scope ids of the slots
 	 */
-	private void write(int i, Object value){
-		AbstractSlot as = slotArray.get(i);
-		SlotEvent e = new SlotEvent(value, as.getNamespace(), as.getLabel(), as.getType(), System.currentTimeMillis());
+	private int parseFrameAndPush(byte[] b, int off, int length, int checksum, ArrayList<AbstractSlot> slotArray, int[] scopeIds){
+		frame.clear();
+		frameTime = System.currentTimeMillis();
+		
+		if(VPFrame.crc32c(b, off, length) != checksum){
+			System.err.println("WARNING: Checksum does not match for a binary frame of "+length+" bytes");
+			return ERROR_CHECKSUM;
+		}
+		ByteBuffer payload = ByteBuffer.wrap(b, off, length);
+		senderTime = payload.getLong();
+		int n = 0; // index of the slot
+		Class<?> type = null;
+		try{
+			for(n=0; n<slotArray.size(); n++){
+				type = slotArray.get(n).getType();
+				if(type==Integer.class){
+					write(scopeIds[n], payload.getInt());
+				}
+				else if(type==Long.class){
+					write(scopeIds[n], payload.getLong());
+				}
+				else if(type==Float.class){
+					write(scopeIds[n], payload.getFloat());
+				}
+				else if(type==String.class){
+					write(scopeIds[n], VPFrame.getString(payload));
+				}
+				else if(type==Boolean.class){
+					write(scopeIds[n], payload.get() != 0);
+				}
+				else if(type==String[].class){
+					String[] str = new String[getCount(payload, 2)];
+					for(int f=0; f<str.length; f++){
+						str[f] = VPFrame.getString(payload);
+					}
+					write(scopeIds[n], str);
+				}
+				else if(type==Vec2f.class){
+					write(scopeIds[n], new Vec2f(payload.getFloat(), payload.getFloat()));
+				}
+				else if(type==Vec3f.class){
+					write(scopeIds[n], new Vec3f(payload.getFloat(), payload.getFloat(), payload.getFloat()));
+				}
+				else if(type==Rotation.class){
+					write(scopeIds[n], new Rotation(payload.getFloat(), payload.getFloat(), payload.getFloat(), payload.getFloat()));
+				}
+				else if(type==Vec2f[].class){
+					Vec2f[] mfvec2f = new Vec2f[getCount(payload, 8)];
+					for(int f=0; f<mfvec2f.length; f++){
+						mfvec2f[f] = new Vec2f(payload.getFloat(), payload.getFloat());
+					}
+					write(scopeIds[n], mfvec2f);
+				}
+				else if(type==Vec3f[].class){
+					Vec3f[] mfvec3f = new Vec3f[getCount(payload, 12)];
+					for(int f=0; f<mfvec3f.length; f++){
+						mfvec3f[f] = new Vec3f(payload.getFloat(), payload.getFloat(), payload.getFloat());
+					}
+					write(scopeIds[n], mfvec3f);
+				}
+				else if(type==Rotation[].class){
+					Rotation[] mfrot = new Rotation[getCount(payload, 16)];
+					for(int f=0; f<mfrot.length; f++){
+						mfrot[f] = new Rotation(payload.getFloat(), payload.getFloat(), payload.getFloat(), payload.getFloat());
+					}
+					write(scopeIds[n], mfrot);
+				}
+			}
+			if(payload.hasRemaining()){
+				VeniceHub.message("Error: "+payload.remaining()+" bytes left after the last slot of a binary frame.");
+				return ERROR_FORMAT;
+			}
+		}catch(BufferUnderflowException e){
+			VeniceHub.message("Error: Binary frame ends in slot "+n+" ("+(type != null ? type.getSimpleName() : "")+").");
+			return ERROR_FORMAT;
+		}
 		try {
-			TTEQueue.getInstance().put(e);
-		} catch (InterruptedException e1) {
-			logger.error("Can't push "+value+" to "+as.getScope());
+			TTEQueue.getInstance().putFrame(frame);
+		} catch (InterruptedException e) {
+			logger.error("Can't push the frame of "+frame.size()+" events at "+frameTime);
 		}
+		return NO_ERROR;
+	}
+	
+	/**
+	 * Reads the number of fields of a multi field from a binary frame.
+	 * 
+	 * @param payload positioned at the number
+	 * @param minSize the minimum number of bytes of a field
+	 * @throws BufferUnderflowException if the frame is too short for the fields
+	 */
+	private static int getCount(ByteBuffer payload, int minSize){
+		int count = payload.getInt();
+		if(count < 0 || (long) count * minSize > payload.remaining()) throw new BufferUnderflowException();
+		return count;
+	}
+	
+	/**
+	 * Adds the object for the slot to the frame of the line.
+	 * @param scopeId scope id of the slot
+	 * @param value the value to be send
+	 */
+	private void write(int scopeId, Object value){
+		frame.add(new SlotEvent(value, scopeId, frameTime));
 	}
 	
 	/**
@@ -354,6 +861,7 @@ public class PortReader extends VeniceReader{
 	 * @param slotArray
 	 */
 	private void checkForUnsupportedTypes(ArrayList<AbstractSlot> slotArray){
+		if(slotArray == null) return;
 		for(AbstractSlot as: slotArray){
 			String typeName = as.getType().getName();
 			String unsupported = null;
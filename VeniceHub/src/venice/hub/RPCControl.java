@@ -41,8 +41,18 @@ import venice.hub.utils.Configuration;
  * <li><code>pause()</code></li>
  * <li><code>play_pause()</code></li>
  * <li><code>seek(long timestamp)</code></li>
+ * <li><code>seekAndPlay(long timestamp)</code></li>
+ * <li><code>seekAndPause(long timestamp)</code></li>
+ * <li><code>setPosition(long timestamp, boolean playing)</code></li>
+ * <li><code>sync(long timestamp)</code></li>
+ * <li><code>setSpeed(double speed)</code></li>
+ * <li><code>step(long ms)</code></li>
+ * <li><code>trigger()</code></li>
  * <li><code>quit()</code></li>
  * </ul>
+ * The compound commands seek and set the play mode in one step, so that
+ * a client does not need several calls (with the replay running from the
+ * wrong position in between). They can be called asynchronously.
  */
 public class RPCControl extends VeniceControl{
 	private static Logger logger;
@@ -130,6 +140,75 @@ public class RPCControl extends VeniceControl{
 		VeniceHub.seekForRelativePosition(timestamp);
 	}
 	
+	/**
+	 * Command VeniceHub to seek for a certain timestamp and play from there.
+	 * 
+	 * @param timestamp The timestamp to be seeked
+	 */
+	public void seekAndPlay(long timestamp) {
+		setPosition(timestamp, true);
+	}
+	
+	/**
+	 * Command VeniceHub to seek for a certain timestamp and pause there.
+	 * 
+	 * @param timestamp The timestamp to be seeked
+	 */
+	public void seekAndPause(long timestamp) {
+		setPosition(timestamp, false);
+	}
+	
+	/**
+	 * Command VeniceHub to seek for a certain timestamp and to play or pause there.
+	 * 
+	 * @param timestamp The timestamp to be seeked
+	 * @param playing <code>true</code> to play, <code>false</code> to pause
+	 */
+	public void setPosition(long timestamp, boolean playing) {
+		logger.debug("RPC Server requested position "+timestamp+(playing ? " (playing)" : " (paused)"));
+		VeniceHub.setPosition(timestamp, playing);
+	}
+	
+	/**
+	 * Synchronizes VeniceHub with the media time of a playing media player,
+	 * without seeking as long as the drift is small.
+	 * 
+	 * @param timestamp The media time
+	 */
+	public void sync(long timestamp) {
+		VeniceHub.syncClock(timestamp);
+	}
+	
+	/**
+	 * Command VeniceHub to replay at a speed. Ignored if the speed is out of range.
+	 * 
+	 * @param speed The speed factor, 1 for real time
+	 */
+	public void setSpeed(double speed) {
+		try{
+			VeniceHub.setReplaySpeed(speed);
+		}catch(IllegalArgumentException e){
+			logger.warn(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Command VeniceHub to step the replay (it stands still in between).
+	 * 
+	 * @param ms The time to step, 0 for the time until the next event
+	 */
+	public void step(long ms) {
+		VeniceHub.step(ms);
+	}
+	
+	/**
+	 * Command VeniceHub to write the events around now to a new log file (capture mode).
+	 */
+	public void trigger() {
+		VeniceHub.message("RPC Server requested trigger");
+		VeniceHub.trigger();
+	}
+	
 	/**
 	 * Command VeniceHub to quit.
 	 */
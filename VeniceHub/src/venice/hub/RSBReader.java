@@ -56,7 +56,7 @@ public class RSBReader extends VeniceReader implements AbstractSlotListener{
 	 */
     public void newData(Object data, String namespace, String label, Class<?> type){
     	logger.debug("new data: "+data.toString()+" ("+type.getName()+") from "+label);
-    	if(TTEQueue.getInstance().size() >= QUEUE_CAPACITY) return; // if TTEQueue is full, ignore data
+    	if(TTEQueue.getInstance().isFull()) return; // if TTEQueue is full, ignore data
 		SlotEvent slotEvent;
 		
 		if(config.isRSBStringXIOLine()){
@@ -26,6 +26,7 @@ package venice.hub;
 import org.apache.log4j.Logger;
 
 import venice.hub.utils.Configuration;
+import venice.hub.utils.TTEFrame;
 import venice.lib.networkRSB.RSBNamespaceBuilder;
 import venice.lib.parser.SlotEvent;
 
@@ -104,6 +105,29 @@ public class RSBWriter extends VeniceWriter {
     	return writingTime;
     }
     
+    /**
+     * Sends all events of the frame to their informers, then stores the
+     * timestamp of the frame once.
+     */
+    @Override
+    protected long writeFrame(TTEFrame frame){
+    	boolean toXIO = Configuration.getInstance().isRSBToXIO();
+    	boolean written = false;
+    	for(SlotEvent e : frame.getEvents()){
+    		if(e == null || e.getType() == null) continue;
+    		Object value = toXIO ? parser.eventToString(e) : e.getValue();
+    		if(RSBNamespaceBuilder.write(e.getScope(), value)) written = true;
+    	}
+    	logger.debug("written to RSB: "+frame);
+    	
+    	if(written){
+    		lastTimestamp = frame.getTime();
+    		VeniceHub.setLastPushedTimestamp(lastTimestamp);
+    	}
+    	
+    	return NO_TIMESTAMP;
+    }
+    
     /**
      * Remove all slots.
      */
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import venice.hub.utils.Configuration;
+import venice.lib.parser.SlotEvent;
+
+/**
+ * Measures how fast the {@link DiskReader} delivers after scrubbing, i.e.
+ * after storms of seeks like those of a dragged slider.
+ * <p>
+ * A log with one event per ms is written first. Every storm seeks to random
+ * timestamps, 30 ms apart, and reads in between. After the last seek of a
+ * storm, the time until read() returns the first event is measured. A storm
+ * has reached its target, if that event is at (or, because fast seeking skips
+ * bytes, a few ms after) the last seeked timestamp; other first events belong
+ * to earlier targets and are counted as stale.
+ * <p>
+ * Usage:<br>
+ * <code>java venice.hub.ScrubBenchmark [events] [directory] [storms]</code>
+ */
+public class ScrubBenchmark {
+	
+	private final static long FIRST = 1400000000000L;
+	private final static int SEEKS = 15; // per storm
+	private final static long SEEK_PAUSE = 30; // ms
+	private final static long TIMEOUT = 5000; // ms, for the first event
+	private final static long TOLERANCE = 50; // ms, fast seeking may stop a few lines after the target
+	
+	public static void main(String[] args) throws InterruptedException{
+		int events = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+		File dir = new File(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+		int storms = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		File file = new File(dir, "scrub_benchmark.xio.gz");
+		
+		file.delete();
+		Configuration.getInstance().parseArguments(new String[]{"-f", file.getPath(), "--silent"});
+		DiskWriter writer = new DiskWriter();
+		Random random = new Random(1);
+		for(int i=0; i<events; i++)
+			writer.write(new SlotEvent(random.nextFloat(), "Benchmark", "slot"+(i%20), Float.class, FIRST + i));
+		writer.cleanUp();
+		
+		Configuration.getInstance().parseArguments(new String[]{"-f", file.getPath(), "--silent"});
+		DiskReader reader = new DiskReader();
+		long[] latencies = new long[storms];
+		int reached = 0;
+		int stale = 0;
+		for(int s=0; s<storms; s++){
+			long target = 0;
+			for(int i=0; i<SEEKS; i++){
+				target = FIRST + random.nextInt(events);
+				reader.seek(target);
+				if(i == SEEKS - 1) break;
+				long end = System.currentTimeMillis() + SEEK_PAUSE;
+				while(System.currentTimeMillis() < end){
+					SlotEvent se = reader.read();
+					if(se == null) Thread.sleep(1);
+					else VeniceHub.setLastPushedTimestamp(se.getTime()); // like a writer
+				}
+			}
+			long start = System.nanoTime();
+			long end = System.currentTimeMillis() + TIMEOUT;
+			SlotEvent se;
+			while((se = reader.read()) == null && System.currentTimeMillis() < end);
+			latencies[s] = System.nanoTime() - start;
+			if(se == null) continue;
+			if(se.getTime() >= target && se.getTime() < target + TOLERANCE) reached++;
+			else stale++;
+		}
+		reader.cleanUp();
+		file.delete();
+		
+		Arrays.sort(latencies);
+		System.out.println(events+" events, "+storms+" storms of "+SEEKS+" seeks, "+SEEK_PAUSE+" ms apart");
+		System.out.println(String.format("first event after the last seek: p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms",
+				percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+				latencies[storms - 1] / 1e6));
+		System.out.println("reached "+reached+" of "+storms+" targets, "+stale+" stale first events");
+		System.exit(0);
+	}
+	
+	/**
+	 * Returns a percentile (0..1) of the sorted latencies.
+	 * 
+	 * @return the latency in ms
+	 */
+	private static double percentile(long[] sorted, double p){
+		int i = (int) Math.ceil(p * sorted.length) - 1;
+		return sorted[Math.max(0, i)] / 1e6;
+	}
+}
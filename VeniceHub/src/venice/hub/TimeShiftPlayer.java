@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+
+import venice.hub.utils.LogScanner;
+import venice.hub.utils.ScopeFilter;
+import venice.hub.utils.TimeShiftBuffer;
+import venice.lib.parser.SlotEvent;
+
+import static venice.lib.parser.XIOParser.INVALID_TIMESTAMP;
+
+/**
+ * Replays a recording while it is still going on, with a delay behind the
+ * live input, like a DVR.
+ * <p>
+ * The {@link DiskWriter} puts every recorded event into a
+ * {@link TimeShiftBuffer}. Recent events are replayed from there, older
+ * ones (dropped from the buffer) from the log file, until the replay
+ * reaches the events in memory. So the log file is only read for events
+ * that are not in memory anymore.
+ * <p>
+ * The replay can be moved to any time between the first and the last
+ * recorded event, so the range grows while the recording goes on. The
+ * events are written by a {@link VeniceWriter} that is not started as a
+ * thread of its own.
+ */
+public class TimeShiftPlayer implements Runnable {
+	private static Logger logger;
+	
+	static {
+		// setup logger
+		venice.lib.Configuration.setupLogger();
+		logger = Logger.getLogger(TimeShiftPlayer.class);
+	}
+	
+	private final static long MAX_WAIT = 100L; // ms, to check for stopping
+	
+	private final TimeShiftBuffer buffer;
+	private final DiskWriter recorder;
+	private final VeniceWriter writer;
+	private volatile boolean active = true;
+	private volatile boolean finished = false;
+	private long position; // timestamp from which the replay goes on
+	private long delay; // system time minus the timestamp of an event, when it is due
+	private long seekTarget = INVALID_TIMESTAMP; // requested position
+	private volatile long eventsFromFile;
+	private volatile long eventsFromMemory;
+	
+	/**
+	 * Creates the player. The replay starts with the given delay behind the
+	 * live input, when the thread is started.
+	 * 
+	 * @param buffer the recent events
+	 * @param recorder the writer of the log file, for older events
+	 * @param writer target of the replay
+	 * @param delay time behind the live input in ms
+	 */
+	public TimeShiftPlayer(TimeShiftBuffer buffer, DiskWriter recorder, VeniceWriter writer, long delay){
+		this.buffer = buffer;
+		this.recorder = recorder;
+		this.writer = writer;
+		this.delay = delay;
+		this.position = System.currentTimeMillis() - delay;
+	}
+	
+	@Override
+	public void run(){
+		logger.debug("running");
+		while(active){
+			long oldest = buffer.getOldestTimestamp();
+			if(oldest != INVALID_TIMESTAMP && getPosition() < oldest) playFromFile();
+			else playFromMemory();
+			applySeek();
+		}
+		writer.cleanUp();
+		VeniceHub.message("TimeShiftPlayer finished");
+		finished = true;
+	}
+	
+	/**
+	 * Replays the events in memory, until a seek is requested or the replay
+	 * falls behind the buffer.
+	 */
+	private void playFromMemory(){
+		long seq = buffer.search(getPosition());
+		while(active && !isSeeking()){
+			SlotEvent se = buffer.get(seq);
+			if(se == null){
+				if(seq < buffer.getStart()) return; // dropped meanwhile, read from file
+				try {
+					buffer.await(seq, MAX_WAIT);
+				} catch (InterruptedException e) {}
+				continue;
+			}
+			if(!waitUntilDue(se.getTime())) return;
+			writer.write(se);
+			eventsFromMemory++;
+			seq++;
+			setPosition(se.getTime() + 1); // the next one, if dropped meanwhile
+		}
+	}
+	
+	/**
+	 * Replays the events of the log file from the position, until the
+	 * events in memory are reached or a seek is requested. If the file ends
+	 * before (e.g. the rest is still buffered by the recorder), the replay
+	 * goes on with the oldest event in memory.
+	 */
+	private void playFromFile(){
+		final long from = getPosition();
+		try {
+			LogScanner.scan(recorder.getLogPath(), new ScopeFilter(), new LogScanner.Handler(){
+				@Override
+				public boolean event(SlotEvent se){
+					if(se.getTime() < from) return active && !isSeeking();
+					if(se.getTime() >= buffer.getOldestTimestamp()) return false; // in memory
+					if(!waitUntilDue(se.getTime())) return false;
+					writer.write(se);
+					eventsFromFile++;
+					setPosition(se.getTime());
+					return true;
+				}
+			});
+		} catch (IOException e) {
+			// the end of a file still being written
+			logger.debug("log file read up to "+getPosition()+": "+e);
+		}
+		synchronized(this){
+			if(seekTarget == INVALID_TIMESTAMP) position = Math.max(position, buffer.getOldestTimestamp());
+		}
+	}
+	
+	/**
+	 * Waits until the event with the given timestamp is due.
+	 * 
+	 * @return <code>false</code>, if a seek was requested or the player stopped meanwhile
+	 */
+	private synchronized boolean waitUntilDue(long timestamp){
+		long wait;
+		while(active && seekTarget == INVALID_TIMESTAMP &&
+				(wait = timestamp + delay - System.currentTimeMillis()) > 0){
+			try {
+				wait(Math.min(wait, MAX_WAIT));
+			} catch (InterruptedException e) {}
+		}
+		return active && seekTarget == INVALID_TIMESTAMP;
+	}
+	
+	private synchronized boolean isSeeking(){
+		return seekTarget != INVALID_TIMESTAMP;
+	}
+	
+	private synchronized void applySeek(){
+		if(seekTarget == INVALID_TIMESTAMP) return;
+		position = seekTarget;
+		delay = System.currentTimeMillis() - seekTarget;
+		seekTarget = INVALID_TIMESTAMP;
+	}
+	
+	private synchronized void setPosition(long position){
+		this.position = position;
+	}
+	
+	/**
+	 * Returns the timestamp from which the replay goes on.
+	 * 
+	 * @return timestamp
+	 */
+	public synchronized long getPosition(){
+		return position;
+	}
+	
+	/**
+	 * Moves the replay to the timestamp, limited to the recorded range.
+	 * 
+	 * @param timestamp the timestamp
+	 */
+	public synchronized void seek(long timestamp){
+		long first = buffer.getFirstTimestamp();
+		if(first == INVALID_TIMESTAMP){
+			VeniceHub.message("Nothing recorded yet.");
+			return;
+		}
+		seekTarget = Math.max(first, Math.min(timestamp, buffer.getLastTimestamp()));
+		notifyAll();
+	}
+	
+	/**
+	 * Moves the replay to the given time behind the live input.
+	 * 
+	 * @param ms time in ms
+	 */
+	public void setTimeShift(long ms){
+		seek(System.currentTimeMillis() - ms);
+	}
+	
+	/**
+	 * Returns how far the replay is behind the live input.
+	 * 
+	 * @return time in ms
+	 */
+	public synchronized long getTimeShift(){
+		return delay;
+	}
+	
+	/**
+	 * Shows the range of the recording, the position of the replay and
+	 * where the events came from.
+	 */
+	public void showStatus(){
+		long first = buffer.getFirstTimestamp();
+		if(first == INVALID_TIMESTAMP){
+			VeniceHub.message("Nothing recorded yet.");
+			return;
+		}
+		VeniceHub.message("time-shifted replay "+getTimeShift()+" ms behind live, at "+(getPosition() - first)+" ms");
+		VeniceHub.message("  recorded:  "+(buffer.getLastTimestamp() - first)+" ms, the last "+
+				(buffer.getLastTimestamp() - buffer.getOldestTimestamp())+" ms in memory ("+
+				buffer.size()+" events, "+buffer.getMemory()/1024+" KiB)");
+		VeniceHub.message("  replayed:  "+eventsFromMemory+" events from memory, "+eventsFromFile+" from the log file");
+	}
+	
+	/**
+	 * Returns the number of events replayed from the log file.
+	 * 
+	 * @return number of events
+	 */
+	public long getEventsFromFile(){
+		return eventsFromFile;
+	}
+	
+	/**
+	 * Returns the number of events replayed from memory.
+	 * 
+	 * @return number of events
+	 */
+	public long getEventsFromMemory(){
+		return eventsFromMemory;
+	}
+	
+	/**
+	 * Stops the replay.
+	 */
+	public synchronized void stopThread(){
+		active = false;
+		notifyAll();
+	}
+	
+	/**
+	 * Returns <code>true</code> if the thread has finished.
+	 * 
+	 * @return <code>true</code> if finished
+	 */
+	public boolean isFinished(){
+		return finished;
+	}
+}
@@ -29,10 +29,19 @@ import java.util.ArrayList;
 
 import org.apache.log4j.Logger;
 
+import venice.hub.utils.AsyncLogOutputStream;
+import venice.hub.utils.BinaryLog;
+import venice.hub.utils.ClockSync;
 import venice.hub.utils.Configuration;
+import venice.hub.utils.RealTimeReplayClock;
+import venice.hub.utils.ReplayClock;
+import venice.hub.utils.TTE;
 import venice.hub.utils.TTEQueue;
+import venice.hub.utils.TimeShiftBuffer;
+import venice.hub.utils.VirtualReplayClock;
 import venice.hub.utils.Configuration.Connection;
 import venice.lib.networkIIO.IIONamespaceBuilder;
+import venice.lib.parser.XIODomParser;
 import venice.lib.parser.XIOParser;
 import venice.lib.parser.XIORegExParser;
 
@@ -68,7 +77,7 @@ public class VeniceHub {
 	public final static long CHECK_IF_STOPPED_WHILE_PAUSED_INTERVAL = 1000;
 	
 	private static boolean active = true;
-	private static long replayDelay; // difference between timestamps of logfile and current systemtime plus any delay of pausing
+	private static volatile long replayDelay; // difference between timestamps of logfile and current systemtime plus any delay of pausing
 	private static long replayOffset; // gets added to every timestamp (for synchronization with ELAN)
 	private static long timestampOf1stLine;
 	private static long timestampOfLastLine;
@@ -80,6 +89,8 @@ public class VeniceHub {
 	private static long lastActivity = INVALID_TIMESTAMP;
     private static boolean paused; // replay paused?
     private static long pauseTime; // the system time when pause started
+    private static ClockSync clockSync; // created with the first sync of a media player
+    private static volatile ReplayClock clock = new RealTimeReplayClock(); // time base of the replay delay
 	
     // there can be more than one controller
 	private static ArrayList<VeniceControl> controllerList;
@@ -88,6 +99,7 @@ public class VeniceHub {
 	// there should be only ONE reader and ONE writer
     private static VeniceReader reader;
     private static VeniceWriter writer;
+    private static TimeShiftPlayer timeShiftPlayer; // null, if there is no time-shifted replay
 
     /**
      * Main method. Creates VeniceHub, which organize all other threads.
@@ -128,6 +140,7 @@ public class VeniceHub {
 		// command reader and writer threads to stop:
         if(reader!=null) reader.stopThread();
         if(writer!=null) writer.stopThread();
+        if(timeShiftPlayer!=null) timeShiftPlayer.stopThread();
         
         // wait until reader and writer threads have finished:
 		String stillActive; // to show the still unfinished threads
@@ -136,6 +149,7 @@ public class VeniceHub {
 			stillActive = "";
 			if(reader != null && !reader.isFinished()) stillActive += " - reader\n"; // if a reader is unfinished
 			if(writer != null && !writer.isFinished()) stillActive += " - writer\n"; // if a writer is unfinished
+			if(timeShiftPlayer != null && !timeShiftPlayer.isFinished()) stillActive += " - time-shifted replay\n";
 			for(VeniceControl vc : controllerList){
 				if(vc != null && !vc.isFinished()) stillActive += " - controller "+vc+"\n"; // if a controller is unfinished
 			}
@@ -206,9 +220,11 @@ public class VeniceHub {
 		lastPushedTimestamp = INVALID_TIMESTAMP;
 		xioparser = new XIORegExParser();
 		lagHistoryEnabled = false;
+		clockSync = null;
 
     	boolean parsedSuccessfully = Configuration.getInstance().parseArguments(args);
     	if(! parsedSuccessfully) System.exit(1);
+    	clock = new RealTimeReplayClock(Configuration.getInstance().getSpeed());
     	
     	Connection target = Configuration.getInstance().getTarget();
     	Connection source = Configuration.getInstance().getSource();
@@ -293,7 +309,18 @@ public class VeniceHub {
             createThread(writer, "VH_IIOWriter");
         	break;
         case DISK:
-        	writer = new DiskWriter();
+        	if(Configuration.getInstance().getPreTrigger() > 0){
+        		// capture mode, written only around a trigger
+        		writer = new CaptureWriter();
+        		createThread(writer, "VH_CaptureWriter");
+        		break;
+        	}
+        	if(Configuration.getInstance().getPartitions() > 1)
+        		writer = new PartitionedDiskWriter();
+        	else if(BinaryLog.isBinaryLogFile(Configuration.getInstance().getLogFilePath()))
+        		writer = new BinaryDiskWriter();
+        	else
+        		writer = new DiskWriter();
             createThread(writer, "VH_DiskWriter");
             break;
         case RSB:
@@ -304,8 +331,24 @@ public class VeniceHub {
         	// nothing
         }
         
-    	// start the RPC Server for remote control, when replaying from Disk
-    	if (source == Connection.DISK && ! Configuration.getInstance().isNoRPC()){
+        // replay the recording time-shifted, while it goes on
+        timeShiftPlayer = null;
+        if(Configuration.getInstance().getTimeShift() != null){
+        	TimeShiftBuffer buffer = new TimeShiftBuffer(Configuration.getInstance().getTimeShiftMemory());
+        	VeniceWriter shiftWriter;
+        	if(Configuration.getInstance().getTimeShift() == Connection.IIO){
+        		startNetworkNode();
+        		shiftWriter = new IIOWriter();
+        	}
+        	else shiftWriter = new RSBWriter();
+        	timeShiftPlayer = new TimeShiftPlayer(buffer, (DiskWriter) writer, shiftWriter,
+        			Configuration.getInstance().getTimeShiftDelay());
+        	((DiskWriter) writer).setTimeShiftBuffer(buffer);
+        	createThread(timeShiftPlayer, "VH_TimeShift");
+        }
+        
+    	// start the RPC Server for remote control, when replaying from Disk (or for triggers in capture mode)
+    	if ((source == Connection.DISK || writer instanceof CaptureWriter) && ! Configuration.getInstance().isNoRPC()){
     		VeniceControl rpcControl = new RPCControl();
     		Thread rpcThreadControl = new Thread(rpcControl, "RPC controller");
     		rpcThreadControl.start();
@@ -380,12 +423,12 @@ public class VeniceHub {
     	if(!paused == p){
 			paused = p;
 			if(paused){
-				pauseTime = System.currentTimeMillis();
+				pauseTime = clock.now();
 				long delay = getReplayDelay();
 				long first = getTimestampOf1stLine();
 				long offset = getReplayOffset();
 				if(first != INVALID_TIMESTAMP){
-					long pausingtime = System.currentTimeMillis() - delay - first + offset;
+					long pausingtime = pauseTime - delay - first + offset;
 					String niceString = giveNiceTimeString(pausingtime);
 					logger.info("Replay paused at "+niceString+". Enter 'p' to continue.");
 				}
@@ -401,7 +444,7 @@ public class VeniceHub {
 				}
 			}else{
 				logger.info("continuing replay");
-				addReplayDelay(System.currentTimeMillis() - pauseTime);
+				addReplayDelay(clock.now() - pauseTime);
 				synchronized(writer){
 					writer.proceed();
 				}
@@ -434,12 +477,150 @@ public class VeniceHub {
      */
     public static void seekForTimestamp(long seekTime){
     	long absSeekTime = seekTime;
-    	setReplayDelay(System.currentTimeMillis() - absSeekTime);
+    	setReplayDelay(clock.now() - absSeekTime);
 		if(absSeekTime >= getTimestampOf1stLine()){
-			TTEQueue.getInstance().reset();
-			((DiskReader) reader).seek(absSeekTime);
+			((DiskReader) reader).seek(absSeekTime); // flushes the TTEQueue
 		}
-		if(paused) pauseTime = System.currentTimeMillis();
+		if(paused) pauseTime = clock.now();
+    }
+    
+    /**
+     * Seeks for a relative timestamp (see <code>seekForRelativePosition</code>)
+     * and sets pause or play mode in one step, so that the replay never
+     * continues from the old position. When pausing, the replay is paused
+     * before the seek; when playing, it is continued after the seek.
+     *
+     * @param relativeTimestamp timestamp to seek, relative to the first line
+     * @param play <code>true</code> to play from the timestamp, <code>false</code> to pause there
+     */
+    public static synchronized void setPosition(long relativeTimestamp, boolean play){
+    	if(!play) setPause(true);
+    	seekForRelativePosition(relativeTimestamp);
+    	if(play) setPause(false);
+    }
+
+    /**
+     * Synchronizes the replay with the media time of a playing media player.
+     * Small drifts are corrected by slewing the replay clock, only large
+     * drifts by seeking (see {@link ClockSync}). While the replay is paused,
+     * syncs are ignored: playing and pausing only follow the explicit
+     * commands (see <code>setPosition</code>).
+     * 
+     * @param mediaTime the media time, relative to the first line like for <code>seekForRelativePosition</code>
+     */
+    public static synchronized void syncClock(long mediaTime){
+    	if(Configuration.getInstance().getSource() != Connection.DISK) return;
+    	if(paused) return;
+    	getClockSync().sync(mediaTime, clock.now());
+    }
+    
+    /**
+     * Returns the clock synchronization with a media player.
+     * 
+     * @return the clock synchronization, created at the first call
+     */
+    public static synchronized ClockSync getClockSync(){
+    	if(clockSync == null){
+    		Configuration conf = Configuration.getInstance();
+    		clockSync = new ClockSync(new ClockSync.Replay(){
+    			@Override
+    			public long getPosition() {
+    				return clock.now() - replayDelay - getShiftedTimestampOf1stLine();
+    			}
+    			@Override
+    			public void slew(long ms, long duration) {
+    				if(clock instanceof RealTimeReplayClock) ((RealTimeReplayClock) clock).slew(ms, duration);
+    				else addReplayDelay(ms); // a stepped replay has no rate to change
+    			}
+    			@Override
+    			public void seek(long position) {
+    				setPosition(position, true);
+    			}
+    		}, conf.getSyncThreshold(), conf.getSyncSlew() / 100);
+    	}
+    	return clockSync;
+    }
+    
+    /**
+     * Shows the drift statistics of the synchronization with a media player.
+     */
+    public static void showSyncStats(){
+    	if(clockSync == null){
+    		message("No media player has synchronized yet.");
+    		return;
+    	}
+    	message("Synchronization with the media player: "+clockSync);
+    }
+    
+    /**
+     * Returns the clock, which is the time base of the replay delay.
+     * 
+     * @return the replay clock
+     */
+    public static ReplayClock getReplayClock(){
+    	return clock;
+    }
+    
+    /**
+     * Replaces the replay clock. The replay continues at the same position
+     * (and stays paused, if it is paused), only the time base changes.
+     * 
+     * @param newClock the new replay clock
+     */
+    public static synchronized void setReplayClock(ReplayClock newClock){
+    	ReplayClock old = clock;
+    	long shift = newClock.now() - old.now();
+    	replayDelay += shift;
+    	pauseTime += shift;
+    	clock = newClock;
+    }
+    
+    /**
+     * Sets the speed of the replay, e.g. 2 for twice as fast as real time.
+     * Leaves the step mode, if the replay is stepped.
+     * 
+     * @param speed the speed factor, between {@link ReplayClock#MIN_SPEED} and {@link ReplayClock#MAX_SPEED}
+     * @throws IllegalArgumentException if the speed is out of range
+     */
+    public static synchronized void setReplaySpeed(double speed){
+    	if(clock instanceof RealTimeReplayClock){
+    		((RealTimeReplayClock) clock).setSpeed(speed);
+    	}
+    	else{
+    		setReplayClock(new RealTimeReplayClock(speed));
+    	}
+    	logger.info("replay speed "+speed);
+    }
+    
+    /**
+     * Advances the replay by a time, in step mode. The replay is switched to
+     * step mode, if it runs in real time; then it stands still, until it is
+     * stepped again, or a speed is set.
+     * 
+     * @param ms time in ms, or 0 (or less) for the time until the next event
+     */
+    public static synchronized void step(long ms){
+    	if(!(clock instanceof VirtualReplayClock)){
+    		setReplayClock(new VirtualReplayClock(clock.now()));
+    		logger.info("stepping the replay, set a speed to continue in real time");
+    	}
+    	VirtualReplayClock virtual = (VirtualReplayClock) clock;
+    	if(ms > 0){
+    		virtual.advance(ms);
+    	}
+    	else{
+    		TTE next = TTEQueue.getInstance().peek();
+    		if(next != null) virtual.advanceTo(next.getTime() + replayDelay);
+    		else message("No event to step to.");
+    	}
+    }
+    
+    /**
+     * Shows the speed of the replay.
+     */
+    public static void showReplaySpeed(){
+    	if(clock.getSpeed() == 0) message("The replay is stepped.");
+    	else message("Replay speed: "+clock.getSpeed());
     }
     
     /**
@@ -475,12 +656,65 @@ public class VeniceHub {
 			message("  actual size: "+diskreader.getBufferSize() + 
 					"/"+diskreader.getCAPACITY()+" items (" +
 					"threshold "+diskreader.getTHRESHOLD()+" items)");
+			message("  memory:      "+diskreader.getBufferMemory()/1024+" KiB" +
+					(Configuration.getInstance().getBufferMemory() > 0 ? "/"+Configuration.getInstance().getBufferMemory()/1024+" KiB" : ""));
+			message("TTEQueue: "+TTEQueue.getInstance().size()+" events, "+TTEQueue.getInstance().getMemory()/1024+" KiB");
     	}
     	else{
     		message("The command BUFFER only works for disk-readers.");
     	}
     }
     
+    /**
+     * Shows queue depth and write latency of the asynchronous disk-writer,
+     * or the throughput of every partition of a partitioned disk-writer.
+     */
+    public static void showWriterStats(){
+    	AsyncLogOutputStream async = null;
+    	if(writer instanceof DiskWriter)
+    		async = ((DiskWriter) writer).getAsyncStream();
+    	if(writer instanceof PartitionedDiskWriter){
+    		((PartitionedDiskWriter) writer).showStats();
+    	}
+    	else if(async != null){
+    		message("Asynchronous DiskWriter:");
+    		message("  queue depth:   "+async.getQueueDepth()+" buffers");
+    		message("  write latency: "+String.format("%.2f ms (max %.2f ms)",
+    				async.getAverageWriteLatency(), async.getMaxWriteLatency()));
+    		message("  written:       "+async.getBytesWritten()+" bytes in "+
+    				async.getBuffersWritten()+" buffers");
+    	}
+    	else{
+    		message("The command WRITER only works for asynchronous or partitioned disk-writers (--asyncWrite, --partitions).");
+    	}
+    }
+    
+    /**
+     * Writes the events around now to a new log file, in capture mode.
+     */
+    public static void trigger(){
+    	if(writer instanceof CaptureWriter) ((CaptureWriter) writer).trigger();
+    	else message("Triggers are only possible in capture mode (--preTrigger).");
+    }
+    
+    /**
+     * Shows the position and range of the time-shifted replay.
+     */
+    public static void showTimeShift(){
+    	if(timeShiftPlayer != null) timeShiftPlayer.showStatus();
+    	else message("There is no time-shifted replay (--timeShift).");
+    }
+    
+    /**
+     * Moves the time-shifted replay to the given time behind the live input.
+     * 
+     * @param ms time in ms
+     */
+    public static void setTimeShift(long ms){
+    	if(timeShiftPlayer != null) timeShiftPlayer.setTimeShift(ms);
+    	else message("There is no time-shifted replay (--timeShift).");
+    }
+    
     /**
      * Shows the timestamp of the last written event
      */
@@ -734,6 +968,16 @@ public class VeniceHub {
 	public static void setPreferredXIOParser(XIOParser p){
 		xioparser = p;
 	}
+	
+	/**
+	 * Creates a new xioParser of the same kind as the preferred one.
+	 * The parsers are not thread-safe, so every thread that parses XIO
+	 * lines at the same time as others needs its own parser.
+	 * @return a new xioParser
+	 */
+	public static XIOParser createXIOParser(){
+		return xioparser instanceof XIODomParser ? new XIODomParser() : new XIORegExParser();
+	}
 
 	/**
 	 * Enables or disables the lag history.
@@ -34,6 +34,8 @@ import java.util.concurrent.TimeUnit;
 import org.apache.log4j.Logger;
 
 import venice.hub.utils.Configuration;
+import venice.hub.utils.Configuration.Connection;
+import venice.hub.utils.TTEFrame;
 import venice.hub.utils.TTEQueue;
 import venice.lib.parser.SlotEvent;
 import venice.lib.parser.XIOParser;
@@ -77,12 +79,28 @@ public abstract class VeniceWriter implements Runnable{
     protected ArrayList<lagPoint> lagList;
 	protected int lagCounter;
 	protected boolean initialized = false;
+	protected final static long STARTUP_PERIOD = 1000L; // ms, for the lag at the start of a replay
+	private long startupEnd = NO_TIMESTAMP; // system time, when the startup period ends
+	private int startupLagCount; // -1 if not measured or already reported
+	private long startupLagSum;
+	private int startupLagMax;
     
     /**
      * Constructor. Should not be overridden by a subclass.
      * A subclass should override <code>initialize</code> instead.
      */
     public VeniceWriter(){
+    	this(true);
+    }
+    
+    /**
+     * Constructor for a subclass, that has to set fields before it is
+     * initialized. Then the subclass has to call <code>initialize</code>
+     * and set <code>initialized</code> itself.
+     * 
+     * @param initializeNow <code>false</code> to leave out <code>initialize</code>
+     */
+    protected VeniceWriter(boolean initializeNow){
     	active = true;
     	finished = false;
     	paused = false;
@@ -94,8 +112,11 @@ public abstract class VeniceWriter implements Runnable{
     	lag = 0;
     	if(lagHistoryEnabled) lagList = new ArrayList<lagPoint>();
     	lagCounter = 1;
-    	initialize();
-    	initialized = true;
+    	startupLagCount = config.getSource() == Connection.DISK ? 0 : -1;
+    	if(initializeNow){
+    		initialize();
+    		initialized = true;
+    	}
     }
     
     /**
@@ -171,13 +192,18 @@ public abstract class VeniceWriter implements Runnable{
 			} 
 			if(slotEvent != null){
 				//logger.debug("writing "+slotEvent);
-				writingTime = write(slotEvent);
+				if(slotEvent instanceof TTEFrame)
+					writingTime = writeFrame((TTEFrame) slotEvent);
+				else
+					writingTime = write(slotEvent);
 				if(writingTime != NO_TIMESTAMP){
 					completed = false;
 					calculateLag(writingTime, slotEvent);
 				}
 			}
 			else{
+				idle();
+				if(startupLagCount > 0 && System.currentTimeMillis() > startupEnd) reportStartupLag();
 				if(config.getQuitIfIdle() > 0 &&
 				   VeniceHub.getLastActivity() != NO_TIMESTAMP && 
 				   System.currentTimeMillis() - VeniceHub.getLastActivity() > config.getQuitIfIdle()){
@@ -225,6 +251,33 @@ public abstract class VeniceWriter implements Runnable{
     	return NO_TIMESTAMP;
     }
     
+    /**
+     * Writes all events of a frame to target.
+     * <p>
+     * Writes the events one by one with <code>write</code>. A subclass can
+     * override it to send the frame in one go.
+     * 
+     * @return long The time (in milliseconds), when the frame was written to the target,
+     * or <code>NO_TIMESTAMP</code> if no event was written
+     */
+    protected long writeFrame(TTEFrame frame){
+    	long writingTime = NO_TIMESTAMP;
+    	for(SlotEvent e : frame.getEvents()){
+    		long t = write(e);
+    		if(t != NO_TIMESTAMP) writingTime = t;
+    	}
+    	return writingTime;
+    }
+    
+    /**
+     * Called, when no data arrived within <code>WAIT_ON_EMPTY_QUEUE_TIMEOUT</code>.
+     * <p>
+     * For example: A disk writer can write buffered data.
+     */
+    protected void idle(){
+    	// can be implemented by subclass
+    }
+    
     /**
      * Clean up, so the Thread can end safely.
      * <p>
@@ -254,21 +307,48 @@ public abstract class VeniceWriter implements Runnable{
 	/**
 	 * Calculates the lag of writing TTE objects to target.
 	 * <p>
-	 * Compares the time, when TTE objects was written with the system time, modified by replay delay.
+	 * Compares the time of the replay clock, when the TTE object was written, with its timestamp,
+	 * modified by replay delay.
 	 * 
-	 * @param writingTime The time when the last TTE was written
+	 * @param writingTime The time when the last TTE was written (system time)
 	 * @param e The written TTE
 	 */
     private void calculateLag(long writingTime, SlotEvent e){
     	//long time = tte.getTime();
     	long time = lastTimestamp;
+    	if(startupLagCount >= 0) measureStartupLag(time);
     	if(lagCounter++ >= VeniceHub.getLagLogN()){
-        	lag = (int) (writingTime - (time + VeniceHub.getReplayDelay()));
+        	lag = (int) (VeniceHub.getReplayClock().now() - (time + VeniceHub.getReplayDelay()));
         	if(lagHistoryEnabled) lagList.add( new lagPoint( lag, time ));
         	lagCounter = 1;
     	}
     }
     
+    /**
+     * Measures the lag during the first second of a replay, and reports it
+     * when the second is over.
+     * 
+     * @param time timestamp of the last written event
+     */
+    private void measureStartupLag(long time){
+    	long now = System.currentTimeMillis();
+    	if(startupEnd == NO_TIMESTAMP) startupEnd = now + STARTUP_PERIOD;
+    	if(now > startupEnd){
+    		reportStartupLag();
+    		return;
+    	}
+    	int l = (int) (VeniceHub.getReplayClock().now() - (time + VeniceHub.getReplayDelay()));
+    	startupLagSum += l;
+    	startupLagMax = Math.max(startupLagMax, l);
+    	startupLagCount++;
+    }
+    
+    private void reportStartupLag(){
+    	VeniceHub.message(String.format("lag in the first second: %.1f ms mean, %d ms max (%d events)",
+    			(double) startupLagSum / startupLagCount, startupLagMax, startupLagCount));
+    	startupLagCount = -1;
+    }
+    
     /**
      * Saves lag history to file.
      * 
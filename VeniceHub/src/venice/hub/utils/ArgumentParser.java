@@ -23,6 +23,9 @@
  */
 package venice.hub.utils;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import venice.hub.utils.Configuration.Connection;
 
 import com.beust.jcommander.Parameter;
@@ -317,4 +320,226 @@ public class ArgumentParser {
 	public boolean getMaxPrio(){
 		return maxprio;
 	}
+	
+	@Parameter(names = {"--deltaEncoding"}, description = "write binary log files (*.vbin) with delta encoded blocks")
+	private boolean deltaEncoding = false;
+	public boolean getDeltaEncoding(){
+		return deltaEncoding;
+	}
+	
+	@Parameter(names = {"--keyframeInterval"}, description = "maximum time span (ms) of a delta encoded block in binary log files")
+	private long keyframeInterval = 1000;
+	public long getKeyframeInterval(){
+		return keyframeInterval;
+	}
+	
+	@Parameter(names = {"--asyncWrite"}, description = "write log files asynchronously in a separate I/O thread")
+	private boolean asyncWrite = false;
+	public boolean getAsyncWrite(){
+		return asyncWrite;
+	}
+	
+	@Parameter(names = {"--writeBufferSize"}, description = "size (bytes) of a single buffer for asynchronous writing")
+	private int writeBufferSize = 1 << 20;
+	public int getWriteBufferSize(){
+		return writeBufferSize;
+	}
+	
+	@Parameter(names = {"--writeBuffers"}, description = "number of buffers for asynchronous writing")
+	private int writeBuffers = 4;
+	public int getWriteBuffers(){
+		return writeBuffers;
+	}
+	
+	@Parameter(names = {"--flushBytes"}, description = "maximum amount of data (bytes) held back by asynchronous writing")
+	private long flushBytes = 4 << 20;
+	public long getFlushBytes(){
+		return flushBytes;
+	}
+	
+	@Parameter(names = {"--flushInterval"}, description = "maximum time (ms) data is held back by asynchronous writing")
+	private long flushInterval = 1000;
+	public long getFlushInterval(){
+		return flushInterval;
+	}
+	
+	@Parameter(names = {"--gzipLevel"}, description = "compression level (0-9) for gzip compressed log files, -1 for the default level")
+	private int gzipLevel = -1;
+	public int getGzipLevel(){
+		return gzipLevel;
+	}
+	
+	@Parameter(names = {"--gzipThreads"}, description = "number of threads for compressing log files with gzip")
+	private int gzipThreads = 1;
+	public int getGzipThreads(){
+		return gzipThreads;
+	}
+	
+	@Parameter(names = {"--rotateSize"}, description = "start a new log file segment after this amount of (uncompressed) data in bytes, 0 for no rotation")
+	private long rotateSize = 0;
+	public long getRotateSize(){
+		return rotateSize;
+	}
+	
+	@Parameter(names = {"--rotateInterval"}, description = "start a new log file segment after this time span (ms), 0 for no rotation")
+	private long rotateInterval = 0;
+	public long getRotateInterval(){
+		return rotateInterval;
+	}
+	
+	@Parameter(names = {"--syncInterval"}, description = "write all data to the log file as complete gzip members every n ms, 0 for only at the end")
+	private long syncInterval = 0;
+	public long getSyncInterval(){
+		return syncInterval;
+	}
+	
+	@Parameter(names = {"--fsync"}, description = "synchronize the log file with the storage device at every sync point")
+	private boolean fsync = false;
+	public boolean getFsync(){
+		return fsync;
+	}
+	
+	@Parameter(names = {"--include"}, description = "replay (or transcode) only slots, whose scope matches this pattern (glob, or regex: prefix), can be given several times")
+	private List<String> includedScopes = new ArrayList<String>();
+	public List<String> getIncludedScopes(){
+		return includedScopes;
+	}
+	
+	@Parameter(names = {"--exclude"}, description = "don't replay (or transcode) slots, whose scope matches this pattern (glob, or regex: prefix), can be given several times")
+	private List<String> excludedScopes = new ArrayList<String>();
+	public List<String> getExcludedScopes(){
+		return excludedScopes;
+	}
+	
+	@Parameter(names = {"--merge"}, description = "replay this log file together with the one given by -f, ordered by timestamp, can be given several times")
+	private List<String> mergeFiles = new ArrayList<String>();
+	public List<String> getMergeFiles(){
+		return mergeFiles;
+	}
+	
+	@Parameter(names = {"--fileOffset"}, description = "time offset (ms) added to the timestamps of a replayed file, given once per file in the order -f, --merge")
+	private List<String> fileOffsets = new ArrayList<String>();
+	public List<String> getFileOffsets(){
+		return fileOffsets;
+	}
+	
+	@Parameter(names = {"--inMemory"}, description = "load the replayed log files completely into memory, for fast seeking (falls back to reading from disk, if --memoryLimit is reached)")
+	private boolean inMemory = false;
+	public boolean getInMemory(){
+		return inMemory;
+	}
+	
+	@Parameter(names = {"--memoryLimit"}, description = "maximum size (bytes) of the logs in memory with --inMemory, 0 for half of the maximum heap size")
+	private long memoryLimit = 0;
+	public long getMemoryLimit(){
+		return memoryLimit;
+	}
+	
+	@Parameter(names = {"--offHeap"}, description = "keep the replay buffer outside of the Java heap, for large buffer capacities")
+	private boolean offHeap = false;
+	public boolean getOffHeap(){
+		return offHeap;
+	}
+	
+	@Parameter(names = {"--offHeapDir"}, description = "directory for a memory-mapped temporary file used by --offHeap, instead of direct memory")
+	private String offHeapDir = null;
+	public String getOffHeapDir(){
+		return offHeapDir;
+	}
+	
+	@Parameter(names = {"--bufferMemory"}, description = "max. memory (e.g. 512m) for diskreaders buffer, 0 for a limit by --bufferCapacity only", converter = MemorySizeConverter.class)
+	private Long bufferMemory = 0L;
+	public long getBufferMemory(){
+		return bufferMemory;
+	}
+	
+	@Parameter(names = {"--bufferThresholdMemory"}, description = "memory left in diskreaders buffer to switch, 0 for a tenth of --bufferMemory", converter = MemorySizeConverter.class)
+	private Long bufferThresholdMemory = 0L;
+	public long getBufferThresholdMemory(){
+		return bufferThresholdMemory;
+	}
+	
+	@Parameter(names = {"--queueMemory"}, description = "max. memory (e.g. 64m) of the events in the queue, 0 for a limit by --queueCapacity only", converter = MemorySizeConverter.class)
+	private Long queueMemory = 0L;
+	public long getQueueMemory(){
+		return queueMemory;
+	}
+	
+	@Parameter(names = {"--snapshotInterval"}, description = "time (ms) between snapshots of all slots, which are sent after a seek, 0 for no snapshots")
+	private long snapshotInterval = 0;
+	public long getSnapshotInterval(){
+		return snapshotInterval;
+	}
+	
+	@Parameter(names = {"--syncThreshold"}, description = "drift (ms) between a synchronized media player and the replay, above which the replay seeks instead of slewing")
+	private long syncThreshold = 500;
+	public long getSyncThreshold(){
+		return syncThreshold;
+	}
+	
+	@Parameter(names = {"--syncSlew"}, description = "maximum change (percent) of the replay rate, while slewing towards a synchronized media player")
+	private double syncSlew = 5;
+	public double getSyncSlew(){
+		return syncSlew;
+	}
+	
+	@Parameter(names = {"--speed"}, description = "speed of the replay from disk, e.g. 2 for twice as fast as real time (0.25 to 16)")
+	private double speed = 1;
+	public double getSpeed(){
+		return speed;
+	}
+	
+	@Parameter(names = {"--preRoll"}, description = "time (ms) of the replay from disk that is buffered before the replay starts, 0 for no pre-roll")
+	private long preRoll = 500;
+	public long getPreRoll(){
+		return preRoll;
+	}
+	
+	@Parameter(names = {"--timeShift"}, description = "while recording live input to disk, replay it time-shifted to this target (IIO, RSB)", converter = ConnectionConverter.class)
+	private Connection timeShift = null;
+	public Connection getTimeShift(){
+		return timeShift;
+	}
+	
+	@Parameter(names = {"--timeShiftDelay"}, description = "time (ms) the time-shifted replay starts behind the live input")
+	private long timeShiftDelay = 60000;
+	public long getTimeShiftDelay(){
+		return timeShiftDelay;
+	}
+	
+	@Parameter(names = {"--timeShiftMemory"}, description = "max. memory (e.g. 64m) for the recent events of the time-shifted replay, older ones are read from the log file", converter = MemorySizeConverter.class)
+	private Long timeShiftMemory = 64L << 20;
+	public long getTimeShiftMemory(){
+		return timeShiftMemory;
+	}
+	
+	@Parameter(names = {"--preTrigger"}, description = "capture mode: keep the last ms of the live input in memory, and write them to disk only on a trigger command, 0 for recording everything")
+	private long preTrigger = 0;
+	public long getPreTrigger(){
+		return preTrigger;
+	}
+	
+	@Parameter(names = {"--postTrigger"}, description = "capture mode: time (ms) after a trigger, that is written to disk too")
+	private long postTrigger = 10000;
+	public long getPostTrigger(){
+		return postTrigger;
+	}
+	
+	@Parameter(names = {"--captureMemory"}, description = "capture mode: max. memory (e.g. 256m) of the events kept before a trigger", converter = MemorySizeConverter.class)
+	private Long captureMemory = 256L << 20;
+	public long getCaptureMemory(){
+		return captureMemory;
+	}
+	
+	@Parameter(names = {"--partitions"}, description = "number of log files written in parallel, the namespaces are shared out among them (replay the .partitions file)")
+	private int partitions = 1;
+	public int getPartitions(){
+		return partitions;
+	}
+	
+	@Parameter(names = {"--vpMultiClient"}, description = "VenicePort server for many clients, which may connect and disconnect at any time")
+	private boolean vpMultiClient = false;
+	public boolean getVPMultiClient(){
+		return vpMultiClient;
+	}
 }
@@ -0,0 +1,469 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Deflater;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Output stream for log files, that decouples the writing thread from disk
+ * and compression.
+ * <p>
+ * Written bytes are collected in large direct <code>ByteBuffer</code>s.
+ * A full buffer is handed to a dedicated I/O thread, which compresses it
+ * (if GZIP is used) and writes it to the file via a <code>FileChannel</code>.
+ * Empty buffers are returned to a fixed pool, so the memory usage is bounded.
+ * If all buffers are in use, the writing thread waits for the I/O thread.
+ * <p>
+ * The flush policy bounds the amount of data that can be lost: a buffer is
+ * handed over early (and the compressor is flushed) as soon as
+ * <code>flushBytes</code> bytes or <code>flushMillis</code> ms of data have
+ * not been written to the file yet. The time limit is also checked by the
+ * I/O thread, so data is written even if no more data arrives.
+ * A flush ends the current GZIP member, so the file is valid up to this
+ * point, even if the process dies. With <code>setFsync</code> the file is
+ * also synchronized with the storage device.
+ * <p>
+ * Queue depth and write latency (time from handing a buffer over until it
+ * is written) can be requested during writing.
+ */
+public class AsyncLogOutputStream extends OutputStream{
+	
+	private static Logger logger;
+	static{
+		// setup logger
+		venice.lib.Configuration.setupLogger();
+		logger = Logger.getLogger(AsyncLogOutputStream.class);
+	}
+	
+	// a buffer handed over to the I/O thread
+	private static class Chunk{
+		final ByteBuffer buffer; // null marks the end of the stream
+		final long handOffTime; // ns
+		final boolean flush;
+		Chunk(ByteBuffer buffer, long handOffTime, boolean flush){
+			this.buffer = buffer;
+			this.handOffTime = handOffTime;
+			this.flush = flush;
+		}
+	}
+	
+	private final FileChannel channel;
+	private final OutputStream compressor; // null, if written raw
+	private final byte[] compressBuffer; // direct buffers can't be passed to Deflater
+	private final BlockingQueue<Chunk> filled;
+	private final BlockingQueue<ByteBuffer> free;
+	private final long flushBytes;
+	private final long flushMillis;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Thread ioThread;
+	private volatile boolean fsync = false;
+	
+	// state of the writing side, guarded by lock
+	private ByteBuffer current;
+	private long unflushedBytes = 0;
+	private long firstUnflushedTime = 0; // ms, 0 if everything is handed over
+	private boolean closed = false;
+	
+	// state of the I/O thread
+	private volatile IOException error;
+	private volatile long bytesWritten = 0;
+	private volatile long buffersWritten = 0;
+	private volatile long totalLatency = 0; // ns
+	private volatile long maxLatency = 0; // ns
+	
+	/**
+	 * Opens the file and starts the I/O thread.
+	 * 
+	 * @param path name of the file, an existing file will be overwritten
+	 * @param gzip <code>true</code> if the data should be compressed with GZIP
+	 * @param bufferSize size of a single buffer in bytes
+	 * @param bufferCount number of buffers (at least 2)
+	 * @param flushBytes maximum number of bytes, that are not handed to the I/O thread
+	 * @param flushMillis maximum time (ms), that data is not handed to the I/O thread
+	 * @throws IOException if the file can not be opened
+	 */
+	public AsyncLogOutputStream(String path, boolean gzip, int bufferSize, int bufferCount,
+			long flushBytes, long flushMillis) throws IOException{
+		this(path, gzip, bufferSize, bufferCount, flushBytes, flushMillis, Deflater.DEFAULT_COMPRESSION, 1);
+	}
+	
+	/**
+	 * Opens the file and starts the I/O thread.
+	 * 
+	 * @param path name of the file, an existing file will be overwritten
+	 * @param gzip <code>true</code> if the data should be compressed with GZIP
+	 * @param bufferSize size of a single buffer in bytes
+	 * @param bufferCount number of buffers (at least 2)
+	 * @param flushBytes maximum number of bytes, that are not handed to the I/O thread
+	 * @param flushMillis maximum time (ms), that data is not handed to the I/O thread
+	 * @param gzipLevel compression level (0-9 or <code>Deflater.DEFAULT_COMPRESSION</code>)
+	 * @param gzipThreads number of threads for compressing, see {@link ParallelGZIPOutputStream}
+	 * @throws IOException if the file can not be opened
+	 */
+	public AsyncLogOutputStream(String path, boolean gzip, int bufferSize, int bufferCount,
+			long flushBytes, long flushMillis, int gzipLevel, int gzipThreads) throws IOException{
+		if(bufferSize <= 0 || bufferCount < 2)
+			throw new IllegalArgumentException("bufferSize must be positive and bufferCount at least 2");
+		this.flushBytes = flushBytes;
+		this.flushMillis = flushMillis;
+		channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		if(gzip){
+			compressor = ParallelGZIPOutputStream.open(new ChannelOutputStream(channel),
+					gzipLevel, gzipThreads, true);
+			compressBuffer = new byte[bufferSize];
+		}
+		else{
+			compressor = null;
+			compressBuffer = null;
+		}
+		// every chunk holds a buffer, +1 for the end marker
+		filled = new ArrayBlockingQueue<Chunk>(bufferCount + 1);
+		free = new ArrayBlockingQueue<ByteBuffer>(bufferCount);
+		for(int i=1; i<bufferCount; i++)
+			free.add(ByteBuffer.allocateDirect(bufferSize));
+		current = ByteBuffer.allocateDirect(bufferSize);
+		
+		ioThread = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				runIO();
+			}
+		}, "VH_AsyncDiskIO");
+		ioThread.start();
+	}
+	
+	@Override
+	public void write(int b) throws IOException{
+		lock.lock();
+		try{
+			checkOpen();
+			current.put((byte) b);
+			if(! current.hasRemaining())
+				handOff(false);
+			applyFlushPolicy();
+		} finally{
+			lock.unlock();
+		}
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException{
+		lock.lock();
+		try{
+			checkOpen();
+			while(len > 0){
+				int n = Math.min(len, current.remaining());
+				current.put(b, off, n);
+				off += n;
+				len -= n;
+				if(! current.hasRemaining())
+					handOff(false);
+			}
+			applyFlushPolicy();
+		} finally{
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Hands all written data to the I/O thread. The method does not wait
+	 * until the data is written.
+	 */
+	@Override
+	public void flush() throws IOException{
+		lock.lock();
+		try{
+			checkOpen();
+			if(current.position() > 0 || unflushedBytes > 0)
+				handOff(true);
+		} finally{
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Writes all remaining data, finishes the compression, closes the file
+	 * and stops the I/O thread. Waits until all of this is done.
+	 * 
+	 * @throws IOException if an error occurred while writing in the I/O thread
+	 */
+	@Override
+	public void close() throws IOException{
+		lock.lock();
+		try{
+			if(closed) return;
+			handOff(true);
+			closed = true;
+			putChunk(new Chunk(null, System.nanoTime(), true));
+		} finally{
+			lock.unlock();
+		}
+		try{
+			ioThread.join();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while closing "+this, e);
+		}
+		if(error != null)
+			throw new IOException("asynchronous writing failed", error);
+	}
+	
+	/**
+	 * Sets, if the I/O thread synchronizes the file with the storage device
+	 * (<code>fsync</code>) after every flush.
+	 * 
+	 * @param fsync <code>true</code> to synchronize after every flush
+	 */
+	public void setFsync(boolean fsync){
+		this.fsync = fsync;
+	}
+	
+	/**
+	 * Returns the number of buffers waiting for the I/O thread.
+	 * @return the queue depth
+	 */
+	public int getQueueDepth(){
+		return filled.size();
+	}
+	
+	/**
+	 * Returns the average time from handing a buffer to the I/O thread
+	 * until it is written.
+	 * @return average write latency in ms
+	 */
+	public double getAverageWriteLatency(){
+		long n = buffersWritten;
+		return n == 0 ? 0 : totalLatency / 1e6 / n;
+	}
+	
+	/**
+	 * Returns the maximum time from handing a buffer to the I/O thread
+	 * until it is written.
+	 * @return maximum write latency in ms
+	 */
+	public double getMaxWriteLatency(){
+		return maxLatency / 1e6;
+	}
+	
+	/**
+	 * Returns the number of (uncompressed) bytes written by the I/O thread.
+	 * @return the number of written bytes
+	 */
+	public long getBytesWritten(){
+		return bytesWritten;
+	}
+	
+	/**
+	 * Returns the number of buffers written by the I/O thread.
+	 * @return the number of written buffers
+	 */
+	public long getBuffersWritten(){
+		return buffersWritten;
+	}
+	
+	private void checkOpen() throws IOException{
+		if(closed)
+			throw new IOException("stream is closed");
+		if(error != null)
+			throw new IOException("asynchronous writing failed", error);
+	}
+	
+	// must be called with lock held
+	private void applyFlushPolicy() throws IOException{
+		if(current.position() == 0 && unflushedBytes == 0)
+			return;
+		long now = System.currentTimeMillis();
+		if(firstUnflushedTime == 0)
+			firstUnflushedTime = now;
+		if(unflushedBytes + current.position() >= flushBytes ||
+		   now - firstUnflushedTime >= flushMillis)
+			handOff(true);
+	}
+	
+	// must be called with lock held
+	private void handOff(boolean flush) throws IOException{
+		int size = current.position();
+		current.flip();
+		putChunk(new Chunk(current, System.nanoTime(), flush));
+		try{
+			current = free.take();
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while waiting for a free buffer", e);
+		}
+		if(flush){
+			unflushedBytes = 0;
+			firstUnflushedTime = 0;
+		}
+		else
+			unflushedBytes += size;
+	}
+	
+	private void putChunk(Chunk chunk) throws IOException{
+		try{
+			filled.put(chunk);
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while handing over a buffer", e);
+		}
+	}
+	
+	/**
+	 * Called by the I/O thread, if no buffer arrived for some time.
+	 * Hands over the current buffer, if its data is due.
+	 */
+	private void flushIfDue() throws IOException{
+		// if the writing thread is active, it checks the policy itself
+		if(! lock.tryLock())
+			return;
+		try{
+			// handOff takes a free buffer, which is only guaranteed
+			// if no other buffer is waiting for this thread
+			if(closed || ! filled.isEmpty() || firstUnflushedTime == 0)
+				return;
+			if(System.currentTimeMillis() - firstUnflushedTime >= flushMillis)
+				handOff(true);
+		} finally{
+			lock.unlock();
+		}
+	}
+	
+	private void runIO(){
+		while(true){
+			Chunk chunk;
+			try{
+				chunk = filled.poll(flushMillis, TimeUnit.MILLISECONDS);
+				if(chunk == null){
+					if(error == null)
+						flushIfDue();
+					continue;
+				}
+			} catch(InterruptedException e){
+				// closing is done by the end marker only
+				continue;
+			} catch(IOException e){
+				setError(e);
+				continue;
+			}
+			
+			if(chunk.buffer == null){
+				finishFile();
+				return;
+			}
+			
+			int size = chunk.buffer.remaining();
+			if(error == null){
+				try{
+					writeChunk(chunk);
+				} catch(IOException e){
+					setError(e);
+				}
+			}
+			long latency = System.nanoTime() - chunk.handOffTime;
+			bytesWritten += size;
+			totalLatency += latency;
+			if(latency > maxLatency)
+				maxLatency = latency;
+			buffersWritten++;
+			
+			chunk.buffer.clear();
+			free.add(chunk.buffer);
+		}
+	}
+	
+	private void writeChunk(Chunk chunk) throws IOException{
+		ByteBuffer buffer = chunk.buffer;
+		if(compressor != null){
+			int size = buffer.remaining();
+			buffer.get(compressBuffer, 0, size);
+			compressor.write(compressBuffer, 0, size);
+			if(chunk.flush)
+				compressor.flush(); // ends the GZIP member
+		}
+		else{
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+		}
+		if(chunk.flush && fsync)
+			channel.force(false);
+	}
+	
+	private void finishFile(){
+		try{
+			// closing doesn't close the channel (see ChannelOutputStream)
+			if(compressor != null && error == null)
+				compressor.close();
+		} catch(IOException e){
+			setError(e);
+		}
+		try{
+			channel.close();
+		} catch(IOException e){
+			setError(e);
+		}
+	}
+	
+	private void setError(IOException e){
+		if(error == null){
+			logger.error("writing to log file failed: "+e.getMessage());
+			error = e;
+		}
+	}
+	
+	/**
+	 * Writes the compressed data to the file channel.
+	 */
+	private static class ChannelOutputStream extends OutputStream{
+		private final FileChannel channel;
+		
+		ChannelOutputStream(FileChannel channel){
+			this.channel = channel;
+		}
+		
+		@Override
+		public void write(int b) throws IOException{
+			write(new byte[]{(byte) b}, 0, 1);
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException{
+			ByteBuffer bb = ByteBuffer.wrap(b, off, len);
+			while(bb.hasRemaining())
+				channel.write(bb);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+/**
+ * Describes the binary log format, an alternative to XIO log files.
+ * <p>
+ * A binary log file starts with the magic bytes <code>VBIN</code> and a
+ * version byte. It is followed by records. Every record consists of a
+ * kind byte, the length of the body (as unsigned varint) and the body:
+ * <ul>
+ * <li><code>RECORD_SLOT</code>: an entry of the slot table. Defines a file
+ * specific slot id (varint), the scope (string) and the XIOMaps type code
+ * (string, e.g. <code>sffloat</code>). A slot is always defined before its
+ * first event.</li>
+ * <li><code>RECORD_EVENT</code>: timestamp (8 bytes), slot id (varint) and
+ * the value, as encoded by {@link venice.lib.parser.BinaryCodec}.</li>
+ * <li><code>RECORD_BLOCK</code>: a sequence of delta encoded events, see
+ * {@link DeltaBlockCodec}. Only used by files of version
+ * <code>VERSION_DELTA</code>.</li>
+ * </ul>
+ * Records of unknown kind are skipped by their length.
+ * The whole file can be compressed with GZIP.
+ * <p>
+ * Binary log files can be concatenated (e.g. the segments of a rotated
+ * log): the first magic byte is never used as record kind, so the reader
+ * recognizes the header of the next file and starts a new slot table.
+ * <p>
+ * The format is selected by file extension: a log file named
+ * <code>*.vbin</code> or <code>*.vbin.gz</code> is a binary log file,
+ * everything else is handled as XIO.
+ * 
+ * @see BinaryLogWriter
+ * @see BinaryLogReader
+ */
+public class BinaryLog {
+	
+	public final static byte[] MAGIC = {'V', 'B', 'I', 'N'};
+	public final static int VERSION = 1;
+	public final static int VERSION_DELTA = 2; // a file with delta encoded blocks
+	
+	public final static int RECORD_SLOT = 1;
+	public final static int RECORD_EVENT = 2;
+	public final static int RECORD_BLOCK = 3;
+	public final static int RECORD_HEADER = MAGIC[0]; // start of a concatenated file
+	
+	/**
+	 * Maximum number of events in a delta encoded block.
+	 */
+	public final static int MAX_BLOCK_EVENTS = 10000;
+	
+	public final static String FILE_EXTENSION = ".vbin";
+	
+	/**
+	 * Private constructor. This class can not be instantiated.
+	 */
+	private BinaryLog(){
+		// nothing
+	}
+	
+	/**
+	 * Checks by the file extension, if the given file is a binary log file.
+	 * 
+	 * @param filePath name of the log file
+	 * @return <code>true</code> if it is a binary log file, <code>false</code> if it is a XIO file
+	 */
+	public static boolean isBinaryLogFile(String filePath){
+		if(filePath == null) return false;
+		String name = filePath.toLowerCase();
+		return name.endsWith(FILE_EXTENSION) || name.endsWith(FILE_EXTENSION + ".gz");
+	}
+}
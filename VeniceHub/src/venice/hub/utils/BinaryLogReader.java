@@ -0,0 +1,325 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import venice.lib.ScopeDictionary;
+import venice.lib.parser.BinaryCodec;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOMaps;
+
+import static venice.lib.parser.XIOParser.INVALID_TIMESTAMP;
+
+/**
+ * Reads records of the binary log format from a stream.
+ * <p>
+ * Reading is done in two steps, like with XIO lines: <code>next</code>
+ * reads the next event record and returns only its timestamp, which is
+ * cheap. Only if the event is needed, <code>parseEvent</code> decodes
+ * the value. Slot records are processed by <code>next</code>.
+ * <p>
+ * Delta encoded blocks are decoded as a whole, when <code>next</code>
+ * reaches them, and their events are returned one by one.
+ * 
+ * @see BinaryLog
+ */
+public class BinaryLogReader {
+	
+	private DataInputStream in;
+	private byte[] record; // body of the last event record
+	private int recordLength;
+	private long recordTimestamp;
+	private int recordSize; // size of the last record in bytes, including kind and length
+	private long position; // number of bytes read from the stream
+	private int[] scopeIds; // scope id, by file specific slot id
+	private Class<?>[] types; // data type, by file specific slot id
+	private DeltaBlockCodec block;
+	private SlotEvent[] blockEvents; // decoded events of the last block
+	private int blockIndex; // index of the next event in blockEvents
+	private int blockEventSize; // average size of an event in the last block
+	private SlotEvent current; // the last event returned from a block
+	
+	/**
+	 * Creates a reader for the given stream.
+	 * 
+	 * @param in the source stream, positioned at the beginning of the file
+	 */
+	public BinaryLogReader(InputStream in){
+		this.in = new DataInputStream(in);
+		record = new byte[256];
+		scopeIds = new int[64];
+		Arrays.fill(scopeIds, ScopeDictionary.NO_ID);
+		types = new Class<?>[64];
+		block = new DeltaBlockCodec();
+		blockEvents = new SlotEvent[0];
+		blockIndex = 0;
+		recordTimestamp = INVALID_TIMESTAMP;
+		position = 0;
+	}
+	
+	/**
+	 * Reads and checks magic bytes and version.
+	 * 
+	 * @throws IOException if the stream is not a binary log of a supported version
+	 */
+	public void readHeader() throws IOException{
+		byte[] magic = new byte[BinaryLog.MAGIC.length];
+		in.readFully(magic);
+		if(!Arrays.equals(magic, BinaryLog.MAGIC))
+			throw new IOException("not a binary log file");
+		readVersion();
+		position += magic.length + 1;
+	}
+	
+	/**
+	 * Reads the header of a concatenated file (e.g. the next segment of a
+	 * rotated log), after its first magic byte was read as record kind.
+	 * The slot table of the previous file is not valid anymore.
+	 */
+	private void readNextHeader() throws IOException{
+		for(int i=1; i<BinaryLog.MAGIC.length; i++)
+			if(in.readUnsignedByte() != BinaryLog.MAGIC[i])
+				throw new IOException("malformed record");
+		readVersion();
+		position += BinaryLog.MAGIC.length + 1;
+		Arrays.fill(scopeIds, ScopeDictionary.NO_ID);
+		Arrays.fill(types, null);
+	}
+	
+	private void readVersion() throws IOException{
+		int version = in.readUnsignedByte();
+		if(version != BinaryLog.VERSION && version != BinaryLog.VERSION_DELTA)
+			throw new IOException("unsupported binary log version: " + version);
+	}
+	
+	/**
+	 * Reads records until the next event record and returns its timestamp.
+	 * 
+	 * @return the timestamp of the event
+	 * @throws EOFException if the end of the stream is reached
+	 * @throws IOException if reading fails or the data is malformed
+	 */
+	public long next() throws IOException{
+		if(blockIndex < blockEvents.length) return nextOfBlock();
+		while(true){
+			int kind = in.readUnsignedByte();
+			if(kind == BinaryLog.RECORD_HEADER){
+				readNextHeader();
+				continue;
+			}
+			int length = readLength();
+			if(length > record.length) record = new byte[Math.max(length, record.length * 2)];
+			in.readFully(record, 0, length);
+			position += recordSize;
+			switch(kind){
+			case BinaryLog.RECORD_EVENT:
+				if(length < 9) throw new IOException("malformed event record");
+				current = null;
+				recordLength = length;
+				recordTimestamp = readTimestamp(record);
+				return recordTimestamp;
+			case BinaryLog.RECORD_SLOT:
+				defineSlot(new DataInputStream(new ByteArrayInputStream(record, 0, length)));
+				break;
+			case BinaryLog.RECORD_BLOCK:
+				blockEvents = block.decode(record, 0, length, scopeIds, types);
+				blockIndex = 0;
+				if(blockEvents.length > 0){
+					blockEventSize = Math.max(1, recordSize / blockEvents.length);
+					return nextOfBlock();
+				}
+				break;
+			default:
+				// unknown records are skipped
+			}
+		}
+	}
+	
+	/**
+	 * Skips records, until at least the given number of bytes was read.
+	 * Slot records are still processed while skipping.
+	 * 
+	 * @param amount number of bytes to skip
+	 * @return number of bytes skipped
+	 * @throws EOFException if the end of the stream is reached
+	 * @throws IOException if reading fails or the data is malformed
+	 */
+	public long skip(long amount) throws IOException{
+		long start = position;
+		blockEvents = new SlotEvent[0]; // events of a partly read block are skipped too
+		blockIndex = 0;
+		current = null;
+		while(position - start < amount){
+			int kind = in.readUnsignedByte();
+			if(kind == BinaryLog.RECORD_HEADER){
+				readNextHeader();
+				continue;
+			}
+			int length = readLength();
+			if(kind == BinaryLog.RECORD_EVENT || kind == BinaryLog.RECORD_BLOCK){
+				skipFully(length);
+				position += recordSize;
+			}
+			else{
+				if(length > record.length) record = new byte[Math.max(length, record.length * 2)];
+				in.readFully(record, 0, length);
+				position += recordSize;
+				if(kind == BinaryLog.RECORD_SLOT)
+					defineSlot(new DataInputStream(new ByteArrayInputStream(record, 0, length)));
+			}
+		}
+		recordTimestamp = INVALID_TIMESTAMP;
+		return position - start;
+	}
+	
+	/**
+	 * Decodes the event read by the last call of <code>next</code>.
+	 * 
+	 * @return the event
+	 * @throws IOException if the data is malformed
+	 */
+	public SlotEvent parseEvent() throws IOException{
+		if(recordTimestamp == INVALID_TIMESTAMP) throw new IOException("no event record available");
+		if(current != null) return current;
+		DataInputStream body = new DataInputStream(new ByteArrayInputStream(record, 8, recordLength - 8));
+		int fileId = BinaryCodec.readVarInt(body);
+		if(fileId >= scopeIds.length || scopeIds[fileId] == ScopeDictionary.NO_ID)
+			throw new IOException("undefined slot id: " + fileId);
+		SlotEvent e = new SlotEvent(null, scopeIds[fileId], recordTimestamp);
+		BinaryCodec.readValue(body, e);
+		return e;
+	}
+	
+	/**
+	 * Returns the scope of the event read by the last call of
+	 * <code>next</code>, without decoding its value. Used to filter events
+	 * before they are decoded.
+	 * 
+	 * @return the id of the scope in the {@link ScopeDictionary}
+	 * @throws IOException if there is no event or the data is malformed
+	 */
+	public int getScopeId() throws IOException{
+		if(recordTimestamp == INVALID_TIMESTAMP) throw new IOException("no event record available");
+		if(current != null) return current.getScopeId();
+		int fileId = 0;
+		for(int i=8, shift=0; ; i++, shift+=7){
+			if(i >= recordLength || shift > 28) throw new IOException("malformed event record");
+			fileId |= (record[i] & 0x7F) << shift;
+			if((record[i] & 0x80) == 0) break;
+		}
+		if(fileId >= scopeIds.length || scopeIds[fileId] == ScopeDictionary.NO_ID)
+			throw new IOException("undefined slot id: " + fileId);
+		return scopeIds[fileId];
+	}
+	
+	/**
+	 * Returns the size of the last record (in bytes).
+	 * 
+	 * @return size of the last record
+	 */
+	public int getRecordSize(){
+		return recordSize;
+	}
+	
+	/**
+	 * Returns the number of bytes read from the (uncompressed) stream.
+	 * 
+	 * @return position in the stream
+	 */
+	public long getPosition(){
+		return position;
+	}
+	
+	/**
+	 * Closes the underlying stream.
+	 * 
+	 * @throws IOException if closing fails
+	 */
+	public void close() throws IOException{
+		in.close();
+	}
+	
+	private void defineSlot(DataInputStream body) throws IOException{
+		int fileId = BinaryCodec.readVarInt(body);
+		String scope = BinaryCodec.readString(body);
+		String typeCode = BinaryCodec.readString(body);
+		Class<?> type = XIOMaps.getStr2classMap().get(typeCode);
+		if(type == null) type = String.class; // use String for every unknown datatype
+		if(fileId >= scopeIds.length){
+			int oldLength = scopeIds.length;
+			scopeIds = Arrays.copyOf(scopeIds, Math.max(fileId + 1, oldLength * 2));
+			Arrays.fill(scopeIds, oldLength, scopeIds.length, ScopeDictionary.NO_ID);
+		}
+		if(fileId >= types.length) types = Arrays.copyOf(types, scopeIds.length);
+		scopeIds[fileId] = ScopeDictionary.getId(scope, type);
+		types[fileId] = type;
+	}
+	
+	private long nextOfBlock(){
+		current = blockEvents[blockIndex++];
+		recordSize = blockEventSize;
+		recordTimestamp = current.getTime();
+		return recordTimestamp;
+	}
+	
+	/**
+	 * Reads the length of a record and sets <code>recordSize</code>.
+	 */
+	private int readLength() throws IOException{
+		int length = 0;
+		int bytes = 1; // kind byte
+		for(int shift = 0; ; shift += 7){
+			int b = in.readUnsignedByte();
+			bytes++;
+			length |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) break;
+			if(shift > 28) throw new IOException("malformed record length");
+		}
+		recordSize = bytes + length;
+		return length;
+	}
+	
+	private void skipFully(int n) throws IOException{
+		while(n > 0){
+			int skipped = in.skipBytes(n);
+			if(skipped <= 0){
+				in.readUnsignedByte(); // throws EOFException at the end of the stream
+				skipped = 1;
+			}
+			n -= skipped;
+		}
+	}
+	
+	private static long readTimestamp(byte[] b){
+		long v = 0;
+		for(int i=0; i<8; i++) v = (v << 8) | (b[i] & 0xFF);
+		return v;
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import venice.lib.ScopeDictionary;
+import venice.lib.parser.BinaryCodec;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOMaps;
+
+/**
+ * Writes events as records of the binary log format to a stream.
+ * <p>
+ * Keeps track of the slot table, so that every slot is defined in the
+ * file before it is used by an event.
+ * <p>
+ * With delta encoding, events are collected into blocks (see
+ * {@link DeltaBlockCodec}). A block is written, when it spans the keyframe
+ * interval, when it is full, or when the writer is flushed or finished.
+ * 
+ * @see BinaryLog
+ */
+public class BinaryLogWriter {
+	
+	private final static String DEFAULT_TYPE_CODE = "sfstring";
+	
+	private OutputStream out;
+	private ByteArrayOutputStream body; // body of the actual record
+	private DataOutputStream bodyOut;
+	private DataOutputStream headOut; // kind and length of records
+	private int[] fileIds; // file specific slot id, by scope id
+	private Class<?>[] fileTypes; // type used for encoding, by file specific slot id
+	private int slotCount;
+	private DeltaBlockCodec block; // null, if delta encoding is not used
+	private long keyframeInterval;
+	
+	/**
+	 * Creates a writer for the given stream. Nothing is written until
+	 * <code>writeHeader</code> is called.
+	 * 
+	 * @param out the target stream
+	 */
+	public BinaryLogWriter(OutputStream out){
+		this(out, false, 0);
+	}
+	
+	/**
+	 * Creates a writer for the given stream. Nothing is written until
+	 * <code>writeHeader</code> is called.
+	 * 
+	 * @param out the target stream
+	 * @param deltaEncoding <code>true</code> to write delta encoded blocks
+	 * @param keyframeInterval maximum time span of a block in ms
+	 */
+	public BinaryLogWriter(OutputStream out, boolean deltaEncoding, long keyframeInterval){
+		this.out = out;
+		this.block = deltaEncoding ? new DeltaBlockCodec() : null;
+		this.keyframeInterval = keyframeInterval;
+		body = new ByteArrayOutputStream(256);
+		bodyOut = new DataOutputStream(body);
+		headOut = new DataOutputStream(out);
+		fileIds = new int[64];
+		Arrays.fill(fileIds, -1);
+		fileTypes = new Class<?>[64];
+		slotCount = 0;
+	}
+	
+	/**
+	 * Writes magic bytes and version of the format.
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	public void writeHeader() throws IOException{
+		out.write(BinaryLog.MAGIC);
+		out.write(block != null ? BinaryLog.VERSION_DELTA : BinaryLog.VERSION);
+	}
+	
+	/**
+	 * Writes an event. If the slot of the event is new to this file,
+	 * a slot record will be written first.
+	 * 
+	 * @param se the event
+	 * @throws IOException if writing fails
+	 */
+	public void writeEvent(SlotEvent se) throws IOException{
+		int fileId = getFileId(se);
+		if(block != null){
+			long ts = se.getTime();
+			if(block.count() > 0 &&
+			   (ts - block.getFirstTimestamp() >= keyframeInterval ||
+			    ts < block.getFirstTimestamp() ||
+			    block.count() >= BinaryLog.MAX_BLOCK_EVENTS)){
+				writeBlock();
+			}
+			block.add(fileId, fileTypes[fileId], se);
+			return;
+		}
+		body.reset();
+		bodyOut.writeLong(se.getTime());
+		BinaryCodec.writeVarInt(bodyOut, fileId);
+		BinaryCodec.writeValue(bodyOut, fileTypes[fileId], se.getValue());
+		writeRecord(BinaryLog.RECORD_EVENT);
+	}
+	
+	/**
+	 * Returns the file specific slot id for the scope of the event,
+	 * defining the slot, if it is used for the first time.
+	 */
+	private int getFileId(SlotEvent se) throws IOException{
+		int scopeId = se.getScopeId();
+		if(scopeId >= fileIds.length){
+			int oldLength = fileIds.length;
+			fileIds = Arrays.copyOf(fileIds, Math.max(scopeId + 1, oldLength * 2));
+			Arrays.fill(fileIds, oldLength, fileIds.length, -1);
+		}
+		if(fileIds[scopeId] >= 0) return fileIds[scopeId];
+		
+		// the slot is new, so it has to be defined
+		int fileId = slotCount++;
+		if(fileId >= fileTypes.length) fileTypes = Arrays.copyOf(fileTypes, fileTypes.length * 2);
+		String typeCode = XIOMaps.getClass2strMap().get(se.getType());
+		Class<?> type = se.getType();
+		if(typeCode == null){
+			// like with XIO, use string for types that are not recognized
+			typeCode = DEFAULT_TYPE_CODE;
+			type = String.class;
+		}
+		fileTypes[fileId] = type;
+		fileIds[scopeId] = fileId;
+		
+		body.reset();
+		BinaryCodec.writeVarInt(bodyOut, fileId);
+		BinaryCodec.writeString(bodyOut, ScopeDictionary.get(scopeId).getScope());
+		BinaryCodec.writeString(bodyOut, typeCode);
+		writeRecord(BinaryLog.RECORD_SLOT);
+		return fileId;
+	}
+	
+	private void writeRecord(int kind) throws IOException{
+		headOut.writeByte(kind);
+		BinaryCodec.writeVarInt(headOut, body.size());
+		body.writeTo(out);
+	}
+	
+	private void writeBlock() throws IOException{
+		body.reset();
+		block.writeBlock(bodyOut);
+		writeRecord(BinaryLog.RECORD_BLOCK);
+	}
+	
+	/**
+	 * Writes the pending block, if delta encoding is used.
+	 * Should be called before the stream gets closed.
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	public void finish() throws IOException{
+		if(block != null && block.count() > 0) writeBlock();
+	}
+	
+	/**
+	 * Writes the pending block (if any) and flushes the underlying stream.
+	 * 
+	 * @throws IOException if flushing fails
+	 */
+	public void flush() throws IOException{
+		finish();
+		out.flush();
+	}
+}
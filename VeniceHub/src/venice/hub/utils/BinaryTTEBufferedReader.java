@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import venice.hub.VeniceHub;
+import venice.lib.parser.SlotEvent;
+
+import static venice.lib.parser.XIOParser.INVALID_TIMESTAMP;
+
+/**
+ * A {@link TTEBufferedReader} for log files in the binary log format.
+ * <p>
+ * Buffering, seeking and the communication with the
+ * {@link venice.hub.DiskReader} are inherited, only the reading of
+ * records is replaced. Seeking is faster than with XIO files, because
+ * the timestamp of a record can be read without parsing the value, and
+ * when skipping, records are skipped by their length without decoding.
+ * 
+ * @see BinaryLog
+ * @see BinaryLogReader
+ */
+public class BinaryTTEBufferedReader extends TTEBufferedReader {
+	
+	// no initializers here, because these fields are already
+	// set by initStream while the super constructor is running
+	private BinaryLogReader reader;
+	private boolean validFile;
+	
+	/**
+	 * @param fp filepath of the log file
+	 */
+	public BinaryTTEBufferedReader(String fp){
+		super(fp);
+	}
+	
+	@Override
+	protected void initStream(String filePath){
+		super.initStream(filePath);
+		reader = new BinaryLogReader(new BufferedInputStream(inStream));
+		try {
+			reader.readHeader();
+			validFile = true;
+		} catch (IOException e) {
+			VeniceHub.message("Error: Can't read " + filePath + " as binary log file (" + e.getMessage() + ")");
+			validFile = false;
+		}
+	}
+	
+	@Override
+	protected SlotEvent readEvent(){
+		if(readTimestamp() == INVALID_TIMESTAMP || ! acceptLastRecord()) return null;
+		return parseLastRecord();
+	}
+	
+	@Override
+	protected boolean acceptLastRecord(){
+		if(filter.acceptsAll()) return true;
+		try {
+			return filter.accepts(reader.getScopeId());
+		} catch (IOException e) {
+			return true; // the error is reported by parseLastRecord
+		}
+	}
+	
+	@Override
+	protected long readTimestamp(){
+		if(validFile){
+			try {
+				return reader.next();
+			} catch (EOFException e) {
+				// end of file reached
+			} catch (IOException e) {
+				VeniceHub.message("Error while reading binary log file: " + e.getMessage());
+			}
+		}
+		endOfFile = true;
+		return INVALID_TIMESTAMP;
+	}
+	
+	@Override
+	protected SlotEvent parseLastRecord(){
+		try {
+			return reader.parseEvent();
+		} catch (IOException e) {
+			VeniceHub.message("Error while parsing binary log record: " + e.getMessage());
+			return null;
+		}
+	}
+	
+	@Override
+	protected int getLastRecordSize(){
+		return reader.getRecordSize();
+	}
+	
+	@Override
+	protected void skipBytes(long amount) throws IOException{
+		if(!validFile) return;
+		try {
+			reader.skip(amount);
+		} catch (EOFException e) {
+			// the next read will detect the end of file
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.IOException;
+
+/**
+ * Reads bits, that were written by a {@link BitWriter}, from a byte array.
+ * 
+ * @see BitWriter
+ */
+public class BitReader {
+	
+	private byte[] buffer;
+	private long position; // in bits
+	private long end; // in bits
+	
+	/**
+	 * @param buffer the array holding the bits
+	 * @param offset index of the first byte
+	 * @param length number of bytes
+	 */
+	public BitReader(byte[] buffer, int offset, int length){
+		this.buffer = buffer;
+		this.position = (long) offset << 3;
+		this.end = (long)(offset + length) << 3;
+	}
+	
+	/**
+	 * Reads a single bit.
+	 * 
+	 * @return the bit
+	 * @throws IOException if there are no more bits
+	 */
+	public boolean readBit() throws IOException{
+		if(position >= end) throw new IOException("end of bit stream");
+		boolean bit = (buffer[(int)(position >>> 3)] & (0x80 >>> (position & 7))) != 0;
+		position++;
+		return bit;
+	}
+	
+	/**
+	 * Reads <code>n</code> bits.
+	 * 
+	 * @param n number of bits (0 to 64)
+	 * @return the bits, in the lowest bits of the value
+	 * @throws IOException if there are not enough bits
+	 */
+	public long readBits(int n) throws IOException{
+		if(position + n > end) throw new IOException("end of bit stream");
+		long value = 0;
+		while(n > 0){
+			int available = 8 - (int)(position & 7);
+			int take = Math.min(available, n);
+			int bits = (buffer[(int)(position >>> 3)] >>> (available - take)) & ((1 << take) - 1);
+			value = (value << take) | bits;
+			position += take;
+			n -= take;
+		}
+		return value;
+	}
+}
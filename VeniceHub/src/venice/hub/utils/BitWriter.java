@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Collects single bits and groups of bits into a byte array.
+ * Bits are written from the most significant to the least significant bit.
+ * 
+ * @see BitReader
+ */
+public class BitWriter {
+	
+	private byte[] buffer;
+	private int bitCount;
+	
+	public BitWriter(){
+		buffer = new byte[256];
+		bitCount = 0;
+	}
+	
+	/**
+	 * Writes a single bit.
+	 * 
+	 * @param bit the bit to be written
+	 */
+	public void writeBit(boolean bit){
+		ensureCapacity(1);
+		if(bit) buffer[bitCount >>> 3] |= 0x80 >>> (bitCount & 7);
+		bitCount++;
+	}
+	
+	/**
+	 * Writes the lowest <code>n</code> bits of the value.
+	 * 
+	 * @param value the bits to be written
+	 * @param n number of bits (0 to 64)
+	 */
+	public void writeBits(long value, int n){
+		ensureCapacity(n);
+		while(n > 0){
+			int free = 8 - (bitCount & 7); // free bits in the actual byte
+			int take = Math.min(free, n);
+			int bits = (int)(value >>> (n - take)) & ((1 << take) - 1);
+			buffer[bitCount >>> 3] |= bits << (free - take);
+			bitCount += take;
+			n -= take;
+		}
+	}
+	
+	/**
+	 * Returns the number of bytes needed for the written bits.
+	 * 
+	 * @return size in bytes
+	 */
+	public int size(){
+		return (bitCount + 7) >>> 3;
+	}
+	
+	/**
+	 * Writes the collected bits (padded to full bytes) to the stream.
+	 * 
+	 * @param out the target
+	 * @throws IOException if writing fails
+	 */
+	public void writeTo(OutputStream out) throws IOException{
+		out.write(buffer, 0, size());
+	}
+	
+	/**
+	 * Removes all bits.
+	 */
+	public void reset(){
+		Arrays.fill(buffer, 0, size(), (byte) 0);
+		bitCount = 0;
+	}
+	
+	private void ensureCapacity(int bits){
+		int needed = (bitCount + bits + 7) >>> 3;
+		if(needed > buffer.length) buffer = Arrays.copyOf(buffer, Math.max(needed, buffer.length * 2));
+	}
+}
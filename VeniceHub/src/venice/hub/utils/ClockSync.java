@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps the replay synchronized with the clock of an external media player,
+ * which reports its media time regularly (e.g. the ELAN mod).
+ * <p>
+ * The drift is the difference between the replay position and the media
+ * time. Small drifts are corrected by slewing: the correction of a sync is
+ * spread evenly over the time until the next sync, so that the rate of the
+ * replay differs from real time by at most the slew rate, and nothing has
+ * to be flushed or jumps. Only if the drift is above the threshold (e.g.
+ * after the media player jumped), the replay seeks to the media time.
+ */
+public class ClockSync {
+	private static Logger logger;
+	static {
+		// setup logger as early as possible
+		venice.lib.Configuration.setupLogger();
+		logger = Logger.getLogger(ClockSync.class);
+	}
+	
+	/**
+	 * The replay, which is kept synchronized.
+	 */
+	public interface Replay {
+		/**
+		 * @return the actual position of the replay in ms
+		 */
+		long getPosition();
+		
+		/**
+		 * Delays the replay by the given time (or brings it forward, if negative),
+		 * spread evenly over the duration. Replaces a slew that is not finished.
+		 * @param ms the time in ms, less than the duration
+		 * @param duration the time in ms until the replay is delayed by <code>ms</code>
+		 */
+		void slew(long ms, long duration);
+		
+		/**
+		 * Seeks the replay to a position and plays from there.
+		 * @param position the position in ms
+		 */
+		void seek(long position);
+	}
+	
+	private static final long MAX_INTERVAL = 1000; // ms, longer pauses between syncs are not slewed for
+	
+	private final Replay replay;
+	private final long threshold;
+	private final double slewRate;
+	private long lastSync = -1; // time of the last sync
+	
+	// statistics
+	private long syncs;
+	private long seeks;
+	private long lastDrift;
+	private long maxDrift;
+	private long sumDrift; // of the absolute drifts
+	private long slewed; // of the absolute corrections
+	
+	/**
+	 * @param replay the replay to keep synchronized
+	 * @param threshold drift in ms, above which the replay seeks
+	 * @param slewRate maximum change of the replay rate, e.g. 0.05 for 5 percent
+	 */
+	public ClockSync(Replay replay, long threshold, double slewRate){
+		this.replay = replay;
+		this.threshold = threshold;
+		this.slewRate = slewRate;
+	}
+	
+	/**
+	 * Synchronizes the replay with the media time.
+	 * 
+	 * @param mediaTime the position of the media player in ms
+	 * @param now the actual time in ms
+	 * @return the drift before the correction in ms, positive if the replay is ahead
+	 */
+	public synchronized long sync(long mediaTime, long now){
+		long drift = replay.getPosition() - mediaTime;
+		long interval = lastSync < 0 ? 0 : Math.min(now - lastSync, MAX_INTERVAL);
+		lastSync = now;
+		syncs++;
+		lastDrift = drift;
+		sumDrift += Math.abs(drift);
+		maxDrift = Math.max(maxDrift, Math.abs(drift));
+		if(Math.abs(drift) > threshold){
+			logger.info("drift of "+drift+" ms, seeking to "+mediaTime);
+			seeks++;
+			replay.seek(mediaTime);
+			return drift;
+		}
+		// not more than the slew rate allows, over the time until the next sync (like the last one)
+		long step = (long) (interval * slewRate);
+		long correction = Math.max(-step, Math.min(step, drift));
+		if(correction != 0){
+			replay.slew(correction, interval);
+			slewed += Math.abs(correction);
+		}
+		logger.debug("drift of "+drift+" ms, slewed by "+correction+" ms");
+		return drift;
+	}
+	
+	/**
+	 * @return number of syncs
+	 */
+	public synchronized long getSyncs(){
+		return syncs;
+	}
+	
+	/**
+	 * @return number of seeks, because the drift was above the threshold
+	 */
+	public synchronized long getSeeks(){
+		return seeks;
+	}
+	
+	/**
+	 * @return the drift of the last sync in ms
+	 */
+	public synchronized long getLastDrift(){
+		return lastDrift;
+	}
+	
+	/**
+	 * @return the largest absolute drift in ms
+	 */
+	public synchronized long getMaxDrift(){
+		return maxDrift;
+	}
+	
+	/**
+	 * @return the mean absolute drift in ms
+	 */
+	public synchronized double getMeanDrift(){
+		return syncs == 0 ? 0 : (double) sumDrift / syncs;
+	}
+	
+	/**
+	 * @return sum of the absolute corrections by slewing in ms
+	 */
+	public synchronized long getSlewed(){
+		return slewed;
+	}
+	
+	/**
+	 * Returns the drift statistics in a line.
+	 */
+	@Override
+	public synchronized String toString(){
+		return String.format("%d syncs, %d seeks, drift: last %d ms, mean %.1f ms, max %d ms, slewed %d ms",
+				syncs, seeks, lastDrift, getMeanDrift(), maxDrift, slewed);
+	}
+}
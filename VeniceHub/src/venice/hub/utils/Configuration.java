@@ -25,6 +25,8 @@ package venice.hub.utils;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.List;
+
 import org.apache.log4j.Logger;
 
 import com.beust.jcommander.JCommander;
@@ -142,6 +144,43 @@ public class Configuration {
     private int vpPort = 0; // for VenicePort connection
     private String vpFile = null;
     private boolean maxprio = false;
+    private boolean deltaEncoding = false; // for binary log files
+    private long keyframeInterval = 1000; // ms, for delta encoded binary log files
+    private boolean asyncWrite = false;
+    private int writeBufferSize = 1 << 20; // bytes, for asynchronous writing
+    private int writeBuffers = 4; // for asynchronous writing
+    private long flushBytes = 4 << 20; // for asynchronous writing
+    private long flushInterval = 1000; // ms, for asynchronous writing
+    private int gzipLevel = -1; // Deflater.DEFAULT_COMPRESSION
+    private int gzipThreads = 1;
+    private long rotateSize = 0; // bytes, 0 for no rotation
+    private long rotateInterval = 0; // ms, 0 for no rotation
+    private long syncInterval = 0; // ms, 0 for no sync points
+    private boolean fsync = false;
+    private List<String> includedScopes = new ArrayList<String>();
+    private List<String> excludedScopes = new ArrayList<String>();
+    private List<String> mergeFiles = new ArrayList<String>();
+    private List<Long> fileOffsets = new ArrayList<Long>(); // ms, in the order logFilePath, mergeFiles
+    private boolean inMemory = false;
+    private long memoryLimit = 0; // bytes, 0 for half of the maximum heap size
+    private boolean offHeap = false;
+    private String offHeapDir = null; // null for direct memory
+    private long bufferMemory = 0; // bytes, 0 for no limit by memory
+    private long bufferThresholdMemory = 0; // bytes, 0 for a tenth of bufferMemory
+    private long queueMemory = 0; // bytes, 0 for no limit by memory
+    private long snapshotInterval = 0; // ms, 0 for no snapshots
+    private long syncThreshold = 500; // ms
+    private double syncSlew = 5; // percent
+    private double speed = 1; // of the replay
+    private long preRoll = 500; // ms, 0 for no pre-roll
+    private Connection timeShift = null; // target of the time-shifted replay, null for none
+    private long timeShiftDelay = 60000; // ms
+    private long timeShiftMemory = 64L << 20; // bytes
+    private long preTrigger = 0; // ms, 0 for no capture mode
+    private long postTrigger = 10000; // ms
+    private long captureMemory = 256L << 20; // bytes
+    private int partitions = 1; // log files written in parallel
+    private boolean vpMultiClient = false; // VenicePort server for many clients
     
     // singleton constructor
     private static Configuration configuration = new Configuration();
@@ -223,6 +262,125 @@ public class Configuration {
         vpPort = ap.getVPPort();
         vpFile = ap.getVPFile();
         maxprio = ap.getMaxPrio();
+        deltaEncoding = ap.getDeltaEncoding();
+        keyframeInterval = ap.getKeyframeInterval();
+        asyncWrite = ap.getAsyncWrite();
+        writeBufferSize = ap.getWriteBufferSize();
+        writeBuffers = ap.getWriteBuffers();
+        flushBytes = ap.getFlushBytes();
+        flushInterval = ap.getFlushInterval();
+        gzipLevel = ap.getGzipLevel();
+        gzipThreads = ap.getGzipThreads();
+        rotateSize = ap.getRotateSize();
+        rotateInterval = ap.getRotateInterval();
+        syncInterval = ap.getSyncInterval();
+        fsync = ap.getFsync();
+        includedScopes = ap.getIncludedScopes();
+        excludedScopes = ap.getExcludedScopes();
+        mergeFiles = ap.getMergeFiles();
+        fileOffsets = new ArrayList<Long>();
+        for(String offset : ap.getFileOffsets()){
+        	try{
+        		fileOffsets.add(Long.parseLong(offset));
+        	}catch(NumberFormatException e){
+        		logger.error("Invalid file offset "+offset);
+        		return false;
+        	}
+        }
+        if(fileOffsets.size() > mergeFiles.size() + 1){
+        	logger.error("More file offsets than replayed files");
+        	return false;
+        }
+        inMemory = ap.getInMemory();
+        memoryLimit = ap.getMemoryLimit();
+        offHeap = ap.getOffHeap();
+        offHeapDir = ap.getOffHeapDir();
+        bufferMemory = ap.getBufferMemory();
+        bufferThresholdMemory = ap.getBufferThresholdMemory();
+        queueMemory = ap.getQueueMemory();
+        if(bufferMemory > 0 && bufferThresholdMemory >= bufferMemory){
+        	logger.error("Buffer threshold memory must be smaller than the buffer memory");
+        	return false;
+        }
+        snapshotInterval = ap.getSnapshotInterval();
+        if(snapshotInterval < 0){
+        	logger.error("Invalid snapshot interval "+snapshotInterval);
+        	return false;
+        }
+        syncThreshold = ap.getSyncThreshold();
+        if(syncThreshold < 0){
+        	logger.error("Invalid sync threshold "+syncThreshold);
+        	return false;
+        }
+        syncSlew = ap.getSyncSlew();
+        if(syncSlew < 0 || syncSlew >= 100){
+        	logger.error("Invalid sync slew "+syncSlew+", has to be at least 0 and below 100 (percent)");
+        	return false;
+        }
+        speed = ap.getSpeed();
+        if(speed < ReplayClock.MIN_SPEED || speed > ReplayClock.MAX_SPEED){
+        	logger.error("Invalid speed "+speed+", has to be between "+ReplayClock.MIN_SPEED+" and "+ReplayClock.MAX_SPEED);
+        	return false;
+        }
+        preRoll = ap.getPreRoll();
+        if(preRoll < 0){
+        	logger.error("Invalid pre-roll "+preRoll);
+        	return false;
+        }
+        timeShift = ap.getTimeShift();
+        if(timeShift != null){
+        	if(target != Connection.DISK || source == Connection.DISK){
+        		logger.error("A time-shifted replay needs live input recorded to disk");
+        		return false;
+        	}
+        	if(timeShift != Connection.IIO && timeShift != Connection.RSB || timeShift == source){
+        		logger.error("Invalid target for the time-shifted replay, has to be IIO or RSB and not the input");
+        		return false;
+        	}
+        }
+        timeShiftDelay = ap.getTimeShiftDelay();
+        if(timeShiftDelay < 0){
+        	logger.error("Invalid time-shift delay "+timeShiftDelay);
+        	return false;
+        }
+        timeShiftMemory = ap.getTimeShiftMemory();
+        if(timeShiftMemory <= 0){
+        	logger.error("Invalid time-shift memory "+timeShiftMemory);
+        	return false;
+        }
+        preTrigger = ap.getPreTrigger();
+        if(preTrigger < 0){
+        	logger.error("Invalid pre-trigger time "+preTrigger);
+        	return false;
+        }
+        if(preTrigger > 0 && (target != Connection.DISK || source == Connection.DISK || timeShift != null)){
+        	logger.error("The capture mode needs live input recorded to disk, and no time-shifted replay");
+        	return false;
+        }
+        postTrigger = ap.getPostTrigger();
+        if(postTrigger < 0){
+        	logger.error("Invalid post-trigger time "+postTrigger);
+        	return false;
+        }
+        captureMemory = ap.getCaptureMemory();
+        if(captureMemory <= 0){
+        	logger.error("Invalid capture memory "+captureMemory);
+        	return false;
+        }
+        partitions = ap.getPartitions();
+        if(partitions < 1 || partitions > 99){
+        	logger.error("Invalid number of partitions "+partitions+", has to be between 1 and 99");
+        	return false;
+        }
+        if(partitions > 1 && (target != Connection.DISK || preTrigger > 0 || timeShift != null)){
+        	logger.error("Partitions are only possible for recording to disk, without capture mode and time-shifted replay");
+        	return false;
+        }
+        vpMultiClient = ap.getVPMultiClient();
+        if(vpMultiClient && source != Connection.VP){
+        	logger.error("The VenicePort server for many clients needs the source VP");
+        	return false;
+        }
         
         return true;
     }
@@ -256,6 +414,106 @@ public class Configuration {
     		System.out.println();
     	}
     	
+    	if(deltaEncoding){
+    		System.out.println("--deltaEncoding");
+    		System.out.println();
+    		System.out.println("--keyframeInterval");
+    		System.out.println(keyframeInterval);
+    		System.out.println();
+    	}
+    	
+    	if(asyncWrite){
+    		System.out.println("--asyncWrite");
+    		System.out.println();
+    		System.out.println("--writeBufferSize");
+    		System.out.println(writeBufferSize);
+    		System.out.println();
+    		System.out.println("--writeBuffers");
+    		System.out.println(writeBuffers);
+    		System.out.println();
+    		System.out.println("--flushBytes");
+    		System.out.println(flushBytes);
+    		System.out.println();
+    		System.out.println("--flushInterval");
+    		System.out.println(flushInterval);
+    		System.out.println();
+    	}
+    	
+    	if(! writeRaw){
+    		System.out.println("--gzipLevel");
+    		System.out.println(gzipLevel);
+    		System.out.println();
+    		System.out.println("--gzipThreads");
+    		System.out.println(gzipThreads);
+    		System.out.println();
+    	}
+    	
+    	if(isRotating()){
+    		System.out.println("--rotateSize");
+    		System.out.println(rotateSize);
+    		System.out.println();
+    		System.out.println("--rotateInterval");
+    		System.out.println(rotateInterval);
+    		System.out.println();
+    	}
+    	
+    	if(syncInterval > 0){
+    		System.out.println("--syncInterval");
+    		System.out.println(syncInterval);
+    		System.out.println();
+    	}
+    	
+    	if(fsync){
+    		System.out.println("--fsync");
+    		System.out.println();
+    	}
+    	
+    	for(String pattern : includedScopes){
+    		System.out.println("--include");
+    		System.out.println(pattern);
+    		System.out.println();
+    	}
+    	
+    	for(String pattern : excludedScopes){
+    		System.out.println("--exclude");
+    		System.out.println(pattern);
+    		System.out.println();
+    	}
+    	
+    	for(String file : mergeFiles){
+    		System.out.println("--merge");
+    		System.out.println(file);
+    		System.out.println();
+    	}
+    	
+    	for(long offset : fileOffsets){
+    		System.out.println("--fileOffset");
+    		System.out.println(offset);
+    		System.out.println();
+    	}
+    	
+    	if(inMemory){
+    		System.out.println("--inMemory");
+    		System.out.println();
+    	}
+    	
+    	if(memoryLimit != 0){
+    		System.out.println("--memoryLimit");
+    		System.out.println(memoryLimit);
+    		System.out.println();
+    	}
+    	
+    	if(offHeap){
+    		System.out.println("--offHeap");
+    		System.out.println();
+    	}
+    	
+    	if(offHeapDir != null){
+    		System.out.println("--offHeapDir");
+    		System.out.println(offHeapDir);
+    		System.out.println();
+    	}
+    	
     	if(slotFile != null){
     		System.out.println("--slotfile");
     		System.out.println(slotFile);
@@ -372,6 +630,85 @@ public class Configuration {
     	System.out.println(bufferThreshold);
     	System.out.println();
     	
+    	if(bufferMemory > 0){
+    		System.out.println("--bufferMemory");
+    		System.out.println(bufferMemory);
+    		System.out.println();
+    		
+    		System.out.println("--bufferThresholdMemory");
+    		System.out.println(getBufferThresholdMemory());
+    		System.out.println();
+    	}
+    	
+    	if(queueMemory > 0){
+    		System.out.println("--queueMemory");
+    		System.out.println(queueMemory);
+    		System.out.println();
+    	}
+    	
+    	if(snapshotInterval > 0){
+    		System.out.println("--snapshotInterval");
+    		System.out.println(snapshotInterval);
+    		System.out.println();
+    	}
+    	
+    	System.out.println("--syncThreshold");
+    	System.out.println(syncThreshold);
+    	System.out.println();
+    	
+    	System.out.println("--syncSlew");
+    	System.out.println(syncSlew);
+    	System.out.println();
+    	
+    	if(speed != 1){
+    		System.out.println("--speed");
+    		System.out.println(speed);
+    		System.out.println();
+    	}
+    	
+    	System.out.println("--preRoll");
+    	System.out.println(preRoll);
+    	System.out.println();
+    	
+    	if(timeShift != null){
+    		System.out.println("--timeShift");
+    		System.out.println(timeShift == Connection.IIO ? "IIO" : "RSB");
+    		System.out.println();
+    		
+    		System.out.println("--timeShiftDelay");
+    		System.out.println(timeShiftDelay);
+    		System.out.println();
+    		
+    		System.out.println("--timeShiftMemory");
+    		System.out.println(timeShiftMemory);
+    		System.out.println();
+    	}
+    	
+    	if(partitions > 1){
+    		System.out.println("--partitions");
+    		System.out.println(partitions);
+    		System.out.println();
+    	}
+    	
+    	if(vpMultiClient){
+    		System.out.println("--vpMultiClient");
+    		System.out.println();
+    	}
+    	
+    	if(preTrigger > 0){
+    		System.out.println("--preTrigger");
+    		System.out.println(preTrigger);
+    		System.out.println();
+    		
+    		System.out.println("--postTrigger");
+    		System.out.println(postTrigger);
+    		System.out.println();
+    		
+    		System.out.println("--captureMemory");
+    		System.out.println(captureMemory);
+    		System.out.println();
+    	}
+    	
     	System.out.println("--bufferMinimumSkip");
     	System.out.println(bufferMinimumSkipAmount);
     	System.out.println();
@@ -901,5 +1238,353 @@ public class Configuration {
 	public boolean isMaxPrio(){
 		return maxprio;
 	}
+	
+	/**
+	 * Returns <code>true</code> if binary log files are written with
+	 * delta encoded blocks.
+	 * @return <code>true</code> if delta encoding is used for binary log files
+	 */
+	public boolean isDeltaEncoding(){
+		return deltaEncoding;
+	}
+	
+	/**
+	 * Returns the maximum time span of a delta encoded block in binary
+	 * log files. Every block starts with full values (a keyframe), so this
+	 * is also the maximum distance between keyframes.
+	 * @return keyframe interval in ms
+	 */
+	public long getKeyframeInterval(){
+		return keyframeInterval;
+	}
+	
+	/**
+	 * Returns <code>true</code> if log files are written asynchronously
+	 * by a separate I/O thread.
+	 * @return <code>true</code> if asynchronous writing is used
+	 */
+	public boolean isAsyncWrite(){
+		return asyncWrite;
+	}
+	
+	/**
+	 * Returns the size of a single buffer for asynchronous writing.
+	 * @return buffer size in bytes
+	 */
+	public int getWriteBufferSize(){
+		return writeBufferSize;
+	}
+	
+	/**
+	 * Returns the number of buffers for asynchronous writing.
+	 * If all buffers are in use, the writer waits for the I/O thread.
+	 * @return number of buffers
+	 */
+	public int getWriteBuffers(){
+		return writeBuffers;
+	}
+	
+	/**
+	 * Returns the maximum amount of data, that is held back by asynchronous
+	 * writing before it is handed to the I/O thread.
+	 * @return maximum amount of data in bytes
+	 */
+	public long getFlushBytes(){
+		return flushBytes;
+	}
+	
+	/**
+	 * Returns the maximum time, that data is held back by asynchronous
+	 * writing before it is handed to the I/O thread.
+	 * @return flush interval in ms
+	 */
+	public long getFlushInterval(){
+		return flushInterval;
+	}
+	
+	/**
+	 * Returns the compression level for gzip compressed log files.
+	 * @return level 0-9, or -1 for the default level of <code>Deflater</code>
+	 */
+	public int getGzipLevel(){
+		return gzipLevel;
+	}
+	
+	/**
+	 * Returns the number of threads for compressing log files with gzip.
+	 * With more than one thread the file is compressed in parallel as
+	 * a sequence of gzip members (see {@link ParallelGZIPOutputStream}).
+	 * @return number of threads
+	 */
+	public int getGzipThreads(){
+		return gzipThreads;
+	}
+	
+	/**
+	 * Returns the amount of (uncompressed) data, after which the disk-writer
+	 * starts a new segment of the log file.
+	 * @return segment size in bytes, 0 for no size based rotation
+	 */
+	public long getRotateSize(){
+		return rotateSize;
+	}
+	
+	/**
+	 * Returns the time span (of event timestamps), after which the disk-writer
+	 * starts a new segment of the log file.
+	 * @return segment duration in ms, 0 for no time based rotation
+	 */
+	public long getRotateInterval(){
+		return rotateInterval;
+	}
+	
+	/**
+	 * Returns <code>true</code> if the disk-writer writes the log file in
+	 * segments, which are listed by a {@link LogManifest}.
+	 * @return <code>true</code> if log rotation is enabled
+	 */
+	public boolean isRotating(){
+		return rotateSize > 0 || rotateInterval > 0;
+	}
+	
+	/**
+	 * Returns the interval of sync points of the disk-writer. At a sync point
+	 * all data is written to the log file as complete gzip members, so at most
+	 * the data of this interval is lost, if the process dies.
+	 * @return sync interval in ms, 0 for no sync points
+	 */
+	public long getSyncInterval(){
+		return syncInterval;
+	}
+	
+	/**
+	 * Returns <code>true</code> if the disk-writer synchronizes the log file
+	 * with the storage device (<code>fsync</code>) at every sync point.
+	 * @return <code>true</code> if fsync is used
+	 */
+	public boolean isFsync(){
+		return fsync;
+	}
+	
+	/**
+	 * Returns the patterns of the scopes, that are replayed by the
+	 * disk-reader. If the list is empty, all scopes are replayed.
+	 * @return list of patterns (see {@link ScopeFilter})
+	 */
+	public List<String> getIncludedScopes(){
+		return includedScopes;
+	}
+	
+	/**
+	 * Returns the patterns of the scopes, that are not replayed by the
+	 * disk-reader.
+	 * @return list of patterns (see {@link ScopeFilter})
+	 */
+	public List<String> getExcludedScopes(){
+		return excludedScopes;
+	}
+	
+	/**
+	 * Returns the log files, that are replayed together with the log file
+	 * (see <code>getLogFilePath</code>) by the disk-reader.
+	 * @return list of file names, empty if only one file is replayed
+	 */
+	public List<String> getMergeFiles(){
+		return mergeFiles;
+	}
+	
+	/**
+	 * Returns the time offset of a replayed file, which is added to the
+	 * timestamps of the file. Index 0 is the log file, followed by the
+	 * merged files.
+	 * @param index index of the file
+	 * @return time offset in ms, 0 if none is given
+	 */
+	public long getFileOffset(int index){
+		return index < fileOffsets.size() ? fileOffsets.get(index) : 0;
+	}
+	
+	/**
+	 * Returns <code>true</code> if the disk-reader loads the replayed files
+	 * completely into memory.
+	 * @return <code>true</code> for in-memory replay
+	 */
+	public boolean isInMemory(){
+		return inMemory;
+	}
+	
+	/**
+	 * Returns the maximum size of the replayed files in memory.
+	 * @return size limit in bytes
+	 */
+	public long getMemoryLimit(){
+		return memoryLimit > 0 ? memoryLimit : Runtime.getRuntime().maxMemory() / 2;
+	}
+	
+	/**
+	 * Returns <code>true</code> if the disk-reader keeps its buffer outside
+	 * of the Java heap.
+	 * @return <code>true</code> for an off-heap buffer
+	 */
+	public boolean isOffHeap(){
+		return offHeap;
+	}
+	
+	/**
+	 * Returns the directory for the memory-mapped file of the off-heap buffer.
+	 * @return name of the directory, or <code>null</code> for direct memory
+	 */
+	public String getOffHeapDir(){
+		return offHeapDir;
+	}
+	
+	/**
+	 * Returns the maximum memory used by the events in the disk reader
+	 * buffer. The buffer is full, if either this size or the buffer
+	 * capacity is reached.
+	 * @return size in bytes, 0 for a limit by the buffer capacity only
+	 */
+	public long getBufferMemory(){
+		return bufferMemory;
+	}
+	
+	/**
+	 * Returns the memory threshold for the disk reader buffer. If the events
+	 * left in the buffer use less memory, the buffer will be shifted.
+	 * Only used together with a buffer memory.
+	 * @return threshold in bytes
+	 */
+	public long getBufferThresholdMemory(){
+		return bufferThresholdMemory > 0 ? bufferThresholdMemory : bufferMemory / 10;
+	}
+	
+	/**
+	 * Returns the maximum memory used by the events in the delayed queue.
+	 * The queue is full, if either this size or the queue capacity is reached.
+	 * @return size in bytes, 0 for a limit by the queue capacity only
+	 */
+	public long getQueueMemory(){
+		return queueMemory;
+	}
+	
+	/**
+	 * Returns the time between two snapshots of the state of all slots.
+	 * The disk-reader sends the state of all slots after a seek, if
+	 * snapshots are used.
+	 * @return interval in ms, 0 for no snapshots
+	 */
+	public long getSnapshotInterval(){
+		return snapshotInterval;
+	}
+	
+	/**
+	 * Returns the drift between a synchronized media player and the replay,
+	 * above which the replay seeks to the media time. Below, the replay rate
+	 * is slewed, see {@link #getSyncSlew()}.
+	 * @return threshold in ms
+	 */
+	public long getSyncThreshold(){
+		return syncThreshold;
+	}
+	
+	/**
+	 * Returns by how much the replay rate may change, while the replay is
+	 * slewed towards a synchronized media player.
+	 * @return maximum change of the rate in percent
+	 */
+	public double getSyncSlew(){
+		return syncSlew;
+	}
+	
+	/**
+	 * Returns the speed of the replay from disk at the start.
+	 * It can be changed while replaying, see {@link ReplayClock}.
+	 * @return the speed factor, 1 for real time
+	 */
+	public double getSpeed(){
+		return speed;
+	}
+	
+	/**
+	 * Returns the time of the replay from disk that is buffered, before the
+	 * replay clock is started. The events of the first seconds are then
+	 * ready, when the replay starts.
+	 * @return pre-roll in ms, 0 for none
+	 */
+	public long getPreRoll(){
+		return preRoll;
+	}
+	
+	/**
+	 * Returns the target of the time-shifted replay. While live input is
+	 * recorded to disk, it can be replayed at the same time with a delay,
+	 * see {@link venice.hub.TimeShiftPlayer}.
+	 * @return the target, or <code>null</code> for no time-shifted replay
+	 */
+	public Connection getTimeShift(){
+		return timeShift;
+	}
+	
+	/**
+	 * Returns how far the time-shifted replay starts behind the live input.
+	 * @return delay in ms
+	 */
+	public long getTimeShiftDelay(){
+		return timeShiftDelay;
+	}
+	
+	/**
+	 * Returns the memory for the recent events of the time-shifted replay.
+	 * Older events are read from the log file.
+	 * @return size in bytes
+	 */
+	public long getTimeShiftMemory(){
+		return timeShiftMemory;
+	}
+	
+	/**
+	 * Returns the time before a trigger, that is kept in memory in capture
+	 * mode. Then the live input is only written to disk around a trigger,
+	 * see {@link venice.hub.CaptureWriter}.
+	 * @return time in ms, 0 if everything is recorded
+	 */
+	public long getPreTrigger(){
+		return preTrigger;
+	}
+	
+	/**
+	 * Returns the time after a trigger, that is written to disk in capture
+	 * mode.
+	 * @return time in ms
+	 */
+	public long getPostTrigger(){
+		return postTrigger;
+	}
+	
+	/**
+	 * Returns the memory for the events before a trigger in capture mode.
+	 * @return size in bytes
+	 */
+	public long getCaptureMemory(){
+		return captureMemory;
+	}
+	
+	/**
+	 * Returns the number of log files written in parallel. The namespaces
+	 * are shared out among them, see {@link venice.hub.PartitionedDiskWriter}.
+	 * @return number of partitions, 1 for a single log file
+	 */
+	public int getPartitions(){
+		return partitions;
+	}
+	
+	/**
+	 * Returns <code>true</code>, if the VenicePort server accepts many
+	 * clients, see {@link venice.hub.PortReader}.
+	 * @return <code>true</code> for the server for many clients
+	 */
+	public boolean isVPMultiClient(){
+		return vpMultiClient;
+	}
 }
 
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from another stream.
+ */
+public class CountingInputStream extends FilterInputStream{
+	
+	private long count = 0;
+	
+	/**
+	 * @param in the stream to read from
+	 */
+	public CountingInputStream(InputStream in){
+		super(in);
+	}
+	
+	@Override
+	public int read() throws IOException{
+		int b = in.read();
+		if(b >= 0) count++;
+		return b;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException{
+		int n = in.read(b, off, len);
+		if(n > 0) count += n;
+		return n;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException{
+		long skipped = in.skip(n);
+		count += skipped;
+		return skipped;
+	}
+	
+	@Override
+	public boolean markSupported(){
+		return false;
+	}
+	
+	/**
+	 * Returns the number of bytes read so far.
+	 * @return number of bytes
+	 */
+	public long getCount(){
+		return count;
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Counts the bytes written to another stream.
+ */
+public class CountingOutputStream extends FilterOutputStream{
+	
+	private long count = 0;
+	
+	/**
+	 * @param out the stream to write to
+	 */
+	public CountingOutputStream(OutputStream out){
+		super(out);
+	}
+	
+	@Override
+	public void write(int b) throws IOException{
+		out.write(b);
+		count++;
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException{
+		out.write(b, off, len);
+		count += len;
+	}
+	
+	/**
+	 * Returns the number of bytes written so far.
+	 * @return number of bytes
+	 */
+	public long getCount(){
+		return count;
+	}
+	
+	/**
+	 * Returns the stream, that the bytes are written to.
+	 * @return the underlying stream
+	 */
+	public OutputStream getTarget(){
+		return out;
+	}
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import venice.lib.parser.BinaryCodec;
+import venice.lib.parser.SlotEvent;
+
+/**
+ * Encodes and decodes the delta encoded blocks of binary log files.
+ * <p>
+ * A block holds a sequence of events. Every value is stored as the
+ * difference to the previous value of the same slot inside the block:
+ * <ul>
+ * <li>timestamps as zigzag varint of the difference to the previous
+ * timestamp of the slot (for the first event of a slot: to the first
+ * timestamp of the block)</li>
+ * <li>floats (also the components of vectors and rotations) and doubles
+ * XOR-coded in a bit stream, similar to the Gorilla time series
+ * compression: an unchanged value needs 1 bit, small changes only the
+ * bits in the window of the XOR result</li>
+ * <li>integers as zigzag varint of the difference</li>
+ * <li>strings with a repeat flag, booleans as single bits</li>
+ * <li>every other value is written by {@link BinaryCodec}</li>
+ * </ul>
+ * The state of all slots is reset at the beginning of every block, so a
+ * block can be decoded without knowing the blocks before. That way every
+ * block is a keyframe, and seeking can start at any block.
+ * <p>
+ * Layout of a block: first timestamp (8 bytes), last timestamp (8 bytes,
+ * the largest timestamp in the block), number of events (varint), size of
+ * the byte section (varint), byte section, bit section.
+ * 
+ * @see BinaryLog
+ */
+public class DeltaBlockCodec {
+	
+	private final static int KIND_NULL = 0;
+	private final static int KIND_DELTA = 1;
+	private final static int KIND_CODEC = 2;
+	
+	/**
+	 * The encoding state of a slot.
+	 */
+	private static class SlotState {
+		int block = -1; // number of the block the state belongs to
+		long timestamp;
+		int[] floatBits = new int[0];
+		int[] leading = new int[0];
+		int[] trailing = new int[0];
+		long doubleBits;
+		int doubleLeading;
+		int doubleTrailing;
+		long integer;
+		String string;
+		
+		void resizeFloats(int n){
+			floatBits = new int[n];
+			leading = new int[n];
+			trailing = new int[n];
+			Arrays.fill(leading, -1);
+		}
+	}
+	
+	private SlotState[] states;
+	private int block; // number of the actual block
+	
+	// encoding
+	private ByteArrayOutputStream bytes;
+	private DataOutputStream bytesOut;
+	private BitWriter bitsOut;
+	private int count;
+	private long firstTimestamp;
+	private long lastTimestamp;
+	
+	// decoding
+	private DataInputStream bytesIn;
+	private BitReader bitsIn;
+	
+	public DeltaBlockCodec(){
+		states = new SlotState[64];
+		block = 0;
+		bytes = new ByteArrayOutputStream(4096);
+		bytesOut = new DataOutputStream(bytes);
+		bitsOut = new BitWriter();
+		count = 0;
+	}
+	
+	/**
+	 * Returns the number of events in the actual block.
+	 * 
+	 * @return number of events
+	 */
+	public int count(){
+		return count;
+	}
+	
+	/**
+	 * Returns the timestamp of the first event in the actual block.
+	 * 
+	 * @return timestamp of the first event
+	 */
+	public long getFirstTimestamp(){
+		return firstTimestamp;
+	}
+	
+	/**
+	 * Adds an event to the actual block.
+	 * 
+	 * @param slotId the file specific id of the slot
+	 * @param type the data type of the slot, as defined in the slot table
+	 * @param se the event
+	 * @throws IOException if the value can not be encoded
+	 */
+	public void add(int slotId, Class<?> type, SlotEvent se) throws IOException{
+		long ts = se.getTime();
+		if(count == 0){
+			firstTimestamp = ts;
+			lastTimestamp = ts;
+		}
+		else if(ts > lastTimestamp) lastTimestamp = ts;
+		count++;
+		
+		SlotState st = state(slotId);
+		Object value = se.getValue();
+		float[] floats = null;
+		int kind;
+		if(value == null) kind = KIND_NULL;
+		else if((floats = BinaryCodec.toFloats(type, value)) != null ||
+				(type == Double.class && value instanceof Double) ||
+				(type == Integer.class && value instanceof Integer) ||
+				(type == Long.class && value instanceof Long) ||
+				(type == Boolean.class && value instanceof Boolean) ||
+				(type == String.class && value instanceof String))
+			kind = KIND_DELTA;
+		else kind = KIND_CODEC;
+		
+		BinaryCodec.writeVarInt(bytesOut, slotId << 2 | kind);
+		BinaryCodec.writeVarLong(bytesOut, zigzag(ts - st.timestamp));
+		st.timestamp = ts;
+		
+		if(kind == KIND_CODEC) BinaryCodec.writeValue(bytesOut, type, value);
+		if(kind != KIND_DELTA) return;
+		
+		if(floats != null){
+			if(type.isArray()) BinaryCodec.writeVarInt(bytesOut, ((Object[]) value).length);
+			if(floats.length != st.floatBits.length) st.resizeFloats(floats.length);
+			for(int c=0; c<floats.length; c++) writeFloat(Float.floatToRawIntBits(floats[c]), st, c);
+		}
+		else if(type == Double.class) writeDouble(Double.doubleToRawLongBits((Double) value), st);
+		else if(type == Integer.class || type == Long.class){
+			long v = ((Number) value).longValue();
+			BinaryCodec.writeVarLong(bytesOut, zigzag(v - st.integer));
+			st.integer = v;
+		}
+		else if(type == Boolean.class) bitsOut.writeBit((Boolean) value);
+		else{
+			String s = (String) value;
+			boolean repeated = s.equals(st.string);
+			bitsOut.writeBit(repeated);
+			if(!repeated) BinaryCodec.writeString(bytesOut, s);
+			st.string = s;
+		}
+	}
+	
+	/**
+	 * Writes the actual block and starts a new one.
+	 * 
+	 * @param out the target
+	 * @throws IOException if writing fails
+	 */
+	public void writeBlock(DataOutputStream out) throws IOException{
+		out.writeLong(firstTimestamp);
+		out.writeLong(lastTimestamp);
+		BinaryCodec.writeVarInt(out, count);
+		BinaryCodec.writeVarInt(out, bytes.size());
+		bytes.writeTo(out);
+		bitsOut.writeTo(out);
+		
+		bytes.reset();
+		bitsOut.reset();
+		count = 0;
+		block++;
+	}
+	
+	/**
+	 * Decodes a block.
+	 * 
+	 * @param b the array holding the block
+	 * @param offset index of the first byte of the block
+	 * @param length size of the block
+	 * @param scopeIds scope ids, by file specific slot id
+	 * @param types data types, by file specific slot id
+	 * @return the events of the block
+	 * @throws IOException if the block is malformed
+	 */
+	public SlotEvent[] decode(byte[] b, int offset, int length, int[] scopeIds, Class<?>[] types) throws IOException{
+		DataInputStream header = new DataInputStream(new ByteArrayInputStream(b, offset, length));
+		long first = header.readLong();
+		header.readLong(); // last timestamp, not needed here
+		int n = BinaryCodec.readVarInt(header);
+		int bytesLength = BinaryCodec.readVarInt(header);
+		int bytesOffset = offset + length - header.available();
+		if(bytesLength > length - (bytesOffset - offset)) throw new IOException("malformed block");
+		bytesIn = new DataInputStream(new ByteArrayInputStream(b, bytesOffset, bytesLength));
+		bitsIn = new BitReader(b, bytesOffset + bytesLength, offset + length - bytesOffset - bytesLength);
+		firstTimestamp = first;
+		
+		SlotEvent[] events = new SlotEvent[n];
+		for(int i=0; i<n; i++){
+			int head = BinaryCodec.readVarInt(bytesIn);
+			int slotId = head >>> 2;
+			int kind = head & 3;
+			if(slotId >= scopeIds.length || types[slotId] == null) throw new IOException("undefined slot id: " + slotId);
+			Class<?> type = types[slotId];
+			SlotState st = state(slotId);
+			st.timestamp += unzigzag(BinaryCodec.readVarLong(bytesIn));
+			
+			SlotEvent e = new SlotEvent(null, scopeIds[slotId], st.timestamp);
+			if(kind == KIND_CODEC) BinaryCodec.readValue(bytesIn, e);
+			else if(kind == KIND_DELTA) e.setValue(readDelta(type, st));
+			else if(kind != KIND_NULL) throw new IOException("unknown value kind: " + kind);
+			events[i] = e;
+		}
+		block++;
+		return events;
+	}
+	
+	/**
+	 * Reads the first and the last timestamp of a block, without decoding it.
+	 * 
+	 * @param b the array holding the block
+	 * @param offset index of the first byte of the block
+	 * @return first and last timestamp
+	 */
+	public static long[] readTimestamps(byte[] b, int offset){
+		return new long[]{readLong(b, offset), readLong(b, offset + 8)};
+	}
+	
+	private Object readDelta(Class<?> type, SlotState st) throws IOException{
+		int size = BinaryCodec.floatsPerValue(type);
+		if(size > 0){
+			int elements = type.isArray() ? BinaryCodec.readVarInt(bytesIn) : 1;
+			int n = elements * size;
+			if(n != st.floatBits.length) st.resizeFloats(n);
+			float[] f = new float[n];
+			for(int c=0; c<n; c++) f[c] = Float.intBitsToFloat(readFloat(st, c));
+			return BinaryCodec.fromFloats(type, f, elements);
+		}
+		if(type == Double.class) return Double.longBitsToDouble(readDouble(st));
+		if(type == Integer.class || type == Long.class){
+			st.integer += unzigzag(BinaryCodec.readVarLong(bytesIn));
+			if(type == Integer.class) return (int) st.integer;
+			return st.integer;
+		}
+		if(type == Boolean.class) return bitsIn.readBit();
+		if(type == String.class){
+			if(!bitsIn.readBit()) st.string = BinaryCodec.readString(bytesIn);
+			return st.string;
+		}
+		throw new IOException("no delta encoding for " + type.getName());
+	}
+	
+	private void writeFloat(int bits, SlotState st, int c){
+		int xor = bits ^ st.floatBits[c];
+		st.floatBits[c] = bits;
+		if(xor == 0){
+			bitsOut.writeBit(false);
+			return;
+		}
+		bitsOut.writeBit(true);
+		int lead = Integer.numberOfLeadingZeros(xor);
+		int trail = Integer.numberOfTrailingZeros(xor);
+		if(st.leading[c] >= 0 && lead >= st.leading[c] && trail >= st.trailing[c]){
+			// the changed bits fit into the window of the previous value
+			bitsOut.writeBit(false);
+			bitsOut.writeBits((xor >>> st.trailing[c]) & 0xFFFFFFFFL, 32 - st.leading[c] - st.trailing[c]);
+		}
+		else{
+			int meaningful = 32 - lead - trail;
+			bitsOut.writeBit(true);
+			bitsOut.writeBits(lead, 5);
+			bitsOut.writeBits(meaningful - 1, 5);
+			bitsOut.writeBits((xor >>> trail) & 0xFFFFFFFFL, meaningful);
+			st.leading[c] = lead;
+			st.trailing[c] = trail;
+		}
+	}
+	
+	private int readFloat(SlotState st, int c) throws IOException{
+		if(bitsIn.readBit()){
+			int xor;
+			if(!bitsIn.readBit()){
+				if(st.leading[c] < 0) throw new IOException("malformed float");
+				xor = (int) bitsIn.readBits(32 - st.leading[c] - st.trailing[c]) << st.trailing[c];
+			}
+			else{
+				int lead = (int) bitsIn.readBits(5);
+				int meaningful = (int) bitsIn.readBits(5) + 1;
+				int trail = 32 - lead - meaningful;
+				if(trail < 0) throw new IOException("malformed float");
+				xor = (int) bitsIn.readBits(meaningful) << trail;
+				st.leading[c] = lead;
+				st.trailing[c] = trail;
+			}
+			st.floatBits[c] ^= xor;
+		}
+		return st.floatBits[c];
+	}
+	
+	private void writeDouble(long bits, SlotState st){
+		long xor = bits ^ st.doubleBits;
+		st.doubleBits = bits;
+		if(xor == 0){
+			bitsOut.writeBit(false);
+			return;
+		}
+		bitsOut.writeBit(true);
+		int lead = Long.numberOfLeadingZeros(xor);
+		int trail = Long.numberOfTrailingZeros(xor);
+		if(st.doubleLeading >= 0 && lead >= st.doubleLeading && trail >= st.doubleTrailing){
+			bitsOut.writeBit(false);
+			bitsOut.writeBits(xor >>> st.doubleTrailing, 64 - st.doubleLeading - st.doubleTrailing);
+		}
+		else{
+			int meaningful = 64 - lead - trail;
+			bitsOut.writeBit(true);
+			bitsOut.writeBits(lead, 6);
+			bitsOut.writeBits(meaningful - 1, 6);
+			bitsOut.writeBits(xor >>> trail, meaningful);
+			st.doubleLeading = lead;
+			st.doubleTrailing = trail;
+		}
+	}
+	
+	private long readDouble(SlotState st) throws IOException{
+		if(bitsIn.readBit()){
+			long xor;
+			if(!bitsIn.readBit()){
+				if(st.doubleLeading < 0) throw new IOException("malformed double");
+				xor = bitsIn.readBits(64 - st.doubleLeading - st.doubleTrailing) << st.doubleTrailing;
+			}
+			else{
+				int lead = (int) bitsIn.readBits(6);
+				int meaningful = (int) bitsIn.readBits(6) + 1;
+				int trail = 64 - lead - meaningful;
+				if(trail < 0) throw new IOException("malformed double");
+				xor = bitsIn.readBits(meaningful) << trail;
+				st.doubleLeading = lead;
+				st.doubleTrailing = trail;
+			}
+			st.doubleBits ^= xor;
+		}
+		return st.doubleBits;
+	}
+	
+	/**
+	 * Returns the state of the slot, reset to the initial state if it
+	 * was not used in the actual block yet.
+	 */
+	private SlotState state(int slotId){
+		if(slotId >= states.length) states = Arrays.copyOf(states, Math.max(slotId + 1, states.length * 2));
+		SlotState st = states[slotId];
+		if(st == null) st = states[slotId] = new SlotState();
+		if(st.block != block){
+			st.block = block;
+			st.timestamp = firstTimestamp;
+			st.resizeFloats(0);
+			st.doubleBits = 0;
+			st.doubleLeading = -1;
+			st.doubleTrailing = 0;
+			st.integer = 0;
+			st.string = null;
+		}
+		return st;
+	}
+	
+	private static long zigzag(long v){
+		return (v << 1) ^ (v >> 63);
+	}
+	
+	private static long unzigzag(long v){
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	private static long readLong(byte[] b, int offset){
+		long v = 0;
+		for(int i=0; i<8; i++) v = (v << 8) | (b[offset + i] & 0xFF);
+		return v;
+	}
+}
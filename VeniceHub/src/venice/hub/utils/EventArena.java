@@ -0,0 +1,379 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import venice.lib.parser.BinaryCodec;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOParser;
+
+/**
+ * Stores events in serialized form outside of the Java heap, either in
+ * direct memory or in a memory-mapped temporary file.
+ * <p>
+ * Events are appended at the end and removed from the beginning, like in a
+ * queue, and can be read by index. An event is decoded, when it is read.
+ * The memory is divided into chunks, which are reused when the events in
+ * them are removed. For every event an index entry (timestamp and position
+ * of the data) is stored off-heap as well, so the timestamps can be read
+ * without decoding the events. On the heap only the slots (namespace,
+ * label and type) are kept, once per slot.
+ * <p>
+ * Values are encoded with {@link BinaryCodec}. The arena is not thread-safe.
+ */
+public class EventArena {
+	
+	private final static int ENTRY_BYTES = 16; // timestamp and position of an event
+	
+	/**
+	 * Gives access to the internal array, so that it can be copied without
+	 * creating a new array.
+	 */
+	private static class Bytes extends ByteArrayOutputStream {
+		byte[] array(){
+			return buf;
+		}
+	}
+	
+	/**
+	 * The slot of an event, kept once per slot on the heap.
+	 */
+	private static class Slot {
+		final String namespace;
+		final String label;
+		final Class<?> type;
+		
+		Slot(SlotEvent se){
+			namespace = se.getNamespace();
+			label = se.getLabel();
+			type = se.getType();
+		}
+		
+		@Override
+		public int hashCode(){
+			return 31 * (31 * (namespace == null ? 0 : namespace.hashCode()) +
+					(label == null ? 0 : label.hashCode())) + (type == null ? 0 : type.hashCode());
+		}
+		
+		@Override
+		public boolean equals(Object obj){
+			if(!(obj instanceof Slot)) return false;
+			Slot o = (Slot) obj;
+			return eq(namespace, o.namespace) && eq(label, o.label) && type == o.type;
+		}
+		
+		private static boolean eq(String a, String b){
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+	
+	/**
+	 * A growing sequence of bytes in chunks. Positions are counted from the
+	 * last <code>clear</code>, chunks before the released position are reused.
+	 */
+	private class Chunks {
+		final int chunkSize;
+		final List<ByteBuffer> used = new ArrayList<ByteBuffer>();
+		final ArrayDeque<ByteBuffer> free = new ArrayDeque<ByteBuffer>();
+		long base; // position of the first used chunk
+		long end; // write position
+		
+		Chunks(int chunkSize){
+			this.chunkSize = chunkSize;
+		}
+		
+		ByteBuffer chunk(long position){
+			return used.get((int) ((position - base) / chunkSize));
+		}
+		
+		int offset(long position){
+			return (int) ((position - base) % chunkSize);
+		}
+		
+		void ensureSpace(int bytes) throws IOException{
+			while(base + (long) used.size() * chunkSize < end + bytes){
+				ByteBuffer chunk = free.poll();
+				if(chunk == null){
+					if(channel != null){
+						chunk = channel.map(FileChannel.MapMode.READ_WRITE, fileSize, chunkSize);
+						fileSize += chunkSize;
+					}
+					else chunk = ByteBuffer.allocateDirect(chunkSize);
+				}
+				used.add(chunk);
+			}
+		}
+		
+		void write(byte[] b, int off, int len) throws IOException{
+			ensureSpace(len);
+			while(len > 0){
+				ByteBuffer chunk = chunk(end);
+				int offset = offset(end);
+				int n = Math.min(len, chunkSize - offset);
+				chunk.position(offset);
+				chunk.put(b, off, n);
+				off += n;
+				len -= n;
+				end += n;
+			}
+		}
+		
+		void writeEntry(long time, long position) throws IOException{
+			ensureSpace(ENTRY_BYTES);
+			ByteBuffer chunk = chunk(end);
+			int offset = offset(end);
+			chunk.putLong(offset, time);
+			chunk.putLong(offset + 8, position);
+			end += ENTRY_BYTES;
+		}
+		
+		void read(long position, byte[] b, int len){
+			int off = 0;
+			while(len > 0){
+				ByteBuffer chunk = chunk(position);
+				int offset = offset(position);
+				int n = Math.min(len, chunkSize - offset);
+				chunk.position(offset);
+				chunk.get(b, off, n);
+				off += n;
+				len -= n;
+				position += n;
+			}
+		}
+		
+		long readLong(long position){
+			return chunk(position).getLong(offset(position));
+		}
+		
+		/**
+		 * Makes the chunks before the given position reusable.
+		 */
+		void release(long position){
+			while(!used.isEmpty() && position - base >= chunkSize){
+				free.add(used.remove(0));
+				base += chunkSize;
+			}
+		}
+		
+		void clear(){
+			free.addAll(used);
+			used.clear();
+			base = 0;
+			end = 0;
+		}
+		
+		long allocated(){
+			return (long)(used.size() + free.size()) * chunkSize;
+		}
+	}
+	
+	private final Chunks index;
+	private final Chunks data;
+	private final RandomAccessFile file; // null for direct memory
+	private final File filePath;
+	private final FileChannel channel; // null for direct memory
+	private long fileSize; // mapped size of the file, for both chunk sequences
+	private final List<Slot> slots = new ArrayList<Slot>();
+	private final HashMap<Slot, Integer> slotIds = new HashMap<Slot, Integer>();
+	private long first; // number of the first event since the last clear
+	private long count; // number of events added since the last clear
+	private final Bytes bytes = new Bytes();
+	private final DataOutputStream bytesOut = new DataOutputStream(bytes);
+	private byte[] readBuffer = new byte[256];
+	
+	/**
+	 * Creates an arena.
+	 * 
+	 * @param chunkSize size of a chunk in bytes (rounded to a multiple of 16)
+	 * @param dir directory for the memory-mapped temporary file, or
+	 * <code>null</code> to use direct memory
+	 * @throws IOException if the temporary file can not be created
+	 */
+	public EventArena(int chunkSize, File dir) throws IOException{
+		chunkSize = Math.max(ENTRY_BYTES, chunkSize / ENTRY_BYTES * ENTRY_BYTES);
+		if(dir != null){
+			filePath = File.createTempFile("venice_arena", ".tmp", dir);
+			filePath.deleteOnExit();
+			file = new RandomAccessFile(filePath, "rw");
+		}
+		else{
+			filePath = null;
+			file = null;
+		}
+		channel = file != null ? file.getChannel() : null;
+		index = new Chunks(chunkSize);
+		data = new Chunks(chunkSize);
+	}
+	
+	/**
+	 * Appends an event.
+	 * 
+	 * @param se the event
+	 * @throws IOException if the memory can not be mapped
+	 */
+	public void add(SlotEvent se) throws IOException{
+		Slot slot = new Slot(se);
+		Integer id = slotIds.get(slot);
+		if(id == null){
+			id = slots.size();
+			slots.add(slot);
+			slotIds.put(slot, id);
+		}
+		bytes.reset();
+		BinaryCodec.writeVarInt(bytesOut, id);
+		if(slot.type != null) BinaryCodec.writeValue(bytesOut, slot.type, se.getValue());
+		else BinaryCodec.writeString(bytesOut, se.getValue() != null ? XIOParser.value2str(se.getValue()) : "");
+		index.writeEntry(se.getTime(), data.end);
+		data.write(bytes.array(), 0, bytes.size());
+		count++;
+	}
+	
+	/**
+	 * Returns the number of events.
+	 * 
+	 * @return number of events
+	 */
+	public int size(){
+		return (int) (count - first);
+	}
+	
+	/**
+	 * Returns the timestamp of an event without decoding it.
+	 * 
+	 * @param i index of the event (0 is the first event)
+	 * @return timestamp of the event
+	 */
+	public long getTime(int i){
+		return index.readLong((first + i) * ENTRY_BYTES);
+	}
+	
+	/**
+	 * Returns the off-heap memory used by an event, including its index entry.
+	 * 
+	 * @param i index of the event (0 is the first event)
+	 * @return size in bytes
+	 */
+	public long getBytes(int i){
+		long entry = (first + i) * ENTRY_BYTES;
+		long end = first + i + 1 < count ? index.readLong(entry + ENTRY_BYTES + 8) : data.end;
+		return ENTRY_BYTES + end - index.readLong(entry + 8);
+	}
+	
+	/**
+	 * Decodes an event. Every call returns a new event.
+	 * 
+	 * @param i index of the event (0 is the first event)
+	 * @return the event
+	 * @throws IOException if the data is malformed
+	 */
+	public SlotEvent get(int i) throws IOException{
+		long entry = (first + i) * ENTRY_BYTES;
+		long time = index.readLong(entry);
+		long start = index.readLong(entry + 8);
+		long end = first + i + 1 < count ? index.readLong(entry + ENTRY_BYTES + 8) : data.end;
+		int length = (int) (end - start);
+		if(readBuffer.length < length) readBuffer = new byte[Math.max(length, readBuffer.length * 2)];
+		data.read(start, readBuffer, length);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(readBuffer, 0, length));
+		Slot slot = slots.get(BinaryCodec.readVarInt(in));
+		SlotEvent se = new SlotEvent(null, slot.namespace, slot.label, slot.type, time);
+		if(slot.type != null) BinaryCodec.readValue(in, se);
+		else se.setValue(BinaryCodec.readString(in));
+		return se;
+	}
+	
+	/**
+	 * Removes events from the beginning.
+	 * 
+	 * @param n number of events to remove
+	 */
+	public void removeFirst(int n){
+		if(n >= size()){
+			clear();
+			return;
+		}
+		first += n;
+		index.release(first * ENTRY_BYTES);
+		data.release(index.readLong(first * ENTRY_BYTES + 8));
+	}
+	
+	/**
+	 * Removes all events. The memory is kept for reuse.
+	 */
+	public void clear(){
+		count = 0;
+		first = 0;
+		index.clear();
+		data.clear();
+	}
+	
+	/**
+	 * Returns the off-heap memory allocated by the arena.
+	 * 
+	 * @return size in bytes
+	 */
+	public long getAllocatedBytes(){
+		return index.allocated() + data.allocated();
+	}
+	
+	/**
+	 * Returns the off-heap memory used by the events.
+	 * 
+	 * @return size in bytes
+	 */
+	public long getUsedBytes(){
+		return (index.end - index.base) + (data.end - data.base);
+	}
+	
+	/**
+	 * Removes all events and frees the memory. With a memory-mapped file,
+	 * the file is closed and deleted. The arena must not be used afterwards.
+	 */
+	public void close(){
+		clear();
+		index.free.clear();
+		data.free.clear();
+		if(file != null){
+			try {
+				file.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			filePath.delete();
+		}
+	}
+}
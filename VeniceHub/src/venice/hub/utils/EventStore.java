@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import venice.lib.parser.BinaryCodec;
+import venice.lib.parser.SlotEvent;
+
+/**
+ * Holds all events of one or more log files in memory, for the in-memory
+ * replay mode of the {@link venice.hub.DiskReader}.
+ * <p>
+ * The events are stored in columns: the timestamps of all events in one
+ * <code>long[]</code>, and the values in primitive arrays per scope (floats,
+ * InstantIO vectors and rotations as <code>float[]</code>, numbers and
+ * booleans in arrays of their type, everything else as objects). An event
+ * is created again, when it is needed for replay. Seeking is a binary search
+ * over the timestamps.
+ * <p>
+ * The store has a limit for its (estimated) size in bytes. If adding an event
+ * exceeds it, the caller is told so, and can fall back to reading from disk.
+ * <p>
+ * Events have to be added in the order of their timestamps, or
+ * <code>finish</code> sorts them (stable, so events with the same timestamp
+ * keep their order).
+ */
+public class EventStore {
+	
+	private final static int INITIAL_CAPACITY = 1024;
+	private final static long EVENT_BYTES = 8 + 2 + 4; // time, column, row
+	
+	private final static int FLOATS = 0;
+	private final static int DOUBLES = 1;
+	private final static int INTS = 2;
+	private final static int LONGS = 3;
+	private final static int BOOLEANS = 4;
+	private final static int OBJECTS = 5;
+	
+	/**
+	 * The values of one scope.
+	 */
+	private static class Column {
+		final String namespace;
+		final String label;
+		final Class<?> type;
+		final int kind;
+		final int stride; // floats per value (or array element)
+		int size;
+		float[] floats;
+		int floatCount;
+		int[] starts; // index of the first float per row, only for arrays
+		double[] doubles;
+		int[] ints;
+		long[] longs;
+		boolean[] booleans;
+		Object[] objects;
+		HashMap<Integer, Object> others; // values that don't fit the kind of the column
+		
+		Column(SlotEvent se){
+			namespace = se.getNamespace();
+			label = se.getLabel();
+			type = se.getType();
+			stride = BinaryCodec.floatsPerValue(type);
+			if(stride > 0){
+				kind = FLOATS;
+				floats = new float[16 * stride];
+				if(type.isArray()) starts = new int[16];
+			}
+			else if(type == Double.class){
+				kind = DOUBLES;
+				doubles = new double[16];
+			}
+			else if(type == Integer.class){
+				kind = INTS;
+				ints = new int[16];
+			}
+			else if(type == Long.class){
+				kind = LONGS;
+				longs = new long[16];
+			}
+			else if(type == Boolean.class){
+				kind = BOOLEANS;
+				booleans = new boolean[16];
+			}
+			else{
+				kind = OBJECTS;
+				objects = new Object[16];
+			}
+		}
+		
+		/**
+		 * Adds a value.
+		 * 
+		 * @return the estimated number of bytes used for it
+		 */
+		long add(Object value){
+			int row = size++;
+			long bytes;
+			switch(kind){
+			case FLOATS:
+				if(starts != null){
+					if(row == starts.length) starts = Arrays.copyOf(starts, row * 2);
+					starts[row] = floatCount;
+				}
+				float[] f = BinaryCodec.toFloats(type, value);
+				if(f == null) return addOther(row, value);
+				if(floatCount + f.length > floats.length)
+					floats = Arrays.copyOf(floats, Math.max(floats.length * 2, floatCount + f.length));
+				System.arraycopy(f, 0, floats, floatCount, f.length);
+				floatCount += f.length;
+				bytes = 4L * f.length + (starts != null ? 4 : 0);
+				break;
+			case DOUBLES:
+				if(row == doubles.length) doubles = Arrays.copyOf(doubles, row * 2);
+				if(!(value instanceof Double)) return addOther(row, value);
+				doubles[row] = (Double) value;
+				bytes = 8;
+				break;
+			case INTS:
+				if(row == ints.length) ints = Arrays.copyOf(ints, row * 2);
+				if(!(value instanceof Integer)) return addOther(row, value);
+				ints[row] = (Integer) value;
+				bytes = 4;
+				break;
+			case LONGS:
+				if(row == longs.length) longs = Arrays.copyOf(longs, row * 2);
+				if(!(value instanceof Long)) return addOther(row, value);
+				longs[row] = (Long) value;
+				bytes = 8;
+				break;
+			case BOOLEANS:
+				if(row == booleans.length) booleans = Arrays.copyOf(booleans, row * 2);
+				if(!(value instanceof Boolean)) return addOther(row, value);
+				booleans[row] = (Boolean) value;
+				bytes = 1;
+				break;
+			default:
+				if(row == objects.length) objects = Arrays.copyOf(objects, row * 2);
+				objects[row] = value;
+				bytes = 4 + objectBytes(value);
+			}
+			return bytes;
+		}
+		
+		private long addOther(int row, Object value){
+			if(others == null) others = new HashMap<Integer, Object>();
+			others.put(row, value);
+			return 48 + objectBytes(value); // map entry and value
+		}
+		
+		Object get(int row){
+			if(others != null && others.containsKey(row)) return others.get(row);
+			switch(kind){
+			case FLOATS:
+				if(type == Float.class) return floats[row];
+				if(starts == null){
+					return BinaryCodec.fromFloats(type, Arrays.copyOfRange(floats, row * stride, (row + 1) * stride), 1);
+				}
+				int start = starts[row];
+				int end = row + 1 < size ? starts[row + 1] : floatCount;
+				return BinaryCodec.fromFloats(type, Arrays.copyOfRange(floats, start, end), (end - start) / stride);
+			case DOUBLES: return doubles[row];
+			case INTS: return ints[row];
+			case LONGS: return longs[row];
+			case BOOLEANS: return booleans[row];
+			default: return objects[row];
+			}
+		}
+	}
+	
+	/**
+	 * Roughly estimates the size of a value object in bytes.
+	 */
+	private static long objectBytes(Object value){
+		if(value == null) return 0;
+		if(value instanceof String) return 40 + 2L * ((String) value).length();
+		if(value instanceof Object[]){
+			long bytes = 16 + 4L * ((Object[]) value).length;
+			for(Object o : (Object[]) value) bytes += objectBytes(o);
+			return bytes;
+		}
+		return 16 + 2L * value.toString().length();
+	}
+	
+	private final long limit;
+	private long[] times = new long[INITIAL_CAPACITY];
+	private short[] columnIds = new short[INITIAL_CAPACITY];
+	private int[] rows = new int[INITIAL_CAPACITY];
+	private int size = 0;
+	private boolean sorted = true;
+	private final List<Column> columns = new ArrayList<Column>();
+	private final HashMap<Integer, Integer> columnOfScope = new HashMap<Integer, Integer>();
+	private long bytes = 0;
+	
+	/**
+	 * @param limit maximum (estimated) size of the store in bytes
+	 */
+	public EventStore(long limit){
+		this.limit = limit;
+	}
+	
+	/**
+	 * Adds an event, if the size limit allows it.
+	 * 
+	 * @param se the event
+	 * @param offset time offset added to the timestamp of the event
+	 * @return <code>false</code>, if the size limit is exceeded
+	 */
+	public boolean add(SlotEvent se, long offset){
+		Integer column = columnOfScope.get(se.getScopeId());
+		if(column == null){
+			if(columns.size() > Short.MAX_VALUE) return false;
+			column = columns.size();
+			columns.add(new Column(se));
+			columnOfScope.put(se.getScopeId(), column);
+			bytes += 200; // column and map entry
+		}
+		if(size == times.length){
+			int capacity = size * 2;
+			times = Arrays.copyOf(times, capacity);
+			columnIds = Arrays.copyOf(columnIds, capacity);
+			rows = Arrays.copyOf(rows, capacity);
+		}
+		long time = se.getTime() + offset;
+		if(size > 0 && time < times[size-1]) sorted = false;
+		Column c = columns.get(column);
+		times[size] = time;
+		columnIds[size] = (short)(int) column;
+		rows[size] = c.size;
+		bytes += EVENT_BYTES + c.add(se.getValue());
+		size++;
+		return bytes <= limit;
+	}
+	
+	/**
+	 * Reads all events of a log file (XIO, binary, or a {@link LogManifest})
+	 * into the store.
+	 * 
+	 * @param path name of the file
+	 * @param offset time offset added to the timestamps of the file
+	 * @param filter only events of slots accepted by the filter are stored
+	 * @return <code>false</code>, if the size limit was reached
+	 * @throws IOException if reading fails
+	 */
+	public boolean load(String path, final long offset, ScopeFilter filter) throws IOException{
+		return LogScanner.scan(path, filter, new LogScanner.Handler(){
+			@Override
+			public boolean event(SlotEvent se){
+				return add(se, offset);
+			}
+		});
+	}
+	
+	/**
+	 * Sorts the events by timestamp, if they were not added in order, and
+	 * releases unused capacity.
+	 */
+	public void finish(){
+		if(!sorted){
+			Integer[] order = new Integer[size];
+			for(int i=0; i<size; i++) order[i] = i;
+			final long[] t = times;
+			Arrays.sort(order, new Comparator<Integer>(){
+				@Override
+				public int compare(Integer a, Integer b){
+					return Long.compare(t[a], t[b]);
+				}
+			});
+			long[] sortedTimes = new long[size];
+			short[] sortedColumns = new short[size];
+			int[] sortedRows = new int[size];
+			for(int i=0; i<size; i++){
+				sortedTimes[i] = times[order[i]];
+				sortedColumns[i] = columnIds[order[i]];
+				sortedRows[i] = rows[order[i]];
+			}
+			times = sortedTimes;
+			columnIds = sortedColumns;
+			rows = sortedRows;
+			sorted = true;
+		}
+		else{
+			times = Arrays.copyOf(times, size);
+			columnIds = Arrays.copyOf(columnIds, size);
+			rows = Arrays.copyOf(rows, size);
+		}
+	}
+	
+	/**
+	 * Returns the number of events.
+	 * 
+	 * @return number of events
+	 */
+	public int size(){
+		return size;
+	}
+	
+	/**
+	 * Returns the timestamp of an event.
+	 * 
+	 * @param index index of the event
+	 * @return timestamp (including the time offset of its file)
+	 */
+	public long getTime(int index){
+		return times[index];
+	}
+	
+	/**
+	 * Creates the event with the given index. Every call returns a new event.
+	 * 
+	 * @param index index of the event
+	 * @return the event
+	 */
+	public SlotEvent get(int index){
+		Column c = columns.get(columnIds[index]);
+		return new SlotEvent(c.get(rows[index]), c.namespace, c.label, c.type, times[index]);
+	}
+	
+	/**
+	 * Finds the first event with a timestamp equal or greater than the
+	 * given timestamp by binary search.
+	 * 
+	 * @param timestamp the timestamp to seek
+	 * @return index of the event, or <code>size()</code> if all events are earlier
+	 */
+	public int search(long timestamp){
+		int low = 0;
+		int high = size;
+		while(low < high){
+			int mid = (low + high) >>> 1;
+			if(times[mid] < timestamp) low = mid + 1;
+			else high = mid;
+		}
+		return low;
+	}
+	
+	/**
+	 * Returns the number of scopes (columns).
+	 * 
+	 * @return number of scopes
+	 */
+	public int getScopeCount(){
+		return columns.size();
+	}
+	
+	/**
+	 * Returns the estimated size of the stored events in bytes.
+	 * 
+	 * @return size in bytes
+	 */
+	public long getMemoryUsage(){
+		return bytes;
+	}
+}
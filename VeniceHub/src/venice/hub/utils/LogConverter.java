@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOMaps;
+import venice.lib.parser.XIOParser;
+import venice.lib.parser.XIORegExParser;
+
+import static venice.lib.parser.XIOParser.INVALID_TIMESTAMP;
+
+/**
+ * Converts log files between XIO and the binary log format.
+ * <p>
+ * The formats are chosen by the file extensions (see {@link BinaryLog}).
+ * An output file with the extension <code>.gz</code> will be compressed,
+ * input files are recognized as compressed automatically.
+ * <p>
+ * Usage:<br>
+ * <code>java venice.hub.utils.LogConverter [--deltaEncoding] [--keyframeInterval ms] input output [xiocodes]</code><br>
+ * Example:<br>
+ * <code>java venice.hub.utils.LogConverter log.xio.gz log.vbin.gz xiocodes_IIO.xml</code>
+ * <p>
+ * With <code>--deltaEncoding</code> a binary output file is written with
+ * delta encoded blocks (see {@link DeltaBlockCodec}).
+ * <p>
+ * The optional xiocodes file defines additional data types (e.g. InstantIO
+ * types). Without it, values of unknown types are handled as strings.
+ */
+public class LogConverter {
+	
+	private final static String DEFAULT_HEADER = "Header";
+	private final static String ROOTTAG = "venice";
+	// XIO lines are read byte by byte by the TTEBufferedReader, so a
+	// single byte charset keeps the bytes of the strings unchanged
+	private final static Charset XIO_CHARSET = Charset.forName("ISO-8859-1");
+	
+	public static void main(String[] args){
+		boolean deltaEncoding = false;
+		long keyframeInterval = Configuration.getInstance().getKeyframeInterval();
+		int a = 0;
+		while(a < args.length && args[a].startsWith("--")){
+			if(args[a].equals("--deltaEncoding")) deltaEncoding = true;
+			else if(args[a].equals("--keyframeInterval") && a+1 < args.length) keyframeInterval = Long.parseLong(args[++a]);
+			else{
+				System.err.println("Unknown option: "+args[a]);
+				System.exit(1);
+			}
+			a++;
+		}
+		if(args.length - a < 2){
+			System.err.println("Usage: LogConverter [--deltaEncoding] [--keyframeInterval ms] input output [xiocodes]");
+			System.exit(1);
+		}
+		if(args.length - a > 2) XIOMaps.loadXIOCodes(args[a+2]);
+		try {
+			long start = System.currentTimeMillis();
+			long n = convert(args[a], args[a+1], deltaEncoding, keyframeInterval);
+			System.out.println("Converted "+n+" events in "+(System.currentTimeMillis()-start)+" ms");
+		} catch (IOException e) {
+			System.err.println("Conversion failed: "+e.getMessage());
+			System.exit(1);
+		}
+	}
+	
+	/**
+	 * Converts a log file. Binary output is written without delta encoding.
+	 * 
+	 * @param inPath name of the input file
+	 * @param outPath name of the output file
+	 * @return number of converted events
+	 * @throws IOException if reading or writing fails
+	 */
+	public static long convert(String inPath, String outPath) throws IOException{
+		return convert(inPath, outPath, false, 0);
+	}
+	
+	/**
+	 * Converts a log file.
+	 * 
+	 * @param inPath name of the input file
+	 * @param outPath name of the output file
+	 * @param deltaEncoding <code>true</code> to write binary output with delta encoded blocks
+	 * @param keyframeInterval maximum time span of a delta encoded block in ms
+	 * @return number of converted events
+	 * @throws IOException if reading or writing fails
+	 */
+	public static long convert(String inPath, String outPath, boolean deltaEncoding, long keyframeInterval) throws IOException{
+		long count = 0;
+		XIOParser parser = new XIORegExParser();
+		boolean binaryIn = BinaryLog.isBinaryLogFile(inPath);
+		boolean binaryOut = BinaryLog.isBinaryLogFile(outPath);
+		
+		try(InputStream in = openInput(inPath);
+			OutputStream out = openOutput(outPath)){
+			
+			BinaryLogWriter binaryWriter = null;
+			if(binaryOut){
+				binaryWriter = new BinaryLogWriter(out, deltaEncoding, keyframeInterval);
+				binaryWriter.writeHeader();
+			}
+			else{
+				for(int n=0; n<Configuration.getInstance().getHeaderLines(); n++){
+					out.write((DEFAULT_HEADER+"\n").getBytes());
+				}
+				out.write(("<"+ROOTTAG+">\n").getBytes());
+			}
+			
+			BinaryLogReader binaryReader = null;
+			BufferedReader lineReader = null;
+			if(binaryIn){
+				binaryReader = new BinaryLogReader(in);
+				binaryReader.readHeader();
+			}
+			else lineReader = new BufferedReader(new InputStreamReader(in, XIO_CHARSET));
+			
+			SlotEvent se;
+			while(true){
+				if(binaryIn){
+					try {
+						binaryReader.next();
+					} catch (EOFException e) {
+						break;
+					}
+					se = binaryReader.parseEvent();
+				}
+				else{
+					String line = lineReader.readLine();
+					if(line == null) break;
+					if(line.isEmpty() || parser.preparseTS(line) == INVALID_TIMESTAMP)
+						continue; // header, root tag or broken line
+					se = parser.stringToEvent(line);
+					if(se.getTime() == INVALID_TIMESTAMP) continue;
+				}
+				
+				if(binaryOut) binaryWriter.writeEvent(se);
+				else out.write((parser.eventToString(se)+"\n").getBytes(XIO_CHARSET));
+				count++;
+			}
+			
+			if(binaryOut) binaryWriter.finish();
+			else out.write(("</"+ROOTTAG+">\n").getBytes());
+		}
+		return count;
+	}
+	
+	/**
+	 * Opens a log file for reading. Recognizes GZIP compression by
+	 * the magic bytes of the file.
+	 * 
+	 * @param path name of the file
+	 * @return a buffered input stream
+	 * @throws IOException if the file can not be opened
+	 */
+	public static InputStream openInput(String path) throws IOException{
+		InputStream in = new BufferedInputStream(new FileInputStream(path), 1 << 16);
+		in.mark(2);
+		int b1 = in.read();
+		int b2 = in.read();
+		in.reset();
+		if(b1 == 31 && b2 == 139) return new BufferedInputStream(new GZIPInputStream(in, 1 << 16), 1 << 16);
+		return in;
+	}
+	
+	/**
+	 * Opens a log file for writing. The file will be compressed with GZIP,
+	 * if its name ends with <code>.gz</code>.
+	 * 
+	 * @param path name of the file
+	 * @return a buffered output stream
+	 * @throws IOException if the file can not be opened
+	 */
+	public static OutputStream openOutput(String path) throws IOException{
+		OutputStream out = new FileOutputStream(path);
+		if(path.toLowerCase().endsWith(".gz")) out = new GZIPOutputStream(out, 1 << 16);
+		return new BufferedOutputStream(out, 1 << 16);
+	}
+}
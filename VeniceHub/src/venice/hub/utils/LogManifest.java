@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static venice.lib.parser.XIOParser.INVALID_TIMESTAMP;
+
+/**
+ * Lists the segments of a rotated log file.
+ * <p>
+ * If log rotation is enabled, the {@link venice.hub.DiskWriter} writes a
+ * sequence of segments (complete log files) instead of a single file, and
+ * a manifest with the name of the log file plus <code>.manifest</code>.
+ * The manifest is a text file with one line per finalized segment:
+ * <pre>
+ * # segment	firstTimestamp	lastTimestamp	events	bytes	scopes...
+ * log_seg0001.xio.gz	1432031023374	1432031083370	71920	5203551	Kinect/face/mouth	OpenDS/Car/speed
+ * </pre>
+ * The columns are separated by tabs. Segment names are relative to the
+ * directory of the manifest. <code>bytes</code> is the uncompressed size
+ * of the segment, so that a reader can skip whole segments without opening
+ * them (see {@link SegmentedInputStream}). The remaining columns list the
+ * scopes of the segment, so that a reader with a {@link ScopeFilter} can
+ * leave out segments without any matching scope. Manifests without scope
+ * columns are still valid, their segments are never left out.
+ * <p>
+ * A manifest can be replayed like a log file.
+ */
+public class LogManifest {
+	
+	public final static String FILE_EXTENSION = ".manifest";
+	private final static Charset CHARSET = Charset.forName("UTF-8");
+	private final static String COMMENT = "#";
+	private final static String COLUMNS = "# segment\tfirstTimestamp\tlastTimestamp\tevents\tbytes\tscopes...";
+	
+	/**
+	 * A finalized segment of a log file.
+	 */
+	public static class Segment{
+		private final String name;
+		private final long firstTimestamp;
+		private final long lastTimestamp;
+		private final long events;
+		private final long bytes;
+		private final List<String> scopes;
+		
+		/**
+		 * Creates a segment with unknown scopes.
+		 * 
+		 * @param name file name of the segment, relative to the manifest
+		 * @param firstTimestamp timestamp of the first event
+		 * @param lastTimestamp timestamp of the last event
+		 * @param events number of events
+		 * @param bytes uncompressed size of the segment
+		 */
+		public Segment(String name, long firstTimestamp, long lastTimestamp, long events, long bytes){
+			this(name, firstTimestamp, lastTimestamp, events, bytes, null);
+		}
+		
+		/**
+		 * @param name file name of the segment, relative to the manifest
+		 * @param firstTimestamp timestamp of the first event
+		 * @param lastTimestamp timestamp of the last event
+		 * @param events number of events
+		 * @param bytes uncompressed size of the segment
+		 * @param scopes the scopes of all events of the segment, or <code>null</code> if unknown
+		 */
+		public Segment(String name, long firstTimestamp, long lastTimestamp, long events, long bytes, List<String> scopes){
+			this.name = name;
+			this.firstTimestamp = firstTimestamp;
+			this.lastTimestamp = lastTimestamp;
+			this.events = events;
+			this.bytes = bytes;
+			this.scopes = scopes != null ? Collections.unmodifiableList(new ArrayList<String>(scopes)) : null;
+		}
+		
+		public String getName(){
+			return name;
+		}
+		
+		public long getFirstTimestamp(){
+			return firstTimestamp;
+		}
+		
+		public long getLastTimestamp(){
+			return lastTimestamp;
+		}
+		
+		public long getEvents(){
+			return events;
+		}
+		
+		public long getBytes(){
+			return bytes;
+		}
+		
+		/**
+		 * Returns the scopes of the events in this segment.
+		 * @return list of scopes, or <code>null</code> if unknown
+		 */
+		public List<String> getScopes(){
+			return scopes;
+		}
+		
+		@Override
+		public String toString(){
+			StringBuilder sb = new StringBuilder();
+			sb.append(name).append('\t').append(firstTimestamp).append('\t').append(lastTimestamp)
+			  .append('\t').append(events).append('\t').append(bytes);
+			if(scopes != null)
+				for(String scope : scopes) sb.append('\t').append(scope);
+			return sb.toString();
+		}
+	}
+	
+	private final File file;
+	private final List<Segment> segments = new ArrayList<Segment>();
+	
+	/**
+	 * Creates an empty manifest.
+	 * 
+	 * @param path name of the manifest file
+	 */
+	public LogManifest(String path){
+		file = new File(path);
+	}
+	
+	/**
+	 * Reads a manifest file.
+	 * 
+	 * @param path name of the manifest file
+	 * @return the manifest
+	 * @throws IOException if the file can not be read or is malformed
+	 */
+	public static LogManifest read(String path) throws IOException{
+		LogManifest manifest = new LogManifest(path);
+		try(BufferedReader in = Files.newBufferedReader(manifest.file.toPath(), CHARSET)){
+			String line;
+			int lineNumber = 0;
+			while((line = in.readLine()) != null){
+				lineNumber++;
+				if(line.trim().isEmpty() || line.startsWith(COMMENT)) continue;
+				String[] columns = line.split("\t");
+				if(columns.length < 5)
+					throw new IOException("malformed line "+lineNumber+" in "+path);
+				try{
+					manifest.segments.add(new Segment(columns[0],
+							Long.parseLong(columns[1]), Long.parseLong(columns[2]),
+							Long.parseLong(columns[3]), Long.parseLong(columns[4]),
+							columns.length > 5 ? Arrays.asList(columns).subList(5, columns.length) : null));
+				} catch(NumberFormatException e){
+					throw new IOException("malformed line "+lineNumber+" in "+path);
+				}
+			}
+		}
+		return manifest;
+	}
+	
+	/**
+	 * Checks by the file extension, if the given file is a manifest.
+	 * 
+	 * @param filePath name of the file
+	 * @return <code>true</code> if it is a manifest
+	 */
+	public static boolean isManifestFile(String filePath){
+		return filePath != null && filePath.toLowerCase().endsWith(FILE_EXTENSION);
+	}
+	
+	/**
+	 * Returns the name of the log file, that is described by a manifest.
+	 * The extension of this name tells the format of the segments.
+	 * 
+	 * @param manifestPath name of the manifest
+	 * @return the name without the manifest extension
+	 */
+	public static String getLogPath(String manifestPath){
+		if(! isManifestFile(manifestPath)) return manifestPath;
+		return manifestPath.substring(0, manifestPath.length() - FILE_EXTENSION.length());
+	}
+	
+	/**
+	 * Returns the name of a segment of a rotated log.
+	 * 
+	 * @param logPath name of the log file
+	 * @param number the number of the segment, starting with 1
+	 * @return <code>log_seg0001.xio.gz</code> for segment 1 of <code>log.xio.gz</code>
+	 */
+	public static String getSegmentPath(String logPath, int number){
+		int nameStart = logPath.lastIndexOf(File.separatorChar) + 1;
+		int p0 = logPath.indexOf(".", nameStart);
+		if(p0 < 0) p0 = logPath.length();
+		return logPath.substring(0, p0) + String.format("_seg%04d", number) + logPath.substring(p0);
+	}
+	
+	/**
+	 * Adds a segment to the end of the list.
+	 * Call <code>write</code> to update the file.
+	 * 
+	 * @param segment the finalized segment
+	 */
+	public synchronized void add(Segment segment){
+		segments.add(segment);
+	}
+	
+	/**
+	 * Returns the segments in the order of recording.
+	 * 
+	 * @return the list of segments (not modifiable)
+	 */
+	public synchronized List<Segment> getSegments(){
+		return Collections.unmodifiableList(new ArrayList<Segment>(segments));
+	}
+	
+	/**
+	 * Returns the file of a segment.
+	 * 
+	 * @param segment a segment of this manifest
+	 * @return the file, relative to the directory of the manifest
+	 */
+	public File getFile(Segment segment){
+		File f = new File(segment.getName());
+		if(f.isAbsolute()) return f;
+		return new File(file.getAbsoluteFile().getParentFile(), segment.getName());
+	}
+	
+	/**
+	 * Returns the first timestamp of the first segment.
+	 * 
+	 * @return the first timestamp, or <code>INVALID_TIMESTAMP</code> if there are no events
+	 */
+	public synchronized long getFirstTimestamp(){
+		for(Segment s : segments)
+			if(s.getEvents() > 0) return s.getFirstTimestamp();
+		return INVALID_TIMESTAMP;
+	}
+	
+	/**
+	 * Returns the last timestamp of the last segment.
+	 * 
+	 * @return the last timestamp, or <code>INVALID_TIMESTAMP</code> if there are no events
+	 */
+	public synchronized long getLastTimestamp(){
+		for(int i=segments.size()-1; i>=0; i--)
+			if(segments.get(i).getEvents() > 0) return segments.get(i).getLastTimestamp();
+		return INVALID_TIMESTAMP;
+	}
+	
+	/**
+	 * Writes the manifest file. The file is replaced atomically (if the
+	 * file system supports it), so a reader never sees a partial manifest.
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	public synchronized void write() throws IOException{
+		Path target = file.toPath();
+		Path tmp = new File(file.getPath() + ".tmp").toPath();
+		try(Writer out = Files.newBufferedWriter(tmp, CHARSET)){
+			out.write(COLUMNS + "\n");
+			for(Segment s : segments)
+				out.write(s + "\n");
+		}
+		try{
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch(AtomicMoveNotSupportedException e){
+			Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+	
+	@Override
+	public String toString(){
+		return file.getPath();
+	}
+}
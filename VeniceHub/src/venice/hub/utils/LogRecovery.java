@@ -0,0 +1,528 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import venice.lib.ScopeDictionary;
+import venice.lib.parser.XIOParser;
+import venice.lib.parser.XIORegExParser;
+
+import static venice.lib.parser.XIOParser.INVALID_TIMESTAMP;
+
+/**
+ * Repairs log files, that were not closed properly (e.g. because the
+ * process died).
+ * <p>
+ * A compressed log file is scanned member by member (see
+ * <code>--syncInterval</code> of the {@link venice.hub.DiskWriter}). Every
+ * member is checked by its CRC and size. The file is truncated after the
+ * last complete member. For XIO files the decodable rest of the data is
+ * kept, without the last incomplete line, and the closing root tag is
+ * appended. Uncompressed XIO files are cut after the last complete line.
+ * <p>
+ * For the manifest of a rotated log, the segments, that are not listed
+ * (the segment, that was written when the process died), are repaired and
+ * added to the manifest.
+ * <p>
+ * Usage:<br>
+ * <code>java venice.hub.utils.LogRecovery [--check] file...</code><br>
+ * With <code>--check</code> the files are only scanned, not changed.
+ */
+public class LogRecovery {
+	
+	private final static String ROOTTAG = "venice";
+	private final static byte[] FOOTER = ("</"+ROOTTAG+">\n").getBytes();
+	private final static byte[] FOOTER_MISMATCH = new byte[0]; // a line, that is too long for the footer
+	private final static Charset XIO_CHARSET = Charset.forName("ISO-8859-1");
+	
+	// GZIP header flags
+	private final static int FHCRC = 2;
+	private final static int FEXTRA = 4;
+	private final static int FNAME = 8;
+	private final static int FCOMMENT = 16;
+	
+	/**
+	 * The result of the recovery of a log file.
+	 */
+	public static class Result{
+		/** number of complete GZIP members */
+		public int members;
+		/** size of the file before the recovery */
+		public long originalSize;
+		/** size of the file after the recovery (or the size it would have) */
+		public long recoveredSize;
+		/** file offset, up to which the file is unchanged */
+		public long validSize;
+		/** <code>true</code>, if the file was complete already */
+		public boolean complete;
+		
+		@Override
+		public String toString(){
+			if(complete) return "complete ("+members+" gzip members, "+originalSize+" bytes)";
+			return members+" complete gzip members, "+validSize+" of "+originalSize+
+				   " bytes valid, "+recoveredSize+" bytes after recovery";
+		}
+	}
+	
+	public static void main(String[] args){
+		boolean check = false;
+		int a = 0;
+		if(a < args.length && args[a].equals("--check")){
+			check = true;
+			a++;
+		}
+		if(a >= args.length){
+			System.err.println("Usage: LogRecovery [--check] file...");
+			System.exit(1);
+		}
+		boolean failed = false;
+		for(; a < args.length; a++){
+			try {
+				long start = System.currentTimeMillis();
+				if(LogManifest.isManifestFile(args[a]))
+					recoverManifest(args[a], ! check);
+				else
+					System.out.println(args[a]+": "+recover(args[a], ! check));
+				System.out.println("  ("+(System.currentTimeMillis()-start)+" ms)");
+			} catch (IOException e) {
+				System.err.println(args[a]+": recovery failed: "+e.getMessage());
+				failed = true;
+			}
+		}
+		if(failed) System.exit(1);
+	}
+	
+	/**
+	 * Scans a log file and repairs it, if it is incomplete.
+	 * 
+	 * @param path name of the log file
+	 * @param modify <code>false</code> to only scan the file
+	 * @return the result of the scan
+	 * @throws IOException if reading or writing fails
+	 */
+	public static Result recover(String path, boolean modify) throws IOException{
+		boolean xio = ! BinaryLog.isBinaryLogFile(path);
+		if(isCompressed(path))
+			return recoverCompressed(path, xio, modify);
+		Result result = new Result();
+		result.originalSize = result.validSize = result.recoveredSize = new File(path).length();
+		result.complete = true;
+		if(xio) recoverRawXIO(path, result, modify);
+		// an uncompressed binary log can't be damaged by a missing footer,
+		// a cut record is detected as end of file by the reader
+		return result;
+	}
+	
+	/**
+	 * Repairs the segments of a rotated log, that are not listed by the
+	 * manifest yet, and adds them.
+	 * 
+	 * @param manifestPath name of the manifest
+	 * @param modify <code>false</code> to only scan the files
+	 * @throws IOException if reading or writing fails
+	 */
+	public static void recoverManifest(String manifestPath, boolean modify) throws IOException{
+		LogManifest manifest = LogManifest.read(manifestPath);
+		String logPath = LogManifest.getLogPath(manifestPath);
+		int number = manifest.getSegments().size() + 1;
+		File file;
+		while((file = new File(LogManifest.getSegmentPath(logPath, number))).isFile()){
+			Result result = recover(file.getPath(), modify);
+			System.out.println(file.getPath()+": "+result);
+			if(modify){
+				manifest.add(scanSegment(file));
+				manifest.write();
+			}
+			number++;
+		}
+		System.out.println(manifestPath+": "+(number-1)+" segments");
+	}
+	
+	private static boolean isCompressed(String path) throws IOException{
+		try(InputStream in = new FileInputStream(path)){
+			return in.read() == 0x1f && in.read() == 0x8b;
+		}
+	}
+	
+	/**
+	 * Reads a segment and creates its entry for the manifest.
+	 */
+	private static LogManifest.Segment scanSegment(File file) throws IOException{
+		long first = INVALID_TIMESTAMP, last = INVALID_TIMESTAMP, events = 0, bytes = 0;
+		LinkedHashSet<String> scopes = new LinkedHashSet<String>();
+		try(InputStream in = LogConverter.openInput(file.getPath())){
+			if(BinaryLog.isBinaryLogFile(file.getPath())){
+				BinaryLogReader reader = new BinaryLogReader(in);
+				reader.readHeader();
+				try{
+					while(true){
+						long ts = reader.next();
+						if(first == INVALID_TIMESTAMP) first = ts;
+						last = ts;
+						events++;
+						scopes.add(ScopeDictionary.get(reader.getScopeId()).getScope());
+					}
+				} catch(EOFException e){
+					// end of segment
+				}
+				bytes = reader.getPosition();
+			}
+			else{
+				XIOParser parser = new XIORegExParser();
+				BufferedReader lines = new BufferedReader(new InputStreamReader(in, XIO_CHARSET));
+				String line;
+				while((line = lines.readLine()) != null){
+					bytes += line.length() + 1;
+					long ts = parser.preparseTS(line);
+					if(ts == INVALID_TIMESTAMP) continue;
+					if(first == INVALID_TIMESTAMP) first = ts;
+					last = ts;
+					events++;
+					String scope = XIOParser.findSensorName(line);
+					if(scope != null) scopes.add(scope);
+				}
+			}
+		}
+		return new LogManifest.Segment(file.getName(), first, last, events, bytes, new ArrayList<String>(scopes));
+	}
+	
+	private static void recoverRawXIO(String path, Result result, boolean modify) throws IOException{
+		try(RandomAccessFile file = new RandomAccessFile(path, modify ? "rw" : "r")){
+			long size = file.length();
+			// find the end of the last complete line
+			long end = size;
+			byte[] buf = new byte[8192];
+			search:
+			while(end > 0){
+				int n = (int) Math.min(buf.length, end);
+				file.seek(end - n);
+				file.readFully(buf, 0, n);
+				for(int i=n-1; i>=0; i--){
+					if(buf[i] == '\n') break search;
+					end--;
+				}
+			}
+			boolean hasFooter = false;
+			if(end >= FOOTER.length){
+				byte[] tail = new byte[FOOTER.length];
+				file.seek(end - FOOTER.length);
+				file.readFully(tail);
+				hasFooter = Arrays.equals(tail, FOOTER);
+			}
+			result.validSize = end;
+			result.complete = end == size && hasFooter;
+			result.recoveredSize = end + (hasFooter ? 0 : FOOTER.length);
+			if(modify && ! result.complete){
+				file.setLength(end);
+				file.seek(end);
+				if(! hasFooter) file.write(FOOTER);
+			}
+		}
+	}
+	
+	private static Result recoverCompressed(String path, boolean xio, boolean modify) throws IOException{
+		Result result = new Result();
+		result.originalSize = new File(path).length();
+		MemberScanner scanner = new MemberScanner(path, 0);
+		TailKeeper tail = new TailKeeper();
+		long lastMemberStart = 0;
+		boolean lastMemberEndsLine = true;
+		try{
+			while(true){
+				long start = scanner.position();
+				tail.lineEnded = false;
+				if(! scanner.scanMember(tail)) break;
+				result.members++;
+				lastMemberStart = start;
+				lastMemberEndsLine = tail.lineEnded;
+			}
+		} finally{
+			scanner.close();
+		}
+		result.validSize = scanner.validEnd;
+		boolean hasFooter = ! xio || tail.endsWith(FOOTER);
+		result.complete = scanner.validEnd == result.originalSize && hasFooter;
+		if(result.complete){
+			result.recoveredSize = result.validSize;
+			return result;
+		}
+		if(! xio){
+			// binary records can't be cut at a line, so only complete members are kept
+			result.recoveredSize = result.validSize;
+			if(modify) truncate(path, result.validSize, null);
+			return result;
+		}
+		
+		// XIO: rewrite the decodable data after the last member, that ends
+		// with a complete line, without the last incomplete line
+		long rewriteStart = lastMemberEndsLine ? scanner.validEnd : lastMemberStart;
+		if(result.members == 0) rewriteStart = 0;
+		File tmp = new File(path + ".recovery");
+		try(OutputStream gz = new GZIPOutputStream(new FileOutputStream(tmp), 1 << 16)){
+			LineFilter lines = new LineFilter(gz);
+			MemberScanner rest = new MemberScanner(path, rewriteStart);
+			try{
+				while(rest.scanMember(lines)){
+					// continue with the next member
+				}
+			} finally{
+				rest.close();
+			}
+			if(! lines.lastLineEquals(FOOTER)) gz.write(FOOTER);
+		}
+		result.validSize = rewriteStart;
+		result.recoveredSize = rewriteStart + tmp.length();
+		if(modify) truncate(path, rewriteStart, tmp);
+		tmp.delete();
+		return result;
+	}
+	
+	// cuts the file and appends the content of another file
+	private static void truncate(String path, long size, File append) throws IOException{
+		try(FileChannel out = new RandomAccessFile(path, "rw").getChannel()){
+			out.truncate(size);
+			if(append != null){
+				try(FileChannel in = new FileInputStream(append).getChannel()){
+					long pos = 0, n = in.size();
+					while(pos < n)
+						pos += in.transferTo(pos, n - pos, out.position(size + pos));
+				}
+			}
+			out.force(true);
+		}
+	}
+	
+	/**
+	 * Reads the GZIP members of a file one by one.
+	 */
+	private static class MemberScanner{
+		private final FileInputStream in;
+		private final byte[] buf = new byte[1 << 16];
+		private final byte[] out = new byte[1 << 16];
+		private final Inflater inflater = new Inflater(true);
+		private final CRC32 crc = new CRC32();
+		private int bufPos = 0, bufLen = 0;
+		private long bufOffset; // file offset of buf[0]
+		long validEnd; // file offset after the last complete member
+		
+		MemberScanner(String path, long start) throws IOException{
+			in = new FileInputStream(path);
+			in.getChannel().position(start);
+			bufOffset = start;
+			validEnd = start;
+		}
+		
+		long position(){
+			return bufOffset + bufPos;
+		}
+		
+		/**
+		 * Decodes the next member and passes its data to <code>sink</code>.
+		 * The data of an incomplete member is passed as far as it can be decoded.
+		 * 
+		 * @return <code>true</code> if the member is complete
+		 */
+		boolean scanMember(OutputStream sink) throws IOException{
+			if(! readHeader()) return false;
+			inflater.reset();
+			crc.reset();
+			long size = 0;
+			try{
+				while(! inflater.finished()){
+					if(inflater.needsInput()){
+						if(bufPos == bufLen && ! fill()) return false;
+						inflater.setInput(buf, bufPos, bufLen - bufPos);
+						bufPos = bufLen;
+					}
+					int n = inflater.inflate(out);
+					if(n > 0){
+						crc.update(out, 0, n);
+						size += n;
+						sink.write(out, 0, n);
+					}
+					else if(inflater.needsDictionary()) return false;
+				}
+			} catch(DataFormatException e){
+				return false;
+			}
+			bufPos = bufLen - inflater.getRemaining();
+			long storedCrc = readIntLE();
+			long storedSize = readIntLE();
+			if(storedCrc != crc.getValue() || storedSize != (size & 0xffffffffL)) return false;
+			validEnd = position();
+			return true;
+		}
+		
+		private boolean readHeader() throws IOException{
+			int b1 = read(), b2 = read(), cm = read(), flags = read();
+			if(b1 != 0x1f || b2 != 0x8b || cm != 8 || flags < 0) return false;
+			for(int i=0; i<6; i++) if(read() < 0) return false; // mtime, xfl, os
+			if((flags & FEXTRA) != 0){
+				int len = read() | (read() << 8);
+				if(len < 0) return false;
+				for(int i=0; i<len; i++) if(read() < 0) return false;
+			}
+			if((flags & FNAME) != 0) if(! skipZeroTerminated()) return false;
+			if((flags & FCOMMENT) != 0) if(! skipZeroTerminated()) return false;
+			if((flags & FHCRC) != 0) if(read() < 0 || read() < 0) return false;
+			return true;
+		}
+		
+		private boolean skipZeroTerminated() throws IOException{
+			int b;
+			while((b = read()) > 0){
+				// skip
+			}
+			return b == 0;
+		}
+		
+		private long readIntLE() throws IOException{
+			long v = 0;
+			for(int i=0; i<4; i++){
+				int b = read();
+				if(b < 0) return -1;
+				v |= (long) b << (8 * i);
+			}
+			return v;
+		}
+		
+		private int read() throws IOException{
+			if(bufPos == bufLen && ! fill()) return -1;
+			return buf[bufPos++] & 0xff;
+		}
+		
+		private boolean fill() throws IOException{
+			bufOffset += bufLen;
+			bufPos = bufLen = 0;
+			int n = in.read(buf);
+			if(n <= 0) return false;
+			bufLen = n;
+			return true;
+		}
+		
+		void close() throws IOException{
+			inflater.end();
+			in.close();
+		}
+	}
+	
+	/**
+	 * Keeps the last bytes of the decoded data.
+	 */
+	private static class TailKeeper extends OutputStream{
+		private final byte[] tail = new byte[FOOTER.length];
+		private int length = 0;
+		boolean lineEnded; // the last written byte was a line end
+		
+		@Override
+		public void write(int b){
+			if(length == tail.length) System.arraycopy(tail, 1, tail, 0, --length);
+			tail[length++] = (byte) b;
+			lineEnded = b == '\n';
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len){
+			int start = Math.max(off, off + len - tail.length);
+			for(int i=start; i<off+len; i++) write(b[i]);
+		}
+		
+		boolean endsWith(byte[] suffix){
+			if(length < suffix.length) return false;
+			for(int i=0; i<suffix.length; i++)
+				if(tail[length - suffix.length + i] != suffix[i]) return false;
+			return true;
+		}
+	}
+	
+	/**
+	 * Writes complete lines only, the last incomplete line is held back.
+	 */
+	private static class LineFilter extends OutputStream{
+		private final OutputStream out;
+		private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+		private byte[] lastLine = new byte[0];
+		
+		LineFilter(OutputStream out){
+			this.out = out;
+		}
+		
+		@Override
+		public void write(int b) throws IOException{
+			line.write(b);
+			if(b == '\n'){
+				lastLine = line.toByteArray();
+				out.write(lastLine);
+				line.reset();
+			}
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException{
+			int end = off + len;
+			int lineStart = off;
+			for(int i=off; i<end; i++){
+				if(b[i] != '\n') continue;
+				if(line.size() > 0){
+					line.write(b, lineStart, i + 1 - lineStart);
+					lastLine = line.toByteArray();
+					out.write(lastLine);
+					line.reset();
+				}
+				else{
+					out.write(b, lineStart, i + 1 - lineStart);
+					// the last line is only needed, if it is short enough to be the footer
+					lastLine = i + 1 - lineStart <= FOOTER.length ?
+							Arrays.copyOfRange(b, lineStart, i + 1) : FOOTER_MISMATCH;
+				}
+				lineStart = i + 1;
+			}
+			line.write(b, lineStart, end - lineStart);
+		}
+		
+		boolean lastLineEquals(byte[] b){
+			return Arrays.equals(lastLine, b);
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+
+import venice.hub.VeniceHub;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOParser;
+
+import static venice.lib.parser.XIOParser.INVALID_TIMESTAMP;
+
+/**
+ * Reads all events of a log file (XIO, binary, or a {@link LogManifest}) from
+ * the beginning to the end, without the buffering and seeking of the
+ * {@link TTEBufferedReader}. Used to load or to index whole files.
+ */
+public class LogScanner {
+	
+	private final static Charset XIO_CHARSET = Charset.forName("ISO-8859-1");
+	
+	/**
+	 * Receives the events of a scanned file.
+	 */
+	public interface Handler {
+		/**
+		 * Called for every event, in the order of the file.
+		 * 
+		 * @param se the event (a new object for every call)
+		 * @return <code>false</code> to stop scanning
+		 */
+		boolean event(SlotEvent se);
+	}
+	
+	private LogScanner(){
+	}
+	
+	/**
+	 * Reads all events of a log file and hands them over to the handler.
+	 * 
+	 * @param path name of the file
+	 * @param filter only events of slots accepted by the filter are handed over
+	 * @param handler receives the events
+	 * @return <code>false</code>, if the handler stopped the scan
+	 * @throws IOException if reading fails
+	 */
+	public static boolean scan(String path, ScopeFilter filter, Handler handler) throws IOException{
+		boolean binary = BinaryLog.isBinaryLogFile(LogManifest.getLogPath(path));
+		InputStream in = LogManifest.isManifestFile(path) ?
+				new SegmentedInputStream(LogManifest.read(path), filter) : LogConverter.openInput(path);
+		try{
+			if(binary){
+				BinaryLogReader reader = new BinaryLogReader(in);
+				reader.readHeader();
+				while(true){
+					try {
+						reader.next();
+					} catch (EOFException e) {
+						return true;
+					}
+					if(!filter.accepts(reader.getScopeId())) continue;
+					if(!handler.event(reader.parseEvent())) return false;
+				}
+			}
+			XIOParser parser = VeniceHub.createXIOParser(); // may run next to the replay
+			BufferedReader reader = new BufferedReader(new InputStreamReader(in, XIO_CHARSET), 1 << 16);
+			String line;
+			while((line = reader.readLine()) != null){
+				if(line.isEmpty() || parser.preparseTS(line) == INVALID_TIMESTAMP)
+					continue; // header, root tag or broken line
+				if(!filter.acceptsAll()){
+					String scope = XIOParser.findSensorName(line);
+					if(scope != null && !filter.accepts(scope)) continue;
+				}
+				SlotEvent se = parser.stringToEvent(line);
+				if(se.getTime() == INVALID_TIMESTAMP) continue;
+				if(!handler.event(se)) return false;
+			}
+			return true;
+		} finally {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import com.beust.jcommander.IStringConverter;
+import com.beust.jcommander.ParameterException;
+
+/**
+ * Converts a memory size like <code>512m</code> into bytes. The suffixes
+ * <code>k</code>, <code>m</code> and <code>g</code> (case insensitive) stand
+ * for KiB, MiB and GiB, a number without suffix is taken as bytes.
+ */
+public class MemorySizeConverter implements IStringConverter<Long>{
+	
+	/**
+	 * Converts a String into a number of bytes.
+	 * @param arg String representation of a memory size
+	 * @return size in bytes
+	 */
+	@Override
+	public Long convert(String arg) {
+		String s = arg.trim().toLowerCase();
+		int shift = 0;
+		if(s.endsWith("k")) shift = 10;
+		else if(s.endsWith("m")) shift = 20;
+		else if(s.endsWith("g")) shift = 30;
+		if(shift > 0) s = s.substring(0, s.length() - 1);
+		try{
+			long size = Long.parseLong(s);
+			if(size < 0 || size > (Long.MAX_VALUE >> shift)) throw new NumberFormatException();
+			return size << shift;
+		}
+		catch(NumberFormatException e){
+			throw new ParameterException("Parameter "+arg+" should be a memory size like 512m, 64k or 1g");
+		}
+	}
+}
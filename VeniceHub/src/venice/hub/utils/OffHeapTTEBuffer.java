@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import venice.lib.parser.SlotEvent;
+
+/**
+ * A {@link TTEBuffer}, that keeps its events in an {@link EventArena}
+ * outside of the Java heap. The events are decoded when they are read,
+ * so the heap usage does not depend on the capacity of the buffer.
+ * <p>
+ * Events can only be added at the end and removed from the beginning,
+ * which is how the {@link TTEBufferedReader} uses its buffer.
+ */
+public class OffHeapTTEBuffer extends TTEBuffer {
+	
+	private final EventArena arena;
+	
+	/**
+	 * @param arena the arena for the events, owned by the buffer from now on
+	 */
+	public OffHeapTTEBuffer(EventArena arena){
+		this.arena = arena;
+	}
+	
+	@Override
+	public SlotEvent get(int index){
+		if(index < 0 || index >= arena.size())
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+arena.size());
+		try {
+			return arena.get(index);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@Override
+	public long getTime(int index){
+		if(index < 0 || index >= arena.size())
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+arena.size());
+		return arena.getTime(index);
+	}
+	
+	@Override
+	public int size(){
+		return arena.size();
+	}
+	
+	@Override
+	public void add(int index, SlotEvent slotEvent){
+		if(index != arena.size())
+			throw new UnsupportedOperationException("events can only be added at the end");
+		try {
+			arena.add(slotEvent);
+			modCount++;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	@Override
+	public SlotEvent set(int index, SlotEvent slotEvent){
+		throw new UnsupportedOperationException();
+	}
+	
+	@Override
+	public SlotEvent remove(int index){
+		if(index != 0) throw new UnsupportedOperationException("events can only be removed from the beginning");
+		SlotEvent slotEvent = get(0);
+		arena.removeFirst(1);
+		modCount++;
+		return slotEvent;
+	}
+	
+	@Override
+	protected void removeRange(int fromIndex, int toIndex){
+		if(fromIndex != 0) throw new UnsupportedOperationException("events can only be removed from the beginning");
+		arena.removeFirst(toIndex);
+		modCount++;
+	}
+	
+	@Override
+	public void clear(){
+		arena.clear();
+		modCount++;
+		setReadingPosition(0);
+	}
+	
+	/**
+	 * Returns the off-heap memory used by the events.
+	 */
+	@Override
+	public long getMemory(){
+		return arena.getUsedBytes();
+	}
+	
+	@Override
+	public long getMemory(int index){
+		return arena.getBytes(index);
+	}
+	
+	@Override
+	public void ensureCapacity(int minCapacity){
+		// the arena grows in chunks
+	}
+	
+	/**
+	 * Frees the memory of the arena.
+	 */
+	@Override
+	public void release(){
+		arena.close();
+		setReadingPosition(0);
+	}
+	
+	/**
+	 * Returns the arena of this buffer.
+	 * @return the arena
+	 */
+	public EventArena getArena(){
+		return arena;
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * GZIP output stream, that compresses on several threads (like pigz).
+ * <p>
+ * The data is split into chunks, that are compressed on a pool of worker
+ * threads. Every chunk becomes a complete GZIP member, and the members are
+ * written in the original order. A concatenation of GZIP members is a valid
+ * GZIP file, so the result can be read by <code>GZIPInputStream</code>
+ * (and therefore by {@link TTEBufferedReader}) and by gzip.
+ * <p>
+ * The number of chunks in flight is limited to twice the number of threads,
+ * so the writing thread waits if the workers can not keep up.
+ * <p>
+ * {@link #flush()} ends the current chunk early and waits until all chunks
+ * are written, so all data written so far can be decompressed.
+ * <p>
+ * {@link #finish()} and {@link #close()} stop the worker threads and end
+ * their <code>Deflater</code>s, which frees the native memory at once.
+ */
+public class ParallelGZIPOutputStream extends OutputStream{
+	
+	/** default size of a chunk (uncompressed), same as pigz */
+	public static final int DEFAULT_CHUNK_SIZE = 128 * 1024;
+	
+	// GZIP member header: magic, deflate, no flags, no mtime, no xfl, unknown OS
+	private static final byte[] HEADER = {
+		(byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+	};
+	
+	private final OutputStream out;
+	private final int level;
+	private final int chunkSize;
+	private final int maxPending;
+	private final ExecutorService pool;
+	private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	private final ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>();
+	private final List<Deflater> created = new ArrayList<Deflater>(); // deflaters of all workers, to end them
+	private static final long TERMINATION_TIMEOUT = 10; // s, for the workers to finish their chunks
+	
+	private byte[] chunk;
+	private int chunkPos = 0;
+	private boolean closed = false;
+	
+	/**
+	 * Opens a GZIP stream with the default chunk size.
+	 * 
+	 * @param out the stream for the compressed data
+	 * @param level compression level (0-9 or <code>Deflater.DEFAULT_COMPRESSION</code>)
+	 * @param threads number of worker threads
+	 */
+	public ParallelGZIPOutputStream(OutputStream out, int level, int threads){
+		this(out, level, threads, DEFAULT_CHUNK_SIZE);
+	}
+	
+	/**
+	 * Opens a GZIP stream.
+	 * 
+	 * @param out the stream for the compressed data
+	 * @param level compression level (0-9 or <code>Deflater.DEFAULT_COMPRESSION</code>)
+	 * @param threads number of worker threads
+	 * @param chunkSize size of the chunks (uncompressed), that are compressed separately
+	 */
+	public ParallelGZIPOutputStream(OutputStream out, int level, int threads, int chunkSize){
+		if(threads < 1 || chunkSize < 1)
+			throw new IllegalArgumentException("threads and chunkSize must be positive");
+		if(level != Deflater.DEFAULT_COMPRESSION && (level < 0 || level > 9))
+			throw new IllegalArgumentException("invalid compression level: "+level);
+		this.out = out;
+		this.level = level;
+		this.chunkSize = chunkSize;
+		this.maxPending = 2 * threads;
+		this.chunk = new byte[chunkSize];
+		pool = Executors.newFixedThreadPool(threads, new ThreadFactory(){
+			private int counter = 0;
+			@Override
+			public Thread newThread(Runnable r){
+				Thread t = new Thread(r, "VH_GZIP_" + (counter++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+	
+	/**
+	 * Opens a GZIP stream for log files with the given compression level.
+	 * With more than one thread, or if <code>flush()</code> has to end
+	 * a GZIP member, a <code>ParallelGZIPOutputStream</code> is returned,
+	 * otherwise a <code>GZIPOutputStream</code>.
+	 * 
+	 * @param out the stream for the compressed data
+	 * @param level compression level (0-9 or <code>Deflater.DEFAULT_COMPRESSION</code>)
+	 * @param threads number of threads for compressing
+	 * @param flushMembers if <code>true</code>, <code>flush()</code> writes all
+	 * data as complete GZIP members, so that a file, which is cut after a flush,
+	 * is still a valid GZIP file
+	 * @return the GZIP stream
+	 * @throws IOException if the header can not be written
+	 */
+	public static OutputStream open(OutputStream out, final int level, int threads,
+			boolean flushMembers) throws IOException{
+		if(threads > 1 || flushMembers)
+			return new ParallelGZIPOutputStream(out, level, Math.max(1, threads));
+		return new GZIPOutputStream(out, 1 << 16){
+			{
+				def.setLevel(level);
+			}
+		};
+	}
+	
+	@Override
+	public void write(int b) throws IOException{
+		checkOpen();
+		chunk[chunkPos++] = (byte) b;
+		if(chunkPos == chunkSize)
+			submitChunk();
+	}
+	
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException{
+		checkOpen();
+		while(len > 0){
+			int n = Math.min(len, chunkSize - chunkPos);
+			System.arraycopy(b, off, chunk, chunkPos, n);
+			chunkPos += n;
+			off += n;
+			len -= n;
+			if(chunkPos == chunkSize)
+				submitChunk();
+		}
+	}
+	
+	/**
+	 * Compresses the current chunk and writes all pending chunks.
+	 */
+	@Override
+	public void flush() throws IOException{
+		checkOpen();
+		if(chunkPos > 0)
+			submitChunk();
+		while(! pending.isEmpty())
+			writeNext();
+		out.flush();
+	}
+	
+	/**
+	 * Writes all remaining data without closing the underlying stream.
+	 * Stops the worker threads.
+	 */
+	public void finish() throws IOException{
+		if(closed) return;
+		try{
+			flush();
+		} finally{
+			closed = true;
+			pool.shutdownNow();
+			endDeflaters();
+		}
+	}
+	
+	// ends the deflaters, as soon as no worker can use them any more
+	private void endDeflaters(){
+		try{
+			if(! pool.awaitTermination(TERMINATION_TIMEOUT, TimeUnit.SECONDS))
+				return; // still in use, left to the garbage collector
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			return;
+		}
+		synchronized(created){
+			for(Deflater d : created)
+				d.end();
+			created.clear();
+		}
+	}
+	
+	/**
+	 * Returns the number of deflaters, that are not ended yet.
+	 */
+	int getOpenDeflaters(){
+		synchronized(created){
+			return created.size();
+		}
+	}
+	
+	@Override
+	public void close() throws IOException{
+		if(closed) return;
+		try{
+			finish();
+		} finally{
+			out.close();
+		}
+	}
+	
+	private void checkOpen() throws IOException{
+		if(closed)
+			throw new IOException("stream is closed");
+	}
+	
+	private void submitChunk() throws IOException{
+		while(pending.size() >= maxPending)
+			writeNext();
+		final byte[] data = chunk;
+		final int length = chunkPos;
+		pending.add(pool.submit(new Callable<byte[]>(){
+			@Override
+			public byte[] call(){
+				return compress(data, length);
+			}
+		}));
+		chunk = new byte[chunkSize];
+		chunkPos = 0;
+	}
+	
+	// writes the oldest pending chunk, waits for it if necessary
+	private void writeNext() throws IOException{
+		Future<byte[]> future = pending.poll();
+		try{
+			out.write(future.get());
+		} catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while compressing");
+		} catch(ExecutionException e){
+			throw new IOException("compressing failed", e.getCause());
+		}
+	}
+	
+	// called by the worker threads, returns a complete GZIP member
+	private byte[] compress(byte[] data, int length){
+		Deflater deflater = deflaters.get();
+		if(deflater == null){
+			deflater = new Deflater(level, true);
+			deflaters.set(deflater);
+			synchronized(created){
+				created.add(deflater);
+			}
+		}
+		deflater.reset();
+		deflater.setInput(data, 0, length);
+		deflater.finish();
+		
+		// deflate rarely expands the data by more than a few bytes per block
+		byte[] result = new byte[length + length / 1000 + 64 + HEADER.length + 8];
+		System.arraycopy(HEADER, 0, result, 0, HEADER.length);
+		int pos = HEADER.length;
+		while(! deflater.finished()){
+			if(pos == result.length - 8)
+				result = Arrays.copyOf(result, result.length * 2);
+			pos += deflater.deflate(result, pos, result.length - 8 - pos);
+		}
+		
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		writeIntLE(result, pos, (int) crc.getValue());
+		writeIntLE(result, pos + 4, length);
+		return Arrays.copyOf(result, pos + 8);
+	}
+	
+	private static void writeIntLE(byte[] b, int pos, int v){
+		b[pos]     = (byte) v;
+		b[pos + 1] = (byte) (v >>> 8);
+		b[pos + 2] = (byte) (v >>> 16);
+		b[pos + 3] = (byte) (v >>> 24);
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lists the partitions of a partitioned recording.
+ * <p>
+ * With <code>--partitions</code> the {@link venice.hub.PartitionedDiskWriter}
+ * writes the events of every namespace to one of several log files, and a
+ * manifest with the name of the log file plus <code>.partitions</code>.
+ * The manifest is a text file with one line per partition:
+ * <pre>
+ * # partition	namespaces...
+ * log_part01.xio.gz	Kinect	OpenDS
+ * log_part02.xio.gz	Leap
+ * </pre>
+ * The columns are separated by tabs. Partition names are relative to the
+ * directory of the manifest, a partition may be a rotated log (then its
+ * {@link LogManifest} is listed). The namespaces are only informative.
+ * <p>
+ * A manifest can be replayed like a log file, the partitions are merged by
+ * timestamp (like files given with <code>--merge</code>).
+ */
+public class PartitionManifest {
+	
+	public final static String FILE_EXTENSION = ".partitions";
+	private final static Charset CHARSET = Charset.forName("UTF-8");
+	private final static String COMMENT = "#";
+	private final static String COLUMNS = "# partition\tnamespaces...";
+	
+	private PartitionManifest(){
+	}
+	
+	/**
+	 * Checks by the file extension, if the given file is a partition manifest.
+	 * 
+	 * @param filePath name of the file
+	 * @return <code>true</code> if it is a partition manifest
+	 */
+	public static boolean isPartitionFile(String filePath){
+		return filePath != null && filePath.toLowerCase().endsWith(FILE_EXTENSION);
+	}
+	
+	/**
+	 * Returns the name of a partition of a log file.
+	 * 
+	 * @param logPath name of the log file
+	 * @param number the number of the partition, starting with 1
+	 * @return <code>log_part01.xio.gz</code> for partition 1 of <code>log.xio.gz</code>
+	 */
+	public static String getPartitionPath(String logPath, int number){
+		int nameStart = logPath.lastIndexOf(File.separatorChar) + 1;
+		int p0 = logPath.indexOf(".", nameStart);
+		if(p0 < 0) p0 = logPath.length();
+		return logPath.substring(0, p0) + String.format("_part%02d", number) + logPath.substring(p0);
+	}
+	
+	/**
+	 * Writes a partition manifest.
+	 * 
+	 * @param path name of the manifest
+	 * @param partitions names of the partitions
+	 * @param namespaces the namespaces of every partition, or <code>null</code>
+	 * @throws IOException if writing fails
+	 */
+	public static void write(String path, List<String> partitions, List<List<String>> namespaces) throws IOException{
+		File file = new File(path);
+		try(Writer out = Files.newBufferedWriter(file.toPath(), CHARSET)){
+			out.write(COLUMNS + "\n");
+			for(int i=0; i<partitions.size(); i++){
+				out.write(new File(partitions.get(i)).getName());
+				if(namespaces != null)
+					for(String namespace : namespaces.get(i)) out.write("\t" + namespace);
+				out.write("\n");
+			}
+		}
+	}
+	
+	/**
+	 * Reads the names of the partitions of a manifest.
+	 * 
+	 * @param path name of the manifest
+	 * @return the names of the partitions, with the directory of the manifest
+	 * @throws IOException if the file can not be read
+	 */
+	public static List<String> read(String path) throws IOException{
+		File dir = new File(path).getAbsoluteFile().getParentFile();
+		List<String> partitions = new ArrayList<String>();
+		try(BufferedReader in = Files.newBufferedReader(new File(path).toPath(), CHARSET)){
+			String line;
+			while((line = in.readLine()) != null){
+				if(line.trim().isEmpty() || line.startsWith(COMMENT)) continue;
+				String name = line.split("\t")[0];
+				partitions.add(new File(name).isAbsolute() ? name : new File(dir, name).getPath());
+			}
+		}
+		return partitions;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+/**
+ * A replay clock that follows the system time, scaled by a speed factor.
+ * With speed 1 (the default), the time of the clock is the system time.
+ * A change of the speed does not make the clock jump, it only runs faster
+ * or slower from then on.
+ * <p>
+ * The clock can also be slewed, i.e. put back or forward by some ms, which
+ * are spread over a duration by running a little slower or faster (e.g. by
+ * {@link ClockSync}).
+ */
+public class RealTimeReplayClock extends ReplayClock {
+	
+	private long anchorSystemTime; // system time of the last change of speed or slew
+	private long anchorTime; // time of the clock at the last change of speed or slew
+	private double speed;
+	private long slewMs; // the clock falls behind by this during the slew duration
+	private long slewDuration; // clock ms from the anchor, 0 if not slewing
+	
+	/**
+	 * Constructs a clock running at real time.
+	 */
+	public RealTimeReplayClock(){
+		this(1);
+	}
+	
+	/**
+	 * Constructs a clock starting at the system time.
+	 * 
+	 * @param speed the speed factor
+	 * @throws IllegalArgumentException if the speed is out of range
+	 */
+	public RealTimeReplayClock(double speed){
+		checkSpeed(speed);
+		anchorSystemTime = System.currentTimeMillis();
+		anchorTime = anchorSystemTime;
+		this.speed = speed;
+	}
+	
+	@Override
+	public synchronized long now() {
+		return now(System.currentTimeMillis());
+	}
+	
+	// the time of the clock at the given system time
+	private long now(long systemTime){
+		long elapsed = sinceAnchor(systemTime);
+		return anchorTime + elapsed - slewed(elapsed);
+	}
+	
+	@Override
+	public synchronized long toWaitingTime(long delay) {
+		double rate = speed;
+		if(sinceAnchor(System.currentTimeMillis()) < slewDuration) rate *= 1 - (double) slewMs / slewDuration;
+		if(delay <= 0 || rate == 1) return delay;
+		return (long) Math.ceil(delay / rate);
+	}
+	
+	// time of the clock since the anchor, without slewing
+	private long sinceAnchor(long systemTime){
+		long elapsed = systemTime - anchorSystemTime;
+		return speed == 1 ? elapsed : (long) (elapsed * speed);
+	}
+	
+	// part of the slew that is done, the given time after the anchor
+	private long slewed(long elapsed){
+		if(slewDuration == 0) return 0;
+		return elapsed >= slewDuration ? slewMs : slewMs * elapsed / slewDuration;
+	}
+	
+	@Override
+	public synchronized double getSpeed() {
+		return speed;
+	}
+	
+	/**
+	 * Changes the speed of the clock, from now on.
+	 * 
+	 * @param speed the speed factor
+	 * @throws IllegalArgumentException if the speed is out of range
+	 */
+	public synchronized void setSpeed(double speed){
+		checkSpeed(speed);
+		long systemTime = System.currentTimeMillis();
+		long elapsed = sinceAnchor(systemTime);
+		long restMs = slewMs - slewed(elapsed);
+		long restDuration = slewDuration - elapsed;
+		reanchor(systemTime);
+		if(restDuration > 0){
+			// the rest of the slew continues
+			slewMs = restMs;
+			slewDuration = restDuration;
+		}
+		this.speed = speed;
+	}
+	
+	/**
+	 * Puts the clock back by the given time (or forward, if negative), spread
+	 * evenly over the duration, without jumping. A slew that is not finished
+	 * is replaced, its rest is dropped.
+	 * 
+	 * @param ms the time in ms
+	 * @param duration the time of the clock in ms, until it is put back by <code>ms</code>
+	 * @throws IllegalArgumentException if <code>ms</code> is not less than the duration
+	 */
+	public synchronized void slew(long ms, long duration){
+		if(Math.abs(ms) >= duration)
+			throw new IllegalArgumentException("slew of "+ms+" ms is not less than "+duration+" ms");
+		reanchor(System.currentTimeMillis());
+		slewMs = ms;
+		slewDuration = duration;
+	}
+	
+	// counts from the given system time on, without slewing
+	private void reanchor(long systemTime){
+		anchorTime = now(systemTime);
+		anchorSystemTime = systemTime;
+		slewMs = 0;
+		slewDuration = 0;
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+/**
+ * The time base of a replay. The replay delay of {@link venice.hub.VeniceHub}
+ * is the difference between the time of the clock and the timestamps of the
+ * events: an event is due, when the clock reaches its timestamp plus the
+ * replay delay. Pausing and seeking only change the replay delay, the clock
+ * decides how fast the replay runs.
+ * <p>
+ * {@link RealTimeReplayClock} follows the system time, scaled by a speed
+ * factor. {@link VirtualReplayClock} only runs when it is told to, for
+ * stepping through a replay and for deterministic tests.
+ */
+public abstract class ReplayClock {
+	
+	/**
+	 * The slowest speed of a replay.
+	 */
+	public static final double MIN_SPEED = 0.25;
+	
+	/**
+	 * The fastest speed of a replay.
+	 */
+	public static final double MAX_SPEED = 16;
+	
+	/**
+	 * Returns the actual time of the clock.
+	 * 
+	 * @return time in ms
+	 */
+	public abstract long now();
+	
+	/**
+	 * Converts a time of the clock into the time to wait for it (in real
+	 * time), e.g. for the delay of a {@link TTE}.
+	 * 
+	 * @param delay time of the clock in ms, not positive if it is already due
+	 * @return real time to wait in ms, not positive if it is already due
+	 */
+	public abstract long toWaitingTime(long delay);
+	
+	/**
+	 * Returns how fast the clock runs compared to real time.
+	 * 
+	 * @return the speed factor, 0 if the clock only runs when it is told to
+	 */
+	public abstract double getSpeed();
+	
+	/**
+	 * Checks a speed factor.
+	 * 
+	 * @param speed the speed factor
+	 * @throws IllegalArgumentException if the speed is out of range
+	 */
+	public static void checkSpeed(double speed){
+		if(!(speed >= MIN_SPEED && speed <= MAX_SPEED))
+			throw new IllegalArgumentException("speed "+speed+" is not between "+MIN_SPEED+" and "+MAX_SPEED);
+	}
+}
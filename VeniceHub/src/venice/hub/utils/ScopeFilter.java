@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import venice.lib.ScopeDictionary;
+
+/**
+ * Selects slots by their scope, with include and exclude patterns.
+ * <p>
+ * A scope is accepted, if it matches one of the include patterns (or if there
+ * are no include patterns) and none of the exclude patterns. A pattern must
+ * match the whole scope. Patterns are globs, where <code>*</code> matches any
+ * characters except <code>/</code>, <code>**</code> matches any characters
+ * and <code>?</code> matches a single character except <code>/</code>.
+ * Patterns starting with <code>regex:</code> are regular expressions.
+ * <p>
+ * Examples:<br>
+ * <code>Kinect/face/*</code> matches all slots of the namespace <code>Kinect/face</code>.<br>
+ * <code>Kinect/**</code> matches all slots of <code>Kinect</code> and its sub-namespaces.<br>
+ * <code>regex:.*(left|right)Hand</code> matches e.g. <code>Kinect/skeleton/leftHand</code>.
+ * <p>
+ * The decision is cached for every scope, so repeated checks are cheap.
+ * A <code>ScopeFilter</code> is not thread-safe, every thread needs its own.
+ */
+public class ScopeFilter {
+	
+	public final static String REGEX_PREFIX = "regex:";
+	
+	private final List<Pattern> includes = new ArrayList<Pattern>();
+	private final List<Pattern> excludes = new ArrayList<Pattern>();
+	private final HashMap<String, Boolean> scopeCache = new HashMap<String, Boolean>();
+	private byte[] idCache = new byte[0]; // by scope id: 0 unknown, 1 accepted, 2 rejected
+	
+	/**
+	 * Creates a filter, that accepts every scope.
+	 */
+	public ScopeFilter(){
+	}
+	
+	/**
+	 * Creates a filter.
+	 * 
+	 * @param includes patterns of the accepted scopes, or an empty list for all scopes
+	 * @param excludes patterns of scopes, that are not accepted
+	 */
+	public ScopeFilter(Collection<String> includes, Collection<String> excludes){
+		for(String pattern : includes) include(pattern);
+		for(String pattern : excludes) exclude(pattern);
+	}
+	
+	/**
+	 * Creates a filter with the patterns given by <code>--include</code>
+	 * and <code>--exclude</code>.
+	 * 
+	 * @return the filter
+	 */
+	public static ScopeFilter fromConfiguration(){
+		Configuration config = Configuration.getInstance();
+		return new ScopeFilter(config.getIncludedScopes(), config.getExcludedScopes());
+	}
+	
+	/**
+	 * Adds an include pattern.
+	 * 
+	 * @param pattern glob, or regular expression with <code>regex:</code> prefix
+	 */
+	public void include(String pattern){
+		includes.add(compile(pattern));
+		clearCache();
+	}
+	
+	/**
+	 * Adds an exclude pattern.
+	 * 
+	 * @param pattern glob, or regular expression with <code>regex:</code> prefix
+	 */
+	public void exclude(String pattern){
+		excludes.add(compile(pattern));
+		clearCache();
+	}
+	
+	private void clearCache(){
+		scopeCache.clear();
+		idCache = new byte[0];
+	}
+	
+	/**
+	 * Returns <code>true</code>, if every scope is accepted.
+	 * 
+	 * @return <code>true</code> if there are no patterns
+	 */
+	public boolean acceptsAll(){
+		return includes.isEmpty() && excludes.isEmpty();
+	}
+	
+	/**
+	 * Checks a scope.
+	 * 
+	 * @param scope the scope, e.g. <code>Kinect/face/mouth</code>
+	 * @return <code>true</code> if the scope is accepted
+	 */
+	public boolean accepts(String scope){
+		if(acceptsAll()) return true;
+		Boolean accepted = scopeCache.get(scope);
+		if(accepted == null){
+			accepted = matches(scope);
+			scopeCache.put(scope, accepted);
+		}
+		return accepted;
+	}
+	
+	/**
+	 * Checks a scope of the {@link ScopeDictionary}.
+	 * 
+	 * @param scopeId the id of the scope
+	 * @return <code>true</code> if the scope is accepted
+	 */
+	public boolean accepts(int scopeId){
+		if(acceptsAll()) return true;
+		if(scopeId < 0) return true; // unknown scope, can not be checked
+		if(scopeId >= idCache.length) idCache = Arrays.copyOf(idCache, Math.max(scopeId + 1, 2 * idCache.length));
+		if(idCache[scopeId] == 0){
+			ScopeDictionary.Entry e = ScopeDictionary.get(scopeId);
+			if(e == null) return true;
+			idCache[scopeId] = (byte) (matches(e.getScope()) ? 1 : 2);
+		}
+		return idCache[scopeId] == 1;
+	}
+	
+	/**
+	 * Checks, if at least one of the scopes is accepted.
+	 * 
+	 * @param scopes a list of scopes
+	 * @return <code>true</code> if a scope is accepted
+	 */
+	public boolean acceptsAny(Collection<String> scopes){
+		if(acceptsAll()) return true;
+		for(String scope : scopes)
+			if(accepts(scope)) return true;
+		return false;
+	}
+	
+	private boolean matches(String scope){
+		boolean included = includes.isEmpty();
+		for(Pattern p : includes){
+			if(p.matcher(scope).matches()){
+				included = true;
+				break;
+			}
+		}
+		if(! included) return false;
+		for(Pattern p : excludes){
+			if(p.matcher(scope).matches()) return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Compiles a pattern into a regular expression.
+	 * 
+	 * @param pattern glob, or regular expression with <code>regex:</code> prefix
+	 * @return the compiled pattern
+	 */
+	public static Pattern compile(String pattern){
+		if(pattern.startsWith(REGEX_PREFIX))
+			return Pattern.compile(pattern.substring(REGEX_PREFIX.length()));
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for(int i=0; i<pattern.length(); i++){
+			char c = pattern.charAt(i);
+			if(c != '*' && c != '?'){
+				literal.append(c);
+				continue;
+			}
+			if(literal.length() > 0){
+				regex.append(Pattern.quote(literal.toString()));
+				literal.setLength(0);
+			}
+			if(c == '?') regex.append("[^/]");
+			else if(i+1 < pattern.length() && pattern.charAt(i+1) == '*'){
+				regex.append(".*");
+				i++;
+			}
+			else regex.append("[^/]*");
+		}
+		if(literal.length() > 0) regex.append(Pattern.quote(literal.toString()));
+		return Pattern.compile(regex.toString());
+	}
+	
+	@Override
+	public String toString(){
+		return "include " + includes + ", exclude " + excludes;
+	}
+}
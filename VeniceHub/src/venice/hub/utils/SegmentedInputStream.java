@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the segments of a {@link LogManifest} as one continuous stream.
+ * <p>
+ * The segments are opened lazily, when reading reaches them. Compressed
+ * segments are decompressed. When skipping, segments (or the rest of a
+ * segment) that are completely skipped are not read at all, because their
+ * uncompressed size is known from the manifest.
+ * <p>
+ * XIO segments can be concatenated like this, because the header and root
+ * tag lines of a segment are ignored by the parser. Binary segments start
+ * with a file header, that is recognized by {@link BinaryLogReader}.
+ * <p>
+ * With a {@link ScopeFilter}, segments are left out, if the manifest lists
+ * their scopes and none of them is accepted by the filter.
+ */
+public class SegmentedInputStream extends InputStream{
+	
+	private final LogManifest manifest;
+	private final List<LogManifest.Segment> segments;
+	private int index = 0; // index of the current (or next) segment
+	private InputStream current; // null, if the segment is not opened
+	private long position; // position in the current segment
+	
+	/**
+	 * @param manifest the manifest with the segments to read
+	 */
+	public SegmentedInputStream(LogManifest manifest){
+		this.manifest = manifest;
+		this.segments = manifest.getSegments();
+	}
+	
+	/**
+	 * @param manifest the manifest with the segments to read
+	 * @param filter only segments with a scope accepted by the filter are read
+	 */
+	public SegmentedInputStream(LogManifest manifest, ScopeFilter filter){
+		this.manifest = manifest;
+		this.segments = new ArrayList<LogManifest.Segment>();
+		for(LogManifest.Segment s : manifest.getSegments()){
+			if(s.getScopes() == null || filter.acceptsAny(s.getScopes()))
+				segments.add(s);
+		}
+	}
+	
+	/**
+	 * Returns the number of segments, that are read.
+	 * 
+	 * @return number of segments, without the left out segments
+	 */
+	public int getSegmentCount(){
+		return segments.size();
+	}
+	
+	@Override
+	public int read() throws IOException{
+		while(index < segments.size()){
+			int b = open().read();
+			if(b != -1){
+				position++;
+				return b;
+			}
+			nextSegment();
+		}
+		return -1;
+	}
+	
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException{
+		if(len == 0) return 0;
+		while(index < segments.size()){
+			int n = open().read(b, off, len);
+			if(n > 0){
+				position += n;
+				return n;
+			}
+			nextSegment();
+		}
+		return -1;
+	}
+	
+	@Override
+	public long skip(long n) throws IOException{
+		long skipped = 0;
+		while(skipped < n && index < segments.size()){
+			long remaining = segments.get(index).getBytes() - position;
+			if(remaining <= n - skipped){
+				// skip the rest of this segment without reading it
+				skipped += Math.max(0, remaining);
+				nextSegment();
+				continue;
+			}
+			long s = open().skip(n - skipped);
+			if(s <= 0){
+				// the segment is shorter than listed
+				if(current.read() == -1){
+					nextSegment();
+					continue;
+				}
+				s = 1;
+			}
+			position += s;
+			skipped += s;
+		}
+		return skipped;
+	}
+	
+	/**
+	 * Returns the index of the segment, that is currently read.
+	 * 
+	 * @return index in the list of segments, that are read
+	 */
+	public int getSegmentIndex(){
+		return index;
+	}
+	
+	@Override
+	public void close() throws IOException{
+		if(current != null) current.close();
+		current = null;
+		index = segments.size();
+	}
+	
+	private InputStream open() throws IOException{
+		if(current == null){
+			current = LogConverter.openInput(manifest.getFile(segments.get(index)).getPath());
+			position = 0;
+		}
+		return current;
+	}
+	
+	private void nextSegment() throws IOException{
+		if(current != null) current.close();
+		current = null;
+		position = 0;
+		index++;
+	}
+}
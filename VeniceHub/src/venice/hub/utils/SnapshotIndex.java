@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import venice.lib.parser.SlotEvent;
+
+/**
+ * Holds the state of all scopes (the last event of every scope) at regular
+ * points of time, the keyframes, so that the state at any time can be
+ * reconstructed after a seek: the state of the keyframe before the time is
+ * taken, and the events between the keyframe and the time are applied.
+ * <p>
+ * The keyframes are at multiples of the interval. The state of a keyframe
+ * holds the events with a timestamp before the keyframe. While building
+ * the index, only the changes of every interval are collected, so the events
+ * can be added in any order (e.g. file by file). <code>finish</code> turns
+ * them into the states of the keyframes. Unchanged events are shared between
+ * keyframes, so a keyframe needs only an array of references.
+ */
+public class SnapshotIndex {
+	
+	private final long interval;
+	private final HashMap<Integer, Integer> slotOfScope = new HashMap<Integer, Integer>();
+	private TreeMap<Long, HashMap<Integer, SlotEvent>> changes = new TreeMap<Long, HashMap<Integer, SlotEvent>>();
+	private long[] times = new long[0]; // timestamps of the keyframes
+	private SlotEvent[][] states = new SlotEvent[0][]; // last event of every slot, per keyframe
+	
+	/**
+	 * @param interval time between two keyframes in ms
+	 */
+	public SnapshotIndex(long interval){
+		if(interval <= 0) throw new IllegalArgumentException("interval must be positive: "+interval);
+		this.interval = interval;
+	}
+	
+	/**
+	 * Adds an event to the index.
+	 * 
+	 * @param se the event, which is kept by the index
+	 * @param offset time offset added to the timestamp of the event
+	 */
+	public void add(SlotEvent se, long offset){
+		long time = se.getTime() + offset;
+		if(offset != 0) se = new SlotEvent(se.getValue(), se.getNamespace(), se.getLabel(), se.getType(), time);
+		long keyframe = Math.floorDiv(time, interval) * interval + interval; // the next keyframe
+		HashMap<Integer, SlotEvent> changed = changes.get(keyframe);
+		if(changed == null){
+			changed = new HashMap<Integer, SlotEvent>();
+			changes.put(keyframe, changed);
+		}
+		SlotEvent last = changed.get(se.getScopeId());
+		if(last == null || last.getTime() <= time) changed.put(se.getScopeId(), se);
+	}
+	
+	/**
+	 * Creates the keyframes from the added events. Keyframes are only
+	 * created after intervals with events.
+	 */
+	public void finish(){
+		times = new long[changes.size()];
+		states = new SlotEvent[changes.size()][];
+		SlotEvent[] state = new SlotEvent[0];
+		int k = 0;
+		for(Map.Entry<Long, HashMap<Integer, SlotEvent>> entry : changes.entrySet()){
+			for(SlotEvent se : entry.getValue().values()){
+				Integer slot = slotOfScope.get(se.getScopeId());
+				if(slot == null){
+					slot = slotOfScope.size();
+					slotOfScope.put(se.getScopeId(), slot);
+					state = Arrays.copyOf(state, slot + 1);
+				}
+				if(state[slot] == null || state[slot].getTime() <= se.getTime()) state[slot] = se;
+			}
+			times[k] = entry.getKey();
+			states[k++] = state.clone();
+		}
+		changes = null;
+	}
+	
+	/**
+	 * Returns the number of keyframes.
+	 * 
+	 * @return number of keyframes
+	 */
+	public int size(){
+		return times.length;
+	}
+	
+	/**
+	 * Returns the timestamp of a keyframe.
+	 * 
+	 * @param k index of the keyframe
+	 * @return timestamp of the keyframe
+	 */
+	public long getTime(int k){
+		return times[k];
+	}
+	
+	/**
+	 * Finds the last keyframe at or before the given timestamp by binary search.
+	 * 
+	 * @param timestamp the timestamp
+	 * @return index of the keyframe, or -1 if all keyframes are later
+	 */
+	public int floor(long timestamp){
+		int low = 0;
+		int high = times.length;
+		while(low < high){
+			int mid = (low + high) >>> 1;
+			if(times[mid] <= timestamp) low = mid + 1;
+			else high = mid;
+		}
+		return low - 1;
+	}
+	
+	/**
+	 * Returns the state of a keyframe: the last event before the keyframe
+	 * of every scope, by scope id. The events must not be changed.
+	 * 
+	 * @param k index of the keyframe
+	 * @return a new map of the events by the ids of their scopes
+	 */
+	public HashMap<Integer, SlotEvent> getState(int k){
+		HashMap<Integer, SlotEvent> state = new HashMap<Integer, SlotEvent>();
+		for(SlotEvent se : states[k])
+			if(se != null) state.put(se.getScopeId(), se);
+		return state;
+	}
+	
+	/**
+	 * Returns the number of scopes in the index.
+	 * 
+	 * @return number of scopes
+	 */
+	public int getScopeCount(){
+		return slotOfScope.size();
+	}
+}
@@ -40,12 +40,16 @@ import venice.lib.parser.SlotEvent;
  */
 public class TTE extends SlotEvent implements Delayed {
 	
+	private long memory; // estimated size, set by TTEQueue
+	int generation = -1; // of the TTEQueue while counted there, -1 if not counted
+	
 	public TTE(SlotEvent slotEvent){
 		this.label = slotEvent.getLabel();
 		this.time = slotEvent.getTime();
 		this.value = slotEvent.getValue();
 		this.type = slotEvent.getType();
 		this.namespace = slotEvent.getNamespace();
+		this.scopeId = slotEvent.getScopeId(); // carry the scope id through the queue
 	}
 	
 	public TTE(Object value, String slot, Class<?> type, long time){
@@ -56,10 +60,15 @@ public class TTE extends SlotEvent implements Delayed {
 		super();
 	}
 	
+    /**
+     * Returns the real time until this event is due: the time of the
+     * {@link ReplayClock} until it reaches the timestamp plus the replay delay,
+     * converted by the clock.
+     */
     @Override
     public long getDelay(TimeUnit unit) {
-    	
-        long delay = time + VeniceHub.getReplayDelay() - System.currentTimeMillis();
+    	ReplayClock clock = VeniceHub.getReplayClock();
+        long delay = clock.toWaitingTime(time + VeniceHub.getReplayDelay() - clock.now());
         return unit.convert(delay, TimeUnit.MILLISECONDS);
     }
     
@@ -73,6 +82,20 @@ public class TTE extends SlotEvent implements Delayed {
         return 0;
     }
     
+    /**
+     * Returns the estimated memory used by this event, as counted by
+     * {@link TTEQueue}.
+     * 
+     * @return size in bytes
+     */
+    public long getMemory(){
+    	return memory;
+    }
+    
+    void setMemory(long memory){
+    	this.memory = memory;
+    }
+    
     public SlotEvent toSlotEvent(){
     	return new SlotEvent(value, namespace, label, type, time);
     }
@@ -23,8 +23,11 @@
  */
 package venice.hub.utils;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.RandomAccess;
 
+import venice.lib.parser.BinaryCodec;
 import venice.lib.parser.SlotEvent;
 
 /**
@@ -33,27 +36,173 @@ import venice.lib.parser.SlotEvent;
  * The {@link TTEBufferedReader} fills it with data from disk, writing this data on top,
  * the {@link venice.hub.DiskReader} reads data from a position that could be anywhere (normally
  * the DiskReader is reading slower than the TTEBufferedReader is filling)
+ * <p>
+ * The events are kept as objects on the heap. Subclasses can store them
+ * differently (see {@link OffHeapTTEBuffer}) by overriding <code>get</code>,
+ * <code>size</code>, <code>add</code>, <code>removeRange</code>,
+ * <code>clear</code> and <code>getTime</code>.
+ * <p>
+ * The buffer keeps track of the memory used by its events (estimated for
+ * events on the heap, see <code>estimateSize</code>), so that it can be
+ * limited by bytes instead of the number of events.
  */
-public class TTEBuffer extends ArrayList<SlotEvent> {
+public class TTEBuffer extends AbstractList<SlotEvent> implements RandomAccess {
 	
-	private static final long serialVersionUID = 1L;
+	private final static long EVENT_OVERHEAD = 64; // event object and reference in the list
+	
+	private final ArrayList<SlotEvent> events;
 	private int readingPosition; // reading position
+	private long memory; // estimated bytes used by the events
+	private long cachedThresholdBytes; // for getIndexOfLast, valid as long as modCount is unchanged
+	private int cachedThresholdIndex;
+	private int cachedModCount = -1;
 	
 	/**
-	 * The overridden constructor just initializes the reading position after calling the superior constructor. 
+	 * The constructor just initializes the list of events and the reading position. 
 	 */
 	public TTEBuffer(){
 		super();
+		events = new ArrayList<SlotEvent>();
 		readingPosition = 0;
 	}
 	
+	@Override
+	public SlotEvent get(int index){
+		return events.get(index);
+	}
+	
+	@Override
+	public int size(){
+		return events.size();
+	}
+	
+	@Override
+	public void add(int index, SlotEvent slotEvent){
+		events.add(index, slotEvent);
+		memory += estimateSize(slotEvent);
+		modCount++;
+	}
+	
+	@Override
+	public SlotEvent set(int index, SlotEvent slotEvent){
+		SlotEvent old = events.set(index, slotEvent);
+		memory += estimateSize(slotEvent) - estimateSize(old);
+		modCount++;
+		return old;
+	}
+	
+	@Override
+	public SlotEvent remove(int index){
+		SlotEvent old = events.remove(index);
+		memory -= estimateSize(old);
+		modCount++;
+		return old;
+	}
+	
+	@Override
+	protected void removeRange(int fromIndex, int toIndex){
+		for(int i=fromIndex; i<toIndex; i++) memory -= estimateSize(events.get(i));
+		events.subList(fromIndex, toIndex).clear();
+		modCount++;
+	}
+	
+	/**
+	 * Removes all events and sets the reading position to the beginning.
+	 */
+	@Override
+	public void clear(){
+		events.clear();
+		memory = 0;
+		modCount++;
+		readingPosition = 0;
+	}
+	
+	/**
+	 * Estimates the memory used by an event on the heap, including its
+	 * label, namespace and value.
+	 * 
+	 * @param slotEvent the event
+	 * @return estimated size in bytes
+	 */
+	public static long estimateSize(SlotEvent slotEvent){
+		long size = EVENT_OVERHEAD + BinaryCodec.estimateHeapSize(slotEvent.getType(), slotEvent.getValue());
+		if(slotEvent.getLabel() != null) size += 40 + 2L * slotEvent.getLabel().length();
+		if(slotEvent.getNamespace() != null) size += 40 + 2L * slotEvent.getNamespace().length();
+		return size;
+	}
+	
+	/**
+	 * Returns the memory used by the events of the buffer.
+	 * 
+	 * @return size in bytes (estimated for events on the heap)
+	 */
+	public long getMemory(){
+		return memory;
+	}
+	
+	/**
+	 * Returns the memory used by one event of the buffer.
+	 * 
+	 * @param index index of the event
+	 * @return size in bytes (estimated for events on the heap)
+	 */
+	public long getMemory(int index){
+		return estimateSize(get(index));
+	}
+	
+	/**
+	 * Finds the first event of the part at the end of the buffer, that uses
+	 * the given amount of memory. The result is cached until the buffer is
+	 * changed.
+	 * 
+	 * @param bytes size of the part at the end of the buffer
+	 * @return index of the first event of that part, or -1 if the whole
+	 * buffer uses less memory
+	 */
+	public int getIndexOfLast(long bytes){
+		if(cachedModCount == modCount && cachedThresholdBytes == bytes) return cachedThresholdIndex;
+		int index = size();
+		long sum = 0;
+		while(sum < bytes && index > 0) sum += getMemory(--index);
+		cachedThresholdIndex = sum >= bytes ? index : -1;
+		cachedThresholdBytes = bytes;
+		cachedModCount = modCount;
+		return cachedThresholdIndex;
+	}
+	
+	/**
+	 * Increases the capacity, if necessary, to hold at least the given
+	 * number of events without growing.
+	 * @param minCapacity the desired minimum capacity
+	 */
+	public void ensureCapacity(int minCapacity){
+		events.ensureCapacity(minCapacity);
+	}
+	
+	/**
+	 * Returns the timestamp of an event, without creating the event, if it
+	 * is not stored as object.
+	 * @param index index of the event
+	 * @return timestamp of the event
+	 */
+	public long getTime(int index){
+		return get(index).getTime();
+	}
+	
+	/**
+	 * Frees the resources of the buffer. The buffer is empty afterwards.
+	 */
+	public void release(){
+		clear();
+	}
+	
 	/**
      * Gets the timestamp of the first event in the buffer of the disk reader.
      * If the buffer is empty, 0 is returned.
      * @return timestamp of first event in buffer, or 0 if the buffer is empty
      */
 	public long getFirstTimestamp(){
-		if(size()>0) return get(0).getTime(); 
+		if(size()>0) return getTime(0); 
 		else return 0;
 	}
 	
@@ -64,7 +213,7 @@ public class TTEBuffer extends ArrayList<SlotEvent> {
      */
 	public long getLastTimestamp(){
 		// returns the timestamp of the last element in the buffer
-		if(size()>0) return get(size()-1).getTime();
+		if(size()>0) return getTime(size()-1);
 		else return 0;
 	}
 	
@@ -76,7 +225,7 @@ public class TTEBuffer extends ArrayList<SlotEvent> {
 	 */
 	public int removeUntil(long timestamp){
 		int count = 0;
-		while(count < size() && get(count).getTime() <= timestamp) count++;
+		while(count < size() && getTime(count) <= timestamp) count++;
 		if(count > 0) removeRange(0, count);
 		return count;
 	}
@@ -24,6 +24,7 @@
 package venice.hub.utils;
 
 import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -44,6 +45,26 @@ import static venice.lib.parser.XIOParser.INVALID_TIMESTAMP;
  * Doing the real work for the {@link venice.hub.DiskReader}, reads data from file,
  * parses it into {@link TTE} items and caches them, until {@link venice.hub.DiskReader} will take them.
  * Data item will be provided over a {@link SynchronousQueue}.
+ * <p>
+ * With <code>--include</code> or <code>--exclude</code> only the slots accepted
+ * by a {@link ScopeFilter} are replayed. The scope of a record is checked
+ * before it is parsed, so other records are neither parsed nor buffered.
+ * <p>
+ * When several log files are replayed together, the {@link venice.hub.DiskReader}
+ * uses one reader per file. Such a reader works on the timestamps of its own
+ * file, the time offset of the file is only needed to compare them with the
+ * timestamp of the last pushed event. With the end signal enabled, the reader
+ * hands over {@link #END_OF_FILE} once all events of the file are delivered,
+ * and a {@link SeekSignal} after a seek, before the first event at the seeked
+ * position, so that events handed over before the seek can be told apart.
+ * <p>
+ * Seek requests do not wait for each other: the newest request cancels a
+ * running seek at the next skip or line, and requests that arrive while
+ * seeking are coalesced, so that only the newest timestamp is seeked.
+ * <p>
+ * With <code>--offHeap</code> the buffer keeps the events serialized outside
+ * of the heap ({@link OffHeapTTEBuffer}), so that a large buffer capacity
+ * does not need a large heap.
  *
  * @see venice.hub.DiskReader
  */
@@ -58,15 +79,46 @@ public class TTEBufferedReader implements Runnable{
 	
 	private final int CAPACITY  = Configuration.getInstance().getBufferCapacity(); // number of TTE objects
 	private final int THRESHOLD =  Configuration.getInstance().getBufferThreshold(); // Threshold to shift the buffer before reaching it's end
+	private final long MEMORY = Configuration.getInstance().getBufferMemory(); // bytes, 0 for no limit by memory
+	private final long THRESHOLD_MEMORY = Configuration.getInstance().getBufferThresholdMemory(); // bytes, used with MEMORY
 	private final long MINIMUM_SKIP_AMOUNT = Configuration.getInstance().getBufferMinimumSkipAmount(); // if the estimated amount of bytes to skip is less, then stop skipping
+	private final static int ARENA_CHUNK_SIZE = 1 << 22; // bytes, for the off-heap buffer
 	
-	private InputStream inStream;
+	/**
+	 * Handed over after the last event of the file, if the end signal is enabled.
+	 * Compare by reference.
+	 */
+	public static final SlotEvent END_OF_FILE = new SlotEvent(null, "", "endOfFile", null, INVALID_TIMESTAMP);
+	
+	/**
+	 * Handed over after a seek, if the end signal is enabled. Holds the
+	 * number of the seek request, which was returned by <code>seek</code>.
+	 * Earlier requests may be skipped, if they were coalesced.
+	 */
+	public static class SeekSignal extends SlotEvent {
+		private final int number;
+		
+		SeekSignal(int number){
+			super(null, "", "seekDone", null, INVALID_TIMESTAMP);
+			this.number = number;
+		}
+		
+		/**
+		 * Returns the number of the seek request that was done.
+		 * @return number of the seek request
+		 */
+		public int getNumber(){
+			return number;
+		}
+	}
+	
+	protected InputStream inStream;
 	private TTEBuffer buffer;
 	private boolean active;
 	private int headerLines;
 	private String filePath;
-	private boolean endOfFile;
-	private FileInputStream fileInputStream;
+	protected boolean endOfFile;
+	protected FileInputStream fileInputStream;
 	private XIOParser parse;
 	private long avgBytesPerS; // for approximation of bytes per second
 	private double toSmallProgress = Configuration.getInstance().getToSmallProgress();
@@ -74,11 +126,20 @@ public class TTEBufferedReader implements Runnable{
 	private enum tasks {FILL, SEEK};
 	private tasks task;
 	private long seekedTimestamp;
-	private boolean processingSeekRequest;
-	private long lastSeekRequest;
+	private volatile long lastSeekRequest;
+	private volatile int seekNumber; // number of the last seek request
+	private long positionTimestamp; // timestamp at the file position, if the buffer does not tell it
 	private boolean fastSeekingEnabled;
 	private SynchronousQueue<SlotEvent> syncQ;
 	private boolean finished;
+	private int lineCounter; // counts the read lines from the file
+	private String line; // the last line read from file
+	protected ScopeFilter filter;
+	private long firstTimestamp; // timestamp of the first record of this file
+	private long timeOffset; // added to the timestamps of this file during replay
+	private boolean endSignalEnabled;
+	private boolean endSignalled; // END_OF_FILE was handed over since the last seek
+	private SeekSignal seekSignal; // has to be handed over, or null
 	
 	/**
 	 * The constructor initializes variables, the buffer and the input file.
@@ -88,16 +149,21 @@ public class TTEBufferedReader implements Runnable{
 		finished = false;
 		syncQ = new SynchronousQueue<SlotEvent>();
 		lastSeekRequest = INVALID_TIMESTAMP;
-		processingSeekRequest = false;
+		seekNumber = 0;
+		positionTimestamp = INVALID_TIMESTAMP;
 		seekedTimestamp = INVALID_TIMESTAMP;
 		task = tasks.FILL;
-		parse = VeniceHub.getPreferredXIOParser();
+		parse = VeniceHub.createXIOParser(); // readers of several files run at the same time
 		filePath = fp;
-		buffer = new TTEBuffer();
-		buffer.ensureCapacity(CAPACITY);
+		buffer = createBuffer();
 		headerLines = Configuration.getInstance().getHeaderLines();
+		filter = ScopeFilter.fromConfiguration();
 		avgBytesPerS = 0;
 		fastSeekingEnabled = true;
+		firstTimestamp = INVALID_TIMESTAMP;
+		timeOffset = 0;
+		endSignalEnabled = false;
+		seekSignal = null;
 		
         initStream(filePath);
         estimateAvgBytesPerS();
@@ -151,43 +217,41 @@ public class TTEBufferedReader implements Runnable{
 	 */
 	public void run(){
 		active = true; // thread is active
-		int lineCounter = 1; // counts the read lines from the file
 		SlotEvent slotEvent; // used to store a TTE object parsed from a line from file
-		StringBuilder inBuffer; // used for reading a line from file
-		String s = ""; // used for reading a line from file
 		long preparsedTimestamp; // store a preparsed Timestamp from a line from file
 		
 		while(active){
 			lineCounter = 0;
 			endOfFile = false;
+			endSignalled = false;
 			while(!endOfFile && active){
 				switch(task){
 				case FILL:
-					if(buffer.peek() != null){
+					if(seekSignal != null){
+						try {
+							if(syncQ.offer(seekSignal, 500L, TimeUnit.MILLISECONDS)) seekSignal = null;
+						} catch (InterruptedException e) {
+							e.printStackTrace();
+						}
+					}
+					else if(buffer.peek() != null){
 						// if new data is prepared on readingposition
 						try {
 							// try to give data from readingposition to DiskReader
 							// will wait until DiskReader has received the new Data
 							boolean suc = syncQ.offer(buffer.peek(), 500L, TimeUnit.MILLISECONDS);
 							if(suc){
-								buffer.getNext();
+								buffer.addReadingPosition(1);
 							}
 						} catch (InterruptedException e) {
 							e.printStackTrace();
 						}
 					}
-					if(buffer.size() < CAPACITY){ // if buffer is not full
-						inBuffer = new StringBuilder();
-						readLineFromStream(inBuffer);
-						s = inBuffer.toString();
-						if(s.length() > 0){
-							lineCounter++;
-				    		if (lineCounter > headerLines) {
-				    			slotEvent = parse.stringToEvent(s); // try to parse the line into a TTE
-				    			if(slotEvent.getTime() > -1){
-		                    		buffer.add(slotEvent); // put the parsed TTE in the TTEBuffer
-				    			}
-				    		}
+					if(!isBufferFull()){
+						slotEvent = readEvent(); // try to read the next TTE
+						positionTimestamp = INVALID_TIMESTAMP; // the buffer tells it from now on
+						if(slotEvent != null && slotEvent.getTime() > -1){
+							buffer.add(slotEvent); // put the parsed TTE in the TTEBuffer
 						}
 					}
 					else{ // if buffer is full 
@@ -195,21 +259,14 @@ public class TTEBufferedReader implements Runnable{
 					}
 					break;
 				case SEEK:
-					inBuffer = new StringBuilder();
-					readLineFromStream(inBuffer);
-					s = inBuffer.toString();
-					if(s.length() > 0){
-						lineCounter++;
-						if(lineCounter > headerLines){
-							preparsedTimestamp = preparseTimestamp(s);
-							if(preparsedTimestamp != INVALID_TIMESTAMP && preparsedTimestamp >= seekedTimestamp){
-								slotEvent = parse.stringToEvent(s); // try to parse line into event
-				    			if(slotEvent.getTime() != INVALID_TIMESTAMP){
-		                    		buffer.add(slotEvent); // put the parsed TTE in the TTEBuffer
-				    			}
-				    			task = tasks.FILL; // switch from SEEK to FILL mode, because seeked timestamp is found
-							}
+					preparsedTimestamp = readTimestamp();
+					if(preparsedTimestamp != INVALID_TIMESTAMP) positionTimestamp = preparsedTimestamp;
+					if(preparsedTimestamp != INVALID_TIMESTAMP && preparsedTimestamp >= seekedTimestamp){
+						slotEvent = acceptLastRecord() ? parseLastRecord() : null; // try to parse record into event
+						if(slotEvent != null && slotEvent.getTime() != INVALID_TIMESTAMP){
+							buffer.add(slotEvent); // put the parsed TTE in the TTEBuffer
 						}
+						task = tasks.FILL; // switch from SEEK to FILL mode, because seeked timestamp is found
 					}
 					break;
 				}
@@ -220,18 +277,36 @@ public class TTEBufferedReader implements Runnable{
 			if(lastSeekRequest != INVALID_TIMESTAMP){
 				processSeek();
 			}
-			if(endOfFile){
+			if(endOfFile && !endSignalEnabled){
 				//VeniceHub.message("EOF, waiting for the need of rereading the file");
+				// with the end signal the DiskReader knows the last line of the replay
 				VeniceHub.setTimestampOfLastLine(buffer.getLastTimestamp());
 			}
 			while(lastSeekRequest == INVALID_TIMESTAMP && active){
 				// wait for a seek command
-				if(buffer.peek() != null){
+				if(seekSignal != null){
+					try {
+						if(syncQ.offer(seekSignal, 500L, TimeUnit.MILLISECONDS)) seekSignal = null;
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+					}
+				}
+				else if(buffer.peek() != null){
 					// if new data is prepared on readingposition
 					try {
 						// try to give data from readingposition to DiskReader
 						// the put method will wait until DiskReader has received the new Data
-						syncQ.offer(buffer.getNext(), 500L, TimeUnit.MILLISECONDS);
+						// (the reading position is only moved on, if it was received)
+						if(syncQ.offer(buffer.peek(), 500L, TimeUnit.MILLISECONDS)){
+							buffer.addReadingPosition(1);
+						}
+					} catch (InterruptedException e) {
+						e.printStackTrace();
+					}
+				}
+				else if(endSignalEnabled && !endSignalled){
+					try {
+						endSignalled = syncQ.offer(END_OF_FILE, 500L, TimeUnit.MILLISECONDS);
 					} catch (InterruptedException e) {
 						e.printStackTrace();
 					}
@@ -248,6 +323,7 @@ public class TTEBufferedReader implements Runnable{
 			VeniceHub.message("Warning: TTEBufferedReader failed to close replay file.");
 			e.printStackTrace();
 		}
+        buffer.release();
         VeniceHub.message("TTEBufferedReader finished");
         finished = true;
 	}
@@ -270,14 +346,139 @@ public class TTEBufferedReader implements Runnable{
 		return finished;
 	}
 	
+	/**
+	 * Reads the next event from the file.
+	 * <p>
+	 * Subclasses can override this (together with <code>readTimestamp</code>,
+	 * <code>parseLastRecord</code> and <code>skipBytes</code>) to read other
+	 * file formats than XIO.
+	 * 
+	 * @return the event, or <code>null</code> if nothing could be read
+	 * (end of file, empty line or header line)
+	 */
+	protected SlotEvent readEvent(){
+		if(readLine() && lineCounter > headerLines && acceptLastRecord()){
+			return parse.stringToEvent(line); // try to parse the line into a TTE
+		}
+		return null;
+	}
+	
+	/**
+	 * Checks the scope of the record read by the last call of
+	 * <code>readTimestamp</code> (or <code>readEvent</code>) against the
+	 * filter, without parsing the record.
+	 * 
+	 * @return <code>true</code> if the record has to be replayed
+	 */
+	protected boolean acceptLastRecord(){
+		if(filter.acceptsAll()) return true;
+		String scope = XIOParser.findSensorName(line);
+		return scope == null || filter.accepts(scope); // unusual lines are checked by the parser
+	}
+	
+	/**
+	 * Reads the next line from the file and parses only its timestamp.
+	 * The line is kept, so that it can be fully parsed by
+	 * <code>parseLastRecord</code>, if needed.
+	 * 
+	 * @return the timestamp, or <code>INVALID_TIMESTAMP</code> if the line
+	 * has no valid timestamp
+	 */
+	protected long readTimestamp(){
+		if(readLine() && lineCounter > headerLines){
+			return preparseTimestamp(line);
+		}
+		return INVALID_TIMESTAMP;
+	}
+	
+	/**
+	 * Reads the next line into <code>line</code> and counts it, if it is not empty.
+	 * 
+	 * @return <code>true</code> if a non-empty line was read
+	 */
+	private boolean readLine(){
+		StringBuilder inBuffer = new StringBuilder();
+		readLineFromStream(inBuffer);
+		line = inBuffer.toString();
+		if(line.length() == 0) return false;
+		lineCounter++;
+		return true;
+	}
+	
+	/**
+	 * Fully parses the record read by the last call of <code>readTimestamp</code>.
+	 * 
+	 * @return the event, or <code>null</code> if there is no record
+	 */
+	protected SlotEvent parseLastRecord(){
+		if(line == null || line.isEmpty()) return null;
+		return parse.stringToEvent(line);
+	}
+	
+	/**
+	 * Returns the size of the record read by the last call of
+	 * <code>readTimestamp</code> in bytes. Used for estimating the
+	 * bytes per second.
+	 * 
+	 * @return size of the last record
+	 */
+	protected int getLastRecordSize(){
+		return line != null ? line.length() : 0;
+	}
+	
+	/**
+	 * Skips the given amount of bytes in the file, for fast seeking.
+	 * The reading position may be in the middle of a record afterwards.
+	 * 
+	 * @param amount number of bytes to skip
+	 * @throws IOException if skipping fails
+	 */
+	protected void skipBytes(long amount) throws IOException{
+		inStream.skip(amount);
+	}
+	
+	/**
+	 * Creates the buffer for the events: on the heap, or with
+	 * <code>--offHeap</code> in an {@link EventArena} outside of the heap.
+	 * If the arena can not be created, the heap is used.
+	 * 
+	 * @return the buffer
+	 */
+	private TTEBuffer createBuffer(){
+		Configuration conf = Configuration.getInstance();
+		if(conf.isOffHeap()){
+			String dir = conf.getOffHeapDir();
+			try {
+				return new OffHeapTTEBuffer(new EventArena(ARENA_CHUNK_SIZE, dir != null ? new File(dir) : null));
+			} catch (IOException e) {
+				VeniceHub.message("Could not create the off-heap buffer ("+e.getMessage()+"), using the heap.");
+			}
+		}
+		TTEBuffer heapBuffer = new TTEBuffer();
+		heapBuffer.ensureCapacity(CAPACITY);
+		return heapBuffer;
+	}
+	
 	/**
 	 * Initializes the inputstream, including open the replay file.
+	 * A {@link LogManifest} is read as one continuous stream of its segments.
 	 * @param filePath The name and path of the log file.
 	 */
-	private void initStream(String filePath){
+	protected void initStream(String filePath){
 		// initializes the inputstream for the file to be read
 		// can be compressed (GZIP) or non-compressed
 		
+		if(LogManifest.isManifestFile(filePath)){
+			// a rotated log, the segments are opened when needed
+			fileInputStream = null;
+			try {
+				inStream = new SegmentedInputStream(LogManifest.read(filePath), filter);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			return;
+		}
+		
 		byte[] zipMagic  = new byte[] {31, -117}; // 2 Bytes to recognize compression
 		byte[] fileMagic = new byte[2]; // 2 Bytes to be read for comparison
 		
@@ -304,39 +505,63 @@ public class TTEBufferedReader implements Runnable{
 	
 	
 	/**
-	 * Induces the seek for a specific timestamp in the file.
+	 * Induces the seek for a specific timestamp in the file. A seek that is
+	 * still running is cancelled.
 	 * 
 	 * @param timestampToSeek the timestamp to seek
+	 * @return number of the seek request, see {@link SeekSignal}
 	 */
-	public void seek(long timestampToSeek){
+	public synchronized int seek(long timestampToSeek){
 		// just note the timestamp for further processing
 		// the seeking will be done by processSeek
 		lastSeekRequest = timestampToSeek;
 		logger.debug("seek request for "+lastSeekRequest);
+		return ++seekNumber;
 	}
 	
 	/**
-	 * Seeks for a specific timestamp in the file.
-	 * It will try to use fast seeking if possible.
+	 * Seeks for the timestamp of the last seek request. If there are newer
+	 * requests when the seek is done (or cancelled), the newest is seeked.
 	 */
 	private void processSeek(){
-		// will process any seek command
-
-		if(processingSeekRequest){
-			// if already seeking:
-			// ignore the seek command for the moment
-			VeniceHub.message("ignoring seek request for the moment, because already seeking");
-			return;
-		}
-		
-		processingSeekRequest = true; // so that a seek is not interrupted by another seek command
-		
-		long timestampToSeek = lastSeekRequest;
-		
-		logger.debug("start seeking for "+timestampToSeek);
-		
+		long timestampToSeek;
+		int number;
+		do{
+			synchronized(this){
+				timestampToSeek = lastSeekRequest;
+				number = seekNumber;
+			}
+			logger.debug("start seeking for "+timestampToSeek);
+			seekTo(timestampToSeek, number);
+		}while(!finishSeek(number));
+		if(endSignalEnabled) seekSignal = new SeekSignal(number);
+		logger.debug("finished seeking");
+	}
+	
+	/**
+	 * Marks the seek requests as done, if there is no newer one.
+	 * 
+	 * @param number number of the seek request that was done
+	 * @return <code>false</code> if there is a newer request
+	 */
+	private synchronized boolean finishSeek(int number){
+		if(number != seekNumber) return false;
+		lastSeekRequest = INVALID_TIMESTAMP;
+		return true;
+	}
+	
+	/**
+	 * Seeks for a specific timestamp in the file.
+	 * It will try to use fast seeking if possible. Returns early, if there
+	 * is a newer seek request.
+	 * 
+	 * @param timestampToSeek the timestamp to seek
+	 * @param number number of the seek request
+	 */
+	private void seekTo(long timestampToSeek, int number){
 		long timestampOfFilePosition = INVALID_TIMESTAMP; // the timestamp of the actual reading position in the file
-		
+
+		task = tasks.FILL; // a cancelled seek may have left the SEEK task for an older timestamp
 		boolean insideBuffer = false;
 		
 		if(buffer.size() > 0){
@@ -350,7 +575,7 @@ public class TTEBufferedReader implements Runnable{
 			int n=0;
 			long timestamp = INVALID_TIMESTAMP;
 			do{
-				timestamp = buffer.get(n++).getTime();
+				timestamp = buffer.getTime(n++);
 			}while(timestamp < timestampToSeek && n < buffer.size());
 			buffer.setReadingPosition(--n);
 		}
@@ -359,47 +584,47 @@ public class TTEBufferedReader implements Runnable{
 			//VeniceHub.message("outside buffer");
 			if(fastSeekingEnabled){
 				buffer.setReadingPosition(0); // because the buffer will be cleared in both of the following if conditions
-				if(timestampToSeek <= VeniceHub.getTimestampOf1stLine()){
+				if(timestampToSeek <= firstTimestamp){
 					// the easiest case: just start at the beginning of the file, no skipping necessary
 					fileReset();
-					buffer = new TTEBuffer();
+					buffer.clear();
 				}
 				else{
-					timestampOfFilePosition = buffer.getLastTimestamp(); // the last timestamp in buffer is also the timestamp of the actual file position
-					buffer = new TTEBuffer();
+					// the last timestamp in buffer is also the timestamp of the actual file position
+					timestampOfFilePosition = buffer.size() > 0 ? buffer.getLastTimestamp() : positionTimestamp;
+					buffer.clear();
 					if(timestampToSeek < timestampOfFilePosition || timestampOfFilePosition == INVALID_TIMESTAMP){
 						// skipping backwards is not possible, so a start from beginning is necessary
 						fileReset();
-						timestampOfFilePosition = VeniceHub.getTimestampOf1stLine();
+						timestampOfFilePosition = firstTimestamp;
 					}
 					int skipIterationCounter = 0;
 					long skipAmount = 0; // bytes
 					boolean keepOnSkipping = true;
-					StringBuilder inBuffer;
-					String s; // for the line read from file
 					double globalProgress, lokalProgress;
 					long initialTimestampForSkipping = timestampOfFilePosition; // for global progress calculation
 					long formerTimestampForSkipping; // for lokal progress calculation
 					long bps = avgBytesPerS;
 					while(keepOnSkipping){
+						if(number != seekNumber){
+							logger.debug("seek for "+timestampToSeek+" cancelled by a newer request");
+							return;
+						}
 						skipAmount = bps * (timestampToSeek-timestampOfFilePosition) / 1000;
 						if(skipAmount >= MINIMUM_SKIP_AMOUNT || skipIterationCounter==0){
 							formerTimestampForSkipping = timestampOfFilePosition;
 							VeniceHub.message("skip no. "+skipIterationCounter+": "+skipAmount+" bytes of data (avgBytePerS="+bps+")");
 							try {
-								inStream.skip(skipAmount);
+								skipBytes(skipAmount);
 								endOfFile = false;
 								timestampOfFilePosition = INVALID_TIMESTAMP;
-								while(!endOfFile && timestampOfFilePosition == INVALID_TIMESTAMP){
+								while(!endOfFile && timestampOfFilePosition == INVALID_TIMESTAMP && number == seekNumber){
 									// its necessary to read more than one line, when the timestamp could not be found
 									// this is possible, because a skip mostly leads into a middle position of a line
 									// and not at the beginning
-									inBuffer = new StringBuilder();
-									
-									readLineFromStream(inBuffer);
-									s = inBuffer.toString();
-									timestampOfFilePosition = preparseTimestamp(s);
+									timestampOfFilePosition = readTimestamp();
 								}
+								positionTimestamp = timestampOfFilePosition;
 								if(endOfFile || timestampOfFilePosition == INVALID_TIMESTAMP) keepOnSkipping = false;
 								if(timestampOfFilePosition != INVALID_TIMESTAMP){
 									if(timestampOfFilePosition >= timestampToSeek){
@@ -439,8 +664,7 @@ public class TTEBufferedReader implements Runnable{
 					timestampOfFilePosition = buffer.getLastTimestamp(); // the last timestamp in buffer is also the timestamp of the actual file position
 					if(timestampToSeek < timestampOfFilePosition){
 						fileReset();
-						buffer = new TTEBuffer();
-						buffer.setReadingPosition(0);
+						buffer.clear();
 					}
 				}
 				else{
@@ -450,9 +674,6 @@ public class TTEBufferedReader implements Runnable{
 			}
 		}
 
-		lastSeekRequest = INVALID_TIMESTAMP;
-		processingSeekRequest = false;
-		logger.debug("finished seeking");
 	}
 	
 	/**
@@ -469,7 +690,7 @@ public class TTEBufferedReader implements Runnable{
 		}
         
         try {
-			fileInputStream.close();
+			if(fileInputStream != null) fileInputStream.close();
 		} catch (IOException e) {
 			VeniceHub.message("Warning: Failed to close FileInputStream.");
 			e.printStackTrace();
@@ -477,14 +698,16 @@ public class TTEBufferedReader implements Runnable{
         
         // open file again
         initStream(filePath);
+        positionTimestamp = INVALID_TIMESTAMP;
 	}
 	
 	/**
 	 * If the last pushed timestamp is greater than the threshold-timestamp the buffer will get shifted.
 	 */
 	private void checkForReachingBufferThreshold(){
-		if(buffer.size() >= CAPACITY){
+		if(isBufferFull()){
 			long timestamp = VeniceHub.getLastPushedTimestamp();
+			if(timestamp != INVALID_TIMESTAMP) timestamp -= timeOffset; // into the time of this file
 			if(timestamp != INVALID_TIMESTAMP && timestamp >= getThresholdTimestamp()){
         		VeniceHub.message("shifting buffer to "+timestamp);
             	buffer.addReadingPosition(-buffer.removeUntil( timestamp ));
@@ -493,11 +716,22 @@ public class TTEBufferedReader implements Runnable{
 		}
 	}
 	
+	/**
+	 * Checks whether the buffer has reached its capacity, or its memory
+	 * limit if there is one.
+	 */
+	private boolean isBufferFull(){
+		return buffer.size() >= CAPACITY || (MEMORY > 0 && buffer.getMemory() >= MEMORY);
+	}
+	
 	/**
      * Gets the timestamp of the item on the threshold in the buffer of the
      * disk reader. If the buffer has less items then the threshold, the
      * timestamp of the last event is returned instead.
      * <p>
+     * With a memory limit, the threshold is the part at the end of the
+     * buffer that uses the threshold memory.
+     * <p>
      * Example:<br>
      * If the capacity of the buffer is 1000 and the threshold
 	 * is 100, than the timetamp of the 900th item is returned.
@@ -508,7 +742,14 @@ public class TTEBufferedReader implements Runnable{
      */
 	public long getThresholdTimestamp(){
 		long result = buffer.getLastTimestamp();
-		if(THRESHOLD < buffer.size()) result = buffer.get(buffer.size()-THRESHOLD).getTime();
+		if(MEMORY > 0){
+			int index = buffer.getIndexOfLast(THRESHOLD_MEMORY);
+			// the threshold by count applies too, if the buffer is full by count
+			if(buffer.size() >= CAPACITY && THRESHOLD < buffer.size() && (index < 0 || buffer.size()-THRESHOLD < index))
+				index = buffer.size()-THRESHOLD;
+			if(index >= 0) result = buffer.getTime(index);
+		}
+		else if(THRESHOLD < buffer.size()) result = buffer.getTime(buffer.size()-THRESHOLD);
 		return result;
 	}
 	
@@ -527,44 +768,39 @@ public class TTEBufferedReader implements Runnable{
 	 * Will read a number of lines defined in {@link Configuration}.
 	 */
 	public void estimateAvgBytesPerS(){
-		long firstTS = VeniceHub.getTimestampOf1stLine();
 		long byteCounter = 0; // counted bytes
-		StringBuilder inBuffer = new StringBuilder(); // for storing a line from file 
-		String s; // for storing a line from file
 		endOfFile = false; // for EOF-Detection
-		long timestamp = INVALID_TIMESTAMP; // the parsed timestamp from the line read from file
+		long timestamp = INVALID_TIMESTAMP; // the last valid timestamp read from file
+		long ts; // the parsed timestamp from the record read from file
 		int lineCount = 0; // count the lines read
 		int lineCountMax = Configuration.getInstance().getNumOfLinesToEstBPSFromReplay(); // how many lines to estimate BPS?
-		int headerLines = Configuration.getInstance().getHeaderLines();
+		lineCounter = 0;
 		
 		while(!endOfFile && lineCount < lineCountMax){
-			inBuffer = new StringBuilder(); // prepare StringBuffer for reading a line
-			readLineFromStream(inBuffer); // read a line from file and check if EOF
-			s = inBuffer.toString(); // convert StringBuffer in a String
-			
-			if(s.length() > 0 && lineCount >= headerLines){
-				timestamp = preparseTimestamp(s); // use the fast preparser to get the timestamp from the line
-				if(timestamp != INVALID_TIMESTAMP){
-					// if the line contains a valid timestamp 
-					
-					// if it is the 1st line, store it
-					if(VeniceHub.getTimestampOf1stLine() == INVALID_TIMESTAMP){
-						VeniceHub.setTimestampOf1stLine( timestamp ); // for global purposes
-						firstTS = timestamp; // for this local estimation
-					}
-	                if(VeniceHub.getReplayDelay() == 0){
-	                	VeniceHub.setReplayDelay(System.currentTimeMillis() - timestamp);
-	                }
-	
-					byteCounter += s.length(); // count the bytes of this 1st line (start value)
+			ts = readTimestamp(); // read a record and use the fast preparser to get its timestamp
+			if(ts != INVALID_TIMESTAMP){
+				timestamp = ts;
+				// if the record contains a valid timestamp 
+				
+				// if it is the 1st line, store it
+				if(firstTimestamp == INVALID_TIMESTAMP){
+					firstTimestamp = timestamp; // for this local estimation and for seeking
 				}
+				if(VeniceHub.getTimestampOf1stLine() == INVALID_TIMESTAMP){
+					VeniceHub.setTimestampOf1stLine( timestamp ); // for global purposes
+				}
+                if(VeniceHub.getReplayDelay() == 0){
+                	VeniceHub.setReplayDelay(VeniceHub.getReplayClock().now() - timestamp);
+                }
+
+				byteCounter += getLastRecordSize(); // count the bytes of this record
 			}
 			lineCount++; // count lines for checking reaching maximum number of lines
 		}
 		
 		if(endOfFile) System.err.println("Warning: While estimating bytes per s, end of file reached.");
 		
-		long timeDiff = (timestamp - firstTS); // the timedifference
+		long timeDiff = (timestamp - firstTimestamp); // the timedifference
 		if(timeDiff > 0){
 			avgBytesPerS = byteCounter * 1000 / timeDiff;
 		}
@@ -615,6 +851,14 @@ public class TTEBufferedReader implements Runnable{
 		return CAPACITY;
 	}
 	
+	/**
+	 * Gets the memory used by the events in the buffer.
+	 * @return size in bytes (estimated for a buffer on the heap)
+	 */
+	public long getBufferMemory(){
+		return buffer.getMemory();
+	}
+	
 	/**
      * Gets the threshold of the buffer.
      * @return threshold of the buffer
@@ -622,4 +866,38 @@ public class TTEBufferedReader implements Runnable{
 	public int getTHRESHOLD(){
 		return THRESHOLD;
 	}
+	
+	/**
+	 * Returns the timestamp of the first record of the file (without
+	 * time offset).
+	 * 
+	 * @return timestamp of the first record, or <code>INVALID_TIMESTAMP</code>
+	 * if the file has no valid timestamp
+	 */
+	public long getFirstTimestampOfFile(){
+		return firstTimestamp;
+	}
+	
+	/**
+	 * Sets the time offset of the file, which is added to its timestamps
+	 * during replay. The events of this reader are not changed by this,
+	 * the offset is used to compare the timestamp of the last pushed
+	 * event with the timestamps of the buffer.
+	 * 
+	 * @param offset time offset in ms
+	 */
+	public void setTimeOffset(long offset){
+		timeOffset = offset;
+	}
+	
+	/**
+	 * Enables handing over of {@link #END_OF_FILE} after the last event
+	 * of the file, and of a {@link SeekSignal} after every seek. The end
+	 * signal is given once after every seek.
+	 * 
+	 * @param enabled <code>true</code> to enable the end signal
+	 */
+	public void setEndSignal(boolean enabled){
+		endSignalEnabled = enabled;
+	}
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import venice.lib.parser.SlotEvent;
+
+/**
+ * A frame of events with the same timestamp, like the slots of one line
+ * of the VenicePort protocol.
+ * <p>
+ * The frame is put into the {@link TTEQueue} as a single item, so the
+ * writers are woken up only once and can write all events in one go.
+ * 
+ * @see TTEQueue#putFrame(List)
+ * @see venice.hub.VeniceWriter#writeFrame(TTEFrame)
+ */
+public class TTEFrame extends TTE {
+	
+	private final List<SlotEvent> events;
+	
+	/**
+	 * Creates a frame of the given events. The time of the frame is the
+	 * time of the first event.
+	 * 
+	 * @param events the events, must not be empty
+	 */
+	public TTEFrame(List<SlotEvent> events){
+		super();
+		this.events = Collections.unmodifiableList(new ArrayList<SlotEvent>(events));
+		this.time = events.get(0).getTime();
+	}
+	
+	/**
+	 * Returns the events of this frame, in the order they were read.
+	 * 
+	 * @return unmodifiable list of events
+	 */
+	public List<SlotEvent> getEvents(){
+		return events;
+	}
+	
+	/**
+	 * Returns the number of events in this frame.
+	 * 
+	 * @return number of events
+	 */
+	public int size(){
+		return events.size();
+	}
+	
+	@Override
+	public String toString(){
+		return "frame of "+events.size()+" events, timed for "+time;
+	}
+}
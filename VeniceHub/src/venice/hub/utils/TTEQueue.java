@@ -25,9 +25,12 @@
 package venice.hub.utils;
 
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.DelayQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import venice.hub.VeniceHub;
 import venice.lib.parser.SlotEvent;
@@ -38,6 +41,14 @@ import venice.lib.parser.SlotEvent;
  * with delaying items by use of the timestamp.
  * <p>
  * The data have to be {@link TTE} items. They will be provided in the order of their timestamp.
+ * <p>
+ * The queue keeps track of the estimated memory used by its items. Readers
+ * check {@link #isFull()} before putting new data, which takes the queue
+ * capacity and the queue memory of the {@link Configuration} into account.
+ * <p>
+ * Events with the same timestamp can be put as a {@link TTEFrame}, which is
+ * a single item of the queue. The size of the queue counts the events of
+ * the frames, so the queue capacity is the same for frames and single events.
  * 
  * @see java.util.concurrent.DelayQueue
  * @see TTE
@@ -51,6 +62,9 @@ public class TTEQueue {
     private static TTEQueue instance = new TTEQueue();
 
     private BlockingQueue<TTE> queue = new DelayQueue<TTE>();
+    private final AtomicLong memory = new AtomicLong(); // estimated bytes of the items
+    private final AtomicInteger events = new AtomicInteger(); // number of events, frames count by their size
+    private int generation; // counted items of older generations were cleared by a reset
 
     /**
      * The constructor cannot be called externaly due to the fact that this is to be used as a singleton.
@@ -73,7 +87,39 @@ public class TTEQueue {
      * @throws InterruptedException if interrupted while waiting 
      */
     public void put(SlotEvent e) throws InterruptedException {
-        queue.put(new TTE(e));
+        TTE tte = new TTE(e);
+        tte.setMemory(TTEBuffer.estimateSize(tte));
+        added(tte, 1);
+    }
+    
+    /**
+     * Inserts the events as one {@link TTEFrame}, so that they are taken
+     * together by a writer. All events should have the same timestamp, the
+     * frame has the timestamp of the first event. A single event is put
+     * like with {@link #put(SlotEvent)}.
+     * 
+     * @param frame events with the same timestamp
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void putFrame(List<SlotEvent> frame) throws InterruptedException {
+    	if(frame.isEmpty()) return;
+    	if(frame.size() == 1){
+    		put(frame.get(0));
+    		return;
+    	}
+    	TTEFrame tte = new TTEFrame(frame);
+    	long size = 0;
+    	for(SlotEvent e : frame) size += TTEBuffer.estimateSize(e);
+    	tte.setMemory(size);
+    	added(tte, frame.size());
+    }
+    
+    // counted and put under the lock of reset, so that a reset can not come in between
+    private synchronized void added(TTE tte, int n) throws InterruptedException {
+        memory.addAndGet(tte.getMemory());
+        events.addAndGet(n);
+        tte.generation = generation;
+        queue.put(tte); // never blocks, the DelayQueue is unbounded
     }
 
     public TTE peek(){
@@ -88,19 +134,56 @@ public class TTEQueue {
      * @throws InterruptedException if interrupted while waiting
      */
     public TTE take() throws InterruptedException {
-        return queue.take();
+        return removed(queue.take());
     }
 
     public TTE poll() {
-        return queue.poll();
+        return removed(queue.poll());
     }
     
     public TTE poll(long timeout, TimeUnit unit) throws InterruptedException{
-        return queue.poll(timeout, unit);
+        return removed(queue.poll(timeout, unit));
     }
     
+    // only once per item, and not if a reset came in since it was taken
+    private synchronized TTE removed(TTE tte){
+    	if(tte != null && tte.generation == generation){
+    		memory.addAndGet(-tte.getMemory());
+    		events.addAndGet(tte instanceof TTEFrame ? -((TTEFrame) tte).size() : -1);
+    	}
+    	if(tte != null) tte.generation = -1;
+    	return tte;
+    }
+    
+    /**
+     * Returns the number of events in the queue, counting the events of
+     * every frame.
+     * 
+     * @return number of events
+     */
     public int size() {
-        return queue.size();
+        return events.get();
+    }
+
+    /**
+     * Returns the estimated memory used by the items of the queue.
+     * 
+     * @return size in bytes
+     */
+    public long getMemory() {
+        return memory.get();
+    }
+    
+    /**
+     * Checks whether the queue has reached the queue capacity, or the
+     * queue memory if there is one.
+     * 
+     * @return <code>true</code> if no more items should be put
+     */
+    public boolean isFull() {
+        Configuration conf = Configuration.getInstance();
+        return size() >= conf.getQueueCapacity() ||
+        		(conf.getQueueMemory() > 0 && memory.get() >= conf.getQueueMemory());
     }
 
     public boolean isEmpty() {
@@ -126,9 +209,9 @@ public class TTEQueue {
     		else if(tte.getTime() < minTime) minTime = tte.getTime();
     	}
     	int qsize = size();
-    	long now = System.currentTimeMillis();
+    	long now = VeniceHub.getReplayClock().now();
     	long dlay = VeniceHub.getReplayDelay();
-    	VeniceHub.message("size of TTEBuffer="+qsize);
+    	VeniceHub.message("size of TTEBuffer="+qsize+" events in "+queue.size()+" items");
     	VeniceHub.message("Timestamp           raw   delayOffset   plus offset     minus now");
     	VeniceHub.message("---------+-------------+-------------+-------------+-------------+");
     	VeniceHub.message(String.format("largest   %13d %13d %13d %13d", maxTime, dlay, maxTime+dlay, maxTime+dlay-now));
@@ -146,12 +229,21 @@ public class TTEQueue {
     	while(i.hasNext()){
     		tte = i.next();
     		if(tte.getTime()<upperTime){
-    			queue.remove(tte);
+    			i.remove(); // frames with the same time may be equal
+    			removed(tte);
     		}
     	}    	
     }
     
-    public void reset(){
-    	queue = new DelayQueue<TTE>();
+    /**
+     * Removes all items. Items that were taken by a writer just before are
+     * not counted off any more, so the size and the memory never get
+     * negative.
+     */
+    public synchronized void reset(){
+    	queue.clear(); // writers waiting for the queue get new items at once
+    	generation++;
+    	memory.set(0);
+    	events.set(0);
     }
 }
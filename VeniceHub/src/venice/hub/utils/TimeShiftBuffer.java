@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import venice.lib.parser.SlotEvent;
+
+import static venice.lib.parser.XIOParser.INVALID_TIMESTAMP;
+
+/**
+ * Keeps the most recent events of a recording in memory, for a
+ * time-shifted replay of the recording while it goes on, or for the
+ * pre-trigger window of a {@link venice.hub.CaptureWriter}.
+ * <p>
+ * The buffer is a ring: if its memory or the maximum age of its events is
+ * exceeded, the oldest events are dropped. Every event has a sequence
+ * number, which stays valid while the ring moves on, so a reader can
+ * follow the recording by counting up, and notices when it fell behind.
+ * <p>
+ * The buffer is thread-safe, the recorder adds and the replay reads.
+ */
+public class TimeShiftBuffer {
+	
+	private final long memoryLimit;
+	private final long maxAge; // ms behind the last event, 0 for no limit
+	private SlotEvent[] events = new SlotEvent[1024];
+	private int head; // index of the oldest event in the array
+	private int count;
+	private long start; // sequence number of the oldest event
+	private long memory; // estimated bytes of the events
+	private long firstTimestamp = INVALID_TIMESTAMP; // of the whole recording
+	
+	/**
+	 * Creates an empty buffer.
+	 * 
+	 * @param memoryLimit memory of the events in bytes, at least one event is kept
+	 */
+	public TimeShiftBuffer(long memoryLimit){
+		this(memoryLimit, 0);
+	}
+	
+	/**
+	 * Creates an empty buffer, that also drops events that are older than
+	 * the given time before the last event.
+	 * 
+	 * @param memoryLimit memory of the events in bytes, at least one event is kept
+	 * @param maxAge time in ms, 0 for no limit
+	 */
+	public TimeShiftBuffer(long memoryLimit, long maxAge){
+		this.memoryLimit = memoryLimit;
+		this.maxAge = maxAge;
+	}
+	
+	/**
+	 * Adds a recorded event, and drops the oldest events if the memory or
+	 * the maximum age is exceeded. Wakes up readers waiting for new events.
+	 * 
+	 * @param se the event, with a timestamp not before the last one
+	 */
+	public synchronized void add(SlotEvent se){
+		if(firstTimestamp == INVALID_TIMESTAMP) firstTimestamp = se.getTime();
+		if(count == events.length){
+			SlotEvent[] grown = new SlotEvent[events.length * 2];
+			for(int i=0; i<count; i++) grown[i] = events[(head + i) % events.length];
+			events = grown;
+			head = 0;
+		}
+		events[(head + count) % events.length] = se;
+		count++;
+		memory += TTEBuffer.estimateSize(se);
+		while(count > 1 && (memory > memoryLimit ||
+				maxAge > 0 && se.getTime() - events[head].getTime() > maxAge)){
+			memory -= TTEBuffer.estimateSize(events[head]);
+			events[head] = null;
+			head = (head + 1) % events.length;
+			count--;
+			start++;
+		}
+		notifyAll();
+	}
+	
+	/**
+	 * Returns the event with the given sequence number.
+	 * 
+	 * @param seq sequence number
+	 * @return the event, or <code>null</code> if it was dropped or is not recorded yet
+	 */
+	public synchronized SlotEvent get(long seq){
+		if(seq < start || seq >= start + count) return null;
+		return events[(int) ((head + seq - start) % events.length)];
+	}
+	
+	/**
+	 * Searches for the first event at or after the timestamp.
+	 * 
+	 * @param timestamp the timestamp
+	 * @return its sequence number, <code>getStart()</code> if all events are
+	 * later, or <code>getEnd()</code> if all events are earlier
+	 */
+	public synchronized long search(long timestamp){
+		int low = 0, high = count;
+		while(low < high){
+			int mid = (low + high) >>> 1;
+			if(events[(head + mid) % events.length].getTime() < timestamp) low = mid + 1;
+			else high = mid;
+		}
+		return start + low;
+	}
+	
+	/**
+	 * Waits until the event with the given sequence number is recorded.
+	 * 
+	 * @param seq sequence number
+	 * @param timeout maximum time to wait in ms
+	 * @return <code>true</code> if the event is recorded (or already dropped)
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public synchronized boolean await(long seq, long timeout) throws InterruptedException{
+		if(seq >= start + count) wait(timeout);
+		return seq < start + count;
+	}
+	
+	/**
+	 * Returns the sequence number of the oldest event in memory.
+	 * 
+	 * @return sequence number
+	 */
+	public synchronized long getStart(){
+		return start;
+	}
+	
+	/**
+	 * Returns the sequence number the next recorded event will get.
+	 * 
+	 * @return sequence number
+	 */
+	public synchronized long getEnd(){
+		return start + count;
+	}
+	
+	/**
+	 * Returns the timestamp of the first recorded event, which may be
+	 * dropped from memory already.
+	 * 
+	 * @return timestamp, or <code>INVALID_TIMESTAMP</code> if nothing is recorded
+	 */
+	public synchronized long getFirstTimestamp(){
+		return firstTimestamp;
+	}
+	
+	/**
+	 * Returns the timestamp of the oldest event in memory. Earlier events
+	 * have to be read from the log file.
+	 * 
+	 * @return timestamp, or <code>INVALID_TIMESTAMP</code> if nothing is recorded
+	 */
+	public synchronized long getOldestTimestamp(){
+		return count > 0 ? events[head].getTime() : INVALID_TIMESTAMP;
+	}
+	
+	/**
+	 * Returns the timestamp of the last recorded event.
+	 * 
+	 * @return timestamp, or <code>INVALID_TIMESTAMP</code> if nothing is recorded
+	 */
+	public synchronized long getLastTimestamp(){
+		return count > 0 ? events[(head + count - 1) % events.length].getTime() : INVALID_TIMESTAMP;
+	}
+	
+	/**
+	 * Returns the number of events in memory.
+	 * 
+	 * @return number of events
+	 */
+	public synchronized int size(){
+		return count;
+	}
+	
+	/**
+	 * Returns the estimated memory used by the events.
+	 * 
+	 * @return size in bytes
+	 */
+	public synchronized long getMemory(){
+		return memory;
+	}
+}
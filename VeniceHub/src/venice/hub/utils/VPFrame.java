@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Describes the binary VenicePort protocol (version 2), an alternative to
+ * the text lines.
+ * <p>
+ * A frame carries the values of all slots of a sensor file, like a text
+ * line, but without formatting and parsing of numbers. All numbers are
+ * big endian (network byte order):
+ * <ul>
+ * <li>magic bytes <code>VP</code> and the version byte <code>2</code></li>
+ * <li>the length of the payload (4 bytes)</li>
+ * <li>the CRC32C (Castagnoli) of the payload (4 bytes)</li>
+ * <li>payload: the timestamp of the sender (8 bytes, ms since 1970) and
+ * the values, in the order of the slots in the sensor file</li>
+ * </ul>
+ * Values of the types <code>sfint32</code> and <code>sffloat</code> take
+ * 4 bytes, <code>sflong</code> 8 bytes and <code>sfbool</code> 1 byte.
+ * A string is its length (2 bytes) followed by its UTF-8 bytes, so it has
+ * at most <code>MAX_STRING</code> bytes. The
+ * vector types are their floats, e.g. 3 floats for a
+ * <code>sfvec3f</code>. The multi field types (<code>mfstring</code>,
+ * <code>mfvec2f</code>, <code>mfvec3f</code>, <code>mfrotation</code>)
+ * start with the number of fields (4 bytes).
+ * <p>
+ * The first byte of a text line is never a magic byte, so the
+ * {@link venice.hub.PortReader} recognizes the protocol by the first byte
+ * of every message, and a client may send control lines before frames.
+ */
+public class VPFrame {
+	
+	public final static byte[] MAGIC = {'V', 'P'};
+	public final static int VERSION = 2;
+	public final static int HEADER_SIZE = 11;
+	public final static int MIN_LENGTH = 8; // the sender timestamp
+	public final static int MAX_SIZE = 1 << 20; // bytes of a frame, with header
+	public final static int MAX_STRING = 0xFFFF; // UTF-8 bytes of a string
+	
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+	private final static int[] CRC_TABLE = new int[256];
+	static {
+		for(int i=0; i<256; i++){
+			int c = i;
+			for(int k=0; k<8; k++) c = (c & 1) != 0 ? (c >>> 1) ^ 0x82F63B78 : c >>> 1;
+			CRC_TABLE[i] = c;
+		}
+	}
+	
+	/**
+	 * Private constructor. This class can not be instantiated.
+	 */
+	private VPFrame(){
+		// nothing
+	}
+	
+	/**
+	 * Computes the CRC32C (Castagnoli) of the given bytes.
+	 * 
+	 * @param b the bytes
+	 * @param off index of the first byte
+	 * @param len number of bytes
+	 * @return the checksum
+	 */
+	public static int crc32c(byte[] b, int off, int len){
+		int crc = 0xFFFFFFFF;
+		for(int i=off; i<off+len; i++) crc = (crc >>> 8) ^ CRC_TABLE[(crc ^ b[i]) & 0xFF];
+		return ~crc;
+	}
+	
+	/**
+	 * Returns the length of the payload of the frame, whose header starts at
+	 * the given index.
+	 * 
+	 * @param b at least <code>HEADER_SIZE</code> bytes from <code>off</code> on
+	 * @param off index of the header
+	 * @return length of the payload, or -1 if it is not a valid header
+	 */
+	public static int getLength(byte[] b, int off){
+		if(b[off] != MAGIC[0] || b[off+1] != MAGIC[1] || b[off+2] != VERSION) return -1;
+		int length = ByteBuffer.wrap(b).getInt(off + 3);
+		if(length < MIN_LENGTH || length > MAX_SIZE - HEADER_SIZE) return -1;
+		return length;
+	}
+	
+	/**
+	 * Returns the checksum of the frame, whose header starts at the given
+	 * index.
+	 * 
+	 * @param b at least <code>HEADER_SIZE</code> bytes from <code>off</code> on
+	 * @param off index of the header
+	 * @return the CRC32C of the payload
+	 */
+	public static int getChecksum(byte[] b, int off){
+		return ByteBuffer.wrap(b).getInt(off + 7);
+	}
+	
+	/**
+	 * Builds a frame.
+	 * 
+	 * @param senderTime timestamp of the sender
+	 * @param values the encoded values of the slots
+	 * @return the frame, with header
+	 */
+	public static byte[] encode(long senderTime, byte[] values){
+		int length = MIN_LENGTH + values.length;
+		ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + length);
+		frame.put(MAGIC).put((byte) VERSION).putInt(length).putInt(0);
+		frame.putLong(senderTime).put(values);
+		frame.putInt(7, crc32c(frame.array(), HEADER_SIZE, length));
+		return frame.array();
+	}
+	
+	/**
+	 * Reads a string of a frame.
+	 * 
+	 * @param payload positioned at the length of the string
+	 * @return the string
+	 * @throws BufferUnderflowException if the payload is too short
+	 */
+	public static String getString(ByteBuffer payload){
+		int length = payload.getShort() & 0xFFFF;
+		if(length > payload.remaining()) throw new BufferUnderflowException();
+		String s = new String(payload.array(), payload.arrayOffset() + payload.position(), length, UTF8);
+		payload.position(payload.position() + length);
+		return s;
+	}
+	
+	/**
+	 * Writes a string of a frame.
+	 * 
+	 * @param values the values of a frame
+	 * @param s the string
+	 * @throws IOException if writing fails
+	 * @throws IllegalArgumentException if the string has more than <code>MAX_STRING</code> bytes
+	 */
+	public static void putString(DataOutputStream values, String s) throws IOException{
+		byte[] b = s.getBytes(UTF8);
+		if(b.length > MAX_STRING)
+			throw new IllegalArgumentException("string of "+b.length+" bytes, at most "+MAX_STRING+" fit into a frame");
+		values.writeShort(b.length);
+		values.write(b);
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.hub.utils;
+
+/**
+ * A replay clock that only runs when it is told to: it is advanced by
+ * a time or to a time. Used for stepping through a replay, and for
+ * deterministic replays in tests, which run as fast as they are advanced.
+ * <p>
+ * Events that are not due yet are checked again after {@link #POLL_INTERVAL},
+ * because waiting for a queue can not be interrupted by advancing the clock.
+ */
+public class VirtualReplayClock extends ReplayClock {
+	
+	/**
+	 * Real time in ms, after which a waiting for an event that is not due
+	 * yet is checked again.
+	 */
+	public static final long POLL_INTERVAL = 1;
+	
+	private volatile long time;
+	
+	/**
+	 * @param time the start time of the clock in ms
+	 */
+	public VirtualReplayClock(long time){
+		this.time = time;
+	}
+	
+	@Override
+	public long now() {
+		return time;
+	}
+	
+	@Override
+	public long toWaitingTime(long delay) {
+		return delay <= 0 ? delay : POLL_INTERVAL;
+	}
+	
+	@Override
+	public double getSpeed() {
+		return 0;
+	}
+	
+	/**
+	 * Advances the clock.
+	 * 
+	 * @param ms time in ms, not negative
+	 */
+	public synchronized void advance(long ms){
+		if(ms < 0) throw new IllegalArgumentException("a clock can not go back: "+ms);
+		time += ms;
+	}
+	
+	/**
+	 * Advances the clock to a time. Nothing is done, if the clock is already
+	 * past the time.
+	 * 
+	 * @param time time in ms
+	 */
+	public synchronized void advanceTo(long time){
+		if(time > this.time) this.time = time;
+	}
+}
@@ -10,6 +10,25 @@ import org.junit.runners.Suite.SuiteClasses;
 		venice.hub.utils.TTEBufferTests.class,
 		venice.hub.utils.TTEQueueTests.class,
 		venice.hub.utils.TTEBufferedReaderTests.class,
+		venice.hub.utils.BinaryLogTests.class,
+		venice.hub.utils.AsyncLogOutputStreamTests.class,
+		venice.hub.utils.ParallelGZIPOutputStreamTests.class,
+		venice.hub.utils.LogManifestTests.class,
+		venice.hub.utils.LogRecoveryTests.class,
+		venice.hub.utils.ScopeFilterTests.class,
+		venice.hub.utils.EventStoreTests.class,
+		venice.hub.utils.EventArenaTests.class,
+		venice.hub.utils.SnapshotIndexTests.class,
+		venice.hub.utils.ClockSyncTests.class,
+		venice.hub.utils.ReplayClockTests.class,
+		venice.hub.utils.TimeShiftBufferTests.class,
+		venice.hub.utils.VPFrameTests.class,
+		venice.hub.DiskReaderTests.class,
+		venice.hub.TimeShiftPlayerTests.class,
+		venice.hub.CaptureWriterTests.class,
+		venice.hub.PartitionedDiskWriterTests.class,
+		venice.hub.PortReaderTests.class,
+		venice.hub.LogTranscoderTests.class,
 		venice.hub.ConsoleControlTest.class
 })
 
@@ -0,0 +1,156 @@
+package venice.hub;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import venice.hub.utils.Configuration;
+import venice.hub.utils.LogScanner;
+import venice.hub.utils.ScopeFilter;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIORegExParser;
+
+/**
+ * Tests the capture mode, which writes only the events around a trigger.
+ */
+public class CaptureWriterTests {
+	
+	@After
+	public void after(){
+		Configuration.getInstance().parseArguments(new String[0]);
+	}
+	
+	// live input for the given time, one event every 5 ms
+	private static void input(CaptureWriter writer, long ms) throws InterruptedException{
+		long end = System.currentTimeMillis() + ms;
+		while(System.currentTimeMillis() < end){
+			writer.write(new SlotEvent(1, "Venice", "a", Integer.class, System.currentTimeMillis()));
+			Thread.sleep(5);
+		}
+	}
+	
+	private static List<SlotEvent> read(File file) throws IOException{
+		final List<SlotEvent> events = new ArrayList<SlotEvent>();
+		LogScanner.scan(file.getPath(), new ScopeFilter(), new LogScanner.Handler(){
+			@Override
+			public boolean event(SlotEvent se){
+				events.add(se);
+				return true;
+			}
+		});
+		return events;
+	}
+	
+	@Test
+	public void testTrigger() throws IOException, InterruptedException{
+		File log = File.createTempFile("testCapture", ".xio");
+		log.delete();
+		log.deleteOnExit();
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		Configuration.getInstance().parseArguments(new String[]{"-f", log.getPath(), "--writeRaw",
+				"--preTrigger", "200", "--postTrigger", "300", "--silent"});
+		CaptureWriter writer = new CaptureWriter();
+		
+		input(writer, 500);
+		// only the last 200 ms are kept, nothing is written
+		assertTrue(writer.getBuffer().getLastTimestamp() - writer.getBuffer().getOldestTimestamp() <= 200);
+		assertFalse(log.exists());
+		
+		long trigger = System.currentTimeMillis();
+		writer.trigger();
+		assertTrue(writer.isDumping());
+		input(writer, 600);
+		long end = System.currentTimeMillis() + 5000;
+		while(writer.isDumping() && System.currentTimeMillis() < end) Thread.sleep(5);
+		assertFalse(writer.isDumping());
+		
+		List<SlotEvent> events = read(log);
+		assertTrue(events.size() > 50);
+		assertTrue(events.get(0).getTime() >= trigger - 200);
+		assertTrue(events.get(0).getTime() < trigger - 150);
+		assertTrue(events.get(events.size() - 1).getTime() <= trigger + 300);
+		assertTrue(events.get(events.size() - 1).getTime() > trigger + 250);
+		for(int i=1; i<events.size(); i++) assertTrue(events.get(i).getTime() >= events.get(i-1).getTime());
+		
+		// the next trigger writes a new file, which is ended by the clean up
+		writer.trigger();
+		input(writer, 50);
+		writer.cleanUp();
+		assertFalse(writer.isDumping());
+		File second = new File(log.getPath().replace(".xio", "_001.xio"));
+		second.deleteOnExit();
+		assertTrue(second.isFile());
+		assertTrue(read(second).size() > 0);
+	}
+	
+	@Test
+	public void testTriggerAtTheEnd() throws IOException, InterruptedException{
+		final File log = File.createTempFile("testCaptureEnd", ".xio.gz");
+		log.delete();
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		// closing the compressor threads keeps the dump a while after it has passed its end
+		Configuration.getInstance().parseArguments(new String[]{"-f", log.getPath(), "--gzipThreads", "2",
+				"--preTrigger", "50", "--postTrigger", "100", "--silent"});
+		final CaptureWriter writer = new CaptureWriter();
+		// live input, one event every 2 ms until interrupted
+		Thread live = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				while(true){
+					writer.write(new SlotEvent(1, "Venice", "a", Integer.class, System.currentTimeMillis()));
+					try {
+						Thread.sleep(2);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}, "VH_TestInput");
+		live.start();
+		try{
+			int hits = 0;
+			for(int tries=0; tries<50 && hits<3; tries++){
+				writer.trigger();
+				// a trigger right at the end, after the dump decided to stop
+				long end = System.currentTimeMillis() + 5000;
+				while(writer.isDumping() && !writer.isClosing() && System.currentTimeMillis() < end) Thread.yield();
+				long trigger = System.currentTimeMillis();
+				boolean hit = writer.isClosing();
+				if(hit){
+					writer.trigger();
+					assertTrue(writer.isDumping());
+					hits++;
+				}
+				end = System.currentTimeMillis() + 5000;
+				while(writer.isDumping() && System.currentTimeMillis() < end) Thread.sleep(5);
+				assertFalse(writer.isDumping());
+				if(!hit) continue; // the dump closed before, try again
+				// the trigger was not lost, a new dump has written its post-trigger time
+				long last = 0;
+				for(File file : dumps(log)) for(SlotEvent se : read(file)) last = Math.max(last, se.getTime());
+				assertTrue(last > trigger + 80);
+			}
+			assertTrue(hits > 0);
+		}finally{
+			live.interrupt();
+			live.join();
+			writer.cleanUp();
+			for(File file : dumps(log)) file.delete();
+		}
+	}
+	
+	// the log file and its numbered successors
+	private static List<File> dumps(File log){
+		String prefix = log.getName().substring(0, log.getName().indexOf('.'));
+		List<File> files = new ArrayList<File>();
+		for(File file : log.getParentFile().listFiles())
+			if(file.getName().startsWith(prefix)) files.add(file);
+		return files;
+	}
+}
@@ -0,0 +1,345 @@
+package venice.hub;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import venice.hub.utils.Configuration;
+import venice.hub.utils.LogConverter;
+import venice.hub.utils.TTEQueue;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOParser;
+import venice.lib.parser.XIORegExParser;
+
+/**
+ * Tests the synchronized replay of several log files.
+ */
+public class DiskReaderTests {
+
+	private static final int EVENTS = 200;
+
+	@After
+	public void after(){
+		Configuration.getInstance().parseArguments(new String[0]);
+		VeniceHub.setTimestampOf1stLine(XIOParser.INVALID_TIMESTAMP);
+		VeniceHub.setTimestampOfLastLine(XIOParser.INVALID_TIMESTAMP);
+		VeniceHub.setReplayDelay(0);
+		VeniceHub.setLastPushedTimestamp(XIOParser.INVALID_TIMESTAMP);
+	}
+
+	// one event every 10 ms, starting at first
+	private static File createLog(String scope, long first) throws IOException{
+		File file = File.createTempFile("testDiskReader", ".xio");
+		file.deleteOnExit();
+		StringBuilder sb = new StringBuilder();
+		for(int h=0; h<Configuration.getInstance().getHeaderLines(); h++) sb.append("Header\n");
+		sb.append("<venice>\n");
+		for(int i=0; i<EVENTS; i++)
+			sb.append("<sfint32 value=\""+i+"\" timestamp=\""+(first + 10 * i)+"\" sensorName=\""+scope+"\"/>\n");
+		sb.append("</venice>\n");
+		try(OutputStream out = new FileOutputStream(file)){
+			out.write(sb.toString().getBytes());
+		}
+		return file;
+	}
+
+	private static SlotEvent read(DiskReader reader){
+		long end = System.currentTimeMillis() + 5000;
+		SlotEvent se;
+		while((se = reader.read()) == null && System.currentTimeMillis() < end);
+		return se;
+	}
+
+	@Test
+	public void testMerge() throws IOException{
+		File a = createLog("Venice/a", 100000);
+		File xio = createLog("Venice/b", 5);
+		File b = File.createTempFile("testDiskReader", ".vbin");
+		b.deleteOnExit();
+		LogConverter.convert(xio.getPath(), b.getPath());
+
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		VeniceHub.setTimestampOf1stLine(XIOParser.INVALID_TIMESTAMP);
+		VeniceHub.setReplayDelay(0);
+		// file b starts 2 ms before file a
+		Configuration.getInstance().parseArguments(new String[]{"-f", a.getPath(), "--merge", b.getPath(),
+				"--fileOffset", "0", "--fileOffset", "99993", "--silent"});
+		DiskReader reader = new DiskReader();
+		try{
+			assertEquals(2, reader.getFileCount());
+			assertEquals(99998, VeniceHub.getTimestampOf1stLine());
+
+			long last = Long.MIN_VALUE;
+			for(int i=0; i<2*EVENTS; i++){
+				SlotEvent se = read(reader);
+				assertNotNull(se);
+				assertTrue(se.getTime() >= last);
+				last = se.getTime();
+				// the files alternate, b first
+				assertEquals(i % 2 == 0 ? "Venice/b" : "Venice/a", se.getScope());
+				assertEquals(i / 2, se.getValue());
+			}
+			assertNull(reader.read());
+			assertEquals(last, VeniceHub.getTimestampOfLastLine());
+
+			// seeking is done in every file
+			reader.seek(101000);
+			SlotEvent se = read(reader);
+			assertEquals(101000, se.getTime());
+			assertEquals("Venice/a", se.getScope());
+			se = read(reader);
+			assertEquals(101008, se.getTime());
+			assertEquals("Venice/b", se.getScope());
+			assertEquals(101, se.getValue());
+		}finally{
+			reader.cleanUp();
+		}
+	}
+
+	@Test
+	public void testSingleFile() throws IOException{
+		File a = createLog("Venice/a", 1000);
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		VeniceHub.setTimestampOf1stLine(XIOParser.INVALID_TIMESTAMP);
+		VeniceHub.setReplayDelay(0);
+		Configuration.getInstance().parseArguments(new String[]{"-f", a.getPath(), "--silent"});
+		DiskReader reader = new DiskReader();
+		try{
+			assertEquals(1000, VeniceHub.getTimestampOf1stLine());
+			for(int i=0; i<EVENTS; i++)
+				assertEquals(1000 + 10 * i, read(reader).getTime());
+			assertNull(reader.read());
+			assertEquals(1000 + 10 * (EVENTS-1), VeniceHub.getTimestampOfLastLine());
+		}finally{
+			reader.cleanUp();
+		}
+	}
+	
+	@Test
+	public void testInMemory() throws IOException{
+		File a = createLog("Venice/a", 100000);
+		File b = createLog("Venice/b", 5);
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		VeniceHub.setTimestampOf1stLine(XIOParser.INVALID_TIMESTAMP);
+		VeniceHub.setReplayDelay(0);
+		Configuration.getInstance().parseArguments(new String[]{"-f", a.getPath(), "--merge", b.getPath(),
+				"--fileOffset", "0", "--fileOffset", "99993", "--inMemory", "--silent"});
+		DiskReader reader = new DiskReader();
+		try{
+			assertTrue(reader.isInMemory());
+			assertEquals(99998, VeniceHub.getTimestampOf1stLine());
+			for(int i=0; i<2*EVENTS; i++){
+				SlotEvent se = reader.read();
+				assertEquals(i % 2 == 0 ? "Venice/b" : "Venice/a", se.getScope());
+				assertEquals(i / 2, se.getValue());
+			}
+			assertNull(reader.read());
+			assertEquals(100000 + 10 * (EVENTS-1), VeniceHub.getTimestampOfLastLine());
+			
+			// seeking backwards and forwards
+			reader.seek(101000);
+			assertEquals(101000, reader.read().getTime());
+			assertEquals(101008, reader.read().getTime());
+			reader.seek(100000);
+			assertEquals(100000, reader.read().getTime());
+		}finally{
+			reader.cleanUp();
+		}
+	}
+	
+	@Test
+	public void testMemoryLimit() throws IOException{
+		File a = createLog("Venice/a", 1000);
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		Configuration.getInstance().parseArguments(new String[]{"-f", a.getPath(), "--inMemory", "--memoryLimit", "1000", "--silent"});
+		DiskReader reader = new DiskReader();
+		try{
+			// falls back to reading from disk
+			assertFalse(reader.isInMemory());
+			assertEquals(1000, read(reader).getTime());
+		}finally{
+			reader.cleanUp();
+		}
+	}
+	
+	// like createLog, with a second slot that is set every second
+	private static File createLogWithStatus(long first) throws IOException{
+		File file = File.createTempFile("testDiskReader", ".xio");
+		file.deleteOnExit();
+		StringBuilder sb = new StringBuilder();
+		for(int h=0; h<Configuration.getInstance().getHeaderLines(); h++) sb.append("Header\n");
+		sb.append("<venice>\n");
+		for(int i=0; i<EVENTS; i++){
+			long time = first + 10 * i;
+			sb.append("<sfint32 value=\""+i+"\" timestamp=\""+time+"\" sensorName=\"Venice/a\"/>\n");
+			if(i % 100 == 0)
+				sb.append("<sfstring value=\"status"+i+"\" timestamp=\""+(time+5)+"\" sensorName=\"Venice/status\"/>\n");
+		}
+		sb.append("</venice>\n");
+		try(OutputStream out = new FileOutputStream(file)){
+			out.write(sb.toString().getBytes());
+		}
+		return file;
+	}
+	
+	private static void assertSnapshot(DiskReader reader){
+		// the state at 2500: the status of 2005 and the last value before
+		reader.seek(2500);
+		SlotEvent first = read(reader);
+		SlotEvent second = read(reader);
+		assertEquals(2500, first.getTime());
+		assertEquals(2500, second.getTime());
+		assertEquals("Venice/status", first.getScope());
+		assertEquals("status100", first.getValue());
+		assertEquals("Venice/a", second.getScope());
+		assertEquals(149, second.getValue());
+		// then the replay continues
+		SlotEvent next = read(reader);
+		assertEquals(2500, next.getTime());
+		assertEquals(150, next.getValue());
+		
+		// before the first keyframe
+		reader.seek(1003);
+		first = read(reader);
+		assertEquals(1003, first.getTime());
+		assertEquals(0, first.getValue());
+		assertEquals("status0", read(reader).getValue());
+		assertEquals(1010, read(reader).getTime());
+	}
+	
+	@Test
+	public void testSnapshots() throws IOException{
+		File a = createLogWithStatus(1000);
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		Configuration.getInstance().parseArguments(new String[]{"-f", a.getPath(), "--snapshotInterval", "300", "--silent"});
+		DiskReader reader = new DiskReader();
+		try{
+			long end = System.currentTimeMillis() + 5000;
+			while(!reader.hasSnapshots() && System.currentTimeMillis() < end)
+				try { Thread.sleep(10); } catch (InterruptedException e) {}
+			assertTrue(reader.hasSnapshots());
+			assertSnapshot(reader);
+		}finally{
+			reader.cleanUp();
+		}
+	}
+	
+	@Test
+	public void testSnapshotsInMemory() throws IOException{
+		File a = createLogWithStatus(1000);
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		Configuration.getInstance().parseArguments(new String[]{"-f", a.getPath(), "--snapshotInterval", "300", "--inMemory", "--silent"});
+		DiskReader reader = new DiskReader();
+		try{
+			assertTrue(reader.isInMemory());
+			assertTrue(reader.hasSnapshots());
+			assertSnapshot(reader);
+		}finally{
+			reader.cleanUp();
+		}
+	}
+	
+	@Test
+	public void testSeekStorm() throws IOException{
+		File a = createLog("Venice/a", 1000);
+		File b = createLog("Venice/b", 1005);
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		Configuration.getInstance().parseArguments(new String[]{"-f", a.getPath(), "--merge", b.getPath(),
+				"--bufferCapacity", "20", "--bufferThreshold", "5", "--silent"});
+		DiskReader reader = new DiskReader();
+		try{
+			assertEquals(1000, read(reader).getTime());
+			// the last seek wins, nothing of the earlier ones is read
+			for(int i=0; i<50; i++){
+				reader.seek(1000 + (i * 370) % 1900);
+				if(i % 10 == 0) assertNotNull(read(reader));
+			}
+			reader.seek(2500);
+			// no event of an earlier target is read after the last seek
+			for(long t=2500; t<1000 + 10 * EVENTS; t+=5){
+				SlotEvent se = read(reader);
+				assertNotNull(se);
+				assertEquals(t, se.getTime());
+				VeniceHub.setLastPushedTimestamp(t); // like a writer, so that the small buffers are shifted
+			}
+			assertNull(reader.read());
+		}finally{
+			reader.cleanUp();
+		}
+	}
+	
+	private static List<SlotEvent> readFrame(DiskReader reader){
+		long end = System.currentTimeMillis() + 5000;
+		List<SlotEvent> frame;
+		while((frame = reader.readFrame()).isEmpty() && System.currentTimeMillis() < end);
+		return frame;
+	}
+	
+	@Test
+	public void testFrames() throws IOException{
+		// the events of both files have the same timestamps
+		File a = createLog("Venice/a", 1000);
+		File b = createLog("Venice/b", 1000);
+		File c = createLog("Venice/c", 1005);
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		Configuration.getInstance().parseArguments(new String[]{"-f", a.getPath(), "--merge", b.getPath(),
+				"--merge", c.getPath(), "--silent"});
+		DiskReader reader = new DiskReader();
+		try{
+			for(int i=0; i<EVENTS; i++){
+				List<SlotEvent> frame = readFrame(reader);
+				assertEquals(2, frame.size());
+				assertEquals(1000 + 10 * i, frame.get(0).getTime());
+				assertEquals(1000 + 10 * i, frame.get(1).getTime());
+				frame = readFrame(reader);
+				assertEquals(1, frame.size());
+				assertEquals("Venice/c", frame.get(0).getScope());
+			}
+			assertTrue(reader.readFrame().isEmpty());
+			
+			// the event kept for the next frame is dropped by a seek
+			reader.seek(1500);
+			assertEquals(2, readFrame(reader).size());
+			reader.seek(1200);
+			List<SlotEvent> frame = readFrame(reader);
+			assertEquals(2, frame.size());
+			assertEquals(1200, frame.get(0).getTime());
+			assertEquals(1205, readFrame(reader).get(0).getTime());
+		}finally{
+			reader.cleanUp();
+		}
+	}
+	
+	@Test
+	public void testPreRoll() throws IOException, InterruptedException{
+		File a = createLog("Venice/a", 1000);
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		Configuration.getInstance().parseArguments(new String[]{"-f", a.getPath(), "--preRoll", "300", "--silent"});
+		DiskReader reader = new DiskReader();
+		TTEQueue queue = TTEQueue.getInstance();
+		queue.reset();
+		long delay = VeniceHub.getReplayDelay();
+		Thread.sleep(50);
+		Thread thread = new Thread(reader, "VH_Diskreader");
+		thread.start();
+		try{
+			long end = System.currentTimeMillis() + 5000;
+			while(queue.size() < 31 && System.currentTimeMillis() < end) Thread.sleep(1);
+			// the first 300 ms are buffered before the replay clock is anchored
+			assertTrue(queue.size() >= 31);
+			assertTrue(VeniceHub.getReplayDelay() >= delay + 50);
+			assertEquals(1000, queue.poll().getTime());
+		}finally{
+			reader.stopThread();
+			thread.join(5000);
+			queue.reset();
+		}
+	}
+}
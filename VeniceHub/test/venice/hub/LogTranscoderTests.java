@@ -0,0 +1,142 @@
+package venice.hub;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import venice.hub.utils.BinaryLogReader;
+import venice.hub.utils.Configuration;
+import venice.hub.utils.LogConverter;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOParser;
+import venice.lib.parser.XIORegExParser;
+
+/**
+ * Tests the offline transcoding of log files.
+ */
+public class LogTranscoderTests {
+	
+	private static final int EVENTS = 20000;
+	
+	// 4 slots, one event per ms
+	private static SlotEvent event(int i){
+		return new SlotEvent((float) i, i % 4 == 3 ? "Venice/other" : "Venice/test", "slot" + (i % 4), Float.class, 100000L + i);
+	}
+	
+	private static File createLog() throws IOException{
+		File file = File.createTempFile("testTranscoder", ".xio.gz");
+		file.deleteOnExit();
+		XIOParser parser = new XIORegExParser();
+		try(Writer out = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(file)), "ISO-8859-1")){
+			out.write("Header\n<venice>\n");
+			for(int i=0; i<EVENTS; i++)
+				out.write(parser.eventToString(event(i)) + "\n");
+			out.write("</venice>\n");
+		}
+		return file;
+	}
+	
+	private static File outputFile(String suffix) throws IOException{
+		File file = File.createTempFile("testTranscoder", suffix);
+		file.delete();
+		file.deleteOnExit();
+		Configuration.getInstance().parseArguments(new String[]{"-f", file.getPath(), "--silent"});
+		return file;
+	}
+	
+	private static List<SlotEvent> readXIO(File file) throws IOException{
+		List<SlotEvent> events = new ArrayList<SlotEvent>();
+		XIOParser parser = new XIORegExParser();
+		try(BufferedReader reader = new BufferedReader(new InputStreamReader(LogConverter.openInput(file.getPath()), "ISO-8859-1"))){
+			String line;
+			while((line = reader.readLine()) != null){
+				SlotEvent se = parser.stringToEvent(line);
+				if(se.getTime() != XIOParser.INVALID_TIMESTAMP) events.add(se);
+			}
+		}
+		return events;
+	}
+	
+	private static List<SlotEvent> readBinary(File file) throws IOException{
+		List<SlotEvent> events = new ArrayList<SlotEvent>();
+		BinaryLogReader reader = new BinaryLogReader(LogConverter.openInput(file.getPath()));
+		reader.readHeader();
+		try{
+			while(true){
+				reader.next();
+				events.add(reader.parseEvent());
+			}
+		} catch(EOFException e){
+			// end of file
+		} finally {
+			reader.close();
+		}
+		return events;
+	}
+	
+	@Test
+	public void testCopy() throws IOException{
+		File in = createLog();
+		File out = outputFile(".xio.gz");
+		LogTranscoder transcoder = new LogTranscoder(in.getPath(), 3);
+		assertEquals(EVENTS, transcoder.run());
+		assertEquals(EVENTS, transcoder.getEventsRead());
+		assertTrue(transcoder.getBytesRead() > EVENTS * 50);
+		
+		// the batches are written in the original order
+		List<SlotEvent> events = readXIO(out);
+		assertEquals(EVENTS, events.size());
+		for(int i=0; i<EVENTS; i++)
+			assertEquals(event(i), events.get(i));
+	}
+	
+	@Test
+	public void testCutAndFilterToBinary() throws IOException{
+		File in = createLog();
+		File out = outputFile(".vbin.gz");
+		LogTranscoder transcoder = new LogTranscoder(in.getPath(), 2);
+		transcoder.setTimeRange(5000, 15000);
+		transcoder.include("Venice/test/*");
+		transcoder.exclude("**/slot1");
+		assertEquals(5000, transcoder.run());
+		
+		List<SlotEvent> events = readBinary(out);
+		assertEquals(5000, events.size());
+		int n = 0;
+		for(int i=5000; i<15000; i++){
+			if(i % 4 == 1 || i % 4 == 3) continue;
+			assertEquals(event(i), events.get(n++));
+		}
+	}
+	
+	@Test
+	public void testBinaryToXIO() throws IOException{
+		File in = createLog();
+		File binary = outputFile(".vbin");
+		new LogTranscoder(in.getPath(), 1).run();
+		
+		File out = outputFile(".xio");
+		LogTranscoder transcoder = new LogTranscoder(binary.getPath(), 2);
+		transcoder.setTimeRange(0, 100);
+		transcoder.exclude("regex:Venice/other/.*");
+		assertEquals(75, transcoder.run());
+		assertEquals(EVENTS, transcoder.getEventsRead());
+		
+		List<SlotEvent> events = readXIO(out);
+		assertEquals(75, events.size());
+		assertEquals(event(0), events.get(0));
+		assertEquals(event(98), events.get(74));
+	}
+}
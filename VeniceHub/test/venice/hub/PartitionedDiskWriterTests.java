@@ -0,0 +1,131 @@
+package venice.hub;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+
+import venice.hub.utils.Configuration;
+import venice.hub.utils.LogScanner;
+import venice.hub.utils.PartitionManifest;
+import venice.hub.utils.ScopeFilter;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOParser;
+import venice.lib.parser.XIORegExParser;
+
+/**
+ * Tests the partitioned recording and the merged replay of the partitions.
+ */
+public class PartitionedDiskWriterTests {
+
+	private static final int EVENTS = 100;
+	private static final String[] NAMESPACES = {"Venice", "Kinect", "Eyes", "Speech"};
+
+	@After
+	public void after(){
+		Configuration.getInstance().parseArguments(new String[0]);
+		VeniceHub.setTimestampOf1stLine(XIOParser.INVALID_TIMESTAMP);
+		VeniceHub.setTimestampOfLastLine(XIOParser.INVALID_TIMESTAMP);
+		VeniceHub.setReplayDelay(0);
+	}
+
+	private static List<SlotEvent> scan(String path) throws IOException{
+		final List<SlotEvent> events = new ArrayList<SlotEvent>();
+		LogScanner.scan(path, new ScopeFilter(), new LogScanner.Handler(){
+			@Override
+			public boolean event(SlotEvent se){
+				events.add(se);
+				return true;
+			}
+		});
+		return events;
+	}
+
+	private static SlotEvent read(DiskReader reader){
+		long end = System.currentTimeMillis() + 5000;
+		SlotEvent se;
+		while((se = reader.read()) == null && System.currentTimeMillis() < end);
+		return se;
+	}
+
+	@Test
+	public void testPartitions() throws IOException{
+		File log = File.createTempFile("testPartitions", ".xio");
+		log.delete();
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		Configuration.getInstance().parseArguments(new String[]{"-f", log.getPath(), "--writeRaw",
+				"--partitions", "3", "--silent"});
+		PartitionedDiskWriter writer = new PartitionedDiskWriter();
+		File manifest = new File(writer.getManifestPath());
+		manifest.deleteOnExit();
+		assertEquals(log.getPath() + PartitionManifest.FILE_EXTENSION, manifest.getPath());
+		assertEquals(3, writer.getPartitionCount());
+
+		// the namespaces take turns, one event every 10 ms
+		for(int i=0; i<EVENTS; i++)
+			writer.write(new SlotEvent(i, NAMESPACES[i % NAMESPACES.length], "a", Integer.class, 1000 + 10 * i));
+		writer.cleanUp();
+
+		List<String> paths = PartitionManifest.read(manifest.getPath());
+		assertEquals(3, paths.size());
+		long written = 0;
+		Set<String> seen = new HashSet<String>();
+		for(int i=0; i<paths.size(); i++){
+			new File(paths.get(i)).deleteOnExit();
+			assertEquals(PartitionManifest.getPartitionPath(log.getPath(), i + 1), paths.get(i));
+			written += writer.getWrittenEvents(i);
+			Set<String> namespaces = new HashSet<String>();
+			for(SlotEvent se : scan(paths.get(i))) namespaces.add(se.getNamespace());
+			// every namespace is in one partition only
+			for(String namespace : namespaces) assertTrue(seen.add(namespace));
+		}
+		assertEquals(EVENTS, written);
+		assertEquals(NAMESPACES.length, seen.size());
+
+		// the manifest is replayed like a single log
+		VeniceHub.setTimestampOf1stLine(XIOParser.INVALID_TIMESTAMP);
+		VeniceHub.setReplayDelay(0);
+		Configuration.getInstance().parseArguments(new String[]{"-f", manifest.getPath(), "--silent"});
+		DiskReader reader = new DiskReader();
+		try{
+			assertEquals(3, reader.getFileCount());
+			assertEquals(1000, VeniceHub.getTimestampOf1stLine());
+			for(int i=0; i<EVENTS; i++){
+				SlotEvent se = read(reader);
+				assertNotNull(se);
+				assertEquals(1000 + 10 * i, se.getTime());
+				assertEquals(NAMESPACES[i % NAMESPACES.length], se.getNamespace());
+				assertEquals(i, se.getValue());
+			}
+			assertNull(reader.read());
+		}finally{
+			reader.cleanUp();
+		}
+	}
+
+	@Test
+	public void testManifest() throws IOException{
+		assertTrue(PartitionManifest.isPartitionFile("log.xio.gz.partitions"));
+		assertFalse(PartitionManifest.isPartitionFile("log.xio.gz"));
+		assertEquals("log_part02.xio.gz", PartitionManifest.getPartitionPath("log.xio.gz", 2));
+		assertEquals("dir" + File.separator + "log_part12.vbin",
+				PartitionManifest.getPartitionPath("dir" + File.separator + "log.vbin", 12));
+
+		// names are relative to the manifest
+		File manifest = File.createTempFile("testManifest", PartitionManifest.FILE_EXTENSION);
+		manifest.deleteOnExit();
+		String dir = manifest.getParent();
+		List<String> partitions = new ArrayList<String>();
+		partitions.add(new File(dir, "a_part01.xio").getPath());
+		partitions.add(new File(dir, "a_part02.xio").getPath());
+		PartitionManifest.write(manifest.getPath(), partitions, null);
+		assertEquals(partitions, PartitionManifest.read(manifest.getPath()));
+	}
+}
@@ -0,0 +1,239 @@
+package venice.hub;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Adler32;
+
+import org.junit.After;
+import org.junit.Test;
+
+import venice.hub.utils.Configuration;
+import venice.hub.utils.TTE;
+import venice.hub.utils.TTEFrame;
+import venice.hub.utils.TTEQueue;
+import venice.hub.utils.VPFrame;
+import venice.lib.parser.SlotEvent;
+
+/**
+ * Tests the VenicePort server for many clients.
+ */
+public class PortReaderTests {
+
+	@After
+	public void after(){
+		Configuration.getInstance().parseArguments(new String[0]);
+		TTEQueue.getInstance().reset();
+	}
+
+	private static File createSensorFile(String dir, String name, String namespace) throws IOException{
+		File file = new File(dir, name);
+		file.deleteOnExit();
+		String xml = "<?xml version=\"1.0\"?>\n<Sources>\n<Sensor name=\""+namespace+"\">\n"
+				+ "  <slot name=\"id\" type=\"sfint32\"/>\n"
+				+ "  <slot name=\"text\" type=\"sfstring\"/>\n"
+				+ "</Sensor>\n</Sources>\n";
+		try(OutputStream out = new FileOutputStream(file)){
+			out.write(xml.getBytes());
+		}
+		return file;
+	}
+
+	// a VenicePort line with checksum
+	private static String line(int id, String text){
+		String content = id + ", " + text;
+		Adler32 ck = new Adler32();
+		ck.update(content.getBytes());
+		return ck.getValue() + ", " + content + "\n";
+	}
+
+	// a binary frame of the same content
+	private static byte[] frame(int id, String text) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream values = new DataOutputStream(bytes);
+		values.writeInt(id);
+		VPFrame.putString(values, text);
+		return VPFrame.encode(System.currentTimeMillis(), bytes.toByteArray());
+	}
+
+	private static void waitFor(PortReader reader, int clients) throws InterruptedException{
+		long end = System.currentTimeMillis() + 5000;
+		while(reader.getClientCount() != clients && System.currentTimeMillis() < end) Thread.sleep(5);
+		assertEquals(clients, reader.getClientCount());
+	}
+
+	// the events of the queue, until the given number is reached
+	private static List<SlotEvent> take(int count) throws InterruptedException{
+		List<SlotEvent> events = new ArrayList<SlotEvent>();
+		long end = System.currentTimeMillis() + 5000;
+		while(events.size() < count && System.currentTimeMillis() < end){
+			TTE tte = TTEQueue.getInstance().poll();
+			if(tte instanceof TTEFrame) events.addAll(((TTEFrame) tte).getEvents());
+			else if(tte != null) events.add(tte);
+			else Thread.sleep(5);
+		}
+		return events;
+	}
+
+	private static List<Object> values(List<SlotEvent> events){
+		List<Object> values = new ArrayList<Object>();
+		for(SlotEvent se : events) values.add(se.getValue());
+		return values;
+	}
+
+	@Test
+	public void testClients() throws IOException, InterruptedException{
+		File dir = File.createTempFile("testPortReader", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		File body = createSensorFile(dir.getPath(), "body.xml", "Body");
+		createSensorFile(dir.getPath(), "face.xml", "Face");
+		TTEQueue.getInstance().reset();
+		Configuration.getInstance().parseArguments(new String[]{"-i", "VP", "-o", "Disk", "-v", body.getPath(),
+				"--vpMultiClient", "--silent"});
+		PortReader reader = new PortReader();
+		Thread thread = new Thread(reader, "VH_PortReader");
+		thread.start();
+		try{
+			int port = reader.getLocalPort();
+			assertTrue(port > 0);
+			try(Socket a = new Socket("localhost", port); Socket b = new Socket("localhost", port)){
+				waitFor(reader, 2);
+				// a uses the default sensor file, b binds its own in a namespace
+				b.getOutputStream().write(("#sensors face.xml\n#namespace Left\n" + line(2, "b")).getBytes());
+				b.getOutputStream().flush();
+				List<SlotEvent> events = take(2);
+				assertEquals(2, events.size());
+				assertEquals("Left/Face/id", events.get(0).getScope());
+				assertEquals(2, events.get(0).getValue());
+				assertEquals("b", events.get(1).getValue());
+
+				// a line in two parts, then a wrong checksum, which is dropped
+				a.getOutputStream().write(line(1, "a").substring(0, 5).getBytes());
+				a.getOutputStream().flush();
+				Thread.sleep(50);
+				a.getOutputStream().write((line(1, "a").substring(5) + "1, 1, x\n" + line(3, "c")).getBytes());
+				a.getOutputStream().flush();
+				events = take(4);
+				assertEquals(4, events.size());
+				assertTrue(values(events).containsAll(Arrays.asList(1, "a", 3, "c")));
+				for(SlotEvent se : events) assertTrue(se.getScope().startsWith("Body/"));
+			}
+			// the server keeps running, when the clients disconnect
+			waitFor(reader, 0);
+			try(Socket c = new Socket("localhost", port)){
+				waitFor(reader, 1);
+				c.getOutputStream().write(line(4, "d").getBytes());
+				c.getOutputStream().flush();
+				List<SlotEvent> events = take(2);
+				assertEquals(2, events.size());
+				assertEquals(4, events.get(0).getValue());
+			}
+		}finally{
+			reader.stopThread();
+			thread.join(5000);
+		}
+		assertTrue(reader.isFinished());
+	}
+
+	@Test
+	public void testFrames() throws IOException, InterruptedException{
+		File dir = File.createTempFile("testPortReader", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		File body = createSensorFile(dir.getPath(), "body.xml", "Body");
+		TTEQueue.getInstance().reset();
+		Configuration.getInstance().parseArguments(new String[]{"-i", "VP", "-o", "Disk", "-v", body.getPath(),
+				"--vpMultiClient", "--silent"});
+		PortReader reader = new PortReader();
+		Thread thread = new Thread(reader, "VH_PortReader");
+		thread.start();
+		try(Socket a = new Socket("localhost", reader.getLocalPort())){
+			waitFor(reader, 1);
+			OutputStream out = a.getOutputStream();
+			// a control line, a frame in two parts, a broken frame and a text line
+			byte[] f = frame(1, "\u00e4");
+			out.write("#namespace Right\n".getBytes());
+			out.write(f, 0, 7);
+			out.flush();
+			Thread.sleep(50);
+			out.write(f, 7, f.length - 7);
+			byte[] broken = frame(2, "b");
+			broken[broken.length - 1]++;
+			out.write(broken);
+			out.write(line(3, "c").getBytes());
+			out.write(frame(4, "d"));
+			out.flush();
+			List<SlotEvent> events = take(6);
+			assertEquals(6, events.size());
+			// the queue orders by time only, not by arrival
+			assertTrue(values(events).containsAll(Arrays.asList(1, "\u00e4", 3, "c", 4, "d")));
+			for(SlotEvent se : events) assertTrue(se.getScope().startsWith("Right/Body/"));
+		}finally{
+			reader.stopThread();
+			thread.join(5000);
+		}
+	}
+
+	@Test
+	public void testSingleClient() throws Exception{
+		File dir = File.createTempFile("testPortReader", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		File body = createSensorFile(dir.getPath(), "body.xml", "Body");
+		int port;
+		try(ServerSocket free = new ServerSocket(0)){
+			port = free.getLocalPort();
+		}
+		TTEQueue.getInstance().reset();
+		Configuration.getInstance().parseArguments(new String[]{"-i", "VP", "-o", "Disk", "-v", body.getPath(),
+				"--vpport", String.valueOf(port), "--silent"});
+		// the constructor waits for the client
+		final PortReader[] reader = new PortReader[1];
+		Thread thread = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				reader[0] = new PortReader();
+				reader[0].run();
+			}
+		}, "VH_PortReader");
+		thread.start();
+		Socket a = null;
+		long end = System.currentTimeMillis() + 5000;
+		while(a == null && System.currentTimeMillis() < end){
+			try{
+				a = new Socket("localhost", port);
+			}catch(IOException e){
+				Thread.sleep(10);
+			}
+		}
+		assertNotNull(a);
+		try{
+			a.getOutputStream().write(frame(1, "a"));
+			a.getOutputStream().write(line(2, "b").getBytes());
+			a.getOutputStream().write(frame(3, "c"));
+			a.getOutputStream().flush();
+			List<Object> values = values(take(6));
+			assertEquals(6, values.size());
+			assertTrue(values.containsAll(Arrays.asList(1, "a", 2, "b", 3, "c")));
+		}finally{
+			a.close();
+		}
+		// the reader finishes, when the client disconnects
+		thread.join(5000);
+		assertTrue(reader[0].isFinished());
+	}
+}
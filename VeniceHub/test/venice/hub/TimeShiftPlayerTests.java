@@ -0,0 +1,113 @@
+package venice.hub;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import venice.hub.utils.Configuration;
+import venice.hub.utils.TTEBuffer;
+import venice.hub.utils.TimeShiftBuffer;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIORegExParser;
+
+/**
+ * Tests the time-shifted replay of a recording, from the log file and from memory.
+ */
+public class TimeShiftPlayerTests {
+	
+	private static final int EVENTS = 100;
+	private static final int IN_MEMORY = 20;
+	
+	// collects the replayed events
+	private static class Collector extends VeniceWriter {
+		final List<SlotEvent> events = new ArrayList<SlotEvent>();
+		@Override
+		protected long write(SlotEvent se){
+			synchronized(events){
+				events.add(se);
+			}
+			return System.currentTimeMillis();
+		}
+		int size(){
+			synchronized(events){
+				return events.size();
+			}
+		}
+		Object get(int i){
+			synchronized(events){
+				return events.get(i).getValue();
+			}
+		}
+		void clear(){
+			synchronized(events){
+				events.clear();
+			}
+		}
+	}
+	
+	@After
+	public void after(){
+		Configuration.getInstance().parseArguments(new String[0]);
+	}
+	
+	private static void waitFor(Collector collector, int n){
+		long end = System.currentTimeMillis() + 5000;
+		while(collector.size() < n && System.currentTimeMillis() < end)
+			try { Thread.sleep(5); } catch (InterruptedException e) {}
+	}
+	
+	@Test
+	public void testFileAndMemory() throws IOException, InterruptedException{
+		File log = File.createTempFile("testTimeShift", ".xio");
+		log.delete();
+		log.deleteOnExit();
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		Configuration.getInstance().parseArguments(new String[]{"-f", log.getPath(), "--writeRaw", "--silent"});
+		DiskWriter recorder = new DiskWriter();
+		long start = System.currentTimeMillis() - 900;
+		SlotEvent sample = new SlotEvent(0, "Venice", "a", Integer.class, start);
+		TimeShiftBuffer buffer = new TimeShiftBuffer(IN_MEMORY * TTEBuffer.estimateSize(sample));
+		recorder.setTimeShiftBuffer(buffer);
+		for(int i=0; i<EVENTS; i++)
+			recorder.write(new SlotEvent(i, "Venice", "a", Integer.class, start + 10 * i));
+		assertEquals(IN_MEMORY, buffer.size());
+		
+		// one second behind the recording, which has started 0.9 s ago
+		Collector collector = new Collector();
+		TimeShiftPlayer player = new TimeShiftPlayer(buffer, recorder, collector, 1000);
+		Thread thread = new Thread(player, "VH_TimeShift");
+		thread.start();
+		try{
+			waitFor(collector, EVENTS);
+			assertEquals(EVENTS, collector.size());
+			for(int i=0; i<EVENTS; i++) assertEquals(i, collector.get(i));
+			assertEquals(EVENTS - IN_MEMORY, player.getEventsFromFile());
+			assertEquals(IN_MEMORY, player.getEventsFromMemory());
+			
+			// back into the log file
+			collector.clear();
+			player.seek(start + 10 * 50);
+			waitFor(collector, 3);
+			assertEquals(50, collector.get(0));
+			assertEquals(51, collector.get(1));
+			
+			// new events are replayed as they are recorded
+			player.setTimeShift(0);
+			recorder.write(new SlotEvent(EVENTS, "Venice", "a", Integer.class, System.currentTimeMillis()));
+			long end = System.currentTimeMillis() + 5000;
+			while(!Integer.valueOf(EVENTS).equals(collector.get(collector.size() - 1)) && System.currentTimeMillis() < end)
+				Thread.sleep(5);
+			assertEquals(EVENTS, collector.get(collector.size() - 1));
+		}finally{
+			player.stopThread();
+			thread.join(5000);
+			recorder.cleanUp();
+		}
+	}
+}
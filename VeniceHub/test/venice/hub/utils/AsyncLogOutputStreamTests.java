@@ -0,0 +1,111 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests the asynchronous writing of log files.
+ */
+public class AsyncLogOutputStreamTests {
+	
+	private static byte[] createData(int size){
+		byte[] data = new byte[size];
+		Random random = new Random(7);
+		for(int i=0; i<size; i++)
+			data[i] = (byte) ('a' + random.nextInt(8));
+		return data;
+	}
+	
+	private static void writeInPieces(AsyncLogOutputStream out, byte[] data) throws IOException{
+		Random random = new Random(3);
+		int pos = 0;
+		while(pos < data.length){
+			int n = Math.min(data.length - pos, random.nextInt(300));
+			if(n == 1) out.write(data[pos]);
+			else out.write(data, pos, n);
+			pos += n;
+		}
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while((n = in.read(buf)) > 0)
+			bytes.write(buf, 0, n);
+		in.close();
+		return bytes.toByteArray();
+	}
+	
+	@Test
+	public void testGzipRoundTrip() throws IOException{
+		File file = File.createTempFile("async", ".xio.gz");
+		file.deleteOnExit();
+		byte[] data = createData(200000);
+		// small buffers, so that the writer has to wait for the I/O thread
+		AsyncLogOutputStream out = new AsyncLogOutputStream(file.getPath(), true, 1000, 2, 5000, 1000);
+		writeInPieces(out, data);
+		out.close();
+		assertEquals(data.length, out.getBytesWritten());
+		assertEquals(0, out.getQueueDepth());
+		assertTrue(out.getBuffersWritten() >= data.length / 1000);
+		assertArrayEquals(data, readAll(new GZIPInputStream(new FileInputStream(file))));
+	}
+	
+	@Test
+	public void testRawRoundTrip() throws IOException{
+		File file = File.createTempFile("async", ".xio");
+		file.deleteOnExit();
+		byte[] data = createData(50000);
+		AsyncLogOutputStream out = new AsyncLogOutputStream(file.getPath(), false, 4096, 3, 1 << 20, 1000);
+		writeInPieces(out, data);
+		out.close();
+		assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+	}
+	
+	@Test
+	public void testFlushInterval() throws IOException, InterruptedException{
+		File file = File.createTempFile("async", ".xio");
+		file.deleteOnExit();
+		AsyncLogOutputStream out = new AsyncLogOutputStream(file.getPath(), false, 1 << 16, 2, 1 << 20, 50);
+		out.write("<venice>\n".getBytes());
+		// no further writes, the I/O thread has to write the data itself
+		long deadline = System.currentTimeMillis() + 5000;
+		while(file.length() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(9, file.length());
+		out.close();
+	}
+	
+	@Test
+	public void testFlushBytes() throws IOException, InterruptedException{
+		File file = File.createTempFile("async", ".xio");
+		file.deleteOnExit();
+		AsyncLogOutputStream out = new AsyncLogOutputStream(file.getPath(), false, 1 << 16, 2, 100, 60000);
+		out.write(createData(100));
+		long deadline = System.currentTimeMillis() + 5000;
+		while(file.length() == 0 && System.currentTimeMillis() < deadline)
+			Thread.sleep(10);
+		assertEquals(100, file.length());
+		out.close();
+	}
+	
+	@Test(expected = IOException.class)
+	public void testWriteAfterClose() throws IOException{
+		File file = File.createTempFile("async", ".xio");
+		file.deleteOnExit();
+		AsyncLogOutputStream out = new AsyncLogOutputStream(file.getPath(), false, 1024, 2, 1024, 1000);
+		out.close();
+		out.write(1);
+	}
+}
@@ -0,0 +1,226 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.instantreality.InstantIO.Rotation;
+import org.instantreality.InstantIO.Vec3f;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOMaps;
+import venice.lib.parser.XIOParser;
+import venice.lib.parser.XIORegExParser;
+
+/**
+ * Tests the binary log format: writing and reading of records and the
+ * conversion between XIO and binary log files.
+ */
+public class BinaryLogTests {
+	
+	@BeforeClass
+	public static void beforeClass(){
+		XIOMaps.putPair("sfvec3f", Vec3f.class);
+		XIOMaps.putPair("mfrotation", Rotation[].class);
+	}
+	
+	private static List<SlotEvent> createEvents(){
+		List<SlotEvent> events = new ArrayList<SlotEvent>();
+		events.add(new SlotEvent(1.5f, "Venice/test", "float", Float.class, 1000L));
+		events.add(new SlotEvent(Math.PI, "Venice/test", "double", Double.class, 1001L));
+		events.add(new SlotEvent(-42, "Venice/test", "int", Integer.class, 1002L));
+		events.add(new SlotEvent(true, "", "bool", Boolean.class, 1003L));
+		events.add(new SlotEvent("h\u00e4llo \"world\"", "Venice/test", "string", String.class, 1004L));
+		events.add(new SlotEvent(new Vec3f(0.1f, -2.25f, 1e-7f), "Kinect/skeleton", "head", Vec3f.class, 1005L));
+		events.add(new SlotEvent(new Float[]{1f, 2f, 3.5f}, "Venice/test", "floats", Float[].class, 1006L));
+		events.add(new SlotEvent(new String[]{"a", "b c"}, "Venice/test", "strings", String[].class, 1007L));
+		events.add(new SlotEvent(new Rotation[]{new Rotation(0f, 1f, 0f, 3.14f)}, "Kinect", "rots", Rotation[].class, 1008L));
+		events.add(new SlotEvent(0.25f, "Venice/test", "float", Float.class, 1009L));
+		return events;
+	}
+	
+	private static void assertSameEvent(SlotEvent expected, SlotEvent actual){
+		assertEquals(expected.getScope(), actual.getScope());
+		assertEquals(expected.getType(), actual.getType());
+		assertEquals(expected.getTime(), actual.getTime());
+		if(expected.getValue() == null) assertNull(actual.getValue());
+		else assertEquals(XIOParser.value2str(expected.getValue()), XIOParser.value2str(actual.getValue()));
+	}
+	
+	private static List<SlotEvent> readAll(byte[] data) throws IOException{
+		List<SlotEvent> events = new ArrayList<SlotEvent>();
+		BinaryLogReader reader = new BinaryLogReader(new ByteArrayInputStream(data));
+		reader.readHeader();
+		try{
+			while(true){
+				long ts = reader.next();
+				SlotEvent se = reader.parseEvent();
+				assertEquals(ts, se.getTime());
+				events.add(se);
+			}
+		}
+		catch(EOFException e){
+			// end of data
+		}
+		return events;
+	}
+	
+	private static byte[] writeAll(List<SlotEvent> events, boolean deltaEncoding, long keyframeInterval) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryLogWriter writer = new BinaryLogWriter(bytes, deltaEncoding, keyframeInterval);
+		writer.writeHeader();
+		for(SlotEvent se : events) writer.writeEvent(se);
+		writer.finish();
+		return bytes.toByteArray();
+	}
+	
+	@Test
+	public void testRoundTrip() throws IOException{
+		List<SlotEvent> events = createEvents();
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BinaryLogWriter writer = new BinaryLogWriter(bytes);
+		writer.writeHeader();
+		for(SlotEvent se : events) writer.writeEvent(se);
+		writer.flush();
+		
+		BinaryLogReader reader = new BinaryLogReader(new ByteArrayInputStream(bytes.toByteArray()));
+		reader.readHeader();
+		for(SlotEvent se : events){
+			assertEquals(se.getTime(), reader.next());
+			assertSameEvent(se, reader.parseEvent());
+		}
+		try{
+			reader.next();
+			fail("expected end of file");
+		}
+		catch(EOFException e){
+			// expected
+		}
+	}
+	
+	@Test
+	public void testConcatenated() throws IOException{
+		// like the segments of a rotated log, with different slot tables
+		List<SlotEvent> events = createEvents();
+		List<SlotEvent> first = events.subList(0, 5);
+		List<SlotEvent> second = events.subList(5, events.size());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		bytes.write(writeAll(first, false, 0));
+		bytes.write(writeAll(second, true, 1000));
+		List<SlotEvent> read = readAll(bytes.toByteArray());
+		assertEquals(events.size(), read.size());
+		for(int i=0; i<events.size(); i++)
+			assertSameEvent(events.get(i), read.get(i));
+	}
+	
+	@Test
+	public void testConvert() throws IOException{
+		File xio = File.createTempFile("testBinaryLog", ".xio");
+		File bin = File.createTempFile("testBinaryLog", ".vbin.gz");
+		File xio2 = File.createTempFile("testBinaryLog", ".xio");
+		xio.deleteOnExit();
+		bin.deleteOnExit();
+		xio2.deleteOnExit();
+		
+		XIOParser parser = new XIORegExParser();
+		List<SlotEvent> events = createEvents();
+		Writer fw = new OutputStreamWriter(new FileOutputStream(xio), "ISO-8859-1");
+		fw.write("<?xml version=\"1.0\"?>\n<venice>\n");
+		for(SlotEvent se : events) fw.write(parser.eventToString(se)+"\n");
+		fw.write("</venice>\n");
+		fw.close();
+		
+		assertEquals(events.size(), LogConverter.convert(xio.getPath(), bin.getPath()));
+		assertEquals(events.size(), LogConverter.convert(bin.getPath(), xio2.getPath()));
+		
+		// the events have to survive the way XIO -> binary -> XIO
+		List<String> lines = java.nio.file.Files.readAllLines(xio2.toPath(), java.nio.charset.Charset.forName("ISO-8859-1"));
+		int n = 0;
+		for(String line : lines){
+			if(parser.preparseTS(line) == XIOParser.INVALID_TIMESTAMP) continue;
+			assertSameEvent(parser.stringToEvent(parser.eventToString(events.get(n++))), parser.stringToEvent(line));
+		}
+		assertEquals(events.size(), n);
+	}
+	
+	@Test
+	public void testDeltaEncoding() throws IOException{
+		List<SlotEvent> events = createEvents();
+		
+		// a skeleton with 25 joints, moving a little bit every frame
+		Random random = new Random(4711);
+		float[] joints = new float[25*3];
+		for(int i=0; i<joints.length; i++) joints[i] = random.nextFloat();
+		long ts = 1400000000000L;
+		for(int frame=0; frame<300; frame++){
+			ts += 33 + random.nextInt(3);
+			for(int j=0; j<25; j++){
+				for(int c=0; c<3; c++) joints[j*3+c] += (random.nextFloat() - 0.5f) * 0.01f;
+				events.add(new SlotEvent(new Vec3f(joints[j*3], joints[j*3+1], joints[j*3+2]), "Kinect/skeleton", "joint"+j, Vec3f.class, ts));
+			}
+			events.add(new SlotEvent(frame, "Kinect", "frame", Integer.class, ts));
+			events.add(new SlotEvent(frame % 50 < 25 ? "tracking" : "lost", "Kinect", "state", String.class, ts));
+			events.add(new SlotEvent(frame % 7 == 0, "Kinect", "flag", Boolean.class, ts));
+			events.add(new SlotEvent(Math.sin(frame / 10.0), "Kinect", "wave", Double.class, ts));
+		}
+		// special values and events out of order
+		events.add(new SlotEvent(Float.NaN, "Venice/test", "float", Float.class, ts - 5000));
+		events.add(new SlotEvent(-0.0f, "Venice/test", "float", Float.class, ts));
+		events.add(new SlotEvent(Float.MAX_VALUE, "Venice/test", "float", Float.class, ts + 1));
+		events.add(new SlotEvent(null, "Venice/test", "string", String.class, ts + 2));
+		events.add(new SlotEvent(Integer.MIN_VALUE, "Venice/test", "int", Integer.class, ts + 3));
+		events.add(new SlotEvent(Integer.MAX_VALUE, "Venice/test", "int", Integer.class, ts + 3));
+		
+		byte[] plain = writeAll(events, false, 0);
+		byte[] delta = writeAll(events, true, 1000);
+		assertTrue("delta encoding should be smaller ("+delta.length+" >= "+plain.length+")", delta.length < plain.length);
+		
+		List<SlotEvent> decoded = readAll(delta);
+		assertEquals(events.size(), decoded.size());
+		for(int i=0; i<events.size(); i++) assertSameEvent(events.get(i), decoded.get(i));
+		
+		// floats have to be bitwise identical
+		for(int i=0; i<events.size(); i++){
+			if(events.get(i).getValue() instanceof Float)
+				assertEquals(Float.floatToRawIntBits((Float) events.get(i).getValue()), Float.floatToRawIntBits((Float) decoded.get(i).getValue()));
+		}
+		
+		// skipping a part of the file has to start at a keyframe
+		BinaryLogReader reader = new BinaryLogReader(new ByteArrayInputStream(delta));
+		reader.readHeader();
+		reader.skip(delta.length / 2);
+		long next = reader.next();
+		SlotEvent se = reader.parseEvent();
+		assertEquals(next, se.getTime());
+		boolean found = false;
+		for(SlotEvent e : events){
+			if(e.getTime() == se.getTime() && e.getScope().equals(se.getScope())){
+				assertEquals(XIOParser.value2str(e.getValue()), XIOParser.value2str(se.getValue()));
+				found = true;
+				break;
+			}
+		}
+		assertTrue(found);
+	}
+	
+	@Test
+	public void testIsBinaryLogFile(){
+		assertTrue(BinaryLog.isBinaryLogFile("log.vbin"));
+		assertTrue(BinaryLog.isBinaryLogFile("log_001.VBIN.gz"));
+		assertFalse(BinaryLog.isBinaryLogFile("log.xio.gz"));
+		assertFalse(BinaryLog.isBinaryLogFile(null));
+	}
+}
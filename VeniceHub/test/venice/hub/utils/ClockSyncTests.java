@@ -0,0 +1,153 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests the clock synchronization with a simulated media player.
+ */
+public class ClockSyncTests {
+	
+	private static final long INTERVAL = 200; // ms between two syncs
+	private static final long CHECK = 10; // ms between two checks of the delay
+	
+	// the replay of the hub, running in simulated time
+	private static class SimulatedReplay implements ClockSync.Replay {
+		long now;
+		long delay; // at the start of the slew
+		long slewStart;
+		long slewMs;
+		long slewDuration;
+		long largestSlew;
+		long checkedDelay;
+		long largestStep; // change of the delay between two checks
+		
+		long getDelay(){
+			if(slewDuration == 0) return delay;
+			return delay + slewMs * Math.min(now - slewStart, slewDuration) / slewDuration;
+		}
+		// moves on in steps, like the checks of the TTEQueue
+		void advance(long ms){
+			for(long t=0; t<ms; t+=CHECK){
+				now += CHECK;
+				largestStep = Math.max(largestStep, Math.abs(getDelay() - checkedDelay));
+				checkedDelay = getDelay();
+			}
+		}
+		@Override
+		public long getPosition() {
+			return now - getDelay();
+		}
+		@Override
+		public void slew(long ms, long duration) {
+			assertTrue(Math.abs(ms) < duration);
+			delay = getDelay();
+			slewStart = now;
+			slewMs = ms;
+			slewDuration = duration;
+			largestSlew = Math.max(largestSlew, Math.abs(ms));
+		}
+		@Override
+		public void seek(long position) {
+			delay = now - position;
+			slewDuration = 0;
+			checkedDelay = delay; // a jump on purpose
+		}
+	}
+	
+	// a media player, whose clock runs at a slightly different rate
+	private static class MediaPlayer {
+		double position;
+		double rate;
+		
+		MediaPlayer(long position, double rate){
+			this.position = position;
+			this.rate = rate;
+		}
+		void advance(long ms){
+			position += ms * rate;
+		}
+	}
+	
+	@Test
+	public void testSlewing(){
+		SimulatedReplay replay = new SimulatedReplay();
+		ClockSync sync = new ClockSync(replay, 500, 0.05);
+		// the media player is 1 percent faster than the hub
+		MediaPlayer player = new MediaPlayer(0, 1.01);
+		for(int i=0; i<300; i++){
+			sync.sync((long) player.position, replay.now);
+			replay.advance(INTERVAL);
+			player.advance(INTERVAL);
+		}
+		assertEquals(300, sync.getSyncs());
+		assertEquals(0, sync.getSeeks());
+		// the drift of one interval is corrected at the next sync
+		assertTrue(sync.getMaxDrift() <= 3);
+		assertTrue(Math.abs(replay.getPosition() - (long) player.position) <= 3);
+		// about 600 ms in 60 s
+		assertTrue(sync.getSlewed() > 550);
+		assertTrue(replay.largestSlew <= INTERVAL * 0.05);
+		// spread over the interval, never a step
+		assertTrue(replay.largestStep <= 1);
+	}
+	
+	@Test
+	public void testThreshold(){
+		SimulatedReplay replay = new SimulatedReplay();
+		ClockSync sync = new ClockSync(replay, 500, 0.05);
+		MediaPlayer player = new MediaPlayer(300, 1.0); // 300 ms ahead of the hub
+		for(int i=0; i<50; i++){
+			sync.sync((long) player.position, replay.now);
+			replay.advance(INTERVAL);
+			player.advance(INTERVAL);
+		}
+		// slewed at 10 ms per sync, not seeked
+		assertEquals(0, sync.getSeeks());
+		assertEquals(300, sync.getMaxDrift());
+		assertEquals(0, sync.getLastDrift());
+		assertEquals(300, sync.getSlewed());
+		assertEquals(10, replay.largestSlew);
+		assertTrue(replay.largestStep <= 1);
+		
+		// the media player jumps
+		player.position += 2000;
+		assertEquals(-2000, sync.sync((long) player.position, replay.now));
+		assertEquals(1, sync.getSeeks());
+		assertEquals(player.position, replay.getPosition(), 0);
+		
+		// a long pause between syncs is not slewed for in one step
+		replay.advance(60000);
+		player.advance(60000);
+		player.position += 200;
+		sync.sync((long) player.position, replay.now);
+		assertEquals(50, replay.largestSlew);
+		// but over the next second
+		replay.advance(1000);
+		assertEquals(-150, sync.sync((long) player.position + 1000, replay.now));
+		assertTrue("step of "+replay.largestStep+" ms", replay.largestStep <= 1);
+	}
+	
+	@Test
+	public void testJitter(){
+		SimulatedReplay replay = new SimulatedReplay();
+		ClockSync sync = new ClockSync(replay, 500, 0.05);
+		MediaPlayer player = new MediaPlayer(0, 0.995);
+		Random rnd = new Random(42);
+		for(int i=0; i<1000; i++){
+			// the media time is reported up to 20 ms late
+			long reported = (long) player.position - rnd.nextInt(20);
+			sync.sync(reported, replay.now);
+			replay.advance(INTERVAL);
+			player.advance(INTERVAL);
+		}
+		assertEquals(0, sync.getSeeks());
+		assertTrue(sync.getMaxDrift() < 40);
+		assertTrue(sync.getMeanDrift() < 15);
+		assertTrue("step of "+replay.largestStep+" ms", replay.largestStep <= 1);
+		assertTrue(sync.toString().startsWith("1000 syncs, 0 seeks"));
+	}
+}
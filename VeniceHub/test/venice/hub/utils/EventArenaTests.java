@@ -0,0 +1,154 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.instantreality.InstantIO.Rotation;
+import org.instantreality.InstantIO.Vec3f;
+import org.junit.After;
+import org.junit.Test;
+
+import venice.hub.VeniceHub;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOParser;
+import venice.lib.parser.XIORegExParser;
+
+/**
+ * Tests the off-heap storage of events for the replay buffer.
+ */
+public class EventArenaTests {
+	
+	@After
+	public void after(){
+		Configuration.getInstance().parseArguments(new String[0]);
+	}
+	
+	private static List<SlotEvent> createEvents(){
+		List<SlotEvent> events = new ArrayList<SlotEvent>();
+		events.add(new SlotEvent(1.5f, "Venice/test", "float", Float.class, 1000L));
+		events.add(new SlotEvent(Math.PI, "Venice/test", "double", Double.class, 1001L));
+		events.add(new SlotEvent(-42, "Venice/test", "int", Integer.class, 1002L));
+		events.add(new SlotEvent(true, "", "bool", Boolean.class, 1003L));
+		events.add(new SlotEvent("h\u00e4llo \"world\"", "Venice/test", "string", String.class, 1004L));
+		events.add(new SlotEvent(new Vec3f(0.1f, -2.25f, 1e-7f), "Kinect/skeleton", "head", Vec3f.class, 1005L));
+		events.add(new SlotEvent(new Float[]{1f, 2f, 3.5f}, "Venice/test", "floats", Float[].class, 1006L));
+		events.add(new SlotEvent(new String[]{"a", "b c"}, "Venice/test", "strings", String[].class, 1007L));
+		events.add(new SlotEvent(new Rotation[]{new Rotation(0f, 1f, 0f, 3.14f)}, "Kinect", "rots", Rotation[].class, 1008L));
+		events.add(new SlotEvent(null, "Venice/test", "float", Float.class, 1009L));
+		events.add(new SlotEvent(7, "", "Venice/xio/slot", Integer.class, 1010L)); // like from the XIO parser
+		return events;
+	}
+	
+	private static void assertSameEvent(SlotEvent expected, SlotEvent actual){
+		assertEquals(expected.getNamespace(), actual.getNamespace());
+		assertEquals(expected.getLabel(), actual.getLabel());
+		assertEquals(expected.getType(), actual.getType());
+		assertEquals(expected.getTime(), actual.getTime());
+		if(expected.getValue() == null) assertNull(actual.getValue());
+		else assertEquals(XIOParser.value2str(expected.getValue()), XIOParser.value2str(actual.getValue()));
+	}
+	
+	private static void assertArena(EventArena arena) throws IOException{
+		List<SlotEvent> events = createEvents();
+		for(int round=0; round<200; round++){
+			for(SlotEvent se : events) arena.add(se);
+			assertEquals(events.size(), arena.size());
+			for(int i=0; i<events.size(); i++){
+				assertEquals(events.get(i).getTime(), arena.getTime(i));
+				assertSameEvent(events.get(i), arena.get(i));
+			}
+			// remove in two steps, events may span chunks
+			arena.removeFirst(3);
+			assertSameEvent(events.get(3), arena.get(0));
+			arena.removeFirst(events.size() - 3);
+			assertEquals(0, arena.size());
+		}
+		// the chunks are reused
+		assertTrue(arena.getAllocatedBytes() <= 4 * 256);
+		arena.close();
+	}
+	
+	@Test
+	public void testDirectMemory() throws IOException{
+		assertArena(new EventArena(256, null));
+	}
+	
+	@Test
+	public void testMappedFile() throws IOException{
+		File dir = File.createTempFile("testArena", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		assertArena(new EventArena(256, dir));
+		assertEquals(0, dir.list().length); // the file is deleted
+	}
+	
+	@Test
+	public void testBuffer() throws IOException{
+		TTEBuffer tb = new OffHeapTTEBuffer(new EventArena(1024, null));
+		for(int i=0; i<1000; i++) tb.add(new SlotEvent(i, "Venice/test", "int", Integer.class, 100L + i));
+		assertEquals(1000, tb.size());
+		assertEquals(100, tb.getFirstTimestamp());
+		assertEquals(1099, tb.getLastTimestamp());
+		long memory = tb.getMemory();
+		assertTrue(memory > 1000 * 16);
+		assertEquals(-1, tb.getIndexOfLast(memory + 1));
+		assertEquals(0, tb.getIndexOfLast(memory));
+		assertEquals(999, tb.getIndexOfLast(tb.getMemory(999)));
+		tb.setReadingPosition(600);
+		assertEquals(600, tb.getNext().getValue());
+		assertEquals(501, tb.removeUntil(600));
+		tb.addReadingPosition(-501);
+		assertEquals(601, tb.peek().getValue());
+		assertTrue(tb.getMemory() < memory);
+		assertEquals(new SlotEvent(999, "Venice/test", "int", Integer.class, 1099L), tb.get(tb.size() - 1));
+		tb.clear();
+		assertEquals(0, tb.size());
+		assertEquals(0, tb.getReadingPosition());
+		assertNull(tb.peek());
+		tb.release();
+	}
+	
+	@Test
+	public void testReplay() throws IOException, InterruptedException{
+		File file = File.createTempFile("testArena", ".xio");
+		file.deleteOnExit();
+		try(OutputStream out = new FileOutputStream(file)){
+			out.write("Header\n<venice>\n".getBytes());
+			for(int i=0; i<5000; i++)
+				out.write(("<sfint32 value=\""+i+"\" timestamp=\""+(1000+i)+"\" sensorName=\"Venice/test/slot"+(i%3)+"\"/>\n").getBytes());
+			out.write("</venice>\n".getBytes());
+		}
+		Configuration.getInstance().parseArguments(new String[]{"--offHeap", "--silent"});
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		TTEBufferedReader tbr = new TTEBufferedReader(file.getPath());
+		assertTrue(tbr.getTTEBuffer() instanceof OffHeapTTEBuffer);
+		Thread tbrThread = new Thread(tbr, "Test_TBR");
+		tbrThread.start();
+		SynchronousQueue<SlotEvent> syncQ = tbr.getSyncQ();
+		for(int i=0; i<5000; i++){
+			SlotEvent se = syncQ.poll(5, TimeUnit.SECONDS);
+			assertNotNull(se);
+			assertEquals(i, se.getValue());
+			assertEquals("Venice/test/slot"+(i%3), se.getScope());
+		}
+		// seeking inside of the buffer
+		tbr.seek(3000);
+		long end = System.currentTimeMillis() + 5000;
+		SlotEvent se;
+		do se = syncQ.poll(5, TimeUnit.SECONDS);
+		while(se != null && se.getTime() != 3000 && System.currentTimeMillis() < end);
+		assertNotNull(se);
+		assertEquals(2000, se.getValue());
+		tbr.stopThread();
+		tbrThread.join(5000);
+	}
+}
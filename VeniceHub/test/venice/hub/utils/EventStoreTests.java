@@ -0,0 +1,89 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.instantreality.InstantIO.Rotation;
+import org.instantreality.InstantIO.Vec3f;
+import org.junit.Test;
+
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOParser;
+
+/**
+ * Tests the in-memory store of events: the columns for the value types,
+ * sorting and seeking.
+ */
+public class EventStoreTests {
+	
+	private static List<SlotEvent> createEvents(){
+		List<SlotEvent> events = new ArrayList<SlotEvent>();
+		events.add(new SlotEvent(1.5f, "Venice/test", "float", Float.class, 1000L));
+		events.add(new SlotEvent(Math.PI, "Venice/test", "double", Double.class, 1001L));
+		events.add(new SlotEvent(-42, "Venice/test", "int", Integer.class, 1002L));
+		events.add(new SlotEvent(1L << 40, "Venice/test", "long", Long.class, 1002L));
+		events.add(new SlotEvent(true, "", "bool", Boolean.class, 1003L));
+		events.add(new SlotEvent("h\u00e4llo \"world\"", "Venice/test", "string", String.class, 1004L));
+		events.add(new SlotEvent(new Vec3f(0.1f, -2.25f, 1e-7f), "Kinect/skeleton", "head", Vec3f.class, 1005L));
+		events.add(new SlotEvent(new Float[]{1f, 2f, 3.5f}, "Venice/test", "floats", Float[].class, 1006L));
+		events.add(new SlotEvent(new String[]{"a", "b c"}, "Venice/test", "strings", String[].class, 1007L));
+		events.add(new SlotEvent(new Rotation[]{new Rotation(0f, 1f, 0f, 3.14f)}, "Kinect", "rots", Rotation[].class, 1008L));
+		events.add(new SlotEvent(0.25f, "Venice/test", "float", Float.class, 1009L));
+		events.add(new SlotEvent(new Float[]{}, "Venice/test", "floats", Float[].class, 1010L));
+		events.add(new SlotEvent("not a number", "Venice/test", "int", Integer.class, 1011L)); // does not fit the column
+		events.add(new SlotEvent(-7, "Venice/test", "int", Integer.class, 1012L));
+		return events;
+	}
+	
+	private static void assertSameEvent(SlotEvent expected, SlotEvent actual){
+		assertEquals(expected.getScope(), actual.getScope());
+		assertEquals(expected.getType(), actual.getType());
+		assertEquals(expected.getTime(), actual.getTime());
+		assertEquals(XIOParser.value2str(expected.getValue()), XIOParser.value2str(actual.getValue()));
+	}
+	
+	@Test
+	public void testColumns(){
+		List<SlotEvent> events = createEvents();
+		EventStore store = new EventStore(1 << 20);
+		for(SlotEvent se : events) assertTrue(store.add(se, 0));
+		store.finish();
+		assertEquals(events.size(), store.size());
+		assertEquals(10, store.getScopeCount());
+		assertTrue(store.getMemoryUsage() > 0);
+		for(int i=0; i<events.size(); i++) assertSameEvent(events.get(i), store.get(i));
+		assertNotSame(store.get(0), store.get(0)); // new events every time
+	}
+	
+	@Test
+	public void testSortAndSearch(){
+		EventStore store = new EventStore(1 << 20);
+		// two files, the second one shifted by an offset
+		for(int i=0; i<100; i++) store.add(new SlotEvent(i, "a", "x", Integer.class, 10 * i), 0);
+		for(int i=0; i<100; i++) store.add(new SlotEvent(i, "b", "x", Integer.class, 10 * i), 5);
+		store.add(new SlotEvent(100, "a", "x", Integer.class, 995), 0); // same time as the last event of b
+		store.finish();
+		for(int i=1; i<store.size(); i++) assertTrue(store.getTime(i-1) <= store.getTime(i));
+		// equal timestamps keep the order of adding
+		int i = store.search(995);
+		assertEquals("b/x", store.get(i).getScope());
+		assertEquals("a/x", store.get(i + 1).getScope());
+		assertEquals(100, store.get(i + 1).getValue());
+		assertEquals(0, store.search(-1));
+		assertEquals(1, store.search(1));
+		assertEquals(1, store.search(5));
+		assertEquals(2, store.search(6));
+		assertEquals(store.size(), store.search(1000));
+	}
+	
+	@Test
+	public void testLimit(){
+		EventStore store = new EventStore(10000);
+		int added = 0;
+		while(store.add(new SlotEvent((float) added, "a", "x", Float.class, added), 0)) added++;
+		assertTrue(added > 100 && added < 10000);
+		assertTrue(store.getMemoryUsage() > 10000);
+	}
+}
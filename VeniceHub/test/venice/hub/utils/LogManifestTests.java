@@ -0,0 +1,145 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import venice.hub.VeniceHub;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIORegExParser;
+
+/**
+ * Tests the manifest of rotated log files and the replay of its segments.
+ */
+public class LogManifestTests {
+	
+	private static File createDir() throws IOException{
+		File dir = File.createTempFile("testManifest", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		return dir;
+	}
+	
+	private static void writeFile(File file, byte[] data, boolean gzip) throws IOException{
+		file.deleteOnExit();
+		OutputStream out = new FileOutputStream(file);
+		if(gzip) out = new GZIPOutputStream(out);
+		out.write(data);
+		out.close();
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buf = new byte[100];
+		int n;
+		while((n = in.read(buf)) != -1)
+			bytes.write(buf, 0, n);
+		in.close();
+		return bytes.toByteArray();
+	}
+	
+	// writes three segments with the contents "segment 1\n", ...
+	private static LogManifest createSegments(File dir) throws IOException{
+		LogManifest manifest = new LogManifest(new File(dir, "log.xio.gz.manifest").getPath());
+		for(int i=1; i<=3; i++){
+			byte[] data = ("segment " + i + "\n").getBytes();
+			String name = "log_seg000" + i + (i == 2 ? ".xio" : ".xio.gz");
+			writeFile(new File(dir, name), data, i != 2);
+			manifest.add(new LogManifest.Segment(name, i * 100, i * 100 + 99, 1, data.length));
+		}
+		manifest.write();
+		new File(manifest.toString()).deleteOnExit();
+		return manifest;
+	}
+	
+	@Test
+	public void testReadWrite() throws IOException{
+		File dir = createDir();
+		LogManifest manifest = createSegments(dir);
+		LogManifest read = LogManifest.read(manifest.toString());
+		List<LogManifest.Segment> segments = read.getSegments();
+		assertEquals(3, segments.size());
+		assertEquals("log_seg0002.xio", segments.get(1).getName());
+		assertEquals(200, segments.get(1).getFirstTimestamp());
+		assertEquals(299, segments.get(1).getLastTimestamp());
+		assertEquals(10, segments.get(1).getBytes());
+		assertEquals(100, read.getFirstTimestamp());
+		assertEquals(399, read.getLastTimestamp());
+		assertEquals(new File(dir, "log_seg0003.xio.gz"), read.getFile(segments.get(2)));
+		assertFalse(new File(manifest.toString() + ".tmp").exists());
+	}
+	
+	@Test
+	public void testNames(){
+		assertTrue(LogManifest.isManifestFile("log.vbin.gz.manifest"));
+		assertFalse(LogManifest.isManifestFile("log.vbin.gz"));
+		assertEquals("log.vbin.gz", LogManifest.getLogPath("log.vbin.gz.manifest"));
+		assertTrue(BinaryLog.isBinaryLogFile(LogManifest.getLogPath("log.vbin.gz.manifest")));
+	}
+	
+	@Test
+	public void testSegmentedStream() throws IOException{
+		File dir = createDir();
+		LogManifest manifest = createSegments(dir);
+		assertEquals("segment 1\nsegment 2\nsegment 3\n",
+				new String(readAll(new SegmentedInputStream(manifest))));
+	}
+	
+	@Test
+	public void testLazySkip() throws IOException{
+		File dir = createDir();
+		LogManifest manifest = createSegments(dir);
+		// a skipped segment must not be opened
+		new File(dir, "log_seg0001.xio.gz").delete();
+		SegmentedInputStream in = new SegmentedInputStream(manifest);
+		assertEquals(13, in.skip(13));
+		assertEquals(1, in.getSegmentIndex());
+		assertEquals("ment 2\nsegment 3\n", new String(readAll(in)));
+	}
+	
+	@Test
+	public void testReplay() throws IOException, InterruptedException{
+		File dir = createDir();
+		int headerLines = Configuration.getInstance().getHeaderLines();
+		LogManifest manifest = new LogManifest(new File(dir, "log.xio.manifest").getPath());
+		int n = 0;
+		for(int s=1; s<=3; s++){
+			StringBuilder sb = new StringBuilder();
+			for(int h=0; h<headerLines; h++) sb.append("Header\n");
+			sb.append("<venice>\n");
+			for(int i=0; i<100; i++, n++)
+				sb.append("<sfint32 value=\""+n+"\" timestamp=\""+(1000+n)+"\" sensorname=\"testslot\"/>\n");
+			sb.append("</venice>\n");
+			String name = "log_seg000" + s + ".xio";
+			writeFile(new File(dir, name), sb.toString().getBytes(), false);
+			manifest.add(new LogManifest.Segment(name, 1000 + n - 100, 1000 + n - 1, 100, sb.length()));
+		}
+		manifest.write();
+		new File(manifest.toString()).deleteOnExit();
+		
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		TTEBufferedReader tbr = new TTEBufferedReader(manifest.toString());
+		Thread tbrThread = new Thread(tbr, "Test_TBR");
+		tbrThread.start();
+		SynchronousQueue<SlotEvent> syncQ = tbr.getSyncQ();
+		for(int i=0; i<n; i++){
+			SlotEvent se = syncQ.poll(5, TimeUnit.SECONDS);
+			assertNotNull(se);
+			assertEquals(i, se.getValue());
+			assertEquals(1000 + i, se.getTime());
+		}
+		tbr.stopThread();
+	}
+}
@@ -0,0 +1,186 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import venice.lib.parser.SlotEvent;
+
+/**
+ * Tests the repair of log files, that were not closed properly.
+ */
+public class LogRecoveryTests {
+	
+	private static String line(int i){
+		return "<sfint32 value=\""+i+"\" timestamp=\""+(1000+i)+"\" sensorname=\"testslot\"/>\n";
+	}
+	
+	// writes a XIO log with a sync point after every 100 events, without footer
+	private static File writeXIO(String suffix, boolean gzip, int events) throws IOException{
+		File file = File.createTempFile("testRecovery", suffix);
+		file.deleteOnExit();
+		OutputStream out = new FileOutputStream(file);
+		if(gzip) out = new ParallelGZIPOutputStream(out, 6, 1);
+		out.write("Header\n<venice>\n".getBytes());
+		for(int i=0; i<events; i++){
+			out.write(line(i).getBytes());
+			if(i % 100 == 99) out.flush();
+		}
+		out.flush();
+		out.close();
+		return file;
+	}
+	
+	private static void cut(File file, long bytes) throws IOException{
+		try(RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+			raf.setLength(raf.length() - bytes);
+		}
+	}
+	
+	private static String readAll(InputStream in) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while((n = in.read(buf)) > 0)
+			bytes.write(buf, 0, n);
+		in.close();
+		return bytes.toString("ISO-8859-1");
+	}
+	
+	private static void assertCompleteLines(String content, int minEvents){
+		assertTrue(content.startsWith("Header\n<venice>\n"));
+		assertTrue(content.endsWith("</venice>\n"));
+		String[] lines = content.split("\n");
+		int events = lines.length - 3;
+		assertTrue(events >= minEvents);
+		for(int i=0; i<events; i++)
+			assertEquals(line(i), lines[i+2] + "\n");
+	}
+	
+	@Test
+	public void testCompressed() throws IOException{
+		File file = writeXIO(".xio.gz", true, 1000);
+		cut(file, 30); // inside the last member
+		LogRecovery.Result check = LogRecovery.recover(file.getPath(), false);
+		assertFalse(check.complete);
+		assertEquals(9, check.members); // 11 members written, the header shares the first one
+		
+		LogRecovery.Result result = LogRecovery.recover(file.getPath(), true);
+		assertEquals(result.recoveredSize, file.length());
+		assertCompleteLines(readAll(new GZIPInputStream(new FileInputStream(file))), 900);
+		
+		assertTrue(LogRecovery.recover(file.getPath(), false).complete);
+	}
+	
+	@Test
+	public void testCompressedWithoutSyncPoints() throws IOException{
+		// a single member, the decodable part is kept
+		File file = File.createTempFile("testRecovery", ".xio.gz");
+		file.deleteOnExit();
+		java.util.zip.GZIPOutputStream out = new java.util.zip.GZIPOutputStream(new FileOutputStream(file), true);
+		out.write("Header\n<venice>\n".getBytes());
+		for(int i=0; i<1000; i++) out.write(line(i).getBytes());
+		out.flush();
+		out.close();
+		cut(file, 12);
+		LogRecovery.Result result = LogRecovery.recover(file.getPath(), true);
+		assertEquals(0, result.members);
+		assertCompleteLines(readAll(new GZIPInputStream(new FileInputStream(file))), 990);
+	}
+	
+	@Test
+	public void testRaw() throws IOException{
+		File file = writeXIO(".xio", false, 100);
+		cut(file, 10);
+		LogRecovery.Result result = LogRecovery.recover(file.getPath(), true);
+		assertFalse(result.complete);
+		assertCompleteLines(readAll(new FileInputStream(file)), 99);
+		assertTrue(LogRecovery.recover(file.getPath(), false).complete);
+	}
+	
+	@Test
+	public void testComplete() throws IOException{
+		File file = writeXIO(".xio.gz", true, 10);
+		OutputStream out = new ParallelGZIPOutputStream(new FileOutputStream(file, true), 6, 1);
+		out.write("</venice>\n".getBytes());
+		out.close();
+		long size = file.length();
+		assertTrue(LogRecovery.recover(file.getPath(), true).complete);
+		assertEquals(size, file.length());
+	}
+	
+	@Test
+	public void testBinary() throws IOException{
+		File file = File.createTempFile("testRecovery", ".vbin.gz");
+		file.deleteOnExit();
+		ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(new FileOutputStream(file), 6, 1);
+		BinaryLogWriter writer = new BinaryLogWriter(out);
+		writer.writeHeader();
+		for(int i=0; i<1000; i++){
+			writer.writeEvent(new SlotEvent((float) i, "Venice/test", "slot", Float.class, 1000 + i));
+			if(i % 100 == 99) writer.flush();
+		}
+		out.close();
+		cut(file, 5);
+		LogRecovery.recover(file.getPath(), true);
+		
+		BinaryLogReader reader = new BinaryLogReader(new GZIPInputStream(new FileInputStream(file)));
+		reader.readHeader();
+		int n = 0;
+		try{
+			while(true){
+				assertEquals(1000 + n, reader.next());
+				assertEquals((float) n, reader.parseEvent().getValue());
+				n++;
+			}
+		} catch(EOFException e){
+			// end of file
+		}
+		assertEquals(900, n);
+	}
+	
+	@Test
+	public void testManifest() throws IOException{
+		File dir = File.createTempFile("testRecovery", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		String logPath = new File(dir, "log.xio.gz").getPath();
+		File seg1 = writeXIO(".xio.gz", true, 200);
+		File seg2 = writeXIO(".xio.gz", true, 200);
+		cut(seg2, 20);
+		File target1 = new File(LogManifest.getSegmentPath(logPath, 1));
+		File target2 = new File(LogManifest.getSegmentPath(logPath, 2));
+		assertTrue(seg1.renameTo(target1));
+		assertTrue(seg2.renameTo(target2));
+		target1.deleteOnExit();
+		target2.deleteOnExit();
+		LogManifest manifest = new LogManifest(logPath + LogManifest.FILE_EXTENSION);
+		manifest.add(new LogManifest.Segment(target1.getName(), 1000, 1199, 200, 12345));
+		manifest.write();
+		new File(manifest.toString()).deleteOnExit();
+		
+		LogRecovery.recoverManifest(manifest.toString(), true);
+		LogManifest recovered = LogManifest.read(manifest.toString());
+		assertEquals(2, recovered.getSegments().size());
+		LogManifest.Segment s = recovered.getSegments().get(1);
+		assertEquals(target2.getName(), s.getName());
+		assertEquals(1000, s.getFirstTimestamp());
+		assertEquals(1000 + s.getEvents() - 1, s.getLastTimestamp());
+		assertTrue(s.getEvents() >= 100);
+		String content = readAll(new GZIPInputStream(new FileInputStream(target2)));
+		assertEquals(content.length(), s.getBytes());
+		assertCompleteLines(content, 100);
+	}
+}
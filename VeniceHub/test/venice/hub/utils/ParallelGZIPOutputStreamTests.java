@@ -0,0 +1,127 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests the parallel GZIP compression of log files.
+ */
+public class ParallelGZIPOutputStreamTests {
+	
+	private static byte[] createData(int size){
+		byte[] data = new byte[size];
+		Random random = new Random(11);
+		for(int i=0; i<size; i++)
+			data[i] = (byte) ('0' + random.nextInt(10));
+		return data;
+	}
+	
+	private static byte[] gunzip(byte[] compressed) throws IOException{
+		InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buf = new byte[4096];
+		int n;
+		while((n = in.read(buf)) > 0)
+			bytes.write(buf, 0, n);
+		in.close();
+		return bytes.toByteArray();
+	}
+	
+	private static void writeInPieces(OutputStream out, byte[] data) throws IOException{
+		Random random = new Random(5);
+		int pos = 0;
+		while(pos < data.length){
+			int n = Math.min(data.length - pos, random.nextInt(500));
+			if(n == 1) out.write(data[pos]);
+			else out.write(data, pos, n);
+			pos += n;
+		}
+	}
+	
+	@Test
+	public void testRoundTrip() throws IOException{
+		byte[] data = createData(300000);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		OutputStream out = new ParallelGZIPOutputStream(compressed, 6, 4, 10000);
+		writeInPieces(out, data);
+		out.close();
+		assertArrayEquals(data, gunzip(compressed.toByteArray()));
+	}
+	
+	@Test
+	public void testDeflatersEnded() throws IOException{
+		byte[] data = createData(300000);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(compressed, 6, 4, 10000);
+		out.write(data);
+		out.flush();
+		assertTrue(out.getOpenDeflaters() > 0);
+		out.close();
+		assertEquals(0, out.getOpenDeflaters());
+		assertArrayEquals(data, gunzip(compressed.toByteArray()));
+	}
+	
+	@Test
+	public void testFlush() throws IOException{
+		byte[] data = createData(25000);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		OutputStream out = new ParallelGZIPOutputStream(compressed, 1, 2, 10000);
+		out.write(data);
+		out.flush();
+		// everything written so far is a sequence of complete members
+		assertArrayEquals(data, gunzip(compressed.toByteArray()));
+		out.write(data);
+		out.close();
+		assertEquals(2 * data.length, gunzip(compressed.toByteArray()).length);
+	}
+	
+	@Test
+	public void testEmpty() throws IOException{
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		new ParallelGZIPOutputStream(compressed, 6, 2).close();
+		assertEquals(0, compressed.size());
+	}
+	
+	@Test
+	public void testLevels() throws IOException{
+		byte[] data = createData(100000);
+		ByteArrayOutputStream stored = new ByteArrayOutputStream();
+		OutputStream out = new ParallelGZIPOutputStream(stored, 0, 2);
+		out.write(data);
+		out.close();
+		ByteArrayOutputStream best = new ByteArrayOutputStream();
+		out = new ParallelGZIPOutputStream(best, 9, 2);
+		out.write(data);
+		out.close();
+		assertTrue(stored.size() > data.length);
+		assertTrue(best.size() < data.length / 2);
+		assertArrayEquals(data, gunzip(stored.toByteArray()));
+		assertArrayEquals(data, gunzip(best.toByteArray()));
+	}
+	
+	@Test
+	public void testOpen() throws IOException{
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		OutputStream out = ParallelGZIPOutputStream.open(compressed, 9, 1, false);
+		assertTrue(out instanceof GZIPOutputStream);
+		out.write(createData(1000));
+		out.close();
+		assertEquals(1000, gunzip(compressed.toByteArray()).length);
+		assertTrue(ParallelGZIPOutputStream.open(compressed, 9, 3, false) instanceof ParallelGZIPOutputStream);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLevel(){
+		new ParallelGZIPOutputStream(new ByteArrayOutputStream(), 10, 2);
+	}
+}
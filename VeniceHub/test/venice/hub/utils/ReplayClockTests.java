@@ -0,0 +1,147 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Test;
+
+import venice.hub.VeniceHub;
+import venice.lib.parser.SlotEvent;
+
+/**
+ * Tests the replay clocks, and the delaying of the TTEQueue with them.
+ */
+public class ReplayClockTests {
+	
+	@After
+	public void after(){
+		VeniceHub.setReplayClock(new RealTimeReplayClock());
+		VeniceHub.setReplayDelay(0);
+		TTEQueue.getInstance().reset();
+	}
+	
+	private static SlotEvent event(long time){
+		return new SlotEvent(1, "Venice/test", "a", Integer.class, time);
+	}
+	
+	@Test
+	public void testRealTime() throws InterruptedException{
+		RealTimeReplayClock clock = new RealTimeReplayClock();
+		assertEquals(System.currentTimeMillis(), clock.now(), 5);
+		assertEquals(1, clock.getSpeed(), 0);
+		assertEquals(100, clock.toWaitingTime(100));
+		
+		clock.setSpeed(4);
+		long start = clock.now();
+		Thread.sleep(100);
+		long elapsed = clock.now() - start;
+		assertTrue(elapsed >= 400 && elapsed < 600);
+		assertEquals(100, clock.toWaitingTime(400));
+		assertEquals(-400, clock.toWaitingTime(-400));
+		
+		// no jump when the speed changes
+		long before = clock.now();
+		clock.setSpeed(0.25);
+		assertEquals(before, clock.now(), 5);
+		assertEquals(400, clock.toWaitingTime(100));
+		
+		try{
+			clock.setSpeed(32);
+			fail();
+		}catch(IllegalArgumentException e){}
+		try{
+			new RealTimeReplayClock(0.1);
+			fail();
+		}catch(IllegalArgumentException e){}
+	}
+	
+	@Test
+	public void testSlew() throws InterruptedException{
+		RealTimeReplayClock clock = new RealTimeReplayClock();
+		clock.slew(100, 1000);
+		// no jump, the clock falls behind over the duration
+		assertEquals(System.currentTimeMillis(), clock.now(), 5);
+		assertEquals(100, clock.toWaitingTime(90), 2);
+		Thread.sleep(500);
+		assertEquals(50, System.currentTimeMillis() - clock.now(), 20);
+		Thread.sleep(600);
+		assertEquals(100, System.currentTimeMillis() - clock.now(), 5);
+		assertEquals(100, clock.toWaitingTime(100));
+		
+		// the rest of a slew continues at another speed
+		clock.slew(-100, 1000);
+		clock.setSpeed(2);
+		long start = clock.now();
+		Thread.sleep(600);
+		assertEquals(1300, clock.now() - start, 40);
+		try{
+			clock.slew(1000, 1000);
+			fail();
+		}catch(IllegalArgumentException e){}
+	}
+	
+	@Test
+	public void testVirtual(){
+		VirtualReplayClock clock = new VirtualReplayClock(1000);
+		assertEquals(1000, clock.now());
+		clock.advance(50);
+		assertEquals(1050, clock.now());
+		clock.advanceTo(1020); // never back
+		assertEquals(1050, clock.now());
+		clock.advanceTo(2000);
+		assertEquals(2000, clock.now());
+		assertEquals(VirtualReplayClock.POLL_INTERVAL, clock.toWaitingTime(5000));
+		assertEquals(0, clock.toWaitingTime(0));
+		assertEquals(0, clock.getSpeed(), 0);
+	}
+	
+	@Test
+	public void testQueueWithVirtualClock() throws InterruptedException{
+		VeniceHub.setReplayClock(new VirtualReplayClock(1000));
+		VeniceHub.setReplayDelay(0);
+		TTEQueue queue = TTEQueue.getInstance();
+		queue.put(event(1000));
+		queue.put(event(1010));
+		queue.put(event(60000));
+		
+		// only what is due, however long is waited
+		assertEquals(1000, queue.poll().getTime());
+		assertNull(queue.poll(20, java.util.concurrent.TimeUnit.MILLISECONDS));
+		((VirtualReplayClock) VeniceHub.getReplayClock()).advance(10);
+		assertEquals(1010, queue.poll(20, java.util.concurrent.TimeUnit.MILLISECONDS).getTime());
+		
+		// stepping to the next event, the minute passes at once
+		long start = System.currentTimeMillis();
+		VeniceHub.step(0);
+		assertEquals(60000, queue.take().getTime());
+		assertTrue(System.currentTimeMillis() - start < 1000);
+	}
+	
+	@Test
+	public void testSwitchingClocks(){
+		VeniceHub.setReplayDelay(VeniceHub.getReplayClock().now() - 5000); // replaying at 5000
+		// the position does not change with the clock
+		VeniceHub.step(100);
+		assertEquals(0, VeniceHub.getReplayClock().getSpeed(), 0);
+		assertEquals(5100, VeniceHub.getReplayClock().now() - VeniceHub.getReplayDelay(), 5);
+		long start = System.currentTimeMillis();
+		VeniceHub.setReplaySpeed(2);
+		assertEquals(2, VeniceHub.getReplayClock().getSpeed(), 0);
+		// no jump, only the time since the switch at double speed
+		long elapsed = System.currentTimeMillis() - start;
+		assertEquals(5100 + elapsed, VeniceHub.getReplayClock().now() - VeniceHub.getReplayDelay(), elapsed + 5);
+	}
+	
+	@Test
+	public void testQueueWithSpeed() throws InterruptedException{
+		TTEQueue queue = TTEQueue.getInstance();
+		long start = System.currentTimeMillis();
+		VeniceHub.setReplayClock(new RealTimeReplayClock(16));
+		VeniceHub.setReplayDelay(VeniceHub.getReplayClock().now() - 1000); // replaying at 1000
+		queue.put(event(2600));
+		assertEquals(2600, queue.take().getTime());
+		long elapsed = System.currentTimeMillis() - start;
+		// 1600 ms of the replay take 100 ms
+		assertTrue("took "+elapsed+" ms", elapsed >= 90 && elapsed < 400);
+	}
+}
@@ -0,0 +1,160 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import venice.hub.VeniceHub;
+import venice.lib.ScopeDictionary;
+import venice.lib.parser.SlotEvent;
+import venice.lib.parser.XIOParser;
+import venice.lib.parser.XIORegExParser;
+
+/**
+ * Tests the selection of slots by scope, for replaying and for the
+ * segments of rotated logs.
+ */
+public class ScopeFilterTests {
+	
+	private static final String[] SCOPES = {"Kinect/face/mouth", "Kinect/face/eyes", "Kinect/skeleton/leftHand", "OpenDS/Car/speed"};
+	
+	@After
+	public void after(){
+		// remove the filter from the configuration
+		Configuration.getInstance().parseArguments(new String[0]);
+	}
+	
+	@Test
+	public void testGlobs(){
+		ScopeFilter filter = new ScopeFilter();
+		assertTrue(filter.acceptsAll());
+		assertTrue(filter.accepts("anything"));
+		
+		filter.include("Kinect/face/*");
+		assertTrue(filter.accepts("Kinect/face/mouth"));
+		assertFalse(filter.accepts("Kinect/face/mouth/upper"));
+		assertFalse(filter.accepts("Kinect/skeleton/leftHand"));
+		
+		filter = new ScopeFilter(Arrays.asList("Kinect/**"), Arrays.asList("*/face/eye?"));
+		assertTrue(filter.accepts("Kinect/face/mouth"));
+		assertTrue(filter.accepts("Kinect/skeleton/leftHand"));
+		assertFalse(filter.accepts("Kinect/face/eyes"));
+		assertFalse(filter.accepts("OpenDS/Car/speed"));
+		
+		filter = new ScopeFilter(Arrays.asList("regex:.*(left|right)Hand", "OpenDS/Car/speed"), Arrays.<String>asList());
+		assertTrue(filter.accepts("Kinect/skeleton/leftHand"));
+		assertTrue(filter.accepts("OpenDS/Car/speed"));
+		assertFalse(filter.accepts("OpenDS/Car.speed")); // glob characters are literal
+		assertTrue(filter.accepts(ScopeDictionary.getId("Kinect/skeleton/leftHand", Float.class)));
+		assertFalse(filter.accepts(ScopeDictionary.getId("Kinect/face/mouth", Float.class)));
+		assertTrue(filter.acceptsAny(Arrays.asList("a/b", "OpenDS/Car/speed")));
+		assertFalse(filter.acceptsAny(Arrays.asList("a/b")));
+	}
+	
+	@Test
+	public void testFindSensorName(){
+		assertEquals("Kinect/face/mouth", XIOParser.findSensorName("<sffloat value=\"1.0\" timestamp=\"12\" sensorName=\"Kinect/face/mouth\"/>"));
+		assertEquals("a", XIOParser.findSensorName("<sfint32 value=\"1\" timestamp=\"12\" sensorname=\"a\"/>"));
+		assertNull(XIOParser.findSensorName("<venice>"));
+	}
+	
+	private static String createLog(int events){
+		StringBuilder sb = new StringBuilder();
+		for(int h=0; h<Configuration.getInstance().getHeaderLines(); h++) sb.append("Header\n");
+		sb.append("<venice>\n");
+		for(int i=0; i<events; i++)
+			sb.append("<sfint32 value=\""+i+"\" timestamp=\""+(1000+i)+"\" sensorName=\""+SCOPES[i % SCOPES.length]+"\"/>\n");
+		sb.append("</venice>\n");
+		return sb.toString();
+	}
+	
+	private static File writeFile(File file, String data) throws IOException{
+		file.deleteOnExit();
+		try(OutputStream out = new FileOutputStream(file)){
+			out.write(data.getBytes());
+		}
+		return file;
+	}
+	
+	private static void assertReplay(TTEBufferedReader tbr, int events, int... values) throws InterruptedException{
+		Thread tbrThread = new Thread(tbr, "Test_TBR");
+		tbrThread.start();
+		SynchronousQueue<SlotEvent> syncQ = tbr.getSyncQ();
+		for(int value : values){
+			SlotEvent se = syncQ.poll(5, TimeUnit.SECONDS);
+			assertNotNull(se);
+			assertEquals(value, se.getValue());
+		}
+		assertNull(syncQ.poll(200, TimeUnit.MILLISECONDS));
+		tbr.stopThread();
+		tbrThread.join(5000);
+	}
+	
+	@Test
+	public void testReplayXIO() throws IOException, InterruptedException{
+		File file = writeFile(File.createTempFile("testScopeFilter", ".xio"), createLog(12));
+		Configuration.getInstance().parseArguments(new String[]{"--include", "Kinect/face/*", "--exclude", "**/eyes"});
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		assertReplay(new TTEBufferedReader(file.getPath()), 12, 0, 4, 8);
+	}
+	
+	@Test
+	public void testReplayBinary() throws IOException, InterruptedException{
+		File xio = writeFile(File.createTempFile("testScopeFilter", ".xio"), createLog(12));
+		File binary = File.createTempFile("testScopeFilter", ".vbin");
+		binary.deleteOnExit();
+		LogConverter.convert(xio.getPath(), binary.getPath());
+		Configuration.getInstance().parseArguments(new String[]{"--include", "**/leftHand", "--include", "OpenDS/**"});
+		assertReplay(new BinaryTTEBufferedReader(binary.getPath()), 12, 2, 3, 6, 7, 10, 11);
+	}
+	
+	private static byte[] readAll(InputStream in) throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buf = new byte[100];
+		int n;
+		while((n = in.read(buf)) != -1)
+			bytes.write(buf, 0, n);
+		in.close();
+		return bytes.toByteArray();
+	}
+	
+	@Test
+	public void testSegments() throws IOException{
+		File dir = File.createTempFile("testScopeFilter", "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		LogManifest manifest = new LogManifest(new File(dir, "log.xio.manifest").getPath());
+		String[][] scopes = {{"Kinect/face/mouth"}, {"OpenDS/Car/speed", "Kinect/face/eyes"}, null};
+		for(int i=1; i<=3; i++){
+			String name = "log_seg000" + i + ".xio";
+			writeFile(new File(dir, name), "segment " + i + "\n");
+			manifest.add(new LogManifest.Segment(name, i * 100, i * 100 + 99, 1, 10,
+					scopes[i-1] != null ? Arrays.asList(scopes[i-1]) : null));
+		}
+		manifest.write();
+		new File(manifest.toString()).deleteOnExit();
+		
+		// the scopes are kept in the manifest
+		LogManifest read = LogManifest.read(manifest.toString());
+		assertEquals(Arrays.asList(scopes[1]), read.getSegments().get(1).getScopes());
+		assertNull(read.getSegments().get(2).getScopes());
+		
+		// segments without a matching scope are left out, segments with unknown scopes are read
+		ScopeFilter filter = new ScopeFilter(Arrays.asList("OpenDS/**"), Arrays.<String>asList());
+		SegmentedInputStream in = new SegmentedInputStream(read, filter);
+		assertEquals(2, in.getSegmentCount());
+		assertEquals("segment 2\nsegment 3\n", new String(readAll(in)));
+	}
+}
@@ -0,0 +1,56 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import venice.lib.parser.SlotEvent;
+
+/**
+ * Tests the keyframes of the snapshot index.
+ */
+public class SnapshotIndexTests {
+	
+	private static SlotEvent event(String label, Object value, long time){
+		return new SlotEvent(value, "Venice/test", label, value.getClass(), time);
+	}
+	
+	@Test
+	public void testKeyframes(){
+		SnapshotIndex index = new SnapshotIndex(1000);
+		// the order of adding does not matter
+		index.add(event("b", 2, 2500), 0);
+		index.add(event("a", "x", 100), 0);
+		index.add(event("a", "y", 999), 0);
+		index.add(event("b", 1, 1000), 0);
+		index.add(event("c", 3.5, 100), 5000); // with time offset
+		index.finish();
+		
+		// keyframes after intervals with events
+		assertEquals(4, index.size());
+		assertEquals(1000, index.getTime(0));
+		assertEquals(2000, index.getTime(1));
+		assertEquals(3000, index.getTime(2));
+		assertEquals(6000, index.getTime(3));
+		assertEquals(3, index.getScopeCount());
+		
+		assertEquals(-1, index.floor(999));
+		assertEquals(0, index.floor(1000));
+		assertEquals(1, index.floor(2999));
+		assertEquals(3, index.floor(100000));
+		
+		// the state holds the events before the keyframe
+		HashMap<Integer, SlotEvent> state = index.getState(0);
+		assertEquals(1, state.size());
+		assertEquals("y", state.get(event("a", "", 0).getScopeId()).getValue());
+		state = index.getState(1);
+		assertEquals(2, state.size());
+		assertEquals(1, state.get(event("b", 0, 0).getScopeId()).getValue());
+		state = index.getState(3);
+		assertEquals(3, state.size());
+		assertEquals(2, state.get(event("b", 0, 0).getScopeId()).getValue());
+		assertEquals(5100, state.get(event("c", 0.0, 0).getScopeId()).getTime());
+	}
+}
@@ -132,4 +132,31 @@ public class TTEBufferTests {
 		assertEquals( (n-1) * timefactor, tb.getFirstTimestamp());
 		assertEquals( (n-1) * timefactor, tb.getLastTimestamp());
 	}
+	
+	/**
+	 * Tests the estimated memory of the events in the buffer.
+	 */
+	@Test
+	public void testMemory(){
+		TTEBuffer tb = new TTEBuffer();
+		assertEquals(0, tb.getMemory());
+		SlotEvent small = new SlotEvent(1, "", "testslot", Integer.class, 100l);
+		SlotEvent large = new SlotEvent(new String(new char[1000]), "", "testslot", String.class, 200l);
+		assertTrue(TTEBuffer.estimateSize(large) > TTEBuffer.estimateSize(small) + 2000);
+		for(int i=0; i < 10; i++) tb.add(new SlotEvent(i, "", "testslot", Integer.class, i * 100l));
+		tb.add(large);
+		long memory = tb.getMemory();
+		assertEquals(10 * TTEBuffer.estimateSize(small) + TTEBuffer.estimateSize(large), memory);
+		
+		// the large event alone is more than the threshold
+		assertEquals(10, tb.getIndexOfLast(2000));
+		assertEquals(9, tb.getIndexOfLast(TTEBuffer.estimateSize(large) + 2));
+		assertEquals(-1, tb.getIndexOfLast(memory + 1));
+		
+		assertEquals(5, tb.removeUntil(400));
+		assertEquals(memory - 5 * TTEBuffer.estimateSize(small), tb.getMemory());
+		assertEquals(5, tb.getIndexOfLast(2000));
+		tb.clear();
+		assertEquals(0, tb.getMemory());
+	}
 }
@@ -6,6 +6,7 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.junit.BeforeClass;
@@ -14,6 +15,8 @@ import org.junit.Test;
 import venice.hub.VeniceHub;
 import venice.lib.parser.SlotEvent;
 import venice.lib.parser.XIODomParser;
+import venice.lib.parser.XIOParser;
+import venice.lib.parser.XIORegExParser;
 
 /**
  * Tests functionality of the TTEBufferedReader.
@@ -105,4 +108,42 @@ public class TTEBufferedReaderTests {
     	// file will be deleted when JVM exits
 		file.deleteOnExit();
 	}
+	
+	/**
+	 * Tests a buffer limited by memory instead of the number of events.
+	 */
+	@Test
+	public void testBufferMemory() throws IOException, InterruptedException{
+		int n = 5000;
+		File file = File.createTempFile("testTBR", ".xio");
+		file.deleteOnExit();
+		try(FileWriter writer = new FileWriter(file)){
+			writer.write("<?xml version=\"1.0\"?>\n");
+			writer.write("<headerline/>\n");
+			for(int i = 0; i < n; i++)
+				writer.write("<sfint32 value=\""+i+"\" timestamp=\""+i+"\" sensorname=\"testslot\"/>\n");
+		}
+		Configuration.getInstance().parseArguments(new String[]{"--bufferMemory", "64k", "--silent"});
+		VeniceHub.setPreferredXIOParser(new XIORegExParser());
+		TTEBufferedReader tbr = new TTEBufferedReader(file.getPath());
+		Thread tbrThread = new Thread(tbr, "Test_TBR");
+		try{
+			tbrThread.start();
+			SynchronousQueue<SlotEvent> syncQ = tbr.getSyncQ();
+			for(int i = 0; i < n; i++){
+				SlotEvent se = syncQ.poll(5, TimeUnit.SECONDS);
+				assertNotNull(se);
+				assertEquals(i, se.getValue());
+				// the buffer never holds the whole file
+				assertTrue(tbr.getTTEBuffer().size() < n);
+				assertTrue(tbr.getBufferMemory() <= 64 * 1024 + TTEBuffer.estimateSize(se));
+				VeniceHub.setLastPushedTimestamp(se.getTime()); // lets the buffer shift
+			}
+		}finally{
+			tbr.stopThread();
+			tbrThread.join(5000);
+			VeniceHub.setLastPushedTimestamp(XIOParser.INVALID_TIMESTAMP);
+			Configuration.getInstance().parseArguments(new String[0]);
+		}
+	}
 }
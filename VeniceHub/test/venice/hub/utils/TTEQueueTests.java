@@ -2,6 +2,9 @@ package venice.hub.utils;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.junit.Test;
 
 import venice.lib.parser.SlotEvent;
@@ -66,4 +69,113 @@ public class TTEQueueTests {
 		assertEquals(seTimed.getType(), sePoll.getType());
 		assertEquals(seTimed.getTime(), sePoll.getTime());
 	}
+	
+	@Test
+	public void testQueueMemory() throws InterruptedException{
+		TTEQueue queue = TTEQueue.getInstance();
+		queue.reset();
+		Configuration.getInstance().parseArguments(new String[]{"--queueMemory", "1k"});
+		try{
+			assertEquals(1024, Configuration.getInstance().getQueueMemory());
+			SlotEvent se = new SlotEvent("Teststring", "", "Testslot", String.class, System.currentTimeMillis());
+			long size = TTEBuffer.estimateSize(se);
+			int n = 0;
+			while(!queue.isFull()){
+				queue.put(se);
+				n++;
+			}
+			assertEquals((1024 + size - 1) / size, n);
+			assertEquals(n * size, queue.getMemory());
+			queue.poll();
+			assertFalse(queue.isFull());
+			assertEquals((n - 1) * size, queue.getMemory());
+			queue.removeUntil(Long.MAX_VALUE);
+			assertEquals(0, queue.getMemory());
+			assertTrue(queue.isEmpty());
+		}finally{
+			Configuration.getInstance().parseArguments(new String[0]);
+			queue.reset();
+		}
+	}
+	
+	@Test
+	public void testFrame() throws InterruptedException{
+		TTEQueue queue = TTEQueue.getInstance();
+		queue.reset();
+		long time = System.currentTimeMillis() - 1000;
+		List<SlotEvent> events = new ArrayList<SlotEvent>();
+		long size = 0;
+		for(int i=0; i<10; i++){
+			SlotEvent se = new SlotEvent(i, "", "Slot"+i, Integer.class, time);
+			events.add(se);
+			size += TTEBuffer.estimateSize(se);
+		}
+		try{
+			queue.putFrame(events);
+			queue.put(new SlotEvent("later", "", "Slot", String.class, time + 1));
+			// the frame is one item, but its events are counted
+			assertEquals(11, queue.size());
+			assertEquals(size + TTEBuffer.estimateSize(new SlotEvent("later", "", "Slot", String.class, time + 1)), queue.getMemory());
+			
+			TTE tte = queue.poll();
+			assertTrue(tte instanceof TTEFrame);
+			TTEFrame frame = (TTEFrame) tte;
+			assertEquals(time, frame.getTime());
+			assertEquals(events, frame.getEvents());
+			assertEquals(1, queue.size());
+			assertFalse(queue.poll() instanceof TTEFrame);
+			assertTrue(queue.isEmpty());
+			assertEquals(0, queue.size());
+			assertEquals(0, queue.getMemory());
+			
+			// a single event is not a frame
+			queue.putFrame(events.subList(0, 1));
+			assertFalse(queue.peek() instanceof TTEFrame);
+			// frames of the same time are removed together
+			queue.putFrame(events);
+			queue.putFrame(events);
+			queue.removeUntil(time + 1);
+			assertTrue(queue.isEmpty());
+			assertEquals(0, queue.size());
+			assertEquals(0, queue.getMemory());
+		}finally{
+			queue.reset();
+		}
+	}
+
+	@Test
+	public void testResetWhileTaking() throws InterruptedException{
+		final TTEQueue queue = TTEQueue.getInstance();
+		queue.reset();
+		// a writer taking everything that is due
+		Thread writer = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				try{
+					while(true) queue.take();
+				}catch(InterruptedException e){}
+			}
+		}, "VH_TestWriter");
+		writer.start();
+		try{
+			SlotEvent se = new SlotEvent(1, "", "Slot", Integer.class, 0);
+			for(int i=0; i<100000; i++){
+				queue.put(se);
+				if(i % 3 == 0) queue.reset();
+				assertTrue(queue.size() >= 0);
+				assertTrue(queue.getMemory() >= 0);
+			}
+		}finally{
+			writer.interrupt();
+			writer.join();
+		}
+		// the counts are right after the race
+		queue.reset();
+		SlotEvent later = new SlotEvent(1, "", "Slot", Integer.class, Long.MAX_VALUE / 2);
+		queue.put(later);
+		assertEquals(1, queue.size());
+		assertEquals(TTEBuffer.estimateSize(later), queue.getMemory());
+		queue.reset();
+		assertEquals(0, queue.size());
+	}
 }
@@ -0,0 +1,70 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import venice.lib.parser.SlotEvent;
+
+import static venice.lib.parser.XIOParser.INVALID_TIMESTAMP;
+
+public class TimeShiftBufferTests {
+	
+	private static SlotEvent event(int i){
+		return new SlotEvent(i, "Venice", "a", Integer.class, 1000 + 10 * i);
+	}
+	
+	@Test
+	public void testRing(){
+		long size = TTEBuffer.estimateSize(event(0));
+		TimeShiftBuffer buffer = new TimeShiftBuffer(100 * size);
+		assertEquals(INVALID_TIMESTAMP, buffer.getFirstTimestamp());
+		assertEquals(INVALID_TIMESTAMP, buffer.getOldestTimestamp());
+		assertEquals(0, buffer.search(5000));
+		
+		for(int i=0; i<3000; i++) buffer.add(event(i));
+		// only the last 100 are kept, the sequence numbers go on
+		assertEquals(100, buffer.size());
+		assertEquals(100 * size, buffer.getMemory());
+		assertEquals(2900, buffer.getStart());
+		assertEquals(3000, buffer.getEnd());
+		assertEquals(1000, buffer.getFirstTimestamp());
+		assertEquals(1000 + 10 * 2900, buffer.getOldestTimestamp());
+		assertEquals(1000 + 10 * 2999, buffer.getLastTimestamp());
+		assertNull(buffer.get(2899));
+		assertNull(buffer.get(3000));
+		assertEquals(2950, buffer.get(2950).getValue());
+		
+		assertEquals(2950, buffer.search(1000 + 10 * 2950));
+		assertEquals(2951, buffer.search(1000 + 10 * 2950 + 1));
+		assertEquals(2900, buffer.search(0));
+		assertEquals(3000, buffer.search(Long.MAX_VALUE));
+	}
+	
+	@Test
+	public void testAwait() throws InterruptedException{
+		final TimeShiftBuffer buffer = new TimeShiftBuffer(1 << 20);
+		assertFalse(buffer.await(0, 1));
+		Thread recorder = new Thread(){
+			@Override
+			public void run(){
+				try { Thread.sleep(50); } catch (InterruptedException e) {}
+				buffer.add(event(0));
+			}
+		};
+		recorder.start();
+		assertTrue(buffer.await(0, 5000));
+		assertEquals(0, buffer.get(0).getValue());
+		recorder.join();
+	}
+	
+	@Test
+	public void testMaxAge(){
+		TimeShiftBuffer buffer = new TimeShiftBuffer(1 << 20, 100);
+		for(int i=0; i<100; i++) buffer.add(event(i));
+		// events 10 ms apart, the last 100 ms are kept
+		assertEquals(11, buffer.size());
+		assertEquals(1000 + 10 * 89, buffer.getOldestTimestamp());
+		assertEquals(1000, buffer.getFirstTimestamp());
+	}
+}
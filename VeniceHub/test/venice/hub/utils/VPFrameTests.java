@@ -0,0 +1,79 @@
+package venice.hub.utils;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Tests the frames of the binary VenicePort protocol.
+ */
+public class VPFrameTests {
+
+	@Test
+	public void testChecksum(){
+		// check value of CRC32C
+		byte[] b = "123456789".getBytes();
+		assertEquals(0xE3069283, VPFrame.crc32c(b, 0, b.length));
+		assertEquals(0, VPFrame.crc32c(b, 3, 0));
+	}
+
+	@Test
+	public void testEncode() throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream values = new DataOutputStream(bytes);
+		values.writeInt(42);
+		VPFrame.putString(values, "Gr\u00fc\u00dfe");
+		byte[] frame = VPFrame.encode(1234567L, bytes.toByteArray());
+
+		assertEquals('V', frame[0]);
+		assertEquals('P', frame[1]);
+		assertEquals(VPFrame.VERSION, frame[2]);
+		int length = VPFrame.getLength(frame, 0);
+		assertEquals(frame.length - VPFrame.HEADER_SIZE, length);
+		assertEquals(VPFrame.crc32c(frame, VPFrame.HEADER_SIZE, length), VPFrame.getChecksum(frame, 0));
+
+		ByteBuffer payload = ByteBuffer.wrap(frame, VPFrame.HEADER_SIZE, length);
+		assertEquals(1234567L, payload.getLong());
+		assertEquals(42, payload.getInt());
+		assertEquals("Gr\u00fc\u00dfe", VPFrame.getString(payload));
+		assertFalse(payload.hasRemaining());
+
+		// wrong version, too short for the sender timestamp
+		frame[2] = 1;
+		assertEquals(-1, VPFrame.getLength(frame, 0));
+		byte[] empty = VPFrame.encode(0, new byte[0]);
+		assertEquals(VPFrame.MIN_LENGTH, VPFrame.getLength(empty, 0));
+		empty[6] = 4;
+		assertEquals(-1, VPFrame.getLength(empty, 0));
+	}
+
+	@Test
+	public void testLongString() throws IOException{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream values = new DataOutputStream(bytes);
+		char[] c = new char[VPFrame.MAX_STRING];
+		Arrays.fill(c, 'a');
+		String longest = new String(c);
+		VPFrame.putString(values, longest);
+		VPFrame.putString(values, "b");
+		byte[] frame = VPFrame.encode(0, bytes.toByteArray());
+		ByteBuffer payload = ByteBuffer.wrap(frame, VPFrame.HEADER_SIZE, VPFrame.getLength(frame, 0));
+		payload.getLong();
+		assertEquals(longest, VPFrame.getString(payload));
+		assertEquals("b", VPFrame.getString(payload));
+
+		// just over 64 KiB, the length would not fit into 2 bytes
+		bytes.reset();
+		try{
+			VPFrame.putString(values, longest + "aa");
+			fail();
+		}catch(IllegalArgumentException e){}
+		assertEquals(0, bytes.size());
+	}
+}
@@ -33,6 +33,7 @@ public class AbstractSlot {
 	protected String label; // name of the slot
 	protected String namespace; // scope (or namespace) of the slot
 	protected Class<?> type; // type of the data the sensor will produce
+	protected int scopeId = ScopeDictionary.NO_ID; // cached id of the scope, see ScopeDictionary
 	
 	/**
 	 * Constructs a nameless slot without type.
@@ -98,12 +99,70 @@ public class AbstractSlot {
 	 * be <code>MyNamespace/SlotA</code>.
 	 */
 	public String getScope(){
+		ScopeDictionary.Entry e = cachedEntry();
+		if(e != null)
+			return e.getScope();
 		if(namespace != null && ! namespace.isEmpty())
 			return namespace + "/" + label;
 		else
 			return label;
 	}
 	
+	/**
+	 * Returns the id of the scope of this slot in the {@link ScopeDictionary}.
+	 * The scope will be added to the dictionary, if it is not known yet.
+	 * <p>
+	 * The id is cached, so that repeated calls are cheap as long as label,
+	 * namespace and type of the slot are not changed.
+	 * 
+	 * @return the id of the scope
+	 */
+	public int getScopeId(){
+		if(cachedEntry() != null)
+			return scopeId;
+		scopeId = ScopeDictionary.getId(namespace, label, type);
+		// use the strings of the dictionary from now on, so that
+		// the cached id can be validated by reference
+		ScopeDictionary.Entry e = ScopeDictionary.get(scopeId);
+		if(e.getLabel().equals(label))
+			label = e.getLabel();
+		if(namespace != null && e.getNamespace().equals(namespace))
+			namespace = e.getNamespace();
+		return scopeId;
+	}
+	
+	/**
+	 * Sets label, namespace and type of this slot from an entry
+	 * of the {@link ScopeDictionary}.
+	 * 
+	 * @param id the id of the scope
+	 * @throws IllegalArgumentException if there is no scope with this id
+	 */
+	public void setScopeId(int id){
+		ScopeDictionary.Entry e = ScopeDictionary.get(id);
+		if(e == null)
+			throw new IllegalArgumentException("unknown scope id: " + id);
+		this.scopeId = id;
+		this.label = e.getLabel();
+		this.namespace = e.getNamespace();
+		this.type = e.getType();
+	}
+	
+	/**
+	 * Returns the dictionary entry for the cached scope id, if it still
+	 * matches label, namespace and type of this slot. Subclasses may set
+	 * the fields directly, so the check is done on every call (by reference).
+	 */
+	private ScopeDictionary.Entry cachedEntry(){
+		ScopeDictionary.Entry e = ScopeDictionary.get(scopeId);
+		if(e == null || e.getLabel() != label || e.getType() != type)
+			return null;
+		if(e.getNamespace() != namespace &&
+		   !(e.getNamespace().isEmpty() && (namespace == null || namespace.isEmpty())))
+			return null;
+		return e;
+	}
+	
 	/**
 	 * Returns the type of the sensor.
 	 * 
@@ -0,0 +1,273 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.lib;
+
+import java.nio.charset.Charset;
+
+/**
+ * A global dictionary that maps scopes to small integer ids.
+ * <p>
+ * A recording usually contains only a few dozen distinct scopes, but
+ * millions of events. Instead of splitting and concatenating the scope
+ * string of every event again and again, the scope is looked up once in
+ * this dictionary, and from then on the event only carries the id.
+ * For every id the dictionary caches the scope, the label, the namespace,
+ * the data type and the UTF-8 bytes of the scope.
+ * <p>
+ * A scope with the same name, but a different data type, gets its own id.
+ * <p>
+ * Ids are never removed or reused while the virtual machine is running.
+ * Looking up an id is lock-free, only adding a new scope is synchronized.
+ * 
+ * @see AbstractSlot#getScopeId()
+ */
+public class ScopeDictionary {
+	
+	/**
+	 * Marks a slot that is not (yet) registered in the dictionary.
+	 */
+	public final static int NO_ID = -1;
+	
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+	
+	private static volatile Entry[] table = new Entry[64]; // open addressing hash table
+	private static volatile Entry[] entries = new Entry[64]; // entries by id
+	private static int size = 0;
+	
+	/**
+	 * Holds the cached information about one scope.
+	 */
+	public static class Entry {
+		private final int id;
+		private final int hash;
+		private final String scope;
+		private final String label;
+		private final String namespace;
+		private final Class<?> type;
+		private final byte[] scopeBytes;
+		
+		private Entry(int id, int hash, String scope, Class<?> type){
+			this.id = id;
+			this.hash = hash;
+			this.scope = scope;
+			this.type = type;
+			int p = scope.lastIndexOf('/');
+			this.label = scope.substring(p+1);
+			this.namespace = p >= 0 ? scope.substring(0, p) : "";
+			this.scopeBytes = scope.getBytes(UTF8);
+		}
+		
+		/**
+		 * @return the id of this scope
+		 */
+		public int getId(){
+			return id;
+		}
+		
+		/**
+		 * @return the complete scope, e.g. <code>Venice/test/slotA</code>
+		 */
+		public String getScope(){
+			return scope;
+		}
+		
+		/**
+		 * @return the label of the slot, e.g. <code>slotA</code>
+		 */
+		public String getLabel(){
+			return label;
+		}
+		
+		/**
+		 * @return the namespace of the slot, e.g. <code>Venice/test</code>
+		 */
+		public String getNamespace(){
+			return namespace;
+		}
+		
+		/**
+		 * @return the data type of the slot (may be <code>null</code>)
+		 */
+		public Class<?> getType(){
+			return type;
+		}
+		
+		/**
+		 * Returns the UTF-8 encoded scope. The returned array is shared and
+		 * must not be modified.
+		 * 
+		 * @return the scope as UTF-8 bytes
+		 */
+		public byte[] getScopeBytes(){
+			return scopeBytes;
+		}
+		
+		@Override
+		public String toString(){
+			return id + ": " + scope + " (" + (type != null ? type.getName() : "unknown type") + ")";
+		}
+	}
+	
+	/**
+	 * Private constructor. This class can not be instantiated.
+	 */
+	private ScopeDictionary(){
+		// nothing
+	}
+	
+	/**
+	 * Returns the id for the given scope and type. If the scope is not known
+	 * yet, it will be added to the dictionary.
+	 * 
+	 * @param scope the complete scope (namespace and label, separated by a slash)
+	 * @param type the data type of the slot
+	 * @return the id of the scope
+	 */
+	public static int getId(String scope, Class<?> type){
+		return getId(scope, 0, scope.length(), type);
+	}
+	
+	/**
+	 * Returns the id for the given namespace, label and type. If the scope
+	 * is not known yet, it will be added to the dictionary.
+	 * 
+	 * @param namespace the namespace of the slot (may be empty or <code>null</code>)
+	 * @param label the label of the slot
+	 * @param type the data type of the slot
+	 * @return the id of the scope
+	 */
+	public static int getId(String namespace, String label, Class<?> type){
+		if(label == null) label = "";
+		if(namespace != null && ! namespace.isEmpty())
+			return getId(namespace + "/" + label, type);
+		else
+			return getId(label, type);
+	}
+	
+	/**
+	 * Returns the id for a scope that is part of a larger string, for
+	 * example the sensor name inside of a XIO line. No substring will be
+	 * created, unless the scope is new to the dictionary.
+	 * 
+	 * @param s the string containing the scope
+	 * @param start index of the first character of the scope
+	 * @param end index after the last character of the scope
+	 * @param type the data type of the slot
+	 * @return the id of the scope
+	 */
+	public static int getId(String s, int start, int end, Class<?> type){
+		int hash = hash(s, start, end, type);
+		Entry e = find(table, s, start, end, type, hash);
+		if(e != null) return e.id;
+		synchronized(ScopeDictionary.class){
+			// look again, maybe another thread has added it in the meantime
+			e = find(table, s, start, end, type, hash);
+			if(e != null) return e.id;
+			e = new Entry(size, hash, s.substring(start, end), type);
+			add(e);
+			return e.id;
+		}
+	}
+	
+	/**
+	 * Returns the entry for the given id.
+	 * 
+	 * @param id the id of the scope
+	 * @return the entry, or <code>null</code> if there is no scope with this id
+	 */
+	public static Entry get(int id){
+		Entry[] es = entries;
+		if(id < 0 || id >= es.length) return null;
+		return es[id];
+	}
+	
+	/**
+	 * Returns the number of scopes in the dictionary.
+	 * 
+	 * @return number of known scopes
+	 */
+	public static int size(){
+		return size;
+	}
+	
+	private static Entry find(Entry[] t, String s, int start, int end, Class<?> type, int hash){
+		int mask = t.length - 1;
+		int len = end - start;
+		for(int i = hash & mask; ; i = (i + 1) & mask){
+			Entry e = t[i];
+			if(e == null) return null;
+			if(e.hash == hash && e.type == type && e.scope.length() == len &&
+			   e.scope.regionMatches(0, s, start, len))
+				return e;
+		}
+	}
+	
+	/**
+	 * Adds a new entry. Must be called while holding the class lock.
+	 * The arrays are replaced instead of modified if they have to grow,
+	 * so readers never see a half-filled table.
+	 */
+	private static void add(Entry e){
+		Entry[] es = entries;
+		if(e.id >= es.length){
+			Entry[] newEntries = new Entry[es.length * 2];
+			System.arraycopy(es, 0, newEntries, 0, es.length);
+			es = newEntries;
+		}
+		es[e.id] = e;
+		entries = es;
+		
+		Entry[] t = table;
+		if((size + 1) * 2 > t.length){
+			// keep the load factor below 0.5
+			Entry[] newTable = new Entry[t.length * 2];
+			for(Entry old : t){
+				if(old != null) insert(newTable, old);
+			}
+			insert(newTable, e);
+			size++;
+			table = newTable;
+		}
+		else{
+			insert(t, e);
+			size++;
+			table = t; // volatile write publishes the new entry
+		}
+	}
+	
+	private static void insert(Entry[] t, Entry e){
+		int mask = t.length - 1;
+		int i = e.hash & mask;
+		while(t[i] != null) i = (i + 1) & mask;
+		t[i] = e;
+	}
+	
+	private static int hash(String s, int start, int end, Class<?> type){
+		int h = type != null ? type.hashCode() : 0;
+		for(int i = start; i < end; i++){
+			h = 31 * h + s.charAt(i);
+		}
+		return h ^ (h >>> 16);
+	}
+}
@@ -45,6 +45,7 @@ import org.instantreality.InstantIO.Vec3f;
 import venice.lib.AbstractSlot;
 import venice.lib.AbstractSlotListener;
 import venice.lib.Configuration;
+import venice.lib.ScopeDictionary;
 import venice.lib.parser.XIOMaps;
 
 /**
@@ -99,6 +100,7 @@ public class IIONamespaceBuilder{
 
 	private static HashMap<String, InSlot > inSlotMap  = new HashMap<String, InSlot >();
 	private static HashMap<String, OutSlot> outSlotMap = new HashMap<String, OutSlot>();
+	private static OutSlot[] outSlotsById = new OutSlot[0]; // cache for write by scope id
 	
 	private static AbstractSlotListener masterInSlotListener;
 	
@@ -516,6 +518,38 @@ public class IIONamespaceBuilder{
 		return true;
 	}
 	
+	/**
+	 * Writes the value to the outslot for the given scope id.
+	 * Works like {@link #write(String, Object, String)}, but the outslot is
+	 * cached by the id of the scope, so after the first call no labels have
+	 * to be concatenated and no map lookup is needed.
+	 * 
+	 * @param scopeId id of the scope in the {@link ScopeDictionary}
+	 * @param value the value to be written
+	 * @return <code>true</code> if the value was written, otherwise <code>false</code>
+	 */
+	public static boolean write(int scopeId, Object value){
+		OutSlot[] slots = outSlotsById;
+		if(scopeId >= 0 && scopeId < slots.length && slots[scopeId] != null){
+			slots[scopeId].push(value);
+			return true;
+		}
+		ScopeDictionary.Entry entry = ScopeDictionary.get(scopeId);
+		if(entry == null) return false;
+		if(!write(entry.getLabel(), value, entry.getNamespace())) return false;
+		OutSlot outSlot = outSlotMap.get(entry.getScope());
+		if(outSlot != null){
+			if(scopeId >= slots.length){
+				OutSlot[] newSlots = new OutSlot[Math.max(scopeId + 1, slots.length * 2)];
+				System.arraycopy(slots, 0, newSlots, 0, slots.length);
+				slots = newSlots;
+			}
+			slots[scopeId] = outSlot;
+			outSlotsById = slots;
+		}
+		return true;
+	}
+	
 	/**
 	 * Concatenates labels of a namespace and a slot, using the format
 	 * <code>namespace/label</code>.
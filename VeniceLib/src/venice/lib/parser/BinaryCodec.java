@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2015 Dialogue Systems Group, University of Bielefeld
+ * All rights reserved.
+ *
+ * Permission is hereby granted, free  of charge, to any person obtaining
+ * a  copy  of this  software  and  associated  documentation files  (the
+ * "Software"), to  deal in  the Software without  restriction, including
+ * without limitation  the rights to  use, copy, modify,  merge, publish,
+ * distribute,  sublicense, and/or sell  copies of  the Software,  and to
+ * permit persons to whom the Software  is furnished to do so, subject to
+ * the following conditions:
+ *
+ * The  above  copyright  notice  and  this permission  notice  shall  be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE  SOFTWARE IS  PROVIDED  "AS  IS", WITHOUT  WARRANTY  OF ANY  KIND,
+ * EXPRESS OR  IMPLIED, INCLUDING  BUT NOT LIMITED  TO THE  WARRANTIES OF
+ * MERCHANTABILITY,    FITNESS    FOR    A   PARTICULAR    PURPOSE    AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE,  ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package venice.lib.parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.instantreality.InstantIO.Rotation;
+import org.instantreality.InstantIO.Vec2f;
+import org.instantreality.InstantIO.Vec3f;
+
+/**
+ * Provides methods for encoding the values of events into a compact binary
+ * form and for decoding them again. It is the binary counterpart of the
+ * string conversions in {@link XIOParser}.
+ * <p>
+ * Numbers are stored in their raw binary form, so that no decimal strings
+ * have to be formatted or parsed. Every payload starts with a tag byte:
+ * <ul>
+ * <li><code>TAG_NATIVE</code>: the value is stored in binary form,
+ * depending on its data type</li>
+ * <li><code>TAG_STRING</code>: the value is stored as its XIO string
+ * representation (see {@link XIOParser#value2str(Object)}). This is used for
+ * every data type without a binary encoding, so that no information gets
+ * lost.</li>
+ * <li><code>TAG_NULL</code>: the value is <code>null</code></li>
+ * </ul>
+ * Integers used for lengths and counts are stored as unsigned varints
+ * (7 bits per byte, least significant group first).
+ */
+public class BinaryCodec {
+	
+	public final static int TAG_NULL = 0;
+	public final static int TAG_NATIVE = 1;
+	public final static int TAG_STRING = 2;
+	
+	private final static Charset UTF8 = Charset.forName("UTF-8");
+	
+	/**
+	 * Private constructor. This class can not be instantiated.
+	 */
+	private BinaryCodec(){
+		// nothing
+	}
+	
+	/**
+	 * Writes the value of the event, using the type of the event to choose
+	 * the encoding.
+	 * 
+	 * @param out the target
+	 * @param type the data type of the slot
+	 * @param value the value to be written
+	 * @throws IOException if writing fails
+	 */
+	public static void writeValue(DataOutput out, Class<?> type, Object value) throws IOException{
+		if(value == null){
+			out.writeByte(TAG_NULL);
+			return;
+		}
+		float[] floats;
+		if(type == Float.class && value instanceof Float){
+			out.writeByte(TAG_NATIVE);
+			out.writeFloat((Float) value);
+		}
+		else if(type == Double.class && value instanceof Double){
+			out.writeByte(TAG_NATIVE);
+			out.writeDouble((Double) value);
+		}
+		else if(type == Integer.class && value instanceof Integer){
+			out.writeByte(TAG_NATIVE);
+			out.writeInt((Integer) value);
+		}
+		else if(type == Long.class && value instanceof Long){
+			out.writeByte(TAG_NATIVE);
+			out.writeLong((Long) value);
+		}
+		else if(type == Boolean.class && value instanceof Boolean){
+			out.writeByte(TAG_NATIVE);
+			out.writeBoolean((Boolean) value);
+		}
+		else if(type == String.class && value instanceof String){
+			out.writeByte(TAG_NATIVE);
+			writeString(out, (String) value);
+		}
+		else if(type == Float[].class && value instanceof Float[] && hasNoNull((Object[]) value)){
+			Float[] a = (Float[]) value;
+			out.writeByte(TAG_NATIVE);
+			writeVarInt(out, a.length);
+			for(Float f : a) out.writeFloat(f);
+		}
+		else if(type == String[].class && value instanceof String[] && hasNoNull((Object[]) value)){
+			String[] a = (String[]) value;
+			out.writeByte(TAG_NATIVE);
+			writeVarInt(out, a.length);
+			for(String s : a) writeString(out, s);
+		}
+		else if((floats = toFloats(type, value)) != null){
+			// InstantIO vectors and rotations (and arrays of them)
+			out.writeByte(TAG_NATIVE);
+			if(type.isArray()) writeVarInt(out, ((Object[]) value).length);
+			for(float f : floats) out.writeFloat(f);
+		}
+		else{
+			out.writeByte(TAG_STRING);
+			writeString(out, XIOParser.value2str(value));
+		}
+	}
+	
+	/**
+	 * Reads a value, that was written by <code>writeValue</code>, and sets it
+	 * as the value of the given event. The type of the event has to be set
+	 * before.
+	 * 
+	 * @param in the source
+	 * @param e the event, which will get the value
+	 * @throws IOException if reading fails or the data is malformed
+	 */
+	public static void readValue(DataInput in, SlotEvent e) throws IOException{
+		Class<?> type = e.getType();
+		int tag = in.readUnsignedByte();
+		switch(tag){
+		case TAG_NULL:
+			e.setValue(null);
+			return;
+		case TAG_STRING:
+			XIOParser.setEventValue(e, readString(in), type.getName());
+			return;
+		case TAG_NATIVE:
+			break;
+		default:
+			throw new IOException("unknown value tag: " + tag);
+		}
+		
+		if(type == Float.class) e.setValue(in.readFloat());
+		else if(type == Double.class) e.setValue(in.readDouble());
+		else if(type == Integer.class) e.setValue(in.readInt());
+		else if(type == Long.class) e.setValue(in.readLong());
+		else if(type == Boolean.class) e.setValue(in.readBoolean());
+		else if(type == String.class) e.setValue(readString(in));
+		else if(type == Float[].class){
+			Float[] a = new Float[readVarInt(in)];
+			for(int n=0; n<a.length; n++) a[n] = in.readFloat();
+			e.setValue(a);
+		}
+		else if(type == String[].class){
+			String[] a = new String[readVarInt(in)];
+			for(int n=0; n<a.length; n++) a[n] = readString(in);
+			e.setValue(a);
+		}
+		else if(type == Vec2f.class) e.setValue(new Vec2f(in.readFloat(), in.readFloat()));
+		else if(type == Vec3f.class) e.setValue(new Vec3f(in.readFloat(), in.readFloat(), in.readFloat()));
+		else if(type == Rotation.class) e.setValue(new Rotation(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat()));
+		else if(type == Vec2f[].class){
+			Vec2f[] a = new Vec2f[readVarInt(in)];
+			for(int n=0; n<a.length; n++) a[n] = new Vec2f(in.readFloat(), in.readFloat());
+			e.setValue(a);
+		}
+		else if(type == Vec3f[].class){
+			Vec3f[] a = new Vec3f[readVarInt(in)];
+			for(int n=0; n<a.length; n++) a[n] = new Vec3f(in.readFloat(), in.readFloat(), in.readFloat());
+			e.setValue(a);
+		}
+		else if(type == Rotation[].class){
+			Rotation[] a = new Rotation[readVarInt(in)];
+			for(int n=0; n<a.length; n++) a[n] = new Rotation(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+			e.setValue(a);
+		}
+		else throw new IOException("no binary encoding for " + type.getName());
+	}
+	
+	/**
+	 * Returns the number of float components of a single value of the
+	 * given type, or 0, if the type is not made of floats.
+	 * Arrays are handled by their component type.
+	 * 
+	 * @param type the data type
+	 * @return number of floats per value (or array element)
+	 */
+	public static int floatsPerValue(Class<?> type){
+		if(type == null) return 0;
+		if(type.isArray()) type = type.getComponentType();
+		if(type == Float.class) return 1;
+		if(type == Vec2f.class) return 2;
+		if(type == Vec3f.class) return 3;
+		if(type == Rotation.class) return 4;
+		return 0;
+	}
+	
+	/**
+	 * Extracts the float components of a float, an InstantIO vector or
+	 * rotation (or an array of them). The components of InstantIO types
+	 * are taken from their string representation.
+	 * 
+	 * @param type the data type of the slot
+	 * @param value the value
+	 * @return the components, or <code>null</code> if the value can not be
+	 * represented by floats without loss
+	 */
+	public static float[] toFloats(Class<?> type, Object value){
+		int size = floatsPerValue(type);
+		if(size == 0 || !type.isInstance(value)) return null;
+		Object[] elements = type.isArray() ? (Object[]) value : new Object[]{value};
+		float[] floats = new float[elements.length * size];
+		int i = 0;
+		for(Object element : elements){
+			if(element == null) return null;
+			if(element instanceof Float){
+				floats[i++] = (Float) element;
+				continue;
+			}
+			String[] tokens = element.toString().trim().split("\\s+");
+			if(tokens.length != size) return null;
+			try{
+				for(String token : tokens) floats[i++] = Float.parseFloat(token);
+			}
+			catch(NumberFormatException ex){
+				return null;
+			}
+		}
+		return floats;
+	}
+	
+	/**
+	 * Creates a value of the given type from float components.
+	 * This is the reverse of <code>toFloats</code>.
+	 * 
+	 * @param type the data type of the slot
+	 * @param f the components
+	 * @param elements number of array elements (ignored for types that are no arrays)
+	 * @return the value
+	 */
+	public static Object fromFloats(Class<?> type, float[] f, int elements){
+		if(type == Float.class) return f[0];
+		if(type == Vec2f.class) return new Vec2f(f[0], f[1]);
+		if(type == Vec3f.class) return new Vec3f(f[0], f[1], f[2]);
+		if(type == Rotation.class) return new Rotation(f[0], f[1], f[2], f[3]);
+		int i = 0;
+		if(type == Float[].class){
+			Float[] a = new Float[elements];
+			for(int n=0; n<elements; n++) a[n] = f[i++];
+			return a;
+		}
+		if(type == Vec2f[].class){
+			Vec2f[] a = new Vec2f[elements];
+			for(int n=0; n<elements; n++, i+=2) a[n] = new Vec2f(f[i], f[i+1]);
+			return a;
+		}
+		if(type == Vec3f[].class){
+			Vec3f[] a = new Vec3f[elements];
+			for(int n=0; n<elements; n++, i+=3) a[n] = new Vec3f(f[i], f[i+1], f[i+2]);
+			return a;
+		}
+		if(type == Rotation[].class){
+			Rotation[] a = new Rotation[elements];
+			for(int n=0; n<elements; n++, i+=4) a[n] = new Rotation(f[i], f[i+1], f[i+2], f[i+3]);
+			return a;
+		}
+		throw new IllegalArgumentException("no float representation for " + type.getName());
+	}
+	
+	/**
+	 * Estimates the memory used by a value on the heap, in bytes. Used to
+	 * keep buffers within a memory budget, so it does not need to be exact,
+	 * but it grows with the size of strings and arrays.
+	 * 
+	 * @param type the data type of the slot
+	 * @param value the value
+	 * @return estimated size of the value in bytes
+	 */
+	public static long estimateHeapSize(Class<?> type, Object value){
+		if(value == null) return 0;
+		if(value instanceof Float || value instanceof Integer || value instanceof Boolean) return 16;
+		if(value instanceof Double || value instanceof Long) return 24;
+		if(value instanceof String) return 40 + 2L * ((String) value).length();
+		if(value instanceof Object[]){
+			Object[] a = (Object[]) value;
+			long size = 16 + 4L * a.length;
+			Class<?> component = type != null && type.isArray() ? type.getComponentType() : null;
+			for(Object element : a) size += estimateHeapSize(component, element);
+			return size;
+		}
+		int floats = floatsPerValue(value.getClass());
+		if(floats > 0) return 16 + 4L * floats; // InstantIO vectors and rotations
+		return 16 + 2L * value.toString().length(); // about the size of its string representation
+	}
+	
+	private static boolean hasNoNull(Object[] a){
+		for(Object o : a) if(o == null) return false;
+		return true;
+	}
+	
+	/**
+	 * Writes a string as varint length followed by its UTF-8 bytes.
+	 * 
+	 * @param out the target
+	 * @param s the string
+	 * @throws IOException if writing fails
+	 */
+	public static void writeString(DataOutput out, String s) throws IOException{
+		byte[] b = s.getBytes(UTF8);
+		writeVarInt(out, b.length);
+		out.write(b);
+	}
+	
+	/**
+	 * Reads a string written by <code>writeString</code>.
+	 * 
+	 * @param in the source
+	 * @return the string
+	 * @throws IOException if reading fails
+	 */
+	public static String readString(DataInput in) throws IOException{
+		byte[] b = new byte[readVarInt(in)];
+		in.readFully(b);
+		return new String(b, UTF8);
+	}
+	
+	/**
+	 * Writes a non-negative <code>int</code> as unsigned varint.
+	 * 
+	 * @param out the target
+	 * @param v the value
+	 * @throws IOException if writing fails
+	 */
+	public static void writeVarInt(DataOutput out, int v) throws IOException{
+		while((v & ~0x7F) != 0){
+			out.writeByte((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte(v);
+	}
+	
+	/**
+	 * Reads an unsigned varint written by <code>writeVarInt</code>.
+	 * 
+	 * @param in the source
+	 * @return the value
+	 * @throws IOException if reading fails or the varint is too long
+	 */
+	public static int readVarInt(DataInput in) throws IOException{
+		int v = 0;
+		for(int shift = 0; shift < 35; shift += 7){
+			int b = in.readUnsignedByte();
+			v |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) return v;
+		}
+		throw new IOException("malformed varint");
+	}
+	
+	/**
+	 * Writes a <code>long</code> as unsigned varint.
+	 * 
+	 * @param out the target
+	 * @param v the value
+	 * @throws IOException if writing fails
+	 */
+	public static void writeVarLong(DataOutput out, long v) throws IOException{
+		while((v & ~0x7FL) != 0){
+			out.writeByte((int)(v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		out.writeByte((int) v);
+	}
+	
+	/**
+	 * Reads an unsigned varint written by <code>writeVarLong</code>.
+	 * 
+	 * @param in the source
+	 * @return the value
+	 * @throws IOException if reading fails or the varint is too long
+	 */
+	public static long readVarLong(DataInput in) throws IOException{
+		long v = 0;
+		for(int shift = 0; shift < 70; shift += 7){
+			int b = in.readUnsignedByte();
+			v |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0) return v;
+		}
+		throw new IOException("malformed varint");
+	}
+}
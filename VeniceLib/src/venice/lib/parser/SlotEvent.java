@@ -63,6 +63,20 @@ public class SlotEvent extends AbstractSlot{
     	this.type = type;
     	this.time = time;
     }
+    
+    /**
+     * Constructs an event for a scope of the {@link venice.lib.ScopeDictionary}.
+     * Label, namespace and type are taken from the dictionary.
+     * 
+     * @param value the data of this event
+     * @param scopeId the id of the scope in the dictionary
+     * @param time the timestamp of the event
+     */
+    public SlotEvent(Object value, int scopeId, long time){
+    	this.value = value;
+    	this.time = time;
+    	setScopeId(scopeId);
+    }
 
     /**
      * Returns the data of this event.
@@ -34,6 +34,7 @@ import org.xml.sax.SAXException;
 import org.xml.sax.InputSource;
 
 import venice.lib.Configuration;
+import venice.lib.ScopeDictionary;
 import com.sun.org.apache.xerces.internal.parsers.DOMParser;
 
 /**
@@ -172,8 +173,7 @@ public class XIODomParser extends XIOParser {
         else{
         	if(AttrMap.getNamedItem("sensorName") != null){
             	sensor = AttrMap.getNamedItem("sensorName").getNodeValue();
-            	se.setLabel(findSlotLabel(sensor));
-            	se.setNamespace(findNamespaceLabel(sensor));
+            	se.setScopeId(ScopeDictionary.getId(sensor, type));
             }
             else return failSlotEvent(xioLine);
         }
@@ -28,6 +28,7 @@ import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 import venice.lib.Configuration;
+import venice.lib.ScopeDictionary;
 
 /**
  * Parses strings to slotEvents and vice versa. Uses regular expression matching.
@@ -111,7 +112,6 @@ public class XIORegExParser extends XIOParser{
     	String type=null;
     	Class<?> typeClass = null;
         long ts;
-        String sensor=null;
         SlotEvent e = new SlotEvent();
         
         // parse type
@@ -146,9 +146,8 @@ public class XIORegExParser extends XIOParser{
         // parse sensorName
         matcher = patSensor.matcher(str);
         if(matcher.find()){
-        	sensor = matcher.group(1);
-        	e.setLabel(findSlotLabel(sensor));
-        	e.setNamespace(findNamespaceLabel(sensor));
+        	// look up the scope in place, no substring for known scopes
+        	e.setScopeId(ScopeDictionary.getId(str, matcher.start(1), matcher.end(1), typeClass));
         }
         else return failSlotEvent(str);
         
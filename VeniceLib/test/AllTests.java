@@ -11,7 +11,8 @@ import org.junit.runners.Suite.SuiteClasses;
 		venice.lib.parser.LUTablesTest.class,
 		venice.lib.networkIIO.IIONamespaceBuilderTest.class,
 		venice.lib.networkRSB.RSBNamespaceBuilderTest.class,
-		venice.lib.AbstractSlotTest.class
+		venice.lib.AbstractSlotTest.class,
+		venice.lib.ScopeDictionaryTest.class
 	})
 
 
@@ -0,0 +1,65 @@
+package venice.lib;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import venice.lib.parser.SlotEvent;
+
+public class ScopeDictionaryTest {
+
+	@Test
+	public void testGetId(){
+		int id = ScopeDictionary.getId("Venice/test/slotA", String.class);
+		
+		assertEquals(id, ScopeDictionary.getId("Venice/test/slotA", String.class));
+		assertEquals(id, ScopeDictionary.getId("Venice/test", "slotA", String.class));
+		assertEquals(id, ScopeDictionary.getId("<sfstring sensorName=\"Venice/test/slotA\"/>", 22, 39, String.class));
+		
+		// same scope with another type gets another id
+		assertNotEquals(id, ScopeDictionary.getId("Venice/test/slotA", Float.class));
+		
+		ScopeDictionary.Entry e = ScopeDictionary.get(id);
+		assertEquals("Venice/test/slotA", e.getScope());
+		assertEquals("Venice/test", e.getNamespace());
+		assertEquals("slotA", e.getLabel());
+		assertEquals(String.class, e.getType());
+		assertArrayEquals("Venice/test/slotA".getBytes(), e.getScopeBytes());
+		
+		// scope without namespace
+		e = ScopeDictionary.get(ScopeDictionary.getId("slotB", Integer.class));
+		assertEquals("", e.getNamespace());
+		assertEquals("slotB", e.getLabel());
+		
+		assertNull(ScopeDictionary.get(ScopeDictionary.NO_ID));
+	}
+	
+	@Test
+	public void testManyScopes(){
+		int[] ids = new int[1000];
+		for(int i=0; i<ids.length; i++) ids[i] = ScopeDictionary.getId("Venice/many/slot"+i, Double.class);
+		for(int i=0; i<ids.length; i++){
+			assertEquals(ids[i], ScopeDictionary.getId("Venice/many/slot"+i, Double.class));
+			assertEquals("slot"+i, ScopeDictionary.get(ids[i]).getLabel());
+		}
+	}
+	
+	@Test
+	public void testSlotScopeId(){
+		SlotEvent se = new SlotEvent("abc", "Venice/test", "slotC", String.class, 42L);
+		int id = se.getScopeId();
+		assertEquals(id, ScopeDictionary.getId("Venice/test/slotC", String.class));
+		assertEquals("Venice/test/slotC", se.getScope());
+		
+		// changing the label must invalidate the cached id
+		se.setLabel("slotD");
+		assertNotEquals(id, se.getScopeId());
+		assertEquals("Venice/test/slotD", se.getScope());
+		
+		SlotEvent copy = new SlotEvent("abc", id, 42L);
+		assertEquals("Venice/test", copy.getNamespace());
+		assertEquals("slotC", copy.getLabel());
+		assertEquals(String.class, copy.getType());
+		assertEquals(new SlotEvent("abc", "Venice/test", "slotC", String.class, 42L), copy);
+	}
+}
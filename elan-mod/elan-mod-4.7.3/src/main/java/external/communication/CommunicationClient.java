@@ -4,11 +4,15 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.msgpack.rpc.Client;
+import org.msgpack.rpc.Future;
 import org.msgpack.rpc.loop.EventLoop;
+import org.msgpack.type.Value;
 
 /**
  * Client class for the communication with the IR replaytool.
@@ -24,8 +28,14 @@ public class CommunicationClient {
     //default
     private String ip;
     private int port;
-    private boolean clientCon = false;
+    private volatile boolean clientCon = false;
     private EventHook ev;
+    // the newest event that was not sent yet
+    private final Object pendingLock = new Object();
+    private String pendingType;
+    private long pendingTime;
+    private SenderThread sender;
+    private static final int CALL_TIMEOUT = 5; // seconds
 
     /**
      * 
@@ -60,9 +70,11 @@ public class CommunicationClient {
         try {
             loop = EventLoop.defaultEventLoop();
             cli = new Client(this.ip, this.port, loop);
-            cli.setRequestTimeout(90);
+            cli.setRequestTimeout(CALL_TIMEOUT); // a lost answer is given up with the call
             iface = cli.proxy(RPCBrowserInterface.class);
             this.clientCon = true;
+            sender = new SenderThread();
+            sender.start();
         } catch (UnknownHostException e) {
             // TODO Auto-generated catch block
             System.err.println("host not found, check /src/client.properties");
@@ -70,38 +82,97 @@ public class CommunicationClient {
     }
 
     /**
-     * Sending an event over this client to the IR playbacktool
+     * Sending an event over this client to the IR playbacktool.
+     * The event is only noted here, it is sent by the sender thread, so that
+     * the calling thread never waits for the network. If several events come
+     * in before the last one is sent, only the newest is sent.
      * 
-     * @param eType Type of event as string. ("play","pause","seek_play","seek_pause","stop")
+     * @param eType Type of event as string. ("play","pause","seek_play","seek_pause","stop","sync")
      * @param timestamp timestamp of the event. In milliseconds.
      */
     public void sendEvent(String eType, long timestamp) {
         if (clientCon) {
-            if (eType.equals("play")) {
-                System.out.println("play");
-                iface.play();
-                System.out.println("seek" + " : " + timestamp);
-                iface.seek(timestamp);
-            } else if (eType.equals("stop")) {
-                System.out.println("stop");
-                iface.pause();
-            } else if (eType.equals("seek_pause")) {
+            synchronized (pendingLock) {
+                if (eType.equals("sync") && pendingType != null && !pendingType.equals("sync")) {
+                    // a sync must not replace a change of the player
+                    return;
+                }
+                // the newest event replaces one that was not sent yet
+                pendingType = eType;
+                pendingTime = timestamp;
+                pendingLock.notify();
+            }
+        }
+    }
 
-                iface.play();
-                iface.seek(timestamp);
-                iface.pause();
+    /**
+     * Sends the pending events, each as one compound command. The commands
+     * are called asynchronously, only this thread waits for the answer.
+     * (Notifications would be enough, but msgpack-rpc 0.7.0 can not
+     * dispatch them with arguments.)
+     */
+    private class SenderThread extends Thread {
 
-            } else if (eType.equals("seek_play")) {
-                 iface.seek(timestamp);
-            } else if (eType.equals("pause")) {
-//            System.out.println("pause");
-                iface.pause();
+        public SenderThread() {
+            super("RPC sender");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (clientCon) {
+                String eType;
+                long timestamp;
+                synchronized (pendingLock) {
+                    while (pendingType == null && clientCon) {
+                        try {
+                            pendingLock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    eType = pendingType;
+                    timestamp = pendingTime;
+                    pendingType = null;
+                }
+                if (eType == null) {
+                    return;
+                }
+                try {
+                    // one call at a time, so that the calls can not overtake each other;
+                    // newer events are coalesced in the meantime
+                    Future<Value> call = send(eType, timestamp);
+                    if (call != null) {
+                        call.join(CALL_TIMEOUT, TimeUnit.SECONDS);
+                    }
+                } catch (TimeoutException e) {
+                    System.err.println("no answer for " + eType + " within " + CALL_TIMEOUT + " s");
+                } catch (InterruptedException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    System.err.println("could not send " + eType + ": " + e.getMessage());
+                }
             }
         }
+
+        private Future<Value> send(String eType, long timestamp) {
+            if (eType.equals("play") || eType.equals("seek_play")) {
+                return cli.callAsyncApply("seekAndPlay", new Object[]{timestamp});
+            } else if (eType.equals("stop") || eType.equals("pause") || eType.equals("seek_pause")) {
+                return cli.callAsyncApply("seekAndPause", new Object[]{timestamp});
+            } else if (eType.equals("sync")) {
+                return cli.callAsyncApply("sync", new Object[]{timestamp});
+            }
+            return null;
+        }
     }
     
     public void stopClient(){
       if (clientCon){
+        synchronized (pendingLock) {
+          clientCon = false;
+          pendingLock.notify();
+        }
 
         // close RPC client
         cli.close();
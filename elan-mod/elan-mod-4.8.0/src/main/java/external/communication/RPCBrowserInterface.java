@@ -11,6 +11,10 @@ public interface RPCBrowserInterface {
   public void play();
   public void stop();
   public void seek(long timestamp);
+  public void seekAndPlay(long timestamp);
+  public void seekAndPause(long timestamp);
+  public void setPosition(long timestamp, boolean playing);
+  public void sync(long timestamp);
   public void pause();
   public void quit();
 
@@ -8,8 +8,8 @@ import java.util.logging.Logger;
 
 /**
  * This thread is meant to synchornize elan_mod with the playback tool every once in a short while.
- * Therefor it constantly send seek_play commands via the communicationClient that seek to the exact timestamp.
- * This generates a minimal lag, but asures that the ELAN videoplayback is synchronized with the instantReality scene.
+ * Therefor it constantly sends the media time via the communicationClient (sync commands).
+ * The playback tool corrects small drifts by slightly changing its rate, and only seeks for large drifts.
  * 
  * @author jeeickme
  */
@@ -49,10 +49,10 @@ public class SyncThread extends Thread {
         while (!stop) {
             if (ev.isPlayer()) {
                 try {
-                    sleep(1000);
+                    sleep(sleeptime);
                     if (ev.isPlayerPlaying()) {
                         long time = this.ev.getPlayer().getMasterMediaPlayer().getMediaTime();
-                        client.sendEvent("seek_play", time);
+                        client.sendEvent("sync", time);
                     }
                 } catch (InterruptedException ex) {
                     Logger.getLogger(SyncThread.class.getName()).log(Level.SEVERE, null, ex);
@@ -1,8 +1,15 @@
 package toyserver;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.net.Socket;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.zip.Adler32;
  
 /**
@@ -12,10 +19,14 @@ import java.util.zip.Adler32;
  * This is to test the venice setup without kinect hardware.
  * Will stop when connection is closed by other side.
  * 
- * Usage: ToyServer [f|b] port
+ * Usage: ToyServer [f|b|h] port [v2 [sensorfile]]
  * f: simulate face data
  * b: simulate body data
+ * h: simulate hand data
  * port: TCP port number
+ * v2: send binary frames (VenicePort protocol version 2) instead of text
+ * lines; the types of the values are taken from the sensor file
+ * (default: bodyserver.xml, faceserver.xml or leapserver.xml)
  * 
  * @author Oliver Eickmeyer
  *
@@ -28,6 +39,19 @@ public class ToyServer {
 	private enum Mode {FACE, BODY, HAND}
 	private Mode mode;
 	private int frame;
+	private List<String> types; // of the slots, for binary frames, otherwise null
+	
+	// binary VenicePort protocol version 2
+	private final static byte[] MAGIC = {'V', 'P'};
+	private final static int VERSION = 2;
+	private final static int[] CRC_TABLE = new int[256];
+	static {
+		for(int i=0; i<256; i++){
+			int c = i;
+			for(int k=0; k<8; k++) c = (c & 1) != 0 ? (c >>> 1) ^ 0x82F63B78 : c >>> 1;
+			CRC_TABLE[i] = c;
+		}
+	}
 
 	/**
 	 * Main method, starts the program.
@@ -41,11 +65,13 @@ public class ToyServer {
 		if(args.length>0){
 			if(args[0].equals("-h") || args[0].equals("--help")){
 				System.out.println("connects to TCP port at localhost and sends test data to simulate a kinect server.");
-				System.out.println("Usage: ToyServer [f|b] port");
+				System.out.println("Usage: ToyServer [f|b|h] port [v2 [sensorfile]]");
 				System.out.println(" f : simulate face data");
 				System.out.println(" b : simulate body data");
 				System.out.println(" h : simulate hand data");
 				System.out.println(" port : TCP post number (integer)");
+				System.out.println(" v2 : send binary frames, typed by the sensor file");
+				System.out.println(" sensorfile : default is bodyserver.xml, faceserver.xml or leapserver.xml");
 				System.exit(0);
 			}
 			else{
@@ -64,22 +90,57 @@ public class ToyServer {
 				}
 			}
 		}
-		new ToyServer(m, port);
+		String sensorFile = null;
+		if(args.length > 2){
+			if(!args[2].equalsIgnoreCase("v2")){
+				System.out.println("Wrong protocol for third argument, should be 'v2'.");
+				System.exit(1);
+			}
+			if(args.length > 3) sensorFile = args[3];
+			else if(m == Mode.FACE) sensorFile = "faceserver.xml";
+			else if(m == Mode.BODY) sensorFile = "bodyserver.xml";
+			else sensorFile = "leapserver.xml";
+			// started in bin
+			if(args.length == 3 && !new File(sensorFile).isFile()) sensorFile = ".." + File.separator + sensorFile;
+		}
+		new ToyServer(m, port, sensorFile);
 	}
 	
 	/**
 	 * Constructor, initializes and starts the TCP sender.
 	 * @param mode mode of operation (face or body data)
 	 * @param port number of the TCP port to use
+	 * @param sensorFile sensor file for binary frames, or null for text lines
 	 */
-	public ToyServer(Mode mode, int port){
+	public ToyServer(Mode mode, int port, String sensorFile){
 		portnumber = port;
 		this.mode = mode;
 		frame = 0;
+		if(sensorFile != null) types = readTypes(sensorFile);
 		initialize();
 		run();
 	}
 	
+	/**
+	 * Reads the types of the slots of a sensor file, in their order.
+	 * @param sensorFile name of the sensor file
+	 * @return the types, e.g. MFVec3f
+	 */
+	private static List<String> readTypes(String sensorFile){
+		String xml = null;
+		try {
+			xml = new String(Files.readAllBytes(new File(sensorFile).toPath()), "UTF-8");
+		} catch (IOException e) {
+			System.err.println("Can't read the sensor file "+sensorFile+".");
+			System.exit(1);
+		}
+		xml = xml.replaceAll("(?s)<!--.*?-->", "");
+		List<String> types = new ArrayList<String>();
+		Matcher matcher = Pattern.compile("\\btype\\s*=\\s*\"([^\"]*)\"").matcher(xml);
+		while(matcher.find()) types.add(matcher.group(1).toLowerCase());
+		return types;
+	}
+	
 	/**
 	 * Sets up the TCP connection.
 	 */
@@ -133,13 +194,20 @@ public class ToyServer {
 				break;
 			}
     		
-    		Adler32 ckBuilder = new Adler32();
-    		ckBuilder.update(values.getBytes());
-    		
-    		String ckSum = String.valueOf(ckBuilder.getValue());
-    		String send = ckSum+", "+values+"\n"; 
-    		System.out.print("sending: "+send);
-    		write(send);
+    		if(types != null){
+    			byte[] send = createFrame(values);
+    			System.out.println("sending frame of "+send.length+" bytes");
+    			write(send);
+    		}
+    		else{
+    			Adler32 ckBuilder = new Adler32();
+    			ckBuilder.update(values.getBytes());
+    			
+    			String ckSum = String.valueOf(ckBuilder.getValue());
+    			String send = ckSum+", "+values+"\n"; 
+    			System.out.print("sending: "+send);
+    			write(send);
+    		}
     		
     		try {
 				Thread.sleep(1000);
@@ -258,6 +326,93 @@ public class ToyServer {
 		return values;
 	}
 	
+	/**
+	 * Creates a binary frame (VenicePort protocol version 2) with the values
+	 * of a text line: magic bytes, version, length and CRC32C of the
+	 * payload, then the payload with the time of sending and the values,
+	 * typed by the sensor file.
+	 * 
+	 * @param values the values as for a text line
+	 * @return the frame
+	 */
+	private byte[] createFrame(String values){
+		String[] tokens = values.split(", ");
+		ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		DataOutputStream d = new DataOutputStream(payload);
+		int m = 0; // index of the token
+		try {
+			d.writeLong(System.currentTimeMillis());
+			for(String type : types){
+				int fields = 1; // number of fields
+				if(type.startsWith("mf")){
+					fields = Integer.parseInt(tokens[m++]);
+					d.writeInt(fields);
+				}
+				for(int f=0; f<fields; f++){
+					switch(type.substring(2)){
+					case "int32":
+						d.writeInt(Integer.parseInt(tokens[m++]));
+						break;
+					case "long":
+						d.writeLong(Long.parseLong(tokens[m++]));
+						break;
+					case "float":
+						d.writeFloat(Float.parseFloat(tokens[m++]));
+						break;
+					case "bool":
+						d.writeByte(Boolean.parseBoolean(tokens[m++]) ? 1 : 0);
+						break;
+					case "string":
+						byte[] b = tokens[m++].getBytes("UTF-8");
+						d.writeShort(b.length);
+						d.write(b);
+						break;
+					case "vec2f":
+					case "vec3f":
+					case "rotation":
+						int n = type.endsWith("2f") ? 2 : type.endsWith("3f") ? 3 : 4;
+						for(int i=0; i<n; i++) d.writeFloat(Float.parseFloat(tokens[m++]));
+						break;
+					default:
+						System.err.println("Type "+type+" is not supported.");
+						System.exit(1);
+					}
+				}
+			}
+		} catch (IOException e) {
+			// not thrown by a ByteArrayOutputStream
+		}
+		
+		byte[] p = payload.toByteArray();
+		int crc = 0xFFFFFFFF;
+		for(byte b : p) crc = (crc >>> 8) ^ CRC_TABLE[(crc ^ b) & 0xFF];
+		ByteArrayOutputStream frame = new ByteArrayOutputStream();
+		DataOutputStream f = new DataOutputStream(frame);
+		try {
+			f.write(MAGIC);
+			f.writeByte(VERSION);
+			f.writeInt(p.length);
+			f.writeInt(~crc);
+			f.write(p);
+		} catch (IOException e) {
+			// not thrown by a ByteArrayOutputStream
+		}
+		return frame.toByteArray();
+	}
+	
+	/**
+	 * Trys to write the given bytes to the TCP connection.
+	 * @param b bytes to write to the TCP socket
+	 */
+	private void write(byte[] b){
+		try {
+			out.write(b);
+		} catch (IOException e) {
+			System.err.println("Error while writing to socket.");
+			active = false;
+		}
+	}
+	
 	/**
 	 * Trys to write the given String to the TCP connection.
 	 * @param s String to write to the TCP socket